@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import junit.framework.Assert;
+
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieVideoEntry;
+
+/**
+ * Compares the throughput of inserting rows one at a time with
+ * {@link SQLiteDatabase#insert(String, String, ContentValues)}, which parses
+ * the SQL and binds the arguments from scratch for each row (as
+ * {@link MovieProvider#bulkInsert(android.net.Uri, ContentValues[])} used to
+ * do), against a {@link RowUpserter.Batch}, which compiles the statements
+ * once. All the insertions of a run happen in a single transaction.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class BulkInsertBenchmark extends AndroidTestCase {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = BulkInsertBenchmark.class.getSimpleName();
+
+    /**
+     * Number of rows inserted on each run.
+     */
+    private static final int ROWS_PER_RUN = 10000;
+
+    /**
+     * The database the rows are written to.
+     */
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDb = new MovieDbHelper(mContext).getWritableDatabase();
+        mDb.delete(CachedMovieVideoEntry.TABLE_NAME, null, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.delete(CachedMovieVideoEntry.TABLE_NAME, null, null);
+        mDb.close();
+        super.tearDown();
+    }
+
+    /**
+     * Returns the rows inserted on each run: the videos of movies, as read
+     * from the RESTful API.
+     *
+     * @return the rows to insert.
+     */
+    private static ContentValues[] createVideoValues() {
+        ContentValues[] videos = new ContentValues[ROWS_PER_RUN];
+        for (int i = 0; i < ROWS_PER_RUN; i++) {
+            ContentValues video = new ContentValues();
+            video.put(CachedMovieVideoEntry.COLUMN_MOVIE_API_ID, i / 4);
+            video.put(CachedMovieVideoEntry.COLUMN_API_ID, "video" + i);
+            video.put(CachedMovieVideoEntry.COLUMN_LANGUAGE, "en");
+            video.put(CachedMovieVideoEntry.COLUMN_KEY, "key" + i);
+            video.put(CachedMovieVideoEntry.COLUMN_NAME, "Trailer " + i);
+            video.put(CachedMovieVideoEntry.COLUMN_SITE, "YouTube");
+            video.put(CachedMovieVideoEntry.COLUMN_SIZE, 1080);
+            video.put(CachedMovieVideoEntry.COLUMN_TYPE, "Trailer");
+            videos[i] = video;
+        }
+        return videos;
+    }
+
+    /**
+     * Logs the throughput of a run and verifies all the rows were stored.
+     *
+     * @param label describes the run.
+     * @param elapsedNanos the duration of the run, in nanoseconds.
+     */
+    private void logRowsPerSecond(String label, long elapsedNanos) {
+        Log.i(LOG_TAG, label + ", rows per second: "
+                + ROWS_PER_RUN * 1000000000L / elapsedNanos);
+        Assert.assertEquals("All the rows must be stored", ROWS_PER_RUN
+                , DatabaseUtils.queryNumEntries(mDb, CachedMovieVideoEntry.TABLE_NAME));
+    }
+
+    /**
+     * Stores all the rows with a {@link RowUpserter.Batch}, in a single
+     * transaction.
+     *
+     * @param videos the rows to store.
+     */
+    private void upsertAll(ContentValues[] videos) {
+        RowUpserter upserter = new RowUpserter(CachedMovieVideoEntry.TABLE_NAME
+                , CachedMovieVideoEntry.COLUMN_MOVIE_API_ID
+                , CachedMovieVideoEntry.COLUMN_API_ID);
+        mDb.beginTransaction();
+        RowUpserter.Batch batch = upserter.newBatch(mDb);
+        try {
+            for (ContentValues video : videos) {
+                batch.upsert(video);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            batch.close();
+            mDb.endTransaction();
+        }
+    }
+
+    /**
+     * Measures the throughput of inserting new rows one at a time, without
+     * reusing the statement.
+     */
+    public void testInsertPerRow() {
+        ContentValues[] videos = createVideoValues();
+        long start = System.nanoTime();
+        mDb.beginTransaction();
+        try {
+            for (ContentValues video : videos) {
+                mDb.insert(CachedMovieVideoEntry.TABLE_NAME, null, video);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        logRowsPerSecond("Insert per row", System.nanoTime() - start);
+    }
+
+    /**
+     * Measures the throughput of inserting new rows with the compiled
+     * statements.
+     */
+    public void testCompiledUpsert() {
+        ContentValues[] videos = createVideoValues();
+        long start = System.nanoTime();
+        upsertAll(videos);
+        logRowsPerSecond("Compiled upsert, new rows", System.nanoTime() - start);
+    }
+
+    /**
+     * Measures the throughput of storing again rows that did not change with
+     * the compiled statements, as happens when a list is refreshed.
+     */
+    public void testCompiledUpsert_unchangedRows() {
+        ContentValues[] videos = createVideoValues();
+        upsertAll(videos);
+        long start = System.nanoTime();
+        upsertAll(videos);
+        logRowsPerSecond("Compiled upsert, unchanged rows", System.nanoTime() - start);
+    }
+
+}
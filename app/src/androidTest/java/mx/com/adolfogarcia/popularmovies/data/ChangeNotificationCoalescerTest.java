@@ -0,0 +1,182 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.data;
+
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.test.mock.MockContentResolver;
+
+import junit.framework.Assert;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieReviewEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieVideoEntry;
+
+/**
+ * Verifies {@link ChangeNotificationCoalescer} delivers the minimal set of
+ * notifications for the changes made within its window or a scope.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class ChangeNotificationCoalescerTest extends AndroidTestCase {
+
+    /**
+     * Window used by the tests, long enough for the changes requested by a
+     * test to fall within it.
+     */
+    private static final long WINDOW_MS = 200;
+
+    /**
+     * Records the notifications delivered.
+     */
+    private RecordingContentResolver mContentResolver;
+
+    /**
+     * The instance being tested.
+     */
+    private ChangeNotificationCoalescer mCoalescer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContentResolver = new RecordingContentResolver();
+        mCoalescer = new ChangeNotificationCoalescer(mContentResolver, WINDOW_MS);
+    }
+
+    /**
+     * Verifies the URIs that descend from another one in the set are
+     * dropped, and the rest are kept.
+     */
+    public void testWithoutDescendants() {
+        Uri movieUri = CachedMovieEntry.buildMovieUri(1);
+        List<Uri> uris = ChangeNotificationCoalescer.withoutDescendants(Arrays.asList(
+                movieUri
+                , CachedMovieEntry.CONTENT_URI
+                , CachedMovieVideoEntry.CONTENT_URI));
+        Assert.assertEquals("The single movie must be dropped"
+                , Arrays.asList(CachedMovieEntry.CONTENT_URI, CachedMovieVideoEntry.CONTENT_URI)
+                , uris);
+    }
+
+    /**
+     * Verifies the changes requested outside of a scope are held until the
+     * window ends, and delivered once per URI.
+     *
+     * @throws Exception if interrupted while waiting for the window to end.
+     */
+    public void testNotifyChange_coalescedWithinWindow() throws Exception {
+        mContentResolver.expectNotifications(2);
+        mCoalescer.notifyChange(CachedMovieEntry.CONTENT_URI);
+        mCoalescer.notifyChange(CachedMovieVideoEntry.CONTENT_URI);
+        mCoalescer.notifyChange(CachedMovieEntry.CONTENT_URI);
+        mCoalescer.notifyChange(CachedMovieEntry.buildMovieUri(1));
+        Assert.assertTrue("Nothing must be delivered before the window ends"
+                , mContentResolver.mNotifiedUris.isEmpty());
+        Assert.assertTrue("The notifications must be delivered when the window ends"
+                , mContentResolver.await(WINDOW_MS * 10));
+        Assert.assertEquals("Each URI must be notified once"
+                , Arrays.asList(CachedMovieEntry.CONTENT_URI, CachedMovieVideoEntry.CONTENT_URI)
+                , mContentResolver.mNotifiedUris);
+        Assert.assertEquals("Delivered notifications", 2, mCoalescer.getDeliveredCount());
+        Assert.assertEquals("Suppressed notifications", 2, mCoalescer.getSuppressedCount());
+    }
+
+    /**
+     * Verifies the changes requested within a scope are delivered as soon as
+     * the scope is closed, along with the pending ones.
+     */
+    public void testCloseScope_committed() {
+        mCoalescer.notifyChange(CachedMovieReviewEntry.CONTENT_URI);
+        mCoalescer.openScope();
+        mCoalescer.notifyChange(CachedMovieEntry.CONTENT_URI);
+        mCoalescer.notifyChange(CachedMovieEntry.CONTENT_URI);
+        Assert.assertTrue("Nothing must be delivered while the scope is open"
+                , mContentResolver.mNotifiedUris.isEmpty());
+        mCoalescer.closeScope(true);
+        Assert.assertEquals("The pending and scope URIs must be notified once"
+                , Arrays.asList(CachedMovieReviewEntry.CONTENT_URI, CachedMovieEntry.CONTENT_URI)
+                , mContentResolver.mNotifiedUris);
+        Assert.assertEquals("Delivered notifications", 2, mCoalescer.getDeliveredCount());
+        Assert.assertEquals("Suppressed notifications", 1, mCoalescer.getSuppressedCount());
+    }
+
+    /**
+     * Verifies the changes requested within a scope that is rolled back are
+     * dropped.
+     */
+    public void testCloseScope_rolledBack() {
+        mCoalescer.openScope();
+        mCoalescer.notifyChange(CachedMovieEntry.CONTENT_URI);
+        mCoalescer.notifyChange(CachedMovieVideoEntry.CONTENT_URI);
+        mCoalescer.closeScope(false);
+        mCoalescer.flush();
+        Assert.assertTrue("Nothing must be delivered", mContentResolver.mNotifiedUris.isEmpty());
+        Assert.assertEquals("Delivered notifications", 0, mCoalescer.getDeliveredCount());
+        Assert.assertEquals("Suppressed notifications", 2, mCoalescer.getSuppressedCount());
+    }
+
+    /**
+     * Records the URIs notified instead of delivering the notifications.
+     */
+    private static final class RecordingContentResolver extends MockContentResolver {
+
+        /**
+         * The URIs notified, in order.
+         */
+        private final List<Uri> mNotifiedUris = new CopyOnWriteArrayList<>();
+
+        /**
+         * Counts down the notifications expected.
+         */
+        private volatile CountDownLatch mLatch = new CountDownLatch(0);
+
+        @Override
+        public void notifyChange(Uri uri, ContentObserver observer, boolean syncToNetwork) {
+            mNotifiedUris.add(uri);
+            mLatch.countDown();
+        }
+
+        /**
+         * Sets the number of notifications {@link #await(long)} waits for.
+         *
+         * @param count the number of notifications expected.
+         */
+        void expectNotifications(int count) {
+            mLatch = new CountDownLatch(count);
+        }
+
+        /**
+         * Waits for the expected notifications to be delivered.
+         *
+         * @param timeoutMillis the maximum time to wait, in milliseconds.
+         * @return {@code true} if the notifications were delivered in time.
+         * @throws InterruptedException if interrupted while waiting.
+         */
+        boolean await(long timeoutMillis) throws InterruptedException {
+            return mLatch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+    }
+
+}
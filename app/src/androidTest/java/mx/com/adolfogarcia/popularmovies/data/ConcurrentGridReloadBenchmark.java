@@ -0,0 +1,222 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import junit.framework.Assert;
+
+import mx.com.adolfogarcia.popularmovies.net.FetchPopularityMoviePageTaskFactory;
+import mx.com.adolfogarcia.popularmovies.net.TheMovieDbApi;
+import mx.com.adolfogarcia.popularmovies.view.adapter.MoviePosterAdapter;
+
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListEntry;
+
+/**
+ * Measures the latency of the poster grid query while movies are being
+ * ingested on another thread, with the rollback journal (the default, used
+ * before) and with write-ahead logging (as configured by
+ * {@link MovieDbHelper}). The benchmark uses its own database file, so the
+ * journal mode of the application's database is not changed.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class ConcurrentGridReloadBenchmark extends AndroidTestCase {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = ConcurrentGridReloadBenchmark.class.getSimpleName();
+
+    /**
+     * Name of the database file used by the benchmark.
+     */
+    private static final String DATABASE_NAME = "grid_reload_benchmark.db";
+
+    /**
+     * Number of transactions performed by the ingestion.
+     */
+    private static final int INGESTED_TRANSACTIONS = 20;
+
+    /**
+     * Number of movies inserted by each transaction of the ingestion.
+     */
+    private static final int MOVIES_PER_TRANSACTION = 500;
+
+    /**
+     * The database used by the benchmark.
+     */
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDb = mContext.openOrCreateDatabase(DATABASE_NAME, Context.MODE_PRIVATE, null);
+        new MovieDbHelper(mContext).onCreate(mDb);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+        super.tearDown();
+    }
+
+    /**
+     * Returns the row of a movie in the list of most popular movies.
+     *
+     * @param movieApiId the identifier of the movie in the RESTful API.
+     * @return the row of the movie.
+     */
+    private static ContentValues createMovieValues(int movieApiId) {
+        ContentValues movie = new ContentValues();
+        movie.put(CachedMovieEntry.COLUMN_API_ID, movieApiId);
+        movie.put(CachedMovieEntry.COLUMN_ORIGINAL_TITLE, "The Amazing " + movieApiId);
+        movie.put(CachedMovieEntry.COLUMN_RELEASE_DATE, 1431648000000L);
+        movie.put(CachedMovieEntry.COLUMN_OVERVIEW, "A great story of " + movieApiId);
+        movie.put(CachedMovieEntry.COLUMN_POSTER_PATH, "/poster" + movieApiId + ".jpg");
+        movie.put(CachedMovieEntry.COLUMN_POPULARITY, movieApiId % 997);
+        movie.put(CachedMovieEntry.COLUMN_VOTE_AVERAGE, 7.7);
+        return movie;
+    }
+
+    /**
+     * Returns the entry of a movie in the list of most popular movies.
+     *
+     * @param movieApiId the identifier of the movie in the RESTful API.
+     * @return the entry of the movie, at the position given by its identifier.
+     */
+    private static ContentValues createListEntryValues(int movieApiId) {
+        ContentValues entry = new ContentValues();
+        entry.put(MovieListEntry.COLUMN_LIST_KEY, TheMovieDbApi.SORT_BY_POPULARITY);
+        entry.put(MovieListEntry.COLUMN_POSITION, movieApiId);
+        entry.put(MovieListEntry.COLUMN_MOVIE_API_ID, movieApiId);
+        return entry;
+    }
+
+    /**
+     * Inserts the movies of the ingestion and their list entries, one
+     * transaction at a time, as
+     * {@link MovieProvider#applyBatch(java.util.ArrayList)} does.
+     */
+    private void ingestMovies() {
+        RowUpserter movieUpserter =
+                new RowUpserter(CachedMovieEntry.TABLE_NAME, CachedMovieEntry.COLUMN_API_ID);
+        RowUpserter entryUpserter = new RowUpserter(MovieListEntry.TABLE_NAME
+                , MovieListEntry.COLUMN_LIST_KEY
+                , MovieListEntry.COLUMN_POSITION);
+        for (int transaction = 0; transaction < INGESTED_TRANSACTIONS; transaction++) {
+            mDb.beginTransaction();
+            RowUpserter.Batch movieBatch = movieUpserter.newBatch(mDb);
+            RowUpserter.Batch entryBatch = entryUpserter.newBatch(mDb);
+            try {
+                for (int i = 0; i < MOVIES_PER_TRANSACTION; i++) {
+                    int movieApiId = transaction * MOVIES_PER_TRANSACTION + i;
+                    movieBatch.upsert(createMovieValues(movieApiId));
+                    entryBatch.upsert(createListEntryValues(movieApiId));
+                }
+                mDb.setTransactionSuccessful();
+            } finally {
+                movieBatch.close();
+                entryBatch.close();
+                mDb.endTransaction();
+            }
+        }
+    }
+
+    /**
+     * Queries the posters of the most popular movies, as the poster grid
+     * does, and reads the whole result.
+     *
+     * @return the number of movies in the result.
+     */
+    private int reloadGrid() {
+        Cursor cursor = mDb.query(MovieProvider.MOVIE_LIST_TABLES
+                , MoviePosterAdapter.PROJECTION_MOVIE_POSTERS
+                , MovieProvider.SELECTION_MOVIE_LIST
+                , new String[] {TheMovieDbApi.SORT_BY_POPULARITY}
+                , null
+                , null
+                , new FetchPopularityMoviePageTaskFactory(null, null, null, null, null, mContext)
+                        .getMovieProviderSortOrder());
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Reloads the grid repeatedly while the movies are ingested on another
+     * thread, and logs the latency of the reloads.
+     *
+     * @param label describes the journal mode.
+     * @throws InterruptedException if interrupted while waiting for the
+     *     ingestion to finish.
+     */
+    private void measureReloadsDuringIngestion(String label) throws InterruptedException {
+        Thread ingestion = new Thread(this::ingestMovies);
+        long reloadCount = 0;
+        long totalNanos = 0;
+        long maxNanos = 0;
+        ingestion.start();
+        while (ingestion.isAlive()) {
+            long start = System.nanoTime();
+            reloadGrid();
+            long elapsed = System.nanoTime() - start;
+            reloadCount++;
+            totalNanos += elapsed;
+            maxNanos = Math.max(maxNanos, elapsed);
+        }
+        ingestion.join();
+        Assert.assertEquals("All the movies must be ingested"
+                , INGESTED_TRANSACTIONS * MOVIES_PER_TRANSACTION, reloadGrid());
+        Log.i(LOG_TAG, label + ", reloads: " + reloadCount
+                + ", mean latency (µs): " + totalNanos / Math.max(reloadCount, 1) / 1000
+                + ", max latency (µs): " + maxNanos / 1000);
+    }
+
+    /**
+     * Measures the latency of the grid reloads with the rollback journal.
+     *
+     * @throws InterruptedException if interrupted while waiting for the
+     *     ingestion to finish.
+     */
+    public void testRollbackJournal() throws InterruptedException {
+        measureReloadsDuringIngestion("Rollback journal");
+    }
+
+    /**
+     * Measures the latency of the grid reloads with write-ahead logging.
+     *
+     * @throws InterruptedException if interrupted while waiting for the
+     *     ingestion to finish.
+     */
+    public void testWriteAheadLogging() throws InterruptedException {
+        Assert.assertTrue("Write-ahead logging must be enabled", mDb.enableWriteAheadLogging());
+        new MovieDbHelper(mContext).onOpen(mDb);
+        measureReloadsDuringIngestion("Write-ahead logging");
+    }
+
+}
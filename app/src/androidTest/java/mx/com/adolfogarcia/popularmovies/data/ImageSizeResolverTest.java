@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.data;
+
+import android.test.AndroidTestCase;
+
+import junit.framework.Assert;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static mx.com.adolfogarcia.popularmovies.data.ImageSizeResolver.ImageType;
+import static mx.com.adolfogarcia.popularmovies.data.ImageSizeResolver.ImageQuality;
+
+/**
+ * Verifies {@link ImageSizeResolver} chooses the sizes that best fit the
+ * widths requested, for each type of image, density and quality.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class ImageSizeResolverTest extends AndroidTestCase {
+
+    /**
+     * Returns the sizes used by the tests: those of the posters and the
+     * profile pictures, in no particular order.
+     *
+     * @return the sizes, by image type.
+     */
+    private static Map<ImageType, Collection<String>> createSizes() {
+        Map<ImageType, Collection<String>> sizes = new EnumMap<>(ImageType.class);
+        sizes.put(ImageType.POSTER
+                , Arrays.asList("w500", "original", "w92", "w342", "w185", "w154", "w780"));
+        sizes.put(ImageType.PROFILE, Arrays.asList("h632", "original"));
+        return sizes;
+    }
+
+    /**
+     * Verifies the size closest to the width requested is chosen at full
+     * quality, the wider one on ties, whatever the density.
+     */
+    public void testGetBestSizeName_full() {
+        ImageSizeResolver resolver = new ImageSizeResolver(createSizes(), 3.0f);
+        Assert.assertEquals("Exact width", "w342"
+                , resolver.getBestSizeName(ImageType.POSTER, 342, ImageQuality.FULL));
+        Assert.assertEquals("Closest narrower width", "w185"
+                , resolver.getBestSizeName(ImageType.POSTER, 200, ImageQuality.FULL));
+        Assert.assertEquals("Closest wider width", "w342"
+                , resolver.getBestSizeName(ImageType.POSTER, 300, ImageQuality.FULL));
+        Assert.assertEquals("Tie", "w154"
+                , resolver.getBestSizeName(ImageType.POSTER, 123, ImageQuality.FULL));
+        Assert.assertEquals("Narrower than all", "w92"
+                , resolver.getBestSizeName(ImageType.POSTER, 10, ImageQuality.FULL));
+        Assert.assertEquals("Wider than all", "w780"
+                , resolver.getBestSizeName(ImageType.POSTER, 4000, ImageQuality.FULL));
+        ImageSizeResolver xxxhdpiResolver = new ImageSizeResolver(createSizes(), 4.0f);
+        Assert.assertEquals("Density ignored", "w780"
+                , xxxhdpiResolver.getBestSizeName(ImageType.POSTER, 800, ImageQuality.FULL));
+    }
+
+    /**
+     * Verifies the widest size that is not wider than the width requested,
+     * scaled down to {@link ImageSizeResolver#REDUCED_MAX_DENSITY}, is chosen
+     * at reduced quality.
+     */
+    public void testGetBestSizeName_reduced() {
+        ImageSizeResolver xhdpiResolver = new ImageSizeResolver(createSizes(), 2.0f);
+        Assert.assertEquals("Not scaled on xhdpi", "w185"
+                , xhdpiResolver.getBestSizeName(ImageType.POSTER, 300, ImageQuality.REDUCED));
+        ImageSizeResolver xxxhdpiResolver = new ImageSizeResolver(createSizes(), 4.0f);
+        Assert.assertEquals("Scaled to xhdpi", "w342"
+                , xxxhdpiResolver.getBestSizeName(ImageType.POSTER, 700, ImageQuality.REDUCED));
+        Assert.assertEquals("Narrower than all", "w92"
+                , xxxhdpiResolver.getBestSizeName(ImageType.POSTER, 100, ImageQuality.REDUCED));
+    }
+
+    /**
+     * Verifies the width requested is scaled down to
+     * {@link ImageSizeResolver#LOW_MAX_DENSITY} at low quality.
+     */
+    public void testGetBestSizeName_low() {
+        ImageSizeResolver resolver = new ImageSizeResolver(createSizes(), 3.0f);
+        Assert.assertEquals("Scaled to hdpi", "w154"
+                , resolver.getBestSizeName(ImageType.POSTER, 360, ImageQuality.LOW));
+        ImageSizeResolver mdpiResolver = new ImageSizeResolver(createSizes(), 1.0f);
+        Assert.assertEquals("Not scaled on mdpi", "w342"
+                , mdpiResolver.getBestSizeName(ImageType.POSTER, 360, ImageQuality.LOW));
+    }
+
+    /**
+     * Verifies the original size is used for the types of images without
+     * sizes given by width, and {@code null} for those without sizes.
+     */
+    public void testGetBestSizeName_noWidths() {
+        ImageSizeResolver resolver = new ImageSizeResolver(createSizes(), 1.0f);
+        Assert.assertEquals("Original size", ImageSizeResolver.ORIGINAL_SIZE_NAME
+                , resolver.getBestSizeName(ImageType.PROFILE, 185, ImageQuality.FULL));
+        Assert.assertNull("No sizes"
+                , resolver.getBestSizeName(ImageType.STILL, 185, ImageQuality.FULL));
+        Assert.assertEquals("Smallest poster size", "w92"
+                , resolver.getSmallestSizeName(ImageType.POSTER));
+    }
+
+    /**
+     * Verifies the indices of the sizes follow the ascending order of their
+     * widths, and there is none for the types without sizes given by width.
+     */
+    public void testGetBestSizeIndex() {
+        ImageSizeResolver resolver = new ImageSizeResolver(createSizes(), 1.0f);
+        Assert.assertEquals(6, resolver.getSizeCount(ImageType.POSTER));
+        int index = resolver.getBestSizeIndex(ImageType.POSTER, 342, ImageQuality.FULL);
+        Assert.assertEquals(3, index);
+        Assert.assertEquals("w342", resolver.getSizeName(ImageType.POSTER, index));
+        Assert.assertEquals(0, resolver.getSizeCount(ImageType.PROFILE));
+        Assert.assertEquals(-1
+                , resolver.getBestSizeIndex(ImageType.PROFILE, 185, ImageQuality.FULL));
+    }
+
+}
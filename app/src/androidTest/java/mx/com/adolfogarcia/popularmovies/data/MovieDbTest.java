@@ -16,17 +16,34 @@
 
 package mx.com.adolfogarcia.popularmovies.data;
 
+import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.net.Uri;
 import android.test.AndroidTestCase;
 
 import junit.framework.Assert;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+
+import mx.com.adolfogarcia.popularmovies.net.FetchFavoriteMoviePageTaskFactory;
+import mx.com.adolfogarcia.popularmovies.net.FetchMoviePageTaskFactory;
+import mx.com.adolfogarcia.popularmovies.net.FetchPopularityMoviePageTaskFactory;
+import mx.com.adolfogarcia.popularmovies.net.FetchRatingMoviePageTaskFactory;
+import mx.com.adolfogarcia.popularmovies.net.TheMovieDbApi;
+import mx.com.adolfogarcia.popularmovies.view.adapter.MoviePosterAdapter;
+
 import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieEntry;
 import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieVideoEntry;
 import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieReviewEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListStateEntry;
 
 /**
  * Test cases that verify the movie database is properly created with a
@@ -52,6 +69,8 @@ public class MovieDbTest extends AndroidTestCase {
         tableNameSet.add(CachedMovieEntry.TABLE_NAME);
         tableNameSet.add(CachedMovieVideoEntry.TABLE_NAME);
         tableNameSet.add(CachedMovieReviewEntry.TABLE_NAME);
+        tableNameSet.add(MovieListEntry.TABLE_NAME);
+        tableNameSet.add(MovieListStateEntry.TABLE_NAME);
 
         SQLiteDatabase db = new MovieDbHelper(this.mContext).getWritableDatabase();
         Assert.assertTrue("Database should be open.", db.isOpen());
@@ -84,9 +103,8 @@ public class MovieDbTest extends AndroidTestCase {
         columnNameSet.add(CachedMovieEntry.COLUMN_POPULARITY);
         columnNameSet.add(CachedMovieEntry.COLUMN_POSTER_PATH);
         columnNameSet.add(CachedMovieEntry.COLUMN_VOTE_AVERAGE);
-        columnNameSet.add(CachedMovieEntry.COLUMN_MOST_POPULAR);
-        columnNameSet.add(CachedMovieEntry.COLUMN_HIGHEST_RATED);
         columnNameSet.add(CachedMovieEntry.COLUMN_USER_FAVORITE);
+        columnNameSet.add(CachedMovieEntry.COLUMN_DETAILS_UPDATE_TIME);
 
         int columnNameIndex = c.getColumnIndex("name");
         do {
@@ -153,6 +171,53 @@ public class MovieDbTest extends AndroidTestCase {
                 , columnNameSet.isEmpty());
         c.close();
 
+        // Movie list entries' table
+        c = db.rawQuery("PRAGMA table_info(" + MovieListEntry.TABLE_NAME + ")", null);
+        assertTrue("The table must contain columns.", c.moveToFirst());
+
+        // Build a HashSet of all of the column names we want to look for
+        columnNameSet = new HashSet<>();
+        columnNameSet.add(MovieListEntry._ID);
+        columnNameSet.add(MovieListEntry.COLUMN_LIST_KEY);
+        columnNameSet.add(MovieListEntry.COLUMN_POSITION);
+        columnNameSet.add(MovieListEntry.COLUMN_MOVIE_API_ID);
+
+        columnNameIndex = c.getColumnIndex("name");
+        do {
+            String columnName = c.getString(columnNameIndex);
+            Assert.assertTrue("No unexpected colums in " + MovieListEntry.TABLE_NAME
+                    , columnNameSet.remove(columnName));
+        } while(c.moveToNext());
+
+        Assert.assertTrue("The table " + MovieListEntry.TABLE_NAME
+                + " must contain the required columns"
+                , columnNameSet.isEmpty());
+        c.close();
+
+        // Movie list states' table
+        c = db.rawQuery("PRAGMA table_info(" + MovieListStateEntry.TABLE_NAME + ")", null);
+        assertTrue("The table must contain columns.", c.moveToFirst());
+
+        // Build a HashSet of all of the column names we want to look for
+        columnNameSet = new HashSet<>();
+        columnNameSet.add(MovieListStateEntry._ID);
+        columnNameSet.add(MovieListStateEntry.COLUMN_LIST_KEY);
+        columnNameSet.add(MovieListStateEntry.COLUMN_TOTAL_PAGES);
+        columnNameSet.add(MovieListStateEntry.COLUMN_LAST_PAGE);
+        columnNameSet.add(MovieListStateEntry.COLUMN_FETCH_TIME);
+
+        columnNameIndex = c.getColumnIndex("name");
+        do {
+            String columnName = c.getString(columnNameIndex);
+            Assert.assertTrue("No unexpected colums in " + MovieListStateEntry.TABLE_NAME
+                    , columnNameSet.remove(columnName));
+        } while(c.moveToNext());
+
+        Assert.assertTrue("The table " + MovieListStateEntry.TABLE_NAME
+                + " must contain the required columns"
+                , columnNameSet.isEmpty());
+        c.close();
+
         db.close();
     }
 
@@ -233,4 +298,189 @@ public class MovieDbTest extends AndroidTestCase {
         db.close();
     }
 
+    /**
+     * Verifies upgrading from version 5 keeps the stored movies, moves their
+     * list flags to list entries, in the order the lists used to be sorted
+     * by, creates the state of the lists and the indices of the poster grid.
+     */
+    public void testUpgradeFromVersion5() {
+        MovieDbHelper dbHelper = new MovieDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.execSQL("DROP TABLE " + CachedMovieEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE " + MovieListEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE " + MovieListStateEntry.TABLE_NAME);
+        db.execSQL("CREATE TABLE " + CachedMovieEntry.TABLE_NAME + " ("
+                + CachedMovieEntry._ID + " INTEGER PRIMARY KEY, "
+                + CachedMovieEntry.COLUMN_API_ID + " INTEGER, "
+                + CachedMovieEntry.COLUMN_ORIGINAL_TITLE + " TEXT NOT NULL, "
+                + CachedMovieEntry.COLUMN_RELEASE_DATE + " INTEGER, "
+                + CachedMovieEntry.COLUMN_OVERVIEW + " TEXT, "
+                + CachedMovieEntry.COLUMN_BACKDROP_PATH + " TEXT, "
+                + CachedMovieEntry.COLUMN_POSTER_PATH + " TEXT, "
+                + CachedMovieEntry.COLUMN_POPULARITY + " REAL NOT NULL, "
+                + CachedMovieEntry.COLUMN_VOTE_AVERAGE + " REAL NOT NULL, "
+                + "most_popular BOOLEAN NOT NULL DEFAULT 0, "
+                + "highest_rated BOOLEAN NOT NULL DEFAULT 0, "
+                + CachedMovieEntry.COLUMN_USER_FAVORITE + " BOOLEAN NOT NULL DEFAULT 0, "
+                + CachedMovieEntry.COLUMN_DETAILS_UPDATE_TIME + " INTEGER NOT NULL DEFAULT 0, "
+                + "UNIQUE (" + CachedMovieEntry.COLUMN_API_ID + "));");
+        ContentValues madMax = TestUtilities.createMadMaxMovieValues();
+        madMax.put("most_popular", 1);
+        db.insert(CachedMovieEntry.TABLE_NAME, null, madMax);
+        ContentValues other = TestUtilities.createMadMaxMovieValues();
+        other.put(CachedMovieEntry.COLUMN_API_ID, 1);
+        other.put(CachedMovieEntry.COLUMN_POPULARITY, 99.9);
+        other.put("most_popular", 1);
+        other.put("highest_rated", 1);
+        db.insert(CachedMovieEntry.TABLE_NAME, null, other);
+        dbHelper.onUpgrade(db, 5, 7);
+
+        Cursor cursor = db.query(CachedMovieEntry.TABLE_NAME, null, null, null, null, null, null);
+        Assert.assertEquals("The movies must be kept", 2, cursor.getCount());
+        Assert.assertEquals("The flag columns must be dropped"
+                , -1, cursor.getColumnIndex("most_popular"));
+        cursor.close();
+        assertListEntries(db, TheMovieDbApi.SORT_BY_POPULARITY, 1L, 76341L);
+        assertListEntries(db, TheMovieDbApi.SORT_BY_USER_RATING, 1L);
+        Assert.assertEquals("There must be a state for each list", 2
+                , DatabaseUtils.queryNumEntries(db, MovieListStateEntry.TABLE_NAME));
+        cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type='index'", null);
+        Set<String> indexNameSet = new HashSet<>();
+        while (cursor.moveToNext()) {
+            indexNameSet.add(cursor.getString(0));
+        }
+        cursor.close();
+        Assert.assertTrue("The indices of the poster grid must be created"
+                , indexNameSet.contains(MovieDbHelper.INDEX_LIST_ENTRY_MOVIES)
+                        && indexNameSet.contains(MovieDbHelper.INDEX_USER_FAVORITE_POSTERS));
+        db.close();
+    }
+
+    /**
+     * Verifies the entries of a list hold the movies passed as argument, in
+     * the same order.
+     *
+     * @param db the database to query.
+     * @param listKey the key of the list.
+     * @param movieApiIds the identifiers of the movies expected, in order.
+     */
+    private static void assertListEntries(SQLiteDatabase db
+            , String listKey
+            , Long... movieApiIds) {
+        Cursor cursor = db.query(MovieListEntry.TABLE_NAME
+                , new String[] {MovieListEntry.COLUMN_MOVIE_API_ID}
+                , MovieListEntry.COLUMN_LIST_KEY + " = ?"
+                , new String[] {listKey}
+                , null
+                , null
+                , MovieListEntry.COLUMN_POSITION + " ASC");
+        List<Long> storedApiIds = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            storedApiIds.add(cursor.getLong(0));
+        }
+        cursor.close();
+        Assert.assertEquals("The entries of " + listKey + " must keep the order"
+                , Arrays.asList(movieApiIds), storedApiIds);
+    }
+
+    /**
+     * Verifies the queries of the poster grid, for each sort order, are
+     * answered from the covering indices without sorting the rows.
+     */
+    public void testPosterQueryPlans() {
+        SQLiteDatabase db = new MovieDbHelper(mContext).getWritableDatabase();
+        assertPosterQueryPlan(db
+                , new FetchPopularityMoviePageTaskFactory(null, null, null, null, null, mContext)
+                , MovieDbHelper.INDEX_LIST_ENTRY_MOVIES);
+        assertPosterQueryPlan(db
+                , new FetchRatingMoviePageTaskFactory(null, null, null, null, null, mContext)
+                , MovieDbHelper.INDEX_LIST_ENTRY_MOVIES);
+        assertPosterQueryPlan(db
+                , new FetchFavoriteMoviePageTaskFactory()
+                , MovieDbHelper.INDEX_USER_FAVORITE_POSTERS);
+        db.close();
+    }
+
+    /**
+     * Verifies the queries for the videos and reviews of a movie look up
+     * the rows by the movie's identifier instead of scanning the tables.
+     */
+    public void testMovieDetailQueryPlans() {
+        SQLiteDatabase db = new MovieDbHelper(mContext).getWritableDatabase();
+        for (String detailTable : new String[] {CachedMovieVideoEntry.TABLE_NAME
+                , CachedMovieReviewEntry.TABLE_NAME}) {
+            String plan = explainQueryPlan(db
+                    , "SELECT * FROM " + CachedMovieEntry.TABLE_NAME
+                            + " INNER JOIN " + detailTable
+                            + " ON " + CachedMovieEntry.TABLE_NAME
+                            + "." + CachedMovieEntry.COLUMN_API_ID
+                            + " = " + detailTable + "." + CachedMovieVideoEntry.COLUMN_MOVIE_API_ID
+                            + " WHERE " + CachedMovieEntry.TABLE_NAME
+                            + "." + CachedMovieEntry._ID + " = ?"
+                    , new String[] {"1"});
+            Assert.assertFalse("The table " + detailTable + " must not be scanned:\n" + plan
+                    , plan.contains("SCAN TABLE " + detailTable)
+                            || plan.contains("SCAN " + detailTable));
+        }
+        db.close();
+    }
+
+    /**
+     * Verifies the poster grid query of a sort order is answered from the
+     * index passed as argument, without sorting the rows.
+     *
+     * @param db the database to query.
+     * @param factory provides the selection and order of the query.
+     * @param indexName the name of the index that must cover the query.
+     */
+    private static void assertPosterQueryPlan(SQLiteDatabase db
+            , FetchMoviePageTaskFactory factory
+            , String indexName) {
+        String tables = CachedMovieEntry.TABLE_NAME;
+        String selection = factory.getMovieProviderSelectionClause();
+        String[] selectionArgs = factory.getMovieProviderSelectionArguments();
+        Uri contentUri = factory.getMovieProviderUri();
+        if (contentUri.getPathSegments().contains(MovieContract.PATH_LIST)) {
+            // Lists are queried as MovieProvider does, joined with their entries
+            tables = MovieProvider.MOVIE_LIST_TABLES;
+            selection = MovieProvider.SELECTION_MOVIE_LIST;
+            selectionArgs = new String[] {CachedMovieEntry.getListKeyFromUri(contentUri)};
+        }
+        String plan = explainQueryPlan(db
+                , SQLiteQueryBuilder.buildQueryString(false
+                        , tables
+                        , MoviePosterAdapter.PROJECTION_MOVIE_POSTERS
+                        , selection
+                        , null // groupBy
+                        , null // having
+                        , factory.getMovieProviderSortOrder()
+                        , null) // limit
+                , selectionArgs);
+        Assert.assertTrue("The query must be answered from " + indexName + ":\n" + plan
+                , plan.contains("COVERING INDEX " + indexName));
+        Assert.assertFalse("The query must not sort the rows:\n" + plan
+                , plan.contains("TEMP B-TREE"));
+    }
+
+    /**
+     * Returns the plan SQLite follows to answer a query, one step per line.
+     *
+     * @param db the database to query.
+     * @param query the query to explain.
+     * @param selectionArgs the values for the arguments used in the query.
+     * @return the details of the steps of the plan.
+     */
+    private static String explainQueryPlan(SQLiteDatabase db
+            , String query
+            , String[] selectionArgs) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + query, selectionArgs);
+        StringBuilder plan = new StringBuilder();
+        int detailIndex = cursor.getColumnIndex("detail");
+        while (cursor.moveToNext()) {
+            plan.append(cursor.getString(detailIndex)).append('\n');
+        }
+        cursor.close();
+        return plan.toString();
+    }
+
 }
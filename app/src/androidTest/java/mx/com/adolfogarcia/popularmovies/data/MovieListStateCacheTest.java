@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.data;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import junit.framework.Assert;
+
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListStateEntry;
+
+/**
+ * Verifies {@link MovieListStateCache} reads the state of the lists stored
+ * by {@link MovieProvider}, and reloads it in the background once
+ * invalidated.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class MovieListStateCacheTest extends AndroidTestCase {
+
+    /**
+     * The key of the list used by the tests.
+     */
+    private static final String LIST_KEY = "popularity.desc";
+
+    /**
+     * The instance being tested.
+     */
+    private MovieListStateCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(MovieListStateEntry.CONTENT_URI, null, null);
+        mCache = new MovieListStateCache(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(MovieListStateEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    /**
+     * Stores the state of the test list through {@link MovieProvider}.
+     *
+     * @param lastPage the number of the last page retrieved.
+     * @param totalPages the total number of pages available.
+     */
+    private void storeState(int lastPage, int totalPages) {
+        ContentValues values = new ContentValues();
+        values.put(MovieListStateEntry.COLUMN_LIST_KEY, LIST_KEY);
+        values.put(MovieListStateEntry.COLUMN_LAST_PAGE, lastPage);
+        values.put(MovieListStateEntry.COLUMN_TOTAL_PAGES, totalPages);
+        values.put(MovieListStateEntry.COLUMN_FETCH_TIME, 1431648000000L);
+        mContext.getContentResolver().insert(MovieListStateEntry.CONTENT_URI, values);
+    }
+
+    /**
+     * Verifies the state of a list without pages retrieved is the empty one.
+     */
+    public void testGet_missingList() {
+        MovieListState state = mCache.get(LIST_KEY);
+        Assert.assertEquals("No pages must be retrieved", 0, state.getLastPage());
+        Assert.assertFalse("The list must not be complete", state.isComplete());
+    }
+
+    /**
+     * Verifies the stored state is read, and the copy is kept until it is
+     * invalidated.
+     *
+     * @throws Exception if interrupted while waiting for the reload.
+     */
+    public void testGet_reloadedOnceInvalidated() throws Exception {
+        storeState(1, 3);
+        mCache.invalidate();
+        mCache.awaitReload();
+        MovieListState state = mCache.get(LIST_KEY);
+        Assert.assertEquals("Last page", 1, state.getLastPage());
+        Assert.assertEquals("Total pages", 3, state.getTotalPages());
+        Assert.assertEquals("Fetch time", 1431648000000L, state.getFetchTime());
+        Assert.assertSame("The copy must be reused", state, mCache.get(LIST_KEY));
+
+        storeState(3, 3);
+        mCache.invalidate();
+        mCache.awaitReload();
+        Assert.assertTrue("The list must be complete once reloaded"
+                , mCache.get(LIST_KEY).isComplete());
+    }
+
+    /**
+     * Verifies the states are discarded right away when cleared, without
+     * waiting for the reload.
+     *
+     * @throws Exception if interrupted while waiting for the reload.
+     */
+    public void testClear() throws Exception {
+        storeState(2, 3);
+        mCache.invalidate();
+        mCache.awaitReload();
+        Assert.assertEquals(2, mCache.get(LIST_KEY).getLastPage());
+        mContext.getContentResolver().delete(MovieListStateEntry.CONTENT_URI, null, null);
+        mCache.clear();
+        Assert.assertEquals("The states must be discarded"
+                , 0, mCache.get(LIST_KEY).getLastPage());
+    }
+
+}
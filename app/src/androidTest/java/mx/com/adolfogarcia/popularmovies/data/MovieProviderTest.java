@@ -17,22 +17,31 @@
 package mx.com.adolfogarcia.popularmovies.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.RemoteException;
 import android.test.AndroidTestCase;
 
 import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieEntry;
 import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieVideoEntry;
 import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieReviewEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListStateEntry;
 
 import junit.framework.Assert;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.UUID;
 
 /**
@@ -55,6 +64,8 @@ public class MovieProviderTest extends AndroidTestCase {
         deleteAllMovieVideos();
         deleteAllMovieReviews();
         deleteAllMovies();
+        mContext.getContentResolver().delete(MovieListEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(MovieListStateEntry.CONTENT_URI, null, null);
     }
 
     /**
@@ -547,6 +558,45 @@ public class MovieProviderTest extends AndroidTestCase {
         cursor.close();
     }
 
+    /**
+     * Verifies that {@link MovieProvider#insert(Uri, ContentValues)} updates
+     * the existing row when a movie is inserted again. Case for a movie that
+     * keeps its id and the flags not included in the new values.
+     */
+    public void testInsert_existingMovie() {
+        Uri locationUri = mContext.getContentResolver().insert(
+                CachedMovieEntry.CONTENT_URI, TestUtilities.createMadMaxMovieValues());
+        long rowId = ContentUris.parseId(locationUri);
+        ContentValues favoriteValues = new ContentValues();
+        favoriteValues.put(CachedMovieEntry.COLUMN_USER_FAVORITE, 1);
+        mContext.getContentResolver().update(
+                CachedMovieEntry.CONTENT_URI
+                , favoriteValues
+                , CachedMovieEntry._ID + " = ?"
+                , new String[]{Long.toString(rowId)});
+
+        ContentValues values = TestUtilities.createMadMaxMovieValues();
+        values.remove(CachedMovieEntry.COLUMN_USER_FAVORITE);
+        values.put(CachedMovieEntry.COLUMN_OVERVIEW, "A happy story!");
+        locationUri = mContext.getContentResolver().insert(CachedMovieEntry.CONTENT_URI, values);
+        Assert.assertEquals("The movie must keep its id"
+                , rowId, ContentUris.parseId(locationUri));
+
+        // Verify the new values were applied and the flags were kept
+        Cursor cursor = mContext.getContentResolver().query(
+                CachedMovieEntry.CONTENT_URI
+                , null
+                , null
+                , null
+                , null);
+        Assert.assertEquals("Only one movie must be stored", 1, cursor.getCount());
+        cursor.moveToFirst();
+        values.put(CachedMovieEntry._ID, rowId);
+        values.put(CachedMovieEntry.COLUMN_USER_FAVORITE, 1);
+        TestUtilities.assertRowEquals(values, cursor);
+        cursor.close();
+    }
+
     /**
      * Verifies that
      * {@link MovieProvider#update(Uri, ContentValues, String, String[])}
@@ -732,6 +782,239 @@ public class MovieProviderTest extends AndroidTestCase {
         cursor.close();
     }
 
+    /**
+     * Verifies that {@link MovieProvider#bulkInsert(Uri, ContentValues[])}
+     * updates the existing rows when movies are inserted again. Case for
+     * movies that keep their ids and favorite flags.
+     */
+    public void testBulkInsert_existingMovies() {
+        ContentValues[] values = createBulkInsertMovieValues();
+        for (int i = 0; i < values.length; i++) {
+            values[i].remove(CachedMovieEntry._ID);
+            values[i].put(CachedMovieEntry.COLUMN_API_ID, 1000 + i);
+            values[i].put(CachedMovieEntry.COLUMN_USER_FAVORITE, 1);
+        }
+        mContext.getContentResolver().bulkInsert(CachedMovieEntry.CONTENT_URI, values);
+        long[] rowIds = queryRowIds(CachedMovieEntry.CONTENT_URI);
+
+        for (int i = 0; i < values.length; i++) {
+            values[i].remove(CachedMovieEntry.COLUMN_USER_FAVORITE);
+            values[i].put(CachedMovieEntry.COLUMN_VOTE_AVERAGE, i + 0.5);
+        }
+        int insertCount =
+                mContext.getContentResolver().bulkInsert(CachedMovieEntry.CONTENT_URI, values);
+        Assert.assertEquals("All the entries must be stored"
+                , BULK_INSERT_NUMBER_OF_RECORDS
+                , insertCount);
+        Assert.assertTrue("The movies must keep their ids"
+                , Arrays.equals(rowIds, queryRowIds(CachedMovieEntry.CONTENT_URI)));
+
+        // Verify the new values were applied and the flags were kept
+        Cursor cursor = mContext.getContentResolver().query(
+                CachedMovieEntry.CONTENT_URI
+                , null
+                , null
+                , null
+                , CachedMovieEntry.COLUMN_API_ID + " ASC");
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_NUMBER_OF_RECORDS; i++) {
+            values[i].put(CachedMovieEntry.COLUMN_USER_FAVORITE, 1);
+            TestUtilities.assertRowEquals(values[i], cursor);
+            cursor.moveToNext();
+        }
+        cursor.close();
+    }
+
+    /**
+     * Returns the ids of all the rows stored in a table, in the order of
+     * their identifier in the RESTful API.
+     *
+     * @param uri the URI of the table.
+     * @return the ids of the stored rows.
+     */
+    private long[] queryRowIds(Uri uri) {
+        // All the tables name the column of the identifier in the API the same way
+        Cursor cursor = mContext.getContentResolver().query(
+                uri
+                , new String[] {CachedMovieEntry._ID}
+                , null
+                , null
+                , CachedMovieEntry.COLUMN_API_ID + " ASC");
+        long[] rowIds = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            rowIds[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return rowIds;
+    }
+
+    /**
+     * Verifies that {@link MovieProvider#bulkInsert(Uri, ContentValues[])}
+     * updates the existing rows when videos are inserted again. Case for
+     * videos that keep their ids.
+     */
+    public void testBulkInsert_existingVideos() {
+        ContentValues[] values = createBulkInsertMovieVideoValues();
+        for (ContentValues video : values) {
+            video.remove(CachedMovieVideoEntry._ID);
+        }
+        mContext.getContentResolver().bulkInsert(CachedMovieVideoEntry.CONTENT_URI, values);
+        long[] rowIds = queryRowIds(CachedMovieVideoEntry.CONTENT_URI);
+        for (ContentValues video : values) {
+            video.put(CachedMovieVideoEntry.COLUMN_SIZE, 720);
+        }
+        mContext.getContentResolver().bulkInsert(CachedMovieVideoEntry.CONTENT_URI, values);
+        Assert.assertTrue("The videos must keep their ids"
+                , Arrays.equals(rowIds, queryRowIds(CachedMovieVideoEntry.CONTENT_URI)));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                CachedMovieVideoEntry.CONTENT_URI
+                , null
+                , null
+                , null
+                , CachedMovieVideoEntry._ID + " ASC");
+        Assert.assertEquals("The videos must not be duplicated"
+                , BULK_INSERT_NUMBER_OF_RECORDS
+                , cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_NUMBER_OF_RECORDS; i++) {
+            TestUtilities.assertRowEquals(values[i], cursor);
+            cursor.moveToNext();
+        }
+        cursor.close();
+    }
+
+    /**
+     * Verifies that {@link MovieProvider#applyBatch(ArrayList)} stores a movie
+     * along with its video and review.
+     *
+     * @throws Exception if the batch could not be applied.
+     */
+    public void testApplyBatch() throws Exception {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(CachedMovieEntry.CONTENT_URI)
+                .withValues(TestUtilities.createMadMaxMovieValues())
+                .build());
+        operations.add(ContentProviderOperation.newInsert(CachedMovieVideoEntry.CONTENT_URI)
+                .withValues(TestUtilities.createMadMaxMovieVideoValues())
+                .build());
+        operations.add(ContentProviderOperation.newInsert(CachedMovieReviewEntry.CONTENT_URI)
+                .withValues(TestUtilities.createMadMaxMovieReviewValues())
+                .build());
+        ContentProviderResult[] results = mContext.getContentResolver().applyBatch(
+                MovieContract.CONTENT_AUTHORITY, operations);
+        Assert.assertEquals("All the operations must be applied"
+                , operations.size(), results.length);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                results[0].uri, null, null, null, null);
+        cursor.moveToFirst();
+        TestUtilities.assertRowEquals(TestUtilities.createMadMaxMovieValues(), cursor);
+        cursor.close();
+        cursor = mContext.getContentResolver().query(results[1].uri, null, null, null, null);
+        cursor.moveToFirst();
+        TestUtilities.assertRowEquals(TestUtilities.createMadMaxMovieVideoValues(), cursor);
+        cursor.close();
+        cursor = mContext.getContentResolver().query(results[2].uri, null, null, null, null);
+        cursor.moveToFirst();
+        TestUtilities.assertRowEquals(TestUtilities.createMadMaxMovieReviewValues(), cursor);
+        cursor.close();
+    }
+
+    /**
+     * Verifies the counters of change notifications can be read through
+     * {@link MovieContract#METHOD_GET_NOTIFICATION_STATISTICS}, and the
+     * notifications requested by a batch are counted once it is committed.
+     *
+     * @throws Exception if the batch could not be applied.
+     */
+    public void testCall_notificationStatistics() throws Exception {
+        Bundle before = mContext.getContentResolver().call(MovieContract.BASE_CONTENT_URI
+                , MovieContract.METHOD_GET_NOTIFICATION_STATISTICS, null, null);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            operations.add(ContentProviderOperation.newInsert(CachedMovieEntry.CONTENT_URI)
+                    .withValues(TestUtilities.createMadMaxMovieValues())
+                    .build());
+        }
+        mContext.getContentResolver().applyBatch(MovieContract.CONTENT_AUTHORITY, operations);
+        Bundle after = mContext.getContentResolver().call(MovieContract.BASE_CONTENT_URI
+                , MovieContract.METHOD_GET_NOTIFICATION_STATISTICS, null, null);
+        long delivered = after.getLong(MovieContract.EXTRA_DELIVERED_NOTIFICATIONS)
+                - before.getLong(MovieContract.EXTRA_DELIVERED_NOTIFICATIONS);
+        long suppressed = after.getLong(MovieContract.EXTRA_SUPPRESSED_NOTIFICATIONS)
+                - before.getLong(MovieContract.EXTRA_SUPPRESSED_NOTIFICATIONS);
+        Assert.assertTrue("The batch must deliver notifications", delivered > 0);
+        Assert.assertTrue("The repeated notification must be suppressed", suppressed > 0);
+    }
+
+    /**
+     * Verifies that {@link MovieProvider#applyBatch(ArrayList)} stores
+     * nothing if one of the operations fails.
+     */
+    public void testApplyBatch_failedOperation() {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(CachedMovieEntry.CONTENT_URI)
+                .withValues(TestUtilities.createMadMaxMovieValues())
+                .build());
+        operations.add(ContentProviderOperation.newUpdate(CachedMovieVideoEntry.CONTENT_URI)
+                .withValue(CachedMovieVideoEntry.COLUMN_SIZE, 720)
+                .withExpectedCount(1)
+                .build());
+        try {
+            mContext.getContentResolver().applyBatch(MovieContract.CONTENT_AUTHORITY, operations);
+            Assert.fail("The update of a video that does not exist must fail");
+        } catch (OperationApplicationException | RemoteException e) {
+            // Expected
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(
+                CachedMovieEntry.CONTENT_URI, null, null, null, null);
+        Assert.assertEquals("The movie must not be stored", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    /**
+     * Verifies that {@link MovieProvider#query(Uri, String[], String, String[], String)}
+     * returns the movies of a list in the order of their entries, and only
+     * those in the list.
+     */
+    public void testQuery_movieList() {
+        ContentValues[] movies = createBulkInsertMovieValues();
+        for (int i = 0; i < movies.length; i++) {
+            movies[i].put(CachedMovieEntry.COLUMN_API_ID, 1000 + i);
+        }
+        mContext.getContentResolver().bulkInsert(CachedMovieEntry.CONTENT_URI, movies);
+        ContentValues[] entries = new ContentValues[movies.length];
+        for (int i = 0; i < movies.length; i++) {
+            entries[i] = new ContentValues();
+            entries[i].put(MovieListEntry.COLUMN_LIST_KEY, "test");
+            entries[i].put(MovieListEntry.COLUMN_POSITION, movies.length - 1 - i);
+            entries[i].put(MovieListEntry.COLUMN_MOVIE_API_ID
+                    , movies[i].getAsLong(CachedMovieEntry.COLUMN_API_ID));
+        }
+        mContext.getContentResolver().bulkInsert(MovieListEntry.CONTENT_URI, entries);
+        ContentValues otherEntry = new ContentValues(entries[0]);
+        otherEntry.put(MovieListEntry.COLUMN_LIST_KEY, "other");
+        mContext.getContentResolver().insert(MovieListEntry.CONTENT_URI, otherEntry);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                CachedMovieEntry.buildMovieListUri("test")
+                , new String[] {CachedMovieEntry.COLUMN_API_ID}
+                , null
+                , null
+                , null);
+        Assert.assertEquals("All the movies in the list must be returned"
+                , movies.length, cursor.getCount());
+        for (int i = movies.length - 1; i >= 0; i--) {
+            cursor.moveToNext();
+            Assert.assertEquals("The movies must be in the order of their entries"
+                    , movies[i].getAsLong(CachedMovieEntry.COLUMN_API_ID).longValue()
+                    , cursor.getLong(0));
+        }
+        cursor.close();
+    }
+
     /**
      * Returns a set of movie video entries that may be inserted into the database.
      *
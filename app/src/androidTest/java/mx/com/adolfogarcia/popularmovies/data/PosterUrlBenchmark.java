@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.data;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import junit.framework.Assert;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Measures the time taken to build the URL of a poster, as done every time
+ * {@link mx.com.adolfogarcia.popularmovies.view.adapter.MoviePosterAdapter}
+ * binds a view. The URLs built by {@link RestfulServiceConfiguration} from
+ * its in-memory configuration are compared with those built reading the
+ * {@link SharedPreferences} on every bind (as done before).
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class PosterUrlBenchmark extends AndroidTestCase {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = PosterUrlBenchmark.class.getSimpleName();
+
+    /**
+     * Number of URLs built by each measurement.
+     */
+    private static final int BIND_COUNT = 20000;
+
+    /**
+     * Width in pixels of the posters requested.
+     */
+    private static final int POSTER_WIDTH = 342;
+
+    /**
+     * The poster sizes used when none have been stored, as in the
+     * configuration file.
+     */
+    private static final String DEFAULT_POSTER_SIZES = "w92,w154,w185,w342,w500,w780,original";
+
+    /**
+     * Builds the URL of the poster passed as argument as it was done before
+     * the configuration was kept in memory: reading the base URL and the
+     * sizes from the {@link SharedPreferences}, with a new set of default
+     * sizes, and reusing the size name that best fits the width.
+     *
+     * @param posterPath relative path to the poster.
+     * @param bestSizeName the name of the size that best fits the width.
+     * @return the URL of the poster.
+     */
+    private String buildUrlFromPreferences(String posterPath, String bestSizeName) {
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String baseUrl =
+                settings.getString("image_secure_base_url", "https://image.tmdb.org/t/p/");
+        Set<String> sizes = settings.getStringSet("poster_sizes"
+                , new HashSet<>(Arrays.asList(DEFAULT_POSTER_SIZES.split(","))));
+        Assert.assertFalse(sizes.isEmpty());
+        return baseUrl + bestSizeName + posterPath;
+    }
+
+    /**
+     * Builds the URLs of the posters from the {@link SharedPreferences} and
+     * from the in-memory configuration, and logs the time taken by each.
+     */
+    public void testBuildPosterUrl() {
+        RestfulServiceConfiguration configuration = new RestfulServiceConfiguration(mContext);
+        String[] posterPaths = new String[64];
+        for (int i = 0; i < posterPaths.length; i++) {
+            posterPaths[i] = "/poster" + i + ".jpg";
+        }
+        String bestSizeName = "w" + POSTER_WIDTH;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BIND_COUNT; i++) {
+            buildUrlFromPreferences(posterPaths[i % posterPaths.length], bestSizeName);
+        }
+        long preferencesNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BIND_COUNT; i++) {
+            configuration.getBestFittingPosterUrl(posterPaths[i % posterPaths.length]
+                    , POSTER_WIDTH);
+        }
+        long inMemoryNanos = System.nanoTime() - start;
+
+        Assert.assertTrue("The URL must end with the poster path"
+                , configuration.getBestFittingPosterUrl(posterPaths[0], POSTER_WIDTH)
+                        .endsWith(posterPaths[0]));
+        Log.i(LOG_TAG, "Preferences per bind (ns): " + preferencesNanos / BIND_COUNT
+                + ", in-memory configuration per bind (ns): " + inMemoryNanos / BIND_COUNT);
+    }
+
+}
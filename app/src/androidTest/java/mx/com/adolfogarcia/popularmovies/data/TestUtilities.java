@@ -55,8 +55,6 @@ public final class TestUtilities {
         testValues.put(CachedMovieEntry.COLUMN_POPULARITY, 55.32);
         testValues.put(CachedMovieEntry.COLUMN_POSTER_PATH, "/kqjL17yufvn9OVLyXYpvtyrFfak.jpg");
         testValues.put(CachedMovieEntry.COLUMN_VOTE_AVERAGE, 7.7);
-        testValues.put(CachedMovieEntry.COLUMN_MOST_POPULAR, BooleanUtils.toInteger(true));
-        testValues.put(CachedMovieEntry.COLUMN_HIGHEST_RATED, BooleanUtils.toInteger(false));
         testValues.put(CachedMovieEntry.COLUMN_USER_FAVORITE, BooleanUtils.toInteger(false));
         return testValues;
     }
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import junit.framework.Assert;
+
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieEntry;
+
+/**
+ * Compares the writes made when re-ingesting a list of movies that is
+ * already stored, using {@code INSERT OR REPLACE} (as the movie table used to
+ * do on conflict), against {@link RowUpserter}. Only the popularity of one in
+ * every {@link #CHANGED_MOVIE_INTERVAL} movies changes between ingestions, as
+ * is usual when a list is refreshed.
+ *
+ * <p>The rows written are counted with SQLite's {@code total_changes()},
+ * which does not count the rows deleted by {@code REPLACE}, so the actual
+ * amplification of the replacement is larger than reported.</p>
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class UpsertBenchmark extends AndroidTestCase {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = UpsertBenchmark.class.getSimpleName();
+
+    /**
+     * Number of movies ingested on each run. Equivalent to five pages.
+     */
+    private static final int MOVIES_PER_RUN = 100;
+
+    /**
+     * One in this many movies changes between ingestions.
+     */
+    private static final int CHANGED_MOVIE_INTERVAL = 10;
+
+    /**
+     * The database the movies are written to.
+     */
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDb = new MovieDbHelper(mContext).getWritableDatabase();
+        mDb.delete(CachedMovieEntry.TABLE_NAME, null, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.delete(CachedMovieEntry.TABLE_NAME, null, null);
+        mDb.close();
+        super.tearDown();
+    }
+
+    /**
+     * Returns the rows of the movies ingested on each run, as read from a
+     * page of the RESTful API (i.e. without the list flags).
+     *
+     * @param ingestion the number of the ingestion, changes the popularity of
+     *                  some of the movies.
+     * @return the rows of the movies.
+     */
+    private static ContentValues[] createMovieValues(int ingestion) {
+        ContentValues[] movies = new ContentValues[MOVIES_PER_RUN];
+        for (int i = 0; i < MOVIES_PER_RUN; i++) {
+            ContentValues movie = new ContentValues();
+            movie.put(CachedMovieEntry.COLUMN_API_ID, 1000 + i);
+            movie.put(CachedMovieEntry.COLUMN_ORIGINAL_TITLE, "The Amazing " + i);
+            movie.put(CachedMovieEntry.COLUMN_RELEASE_DATE, 1431648000000L);
+            movie.put(CachedMovieEntry.COLUMN_OVERVIEW, "A great story of " + i);
+            movie.put(CachedMovieEntry.COLUMN_BACKDROP_PATH, "/backdrop" + i + ".jpg");
+            movie.put(CachedMovieEntry.COLUMN_POSTER_PATH, "/poster" + i + ".jpg");
+            movie.put(CachedMovieEntry.COLUMN_POPULARITY, i % CHANGED_MOVIE_INTERVAL == 0
+                    ? i + ingestion : (double) i);
+            movie.put(CachedMovieEntry.COLUMN_VOTE_AVERAGE, 7.7);
+            movies[i] = movie;
+        }
+        return movies;
+    }
+
+    /**
+     * Returns the number of rows written so far on {@link #mDb}'s connection.
+     *
+     * @return the number of rows written so far.
+     */
+    private long totalChanges() {
+        return DatabaseUtils.longForQuery(mDb, "SELECT total_changes()", null);
+    }
+
+    /**
+     * Returns the sum of the ids of the stored movies. Changes if any of the
+     * movies gets a new id.
+     *
+     * @return the sum of the ids of the stored movies.
+     */
+    private long sumOfRowIds() {
+        return DatabaseUtils.longForQuery(mDb
+                , "SELECT SUM(" + CachedMovieEntry._ID + ") FROM " + CachedMovieEntry.TABLE_NAME
+                , null);
+    }
+
+    /**
+     * Marks all the stored movies as favorites of the user.
+     */
+    private void markAllAsFavorite() {
+        ContentValues favoriteValues = new ContentValues();
+        favoriteValues.put(CachedMovieEntry.COLUMN_USER_FAVORITE, 1);
+        mDb.update(CachedMovieEntry.TABLE_NAME, favoriteValues, null, null);
+    }
+
+    /**
+     * Returns the number of stored movies marked as favorites of the user.
+     *
+     * @return the number of favorite movies.
+     */
+    private long countFavorites() {
+        Cursor cursor = mDb.query(CachedMovieEntry.TABLE_NAME
+                , new String[] {CachedMovieEntry._ID}
+                , CachedMovieEntry.COLUMN_USER_FAVORITE + " = 1"
+                , null
+                , null
+                , null
+                , null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    /**
+     * Measures the rows written when the movies are re-ingested replacing the
+     * stored rows, which get new ids and lose their flags.
+     */
+    public void testReplace() {
+        for (ContentValues movie : createMovieValues(0)) {
+            mDb.insert(CachedMovieEntry.TABLE_NAME, null, movie);
+        }
+        markAllAsFavorite();
+        long rowIdSum = sumOfRowIds();
+        long changes = totalChanges();
+        long start = System.nanoTime();
+        mDb.beginTransaction();
+        try {
+            for (ContentValues movie : createMovieValues(1)) {
+                mDb.insertWithOnConflict(CachedMovieEntry.TABLE_NAME
+                        , null
+                        , movie
+                        , SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        long elapsed = System.nanoTime() - start;
+        Log.i(LOG_TAG, "Replace, rows written: " + (totalChanges() - changes)
+                + ", elapsed (µs): " + elapsed / 1000
+                + ", favorites kept: " + countFavorites()
+                + ", ids kept: " + (rowIdSum == sumOfRowIds()));
+    }
+
+    /**
+     * Measures the rows written when the movies are re-ingested with
+     * {@link RowUpserter}, and verifies only the changed rows are written and
+     * all of them keep their ids and flags.
+     */
+    public void testUpsert() {
+        RowUpserter upserter =
+                new RowUpserter(CachedMovieEntry.TABLE_NAME, CachedMovieEntry.COLUMN_API_ID);
+        for (ContentValues movie : createMovieValues(0)) {
+            upserter.upsert(mDb, movie);
+        }
+        markAllAsFavorite();
+        long rowIdSum = sumOfRowIds();
+        long changes = totalChanges();
+        long start = System.nanoTime();
+        mDb.beginTransaction();
+        try {
+            for (ContentValues movie : createMovieValues(1)) {
+                upserter.upsert(mDb, movie);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        long elapsed = System.nanoTime() - start;
+        long rowsWritten = totalChanges() - changes;
+        Log.i(LOG_TAG, "Upsert, rows written: " + rowsWritten
+                + ", elapsed (µs): " + elapsed / 1000);
+        Assert.assertEquals("Only the changed movies must be written"
+                , MOVIES_PER_RUN / CHANGED_MOVIE_INTERVAL, rowsWritten);
+        Assert.assertEquals("All the movies must keep their flags"
+                , MOVIES_PER_RUN, countFavorites());
+        Assert.assertEquals("All the movies must keep their ids", rowIdSum, sumOfRowIds());
+    }
+
+}
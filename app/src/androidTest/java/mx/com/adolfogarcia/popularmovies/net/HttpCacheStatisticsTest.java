@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import android.test.AndroidTestCase;
+
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.Assert;
+
+import java.io.File;
+
+/**
+ * Verifies {@link HttpCacheStatistics} tells apart the replies served from
+ * the cache, from the network and revalidated with the server.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class HttpCacheStatisticsTest extends AndroidTestCase {
+
+    /**
+     * Body of the replies sent by the mock server.
+     */
+    private static final String CONFIGURATION_JSON_BODY =
+            "{\"images\":{\"secure_base_url\":\"https://image.tmdb.org/t/p/\"}}";
+
+    /**
+     * Entity tag sent with the replies of the mock server.
+     */
+    private static final String ETAG = "\"2b8ee1a4d6a4b8b1\"";
+
+    /**
+     * Server that replies to the requests made during the test.
+     */
+    private MockWebServer mServer;
+
+    /**
+     * The cache being tested, stored in a temporary directory.
+     */
+    private Cache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new MockWebServer();
+        mServer.start();
+        File directory = new File(getContext().getCacheDir(), "http-test");
+        mCache = new Cache(directory, 1024 * 1024);
+        mCache.evictAll();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mCache.delete();
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * Performs a GET request for the root of the mock server.
+     *
+     * @param client the client used to perform the request.
+     * @return the HTTP status code of the reply.
+     * @throws Exception if the request fails.
+     */
+    private int get(OkHttpClient client) throws Exception {
+        Request request = new Request.Builder().url(mServer.getUrl("/3/configuration")).build();
+        Response response = client.newCall(request).execute();
+        response.body().string();
+        return response.code();
+    }
+
+    /**
+     * Verifies a fresh reply is a hit, and a stale one is revalidated with a
+     * conditional request that costs a {@code 304} instead of a full body.
+     *
+     * @throws Exception if a request fails.
+     */
+    public void testCountsHitsMissesAndRevalidations() throws Exception {
+        mServer.enqueue(new MockResponse()
+                .setBody(CONFIGURATION_JSON_BODY)
+                .addHeader("Cache-Control", "max-age=60")
+                .addHeader("ETag", ETAG));
+        mServer.enqueue(new MockResponse()
+                .setBody(CONFIGURATION_JSON_BODY)
+                .addHeader("Cache-Control", "no-cache")
+                .addHeader("ETag", ETAG));
+        mServer.enqueue(new MockResponse()
+                .setResponseCode(304)
+                .addHeader("Cache-Control", "no-cache")
+                .addHeader("ETag", ETAG));
+        HttpCacheStatistics statistics = new HttpCacheStatistics(mCache);
+        OkHttpClient client = new OkHttpClient();
+        client.setCache(mCache);
+        client.networkInterceptors().add(statistics);
+
+        Assert.assertEquals(200, get(client)); // Miss
+        Assert.assertEquals(200, get(client)); // Fresh hit
+        mCache.evictAll();
+        Assert.assertEquals(200, get(client)); // Miss, stored as no-cache
+        Assert.assertEquals(200, get(client)); // Revalidated
+
+        Assert.assertEquals("Unexpected hits", 1, statistics.getHitCount());
+        Assert.assertEquals("Unexpected misses", 2, statistics.getMissCount());
+        Assert.assertEquals("Unexpected revalidations", 1, statistics.getRevalidationCount());
+        mServer.takeRequest();
+        mServer.takeRequest();
+        RecordedRequest conditionalRequest = mServer.takeRequest();
+        Assert.assertEquals("The stale reply must be revalidated with its ETag"
+                , ETAG, conditionalRequest.getHeader("If-None-Match"));
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import android.test.AndroidTestCase;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import junit.framework.Assert;
+
+import okio.Buffer;
+
+/**
+ * Verifies {@link ImageDownloadStatistics} counts the images downloaded, and
+ * their bytes, by size.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class ImageDownloadStatisticsTest extends AndroidTestCase {
+
+    /**
+     * Server that replies to the requests made during the test.
+     */
+    private MockWebServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * Downloads the image passed as argument from the mock server.
+     *
+     * @param client the client used to perform the request.
+     * @param path the path of the image.
+     * @throws Exception if the request fails.
+     */
+    private void download(OkHttpClient client, String path) throws Exception {
+        Request request = new Request.Builder().url(mServer.getUrl(path)).build();
+        Response response = client.newCall(request).execute();
+        response.body().bytes();
+    }
+
+    /**
+     * Verifies the images are counted by the size in their URL, and the
+     * failed downloads are not.
+     *
+     * @throws Exception if a request fails.
+     */
+    public void testCountsBytesBySize() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(new Buffer().write(new byte[1000])));
+        mServer.enqueue(new MockResponse().setBody(new Buffer().write(new byte[3000])));
+        mServer.enqueue(new MockResponse().setBody(new Buffer().write(new byte[9000])));
+        mServer.enqueue(new MockResponse().setResponseCode(404));
+        ImageDownloadStatistics statistics = new ImageDownloadStatistics();
+        OkHttpClient client = new OkHttpClient();
+        client.networkInterceptors().add(statistics);
+
+        download(client, "/t/p/w185/poster1.jpg");
+        download(client, "/t/p/w185/poster2.jpg");
+        download(client, "/t/p/w780/backdrop1.jpg");
+        download(client, "/t/p/w185/missing.jpg");
+
+        Assert.assertEquals("Posters downloaded", 2, statistics.getDownloadCount("w185"));
+        Assert.assertEquals("Poster bytes", 4000, statistics.getDownloadedBytes("w185"));
+        Assert.assertEquals("Bytes per poster", 2000, statistics.getBytesPerImage("w185"));
+        Assert.assertEquals("Bytes per backdrop", 9000, statistics.getBytesPerImage("w780"));
+        Assert.assertEquals("Size not downloaded", 0, statistics.getBytesPerImage("w92"));
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import android.test.AndroidTestCase;
+
+import junit.framework.Assert;
+
+import static mx.com.adolfogarcia.popularmovies.data.ImageSizeResolver.ImageQuality;
+
+/**
+ * Verifies {@link ImageQualityPolicy} lowers the quality of the images as
+ * the conditions worsen, and raises it back as they improve.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class ImageQualityPolicyTest extends AndroidTestCase {
+
+    /**
+     * Verifies the quality chosen for each combination of conditions.
+     */
+    public void testChooseImageQuality() {
+        Assert.assertEquals("Unmetered", ImageQuality.FULL
+                , ImageQualityPolicy.chooseImageQuality(false, false, false));
+        Assert.assertEquals("Metered", ImageQuality.REDUCED
+                , ImageQualityPolicy.chooseImageQuality(true, false, false));
+        Assert.assertEquals("Slow", ImageQuality.LOW
+                , ImageQualityPolicy.chooseImageQuality(true, true, false));
+        Assert.assertEquals("Little memory", ImageQuality.LOW
+                , ImageQualityPolicy.chooseImageQuality(false, false, true));
+    }
+
+    /**
+     * Verifies no network is not considered slow, so the quality is not
+     * lowered while offline.
+     */
+    public void testIsSlowNetwork_noNetwork() {
+        Assert.assertFalse(ImageQualityPolicy.isSlowNetwork(null));
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import android.test.AndroidTestCase;
+
+import junit.framework.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verifies {@link InFlightRequests} coalesces duplicate requests and only
+ * cancels a request once every caller withdrew its interest in it.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class InFlightRequestsTest extends AndroidTestCase {
+
+    /**
+     * Key of the request made during the tests.
+     */
+    private static final String KEY = InFlightRequests.movieResourceKey(76341L
+            , MovieDetailsFetcher.RESOURCE_DETAILS);
+
+    /**
+     * Verifies a request made while an equivalent one is queued attaches to
+     * it instead of being performed.
+     *
+     * @throws Exception if the request fails.
+     */
+    public void testCoalescesDuplicateRequests() throws Exception {
+        InFlightRequests inFlightRequests = new InFlightRequests();
+        List<Runnable> queue = new ArrayList<>();
+        AtomicInteger performed = new AtomicInteger();
+        Future<Integer> first = inFlightRequests.submit(KEY
+                , performed::incrementAndGet, queue::add);
+        Future<Integer> second = inFlightRequests.submit(KEY
+                , performed::incrementAndGet, queue::add);
+        Assert.assertSame("The second request must attach to the first", first, second);
+        Assert.assertEquals("A single request must be queued", 1, queue.size());
+        queue.get(0).run();
+        Assert.assertEquals("The request must be performed once", 1, (int) second.get());
+        Assert.assertFalse("The request must leave the registry"
+                , inFlightRequests.isInFlight(KEY));
+    }
+
+    /**
+     * Verifies a request is cancelled, without being performed, only once the
+     * last caller withdraws its interest in it.
+     */
+    public void testReleaseCancelsOnceNobodyWaits() {
+        InFlightRequests inFlightRequests = new InFlightRequests();
+        List<Runnable> queue = new ArrayList<>();
+        AtomicInteger performed = new AtomicInteger();
+        Future<Integer> pending = inFlightRequests.submit(KEY
+                , performed::incrementAndGet, queue::add);
+        inFlightRequests.submit(KEY, performed::incrementAndGet, queue::add);
+        Assert.assertFalse("The request must not be cancelled while a caller waits"
+                , inFlightRequests.release(KEY));
+        Assert.assertFalse("The request must still be pending", pending.isCancelled());
+        Assert.assertTrue("The request must be cancelled when the last caller leaves"
+                , inFlightRequests.release(KEY));
+        Assert.assertTrue("The request must be cancelled", pending.isCancelled());
+        Assert.assertFalse("The request must leave the registry"
+                , inFlightRequests.isInFlight(KEY));
+        queue.get(0).run();
+        Assert.assertEquals("The cancelled request must not be performed", 0, performed.get());
+    }
+
+}
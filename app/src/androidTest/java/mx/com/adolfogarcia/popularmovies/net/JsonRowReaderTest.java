@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import junit.framework.Assert;
+
+import java.io.StringReader;
+
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieReviewEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieVideoEntry;
+import static mx.com.adolfogarcia.popularmovies.net.JsonRowReader.MovieDetailRows;
+import static mx.com.adolfogarcia.popularmovies.net.JsonRowReader.MoviePageRows;
+
+/**
+ * Verifies {@link JsonRowReader} binds the fields of the replies of the
+ * RESTful API into the expected columns.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class JsonRowReaderTest extends AndroidTestCase {
+
+    /**
+     * A page of movies, with fields that are not stored and null values.
+     */
+    private static final String MOVIE_PAGE_JSON =
+            "{\"page\":2,\"results\":[{\"adult\":false,\"backdrop_path\":null"
+            + ",\"genre_ids\":[28,12],\"id\":76341,\"original_language\":\"en\""
+            + ",\"original_title\":\"Mad Max: Fury Road\",\"overview\":\"An apocalyptic story\""
+            + ",\"release_date\":\"2015-05-15\",\"poster_path\":\"/kqjL17yufvn9OVLyXYpvtyrFfak.jpg\""
+            + ",\"popularity\":48.6,\"title\":\"Mad Max: Fury Road\",\"video\":false"
+            + ",\"vote_average\":7.7,\"vote_count\":3416}]"
+            + ",\"total_pages\":12345,\"total_results\":246900}";
+
+    /**
+     * A page of movies, with null values in the fields stored in columns that
+     * may not be null, and a movie without them.
+     */
+    private static final String MOVIE_PAGE_NULLS_JSON =
+            "{\"page\":1,\"results\":[{\"id\":76341,\"original_title\":null"
+            + ",\"release_date\":null,\"popularity\":null,\"vote_average\":null}"
+            + ",{\"id\":135397}],\"total_pages\":1,\"total_results\":2}";
+
+    /**
+     * The details of a movie with its videos and reviews appended.
+     */
+    private static final String MOVIE_DETAILS_JSON =
+            "{\"adult\":false,\"videos\":{\"results\":[{\"id\":\"55dbb2e8c3a3686b0f000a60\""
+            + ",\"iso_639_1\":\"en\",\"key\":\"hEJnMQG9ev8\",\"name\":\"Trailer\""
+            + ",\"site\":\"YouTube\",\"size\":1080,\"type\":\"Trailer\"}]}"
+            + ",\"reviews\":{\"page\":1,\"results\":[{\"id\":\"55660928c3a3687ad7001db1\""
+            + ",\"author\":\"Phileas Fogg\",\"content\":\"Fabulous action movie.\""
+            + ",\"url\":\"https://www.themoviedb.org/review/55660928c3a3687ad7001db1\"}]"
+            + ",\"total_pages\":1,\"total_results\":1},\"id\":76341"
+            + ",\"original_title\":\"Mad Max: Fury Road\",\"budget\":150000000}";
+
+    /**
+     * Verifies the movies and the page metadata are read.
+     *
+     * @throws Exception if the reply can not be read.
+     */
+    public void testReadMoviePage() throws Exception {
+        MoviePageRows page = JsonRowReader.readMoviePage(new StringReader(MOVIE_PAGE_JSON));
+        Assert.assertEquals(2, page.getPageNumber());
+        Assert.assertEquals(12345, page.getTotalPages());
+        Assert.assertEquals(1, page.getMovies().size());
+        ContentValues movie = page.getMovies().get(0);
+        Assert.assertEquals(76341L, movie.getAsLong(CachedMovieEntry.COLUMN_API_ID).longValue());
+        Assert.assertEquals("Mad Max: Fury Road"
+                , movie.getAsString(CachedMovieEntry.COLUMN_ORIGINAL_TITLE));
+        Assert.assertEquals(1431648000000L
+                , movie.getAsLong(CachedMovieEntry.COLUMN_RELEASE_DATE).longValue());
+        Assert.assertTrue(movie.containsKey(CachedMovieEntry.COLUMN_BACKDROP_PATH));
+        Assert.assertNull(movie.get(CachedMovieEntry.COLUMN_BACKDROP_PATH));
+        Assert.assertEquals(7.7, movie.getAsDouble(CachedMovieEntry.COLUMN_VOTE_AVERAGE), 0.0);
+        Assert.assertEquals("Fields that are not stored must be skipped", 8, movie.size());
+    }
+
+    /**
+     * Verifies the columns that may not be null get default values when the
+     * fields are null or missing, so the rows can be stored.
+     *
+     * @throws Exception if the reply can not be read.
+     */
+    public void testReadMoviePage_nullFields() throws Exception {
+        MoviePageRows page = JsonRowReader.readMoviePage(
+                new StringReader(MOVIE_PAGE_NULLS_JSON));
+        Assert.assertEquals(2, page.getMovies().size());
+        for (ContentValues movie : page.getMovies()) {
+            Assert.assertEquals("", movie.getAsString(CachedMovieEntry.COLUMN_ORIGINAL_TITLE));
+            Assert.assertEquals(0L
+                    , movie.getAsLong(CachedMovieEntry.COLUMN_RELEASE_DATE).longValue());
+            Assert.assertEquals(0.0, movie.getAsDouble(CachedMovieEntry.COLUMN_POPULARITY), 0.0);
+            Assert.assertEquals(0.0
+                    , movie.getAsDouble(CachedMovieEntry.COLUMN_VOTE_AVERAGE), 0.0);
+        }
+    }
+
+    /**
+     * Verifies the movie, its videos and reviews are read, and the latter get
+     * the movie's identifier even if it appears after them in the reply.
+     *
+     * @throws Exception if the reply can not be read.
+     */
+    public void testReadMovieDetails() throws Exception {
+        MovieDetailRows details = JsonRowReader.readMovieDetails(
+                new StringReader(MOVIE_DETAILS_JSON));
+        Assert.assertEquals(76341L, details.getMovieApiId());
+        ContentValues movie = details.getMovie();
+        Assert.assertEquals(76341L, movie.getAsLong(CachedMovieEntry.COLUMN_API_ID).longValue());
+        Assert.assertEquals("Mad Max: Fury Road"
+                , movie.getAsString(CachedMovieEntry.COLUMN_ORIGINAL_TITLE));
+        Assert.assertEquals("Fields that are not stored must be skipped", 5, movie.size());
+        Assert.assertEquals(1, details.getVideos().size());
+        ContentValues video = details.getVideos().get(0);
+        Assert.assertEquals(76341L
+                , video.getAsLong(CachedMovieVideoEntry.COLUMN_MOVIE_API_ID).longValue());
+        Assert.assertEquals("hEJnMQG9ev8", video.getAsString(CachedMovieVideoEntry.COLUMN_KEY));
+        Assert.assertEquals(1080, video.getAsInteger(CachedMovieVideoEntry.COLUMN_SIZE).intValue());
+        Assert.assertEquals(1, details.getReviews().size());
+        ContentValues review = details.getReviews().get(0);
+        Assert.assertEquals(76341L
+                , review.getAsLong(CachedMovieReviewEntry.COLUMN_MOVIE_API_ID).longValue());
+        Assert.assertEquals("Fabulous action movie."
+                , review.getAsString(CachedMovieReviewEntry.COLUMN_CONTENT));
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import android.test.AndroidTestCase;
+
+import com.google.gson.Gson;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import junit.framework.Assert;
+
+import java.io.IOException;
+
+import retrofit.GsonConverterFactory;
+import retrofit.Retrofit;
+
+/**
+ * Verifies {@link MovieDetailsFetcher} tells the failures that may be solved
+ * by retrying the request apart from those that may not.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class MovieDetailsFetcherTest extends AndroidTestCase {
+
+    /**
+     * Server that replies to the requests made during the test.
+     */
+    private MockWebServer mServer;
+
+    /**
+     * The fetcher under test, that sends its requests to {@link #mServer}.
+     */
+    private MovieDetailsFetcher mFetcher;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new MockWebServer();
+        mServer.start();
+        TheMovieDbApi movieDbApi = new Retrofit.Builder()
+                .baseUrl(mServer.getUrl("/").toString())
+                .addConverterFactory(GsonConverterFactory.create(new Gson()))
+                .build()
+                .create(TheMovieDbApi.class);
+        mFetcher = new MovieDetailsFetcher(movieDbApi, "api_key");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * Verifies a movie that does not exist any more is reported as not
+     * available, instead of as a failure worth retrying.
+     *
+     * @throws Exception if the request fails.
+     */
+    public void testDownloadDetails_notFound() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(404));
+        Assert.assertNull(mFetcher.downloadDetails(76341L));
+    }
+
+    /**
+     * Verifies a server error is reported as a failure worth retrying.
+     */
+    public void testDownloadDetails_serverError() {
+        mServer.enqueue(new MockResponse().setResponseCode(500));
+        try {
+            mFetcher.downloadDetails(76341L);
+            Assert.fail("A server error must throw IOException");
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+
+    /**
+     * Verifies exceeding the rate limit is not taken as a permanent failure.
+     */
+    public void testIsPermanentFailure() {
+        Assert.assertTrue(MovieDetailsFetcher.isPermanentFailure(404));
+        Assert.assertTrue(MovieDetailsFetcher.isPermanentFailure(400));
+        Assert.assertFalse(MovieDetailsFetcher.isPermanentFailure(
+                RateLimitRetryInterceptor.HTTP_TOO_MANY_REQUESTS));
+        Assert.assertFalse(MovieDetailsFetcher.isPermanentFailure(503));
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import android.test.AndroidTestCase;
+
+import junit.framework.Assert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static mx.com.adolfogarcia.popularmovies.net.PriorityExecutor.Priority;
+
+/**
+ * Verifies {@link PriorityExecutor} runs the queued work by priority class
+ * and, within the same class, in submission order.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class PriorityExecutorTest extends AndroidTestCase {
+
+    /**
+     * Maximum time, in seconds, to wait for the work to finish.
+     */
+    private static final long TIMEOUT_SECONDS = 5L;
+
+    /**
+     * Verifies work of a higher class, submitted after work of a lower class
+     * was queued, runs first.
+     *
+     * @throws Exception if interrupted while waiting for the work to finish.
+     */
+    public void testRunsHigherPriorityFirst() throws Exception {
+        PriorityExecutor executor = new PriorityExecutor(1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(4);
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+        executor.forPriority(Priority.BACKGROUND).execute(() -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        executor.forPriority(Priority.BACKGROUND).execute(() -> {
+            order.add("background-1");
+            finished.countDown();
+        });
+        executor.forPriority(Priority.BACKGROUND).execute(() -> {
+            order.add("background-2");
+            finished.countDown();
+        });
+        executor.forPriority(Priority.OPEN_DETAIL).execute(() -> {
+            order.add("open-detail");
+            finished.countDown();
+        });
+        executor.forPriority(Priority.VISIBLE_PAGE).execute(() -> {
+            order.add("visible-page");
+            finished.countDown();
+        });
+        Assert.assertEquals("All work but the first must be queued", 4, executor.getQueueDepth());
+        blocker.countDown();
+        Assert.assertTrue("The work must finish"
+                , finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals("The work must run by priority class and submission order"
+                , Arrays.asList("visible-page", "open-detail", "background-1", "background-2")
+                , order);
+    }
+
+}
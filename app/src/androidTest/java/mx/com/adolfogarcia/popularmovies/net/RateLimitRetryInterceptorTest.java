@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import android.test.AndroidTestCase;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import junit.framework.Assert;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies the requests to the RESTful API are limited by {@link TokenBucket}
+ * and those rejected for exceeding the rate limit are retried by
+ * {@link RateLimitRetryInterceptor}.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class RateLimitRetryInterceptorTest extends AndroidTestCase {
+
+    /**
+     * Server that replies to the requests made during the test.
+     */
+    private MockWebServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * Verifies a request rejected with {@code 429} and {@code Retry-After} is
+     * retried once the requested time has passed, instead of failing.
+     *
+     * @throws Exception if the request fails.
+     */
+    public void testRetriesAfterTooManyRequests() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(429).addHeader("Retry-After", "1"));
+        mServer.enqueue(new MockResponse().setBody("{}"));
+        TokenBucket tokenBucket = new TokenBucket(100, 10);
+        RateLimitRetryInterceptor retryInterceptor = new RateLimitRetryInterceptor(tokenBucket, 3);
+        OkHttpClient client = new OkHttpClient();
+        client.interceptors().add(retryInterceptor);
+        client.networkInterceptors().add(tokenBucket);
+
+        long start = System.nanoTime();
+        Response response = client.newCall(
+                new Request.Builder().url(mServer.getUrl("/3/configuration")).build()).execute();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Assert.assertEquals(200, response.code());
+        Assert.assertEquals(1, retryInterceptor.getRetryCount());
+        Assert.assertEquals(2, mServer.getRequestCount());
+        Assert.assertTrue("Retry-After must be honored, elapsed: " + elapsedMillis
+                , elapsedMillis >= 900);
+    }
+
+    /**
+     * Verifies the requests beyond the burst wait for the tokens to be
+     * refilled at the sustained rate.
+     *
+     * @throws Exception if interrupted while waiting.
+     */
+    public void testLimitsSustainedRate() throws Exception {
+        TokenBucket tokenBucket = new TokenBucket(10, 2);
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            tokenBucket.acquire();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // Two tokens available right away, three more at 100 ms intervals
+        Assert.assertTrue("Requests must be spaced, elapsed: " + elapsedMillis
+                , elapsedMillis >= 250);
+    }
+
+    /**
+     * Verifies the token reserved by a request that is interrupted while
+     * waiting is returned, so the next request does not wait for it.
+     *
+     * @throws Exception if interrupted while waiting.
+     */
+    public void testInterruptedWaitReturnsToken() throws Exception {
+        final TokenBucket tokenBucket = new TokenBucket(2, 1);
+        tokenBucket.acquire();
+        Thread cancelled = new Thread(() -> {
+            try {
+                tokenBucket.acquire();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        cancelled.start();
+        Thread.sleep(100);
+        cancelled.interrupt();
+        cancelled.join();
+        long start = System.nanoTime();
+        tokenBucket.acquire();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // Without the refund, two tokens would be due: one second, not half
+        Assert.assertTrue("The cancelled reservation must be returned, elapsed: "
+                + elapsedMillis, elapsedMillis < 750);
+    }
+
+    /**
+     * Verifies a request already waiting for a token is delayed further if
+     * the bucket is paused while it waits.
+     *
+     * @throws Exception if interrupted while waiting.
+     */
+    public void testPauseDelaysWaitingRequests() throws Exception {
+        final TokenBucket tokenBucket = new TokenBucket(1, 1);
+        tokenBucket.acquire();
+        final long start = System.nanoTime();
+        final long[] elapsedMillis = new long[1];
+        Thread waiting = new Thread(() -> {
+            try {
+                tokenBucket.acquire();
+                elapsedMillis[0] =
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiting.start();
+        // The request reserved a token available in a second, pause for two
+        Thread.sleep(100);
+        tokenBucket.pause(2, TimeUnit.SECONDS);
+        waiting.join();
+        Assert.assertTrue("The pause must delay the waiting request, elapsed: "
+                + elapsedMillis[0], elapsedMillis[0] >= 2000);
+    }
+
+}
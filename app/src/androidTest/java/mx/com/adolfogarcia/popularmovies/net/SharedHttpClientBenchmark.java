@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.Assert;
+
+import mx.com.adolfogarcia.popularmovies.model.transport.MovieVideosJsonModel;
+import retrofit.GsonConverterFactory;
+import retrofit.Response;
+import retrofit.Retrofit;
+
+/**
+ * Compares the per-request latency of building a new {@link Retrofit} and
+ * {@link TheMovieDbApi} proxy for every call (as the network tasks used to
+ * do), against reusing a single shared instance. The requests are served by
+ * a local {@link MockWebServer}, so the results reflect the cost of the
+ * client setup and the connection handling, not the network.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class SharedHttpClientBenchmark extends AndroidTestCase {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = SharedHttpClientBenchmark.class.getSimpleName();
+
+    /**
+     * Number of requests performed on each run. Equivalent to the requests
+     * made for a page of movies: the page itself, plus the videos and
+     * reviews of its 20 movies.
+     */
+    private static final int REQUESTS_PER_RUN = 41;
+
+    /**
+     * Body of the replies sent by the mock server.
+     */
+    private static final String VIDEOS_JSON_BODY =
+            "{\"id\":76341,\"results\":[{\"id\":\"55dbb2e8c3a3686b0f000a60\""
+            + ",\"iso_639_1\":\"en\",\"key\":\"hEJnMQG9ev8\",\"name\":\"Trailer\""
+            + ",\"site\":\"YouTube\",\"size\":1080,\"type\":\"Trailer\"}]}";
+
+    /**
+     * Server that replies to the requests made during the benchmark.
+     */
+    private MockWebServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new MockWebServer();
+        for (int i = 0; i < REQUESTS_PER_RUN; i++) {
+            mServer.enqueue(new MockResponse().setBody(VIDEOS_JSON_BODY));
+        }
+        mServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * Returns a new proxy to the mock server, built with its own
+     * {@link Retrofit} instance and converter.
+     *
+     * @param client the HTTP client to use.
+     * @return a new proxy to the mock server.
+     */
+    private TheMovieDbApi newMovieDbApi(OkHttpClient client) {
+        return new Retrofit.Builder()
+                .baseUrl(mServer.getUrl("/").toString())
+                .addConverterFactory(GsonConverterFactory.create(new Gson()))
+                .client(client)
+                .build()
+                .create(TheMovieDbApi.class);
+    }
+
+    /**
+     * Performs a request for movie videos and verifies it succeeds.
+     *
+     * @param movieDbApi the proxy used to perform the request.
+     * @throws Exception if the request fails.
+     */
+    private static void requestVideos(TheMovieDbApi movieDbApi) throws Exception {
+        Response<MovieVideosJsonModel> response =
+                movieDbApi.getMovieVideos(76341, "api_key").execute();
+        Assert.assertTrue("The request must succeed", response.isSuccess());
+    }
+
+    /**
+     * Returns a new HTTP client with its own connection pool, which keeps no
+     * idle connections. Otherwise, the client would use the default pool,
+     * shared by all the clients, and reuse the connections of the previous
+     * requests.
+     *
+     * @return a new HTTP client that does not reuse connections.
+     */
+    private static OkHttpClient newPerRequestClient() {
+        OkHttpClient client = new OkHttpClient();
+        client.setConnectionPool(new ConnectionPool(0, 0));
+        return client;
+    }
+
+    /**
+     * Measures the latency of the requests when a new {@link Retrofit},
+     * proxy and HTTP client, with its own connection pool, are created for
+     * each one.
+     *
+     * @throws Exception if a request fails.
+     */
+    public void testPerRequestSetup() throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS_PER_RUN; i++) {
+            requestVideos(newMovieDbApi(newPerRequestClient()));
+        }
+        long elapsed = System.nanoTime() - start;
+        Log.i(LOG_TAG, "Per-request setup, mean latency (µs): "
+                + elapsed / REQUESTS_PER_RUN / 1000);
+    }
+
+    /**
+     * Measures the latency of the requests when a single {@link Retrofit},
+     * proxy and HTTP client are shared, and verifies the connection to the
+     * server is reused.
+     *
+     * @throws Exception if a request fails.
+     */
+    public void testSharedSetup() throws Exception {
+        TheMovieDbApi movieDbApi = newMovieDbApi(new OkHttpClient());
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS_PER_RUN; i++) {
+            requestVideos(movieDbApi);
+        }
+        long elapsed = System.nanoTime() - start;
+        Log.i(LOG_TAG, "Shared setup, mean latency (µs): "
+                + elapsed / REQUESTS_PER_RUN / 1000);
+        RecordedRequest lastRequest = null;
+        for (int i = 0; i < REQUESTS_PER_RUN; i++) {
+            lastRequest = mServer.takeRequest();
+        }
+        Assert.assertEquals("All requests must be sent on the same connection"
+                , REQUESTS_PER_RUN - 1, lastRequest.getSequenceNumber());
+    }
+
+}
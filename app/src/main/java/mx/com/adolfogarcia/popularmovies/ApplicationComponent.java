@@ -21,6 +21,7 @@ import javax.inject.Singleton;
 import dagger.Component;
 import mx.com.adolfogarcia.popularmovies.model.view.MovieCollectionViewModel;
 import mx.com.adolfogarcia.popularmovies.model.view.MovieDetailViewModel;
+import mx.com.adolfogarcia.popularmovies.sync.MovieSyncAdapter;
 import mx.com.adolfogarcia.popularmovies.view.fragment.MovieCollectionFragment;
 
 /**
@@ -57,4 +58,20 @@ public interface ApplicationComponent {
      */
     void inject(MovieDetailViewModel movieDetailViewModel);
 
+    /**
+     * Injects the dependencies required by the {@link MovieSyncAdapter},
+     * like the available sort orders.
+     *
+     * @param movieSyncAdapter the object to inject dependencies into.
+     */
+    void inject(MovieSyncAdapter movieSyncAdapter);
+
+    /**
+     * Injects the dependencies required by the
+     * {@link PopularMoviesApplication}, like the RESTful API's configuration.
+     *
+     * @param application the object to inject dependencies into.
+     */
+    void inject(PopularMoviesApplication application);
+
 }
@@ -2,6 +2,14 @@ package mx.com.adolfogarcia.popularmovies;
 
 import android.app.Application;
 
+import com.squareup.picasso.Picasso;
+
+import javax.inject.Inject;
+
+import mx.com.adolfogarcia.popularmovies.data.RestfulServiceConfiguration;
+import mx.com.adolfogarcia.popularmovies.net.ImageQualityPolicy;
+import mx.com.adolfogarcia.popularmovies.sync.MovieSyncAdapter;
+
 /**
  * Custom {@link Application} that provides access to the
  * {@link ApplicationComponent}, for dependency injection.
@@ -20,12 +28,32 @@ public class PopularMoviesApplication extends Application {
      */
     private ApplicationComponent applicationComponent;
 
+    /**
+     * The configuration that defines the interval between background
+     * synchronizations.
+     */
+    @Inject RestfulServiceConfiguration mConfiguration;
+
+    /**
+     * Chooses the quality of the images for as long as the application runs.
+     */
+    @Inject ImageQualityPolicy mImageQualityPolicy;
+
+    /**
+     * Loads the images, counting their downloads. Used as the instance
+     * returned by {@link Picasso#with(android.content.Context)}.
+     */
+    @Inject Picasso mPicasso;
+
     @Override
     public void onCreate() {
         super.onCreate();
         applicationComponent = DaggerApplicationComponent.builder()
                 .popularMoviesApplicationModule(new PopularMoviesApplicationModule(this))
                 .build();
+        applicationComponent.inject(this);
+        Picasso.setSingletonInstance(mPicasso);
+        MovieSyncAdapter.initialize(this, mConfiguration);
     }
 
     /**
@@ -18,18 +18,42 @@ package mx.com.adolfogarcia.popularmovies;
 
 import android.content.Context;
 
+import com.google.gson.Gson;
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.picasso.OkHttpDownloader;
+import com.squareup.picasso.Picasso;
+
+import java.io.File;
 import java.lang.ref.WeakReference;
 
+import javax.inject.Named;
 import javax.inject.Singleton;
 
 import dagger.Module;
 import dagger.Provides;
+import mx.com.adolfogarcia.popularmovies.data.MovieListStateCache;
 import mx.com.adolfogarcia.popularmovies.data.RestfulServiceConfiguration;
+import mx.com.adolfogarcia.popularmovies.net.DetailFetchPolicy;
+import mx.com.adolfogarcia.popularmovies.net.EagerDetailFetchPolicy;
 import mx.com.adolfogarcia.popularmovies.net.FetchFavoriteMoviePageTaskFactory;
 import mx.com.adolfogarcia.popularmovies.net.FetchMoviePageTaskFactory;
 import mx.com.adolfogarcia.popularmovies.net.FetchPopularityMoviePageTaskFactory;
 import mx.com.adolfogarcia.popularmovies.net.FetchRatingMoviePageTaskFactory;
+import mx.com.adolfogarcia.popularmovies.net.HttpCacheStatistics;
+import mx.com.adolfogarcia.popularmovies.net.ImageDownloadStatistics;
+import mx.com.adolfogarcia.popularmovies.net.ImageQualityPolicy;
+import mx.com.adolfogarcia.popularmovies.net.InFlightRequests;
+import mx.com.adolfogarcia.popularmovies.net.LazyDetailFetchPolicy;
+import mx.com.adolfogarcia.popularmovies.net.PriorityExecutor;
+import mx.com.adolfogarcia.popularmovies.net.RateLimitRetryInterceptor;
+import mx.com.adolfogarcia.popularmovies.net.TheMovieDbApi;
+import mx.com.adolfogarcia.popularmovies.net.TokenBucket;
+import mx.com.adolfogarcia.popularmovies.net.TopPositionsDetailFetchPolicy;
 import mx.com.adolfogarcia.popularmovies.view.adapter.LabeledItem;
+import retrofit.GsonConverterFactory;
+import retrofit.Retrofit;
 
 // TODO: Create different modules for different scopes (Application, Activity, etc.)
 /**
@@ -41,6 +65,43 @@ import mx.com.adolfogarcia.popularmovies.view.adapter.LabeledItem;
 @Module
 public class PopularMoviesApplicationModule {
 
+    /**
+     * Maximum number of idle connections to the RESTful API kept in the
+     * pool of the shared {@link OkHttpClient}.
+     */
+    private static final int MAX_IDLE_HTTP_CONNECTIONS = 5;
+
+    /**
+     * Time in milliseconds an idle connection to the RESTful API is kept
+     * alive in the pool of the shared {@link OkHttpClient}.
+     */
+    private static final long HTTP_KEEP_ALIVE_DURATION_MS = 5 * 60 * 1000L;
+
+    /**
+     * Name of the directory, inside the application's cache directory, where
+     * the replies of the RESTful API are cached.
+     */
+    private static final String HTTP_CACHE_DIRECTORY_NAME = "http";
+
+    /**
+     * Name of the directory, inside the application's cache directory, where
+     * the images are cached.
+     */
+    private static final String IMAGE_CACHE_DIRECTORY_NAME = "images";
+
+    /**
+     * Maximum size in bytes of the disk cache for the images, the largest
+     * one used by {@link Picasso} by default.
+     */
+    private static final long IMAGE_CACHE_SIZE_BYTES = 50 * 1024 * 1024L;
+
+    /**
+     * Number of threads on which the network tasks are executed. Enough for
+     * the pages of movies downloaded concurrently plus the task of the open
+     * detail screen.
+     */
+    private static final int NETWORK_TASK_THREADS = 3;
+
     /**
      * The application's context.
      */
@@ -105,6 +166,261 @@ public class PopularMoviesApplicationModule {
         return new WeakReference<>(configuration);
     }
 
+    /**
+     * Provides the size-bounded disk cache for the replies of the RESTful
+     * API. The cache honors the {@code Cache-Control} headers sent by the
+     * server and stores the validators ({@code ETag} and
+     * {@code Last-Modified}) used to revalidate stale replies with
+     * conditional requests.
+     *
+     * @param context the application's {@link Context}.
+     * @param configuration the RESTful service's configuration.
+     * @return the disk cache for the replies of the RESTful API.
+     * @see RestfulServiceConfiguration#getHttpCacheSize()
+     */
+    @Singleton
+    @Provides Cache provideHttpCache(Context context
+            , RestfulServiceConfiguration configuration) {
+        return new Cache(new File(context.getCacheDir(), HTTP_CACHE_DIRECTORY_NAME)
+                , configuration.getHttpCacheSize());
+    }
+
+    /**
+     * Provides the counters of hits, misses and revalidations of the HTTP
+     * response cache.
+     *
+     * @param cache the HTTP response cache.
+     * @return the counters of the HTTP response cache.
+     */
+    @Singleton
+    @Provides HttpCacheStatistics provideHttpCacheStatistics(Cache cache) {
+        return new HttpCacheStatistics(cache);
+    }
+
+    /**
+     * Provides the token bucket that limits the rate of the requests sent to
+     * the RESTful API, which rate-limits them per API key.
+     *
+     * @param configuration the RESTful service's configuration.
+     * @return the token bucket that limits the rate of the requests.
+     * @see RestfulServiceConfiguration#getApiRequestsPerSecond()
+     * @see RestfulServiceConfiguration#getApiRequestBurst()
+     */
+    @Singleton
+    @Provides TokenBucket provideTokenBucket(RestfulServiceConfiguration configuration) {
+        return new TokenBucket(configuration.getApiRequestsPerSecond()
+                , configuration.getApiRequestBurst());
+    }
+
+    /**
+     * Provides the interceptor that retries the requests rejected because of
+     * the rate limit of the RESTful API.
+     *
+     * @param tokenBucket the token bucket that limits the rate of the requests.
+     * @param configuration the RESTful service's configuration.
+     * @return the interceptor that retries rate limited requests.
+     * @see RestfulServiceConfiguration#getApiMaxRetries()
+     */
+    @Singleton
+    @Provides RateLimitRetryInterceptor provideRateLimitRetryInterceptor(
+            TokenBucket tokenBucket, RestfulServiceConfiguration configuration) {
+        return new RateLimitRetryInterceptor(tokenBucket, configuration.getApiMaxRetries());
+    }
+
+    /**
+     * Provides the HTTP client shared by all the requests to the RESTful API.
+     * Sharing the client allows the connections, and their TLS sessions, to be
+     * pooled and reused instead of being negotiated again on every request.
+     *
+     * @param cache the HTTP response cache.
+     * @param cacheStatistics the counters of the HTTP response cache, which
+     *     are updated by the client.
+     * @param tokenBucket the token bucket that limits the rate of the
+     *     requests sent over the network.
+     * @param retryInterceptor retries the requests rejected because of the
+     *     rate limit.
+     * @return the HTTP client shared by all the requests to the RESTful API.
+     */
+    @Singleton
+    @Provides OkHttpClient provideHttpClient(Cache cache
+            , HttpCacheStatistics cacheStatistics
+            , TokenBucket tokenBucket
+            , RateLimitRetryInterceptor retryInterceptor) {
+        OkHttpClient client = new OkHttpClient();
+        client.setConnectionPool(new ConnectionPool(MAX_IDLE_HTTP_CONNECTIONS
+                , HTTP_KEEP_ALIVE_DURATION_MS));
+        client.setCache(cache);
+        client.interceptors().add(retryInterceptor);
+        // Replies served from the cache are not sent, so they take no tokens
+        client.networkInterceptors().add(tokenBucket);
+        client.networkInterceptors().add(cacheStatistics);
+        return client;
+    }
+
+    /**
+     * Provides the {@link Gson} instance used to convert the replies from the
+     * RESTful API into transfer objects.
+     *
+     * @return the {@link Gson} instance used to convert the replies from the
+     *     RESTful API.
+     */
+    @Singleton
+    @Provides Gson provideGson() {
+        return new Gson();
+    }
+
+    /**
+     * Provides the {@link Retrofit} instance used to create the proxy to
+     * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API.
+     *
+     * @param client the HTTP client used to perform the requests.
+     * @param gson the {@link Gson} instance used to convert the replies.
+     * @return the {@link Retrofit} instance used to access the RESTful API.
+     */
+    @Singleton
+    @Provides Retrofit provideRetrofit(OkHttpClient client, Gson gson) {
+        return new Retrofit.Builder()
+                .baseUrl(TheMovieDbApi.BASE_URL)
+                .client(client)
+                .addConverterFactory(GsonConverterFactory.create(gson))
+                .build();
+    }
+
+    /**
+     * Provides the proxy used to access
+     * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API,
+     * shared by all the network tasks.
+     *
+     * @param retrofit the {@link Retrofit} instance used to create the proxy.
+     * @return the proxy used to access the RESTful API.
+     */
+    @Singleton
+    @Provides TheMovieDbApi provideMovieDbApi(Retrofit retrofit) {
+        return retrofit.create(TheMovieDbApi.class);
+    }
+
+    /**
+     * Provides the {@link PriorityExecutor} on which the network tasks
+     * ({@link android.os.AsyncTask}s) are executed, instead of the default
+     * serial executor, so the page the user is waiting for does not queue
+     * behind background work.
+     *
+     * @return the {@link PriorityExecutor} used to execute network tasks.
+     */
+    @Singleton
+    @Named(PriorityExecutor.NETWORK_TASKS)
+    @Provides PriorityExecutor provideNetworkTaskExecutor() {
+        return new PriorityExecutor(NETWORK_TASK_THREADS);
+    }
+
+    /**
+     * Provides the {@link PriorityExecutor} on which the requests for movie
+     * details (videos and reviews) are performed in parallel. The number of
+     * threads, and thus of concurrent requests, is bounded by
+     * {@link RestfulServiceConfiguration#getDetailDownloadConcurrency()}.
+     * Kept apart from the network tasks, which wait for these requests.
+     *
+     * @param configuration the RESTful service's configuration.
+     * @return the {@link PriorityExecutor} used to download movie details.
+     */
+    @Singleton
+    @Named(PriorityExecutor.DETAIL_DOWNLOADS)
+    @Provides PriorityExecutor provideDetailDownloadExecutor(
+            RestfulServiceConfiguration configuration) {
+        return new PriorityExecutor(configuration.getDetailDownloadConcurrency());
+    }
+
+    /**
+     * Provides the registry of the requests to the RESTful API in flight,
+     * shared by all the network tasks so duplicate requests are coalesced.
+     *
+     * @return the registry of the requests in flight.
+     */
+    @Singleton
+    @Provides InFlightRequests provideInFlightRequests() {
+        return new InFlightRequests();
+    }
+
+    /**
+     * Provides the in-memory copy of the retrieval state of the lists of
+     * movies, shared so it is only reloaded once per change.
+     *
+     * @param context the {@link Context} used to read the states.
+     * @return the retrieval state of the lists of movies.
+     */
+    @Singleton
+    @Provides MovieListStateCache provideMovieListStateCache(Context context) {
+        return new MovieListStateCache(context);
+    }
+
+    /**
+     * Provides the counters of the images downloaded, by size.
+     *
+     * @return the counters of the images downloaded.
+     */
+    @Singleton
+    @Provides ImageDownloadStatistics provideImageDownloadStatistics() {
+        return new ImageDownloadStatistics();
+    }
+
+    /**
+     * Provides the {@link Picasso} instance used to load the images, whose
+     * downloads are counted by the statistics passed as argument.
+     *
+     * @param context the application's {@link Context}.
+     * @param statistics the counters of the images downloaded.
+     * @return the {@link Picasso} instance used to load the images.
+     */
+    @Singleton
+    @Provides Picasso providePicasso(Context context, ImageDownloadStatistics statistics) {
+        OkHttpClient client = new OkHttpClient();
+        client.setCache(new Cache(new File(context.getCacheDir(), IMAGE_CACHE_DIRECTORY_NAME)
+                , IMAGE_CACHE_SIZE_BYTES));
+        client.networkInterceptors().add(statistics);
+        return new Picasso.Builder(context)
+                .downloader(new OkHttpDownloader(client))
+                .build();
+    }
+
+    /**
+     * Provides the policy that chooses the quality at which the images are
+     * downloaded, for as long as the application runs.
+     *
+     * @param context the application's {@link Context}.
+     * @param configuration the RESTful service's configuration.
+     * @param statistics the counters of the images downloaded.
+     * @return the policy that chooses the quality of the images.
+     */
+    @Singleton
+    @Provides ImageQualityPolicy provideImageQualityPolicy(Context context
+            , RestfulServiceConfiguration configuration
+            , ImageDownloadStatistics statistics) {
+        return new ImageQualityPolicy(context, configuration, statistics);
+    }
+
+    /**
+     * Provides the {@link DetailFetchPolicy} that determines which movie
+     * details (videos and reviews) are downloaded along with each page of
+     * movies, as selected in the configuration file.
+     *
+     * @param configuration the RESTful service's configuration.
+     * @return the policy used to prefetch movie details.
+     * @see RestfulServiceConfiguration#getDetailFetchPolicyName()
+     */
+    @Singleton
+    @Provides DetailFetchPolicy provideDetailFetchPolicy(
+            RestfulServiceConfiguration configuration) {
+        switch (configuration.getDetailFetchPolicyName()) {
+            case RestfulServiceConfiguration.DETAIL_FETCH_POLICY_EAGER:
+                return new EagerDetailFetchPolicy();
+            case RestfulServiceConfiguration.DETAIL_FETCH_POLICY_LAZY:
+                return new LazyDetailFetchPolicy();
+            default:
+                return new TopPositionsDetailFetchPolicy(
+                        configuration.getDetailPrefetchPositions());
+        }
+    }
+
     /**
      * Provides the available sort order options. Used by
      * {@link mx.com.adolfogarcia.popularmovies.model.view.MovieDetailViewModel}.
@@ -115,17 +431,36 @@ public class PopularMoviesApplicationModule {
      * @param configuration the {@link RestfulServiceConfiguration} used by the
      *     tasks created by the {@link FetchMoviePageTaskFactory} to access the
      *     RESTful API.
+     * @param movieDbApi the proxy used by the tasks created by the
+     *     {@link FetchMoviePageTaskFactory} to access the RESTful API.
+     * @param detailDownloadExecutor the {@link PriorityExecutor} used by the
+     *     tasks created by the {@link FetchMoviePageTaskFactory} to download
+     *     movie details in parallel.
+     * @param detailFetchPolicy the policy used by the tasks created by the
+     *     {@link FetchMoviePageTaskFactory} to select the movie details that
+     *     are downloaded along with each page.
+     * @param inFlightRequests the registry used by the tasks created by the
+     *     {@link FetchMoviePageTaskFactory} to coalesce duplicate requests.
      * @return the available sort order options.
      */
     @SuppressWarnings("unchecked")
     @Provides LabeledItem<FetchMoviePageTaskFactory>[] provideSortOrderOptions(
             Context context
-            , RestfulServiceConfiguration configuration) {
+            , RestfulServiceConfiguration configuration
+            , TheMovieDbApi movieDbApi
+            , @Named(PriorityExecutor.DETAIL_DOWNLOADS)
+                    PriorityExecutor detailDownloadExecutor
+            , DetailFetchPolicy detailFetchPolicy
+            , InFlightRequests inFlightRequests) {
         return new LabeledItem[] {
                 new LabeledItem(mApplication.getString(R.string.label_sort_order_popular)
-                        , new FetchPopularityMoviePageTaskFactory(configuration, context))
+                        , new FetchPopularityMoviePageTaskFactory(
+                                configuration, movieDbApi, detailDownloadExecutor
+                                , detailFetchPolicy, inFlightRequests, context))
                 , new LabeledItem(mApplication.getString(R.string.label_sort_order_vote_average)
-                        , new FetchRatingMoviePageTaskFactory(configuration, context))
+                        , new FetchRatingMoviePageTaskFactory(
+                                configuration, movieDbApi, detailDownloadExecutor
+                                , detailFetchPolicy, inFlightRequests, context))
                 , new LabeledItem(mApplication.getString(R.string.label_sort_order_user_favorites)
                         , new FetchFavoriteMoviePageTaskFactory())
         };
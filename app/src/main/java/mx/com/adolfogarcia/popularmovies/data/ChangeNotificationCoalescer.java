@@ -0,0 +1,334 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces the change notifications sent by {@link MovieProvider}, so the
+ * loaders observing its data requery once per burst of changes instead of
+ * once per change. The URIs that change within a short window are delivered
+ * together when the window ends, while those that change within a scope
+ * (e.g. the transaction of a batch) are delivered as soon as the scope is
+ * closed. Only the minimal set of URIs is delivered: duplicates are dropped,
+ * as are the URIs whose ancestor is also delivered, since
+ * {@link ContentResolver#notifyChange(Uri, android.database.ContentObserver)}
+ * also notifies the observers of the descendants of a URI.
+ *
+ * <p>Keeps count of the notifications delivered and of those suppressed
+ * because they were coalesced with others, or because their scope was
+ * rolled back. {@link MovieProvider} publishes the counters through
+ * {@link MovieContract#METHOD_GET_NOTIFICATION_STATISTICS}.</p>
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+final class ChangeNotificationCoalescer {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = ChangeNotificationCoalescer.class.getSimpleName();
+
+    /**
+     * Used to deliver the notifications.
+     */
+    private final ContentResolver mContentResolver;
+
+    /**
+     * Time in milliseconds the changes made outside of a scope are held
+     * before being delivered.
+     */
+    private final long mWindowMillis;
+
+    /**
+     * Delivers the changes made outside of a scope once the window ends.
+     */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Delivers the pending changes, posted to {@link #mHandler}.
+     */
+    private final Runnable mFlushRunnable = this::flush;
+
+    /**
+     * The changes waiting to be delivered. Guarded by {@code this}.
+     */
+    private final Changes mPendingChanges = new Changes();
+
+    /**
+     * Whether {@link #mFlushRunnable} has been posted and not run yet.
+     * Guarded by {@code this}.
+     */
+    private boolean mFlushScheduled = false;
+
+    /**
+     * The changes made within the scope open on the calling thread, if any.
+     */
+    private final ThreadLocal<Changes> mScopeChanges = new ThreadLocal<>();
+
+    /**
+     * Number of notifications delivered.
+     */
+    private final AtomicLong mDeliveredCount = new AtomicLong();
+
+    /**
+     * Number of notifications requested but not delivered.
+     */
+    private final AtomicLong mSuppressedCount = new AtomicLong();
+
+    /**
+     * Creates a new instance of {@link ChangeNotificationCoalescer} that
+     * delivers the notifications through the {@link ContentResolver} passed
+     * as argument.
+     *
+     * @param contentResolver used to deliver the notifications.
+     * @param windowMillis time in milliseconds the changes made outside of a
+     *                     scope are held before being delivered.
+     */
+    ChangeNotificationCoalescer(ContentResolver contentResolver, long windowMillis) {
+        if (contentResolver == null) {
+            throw new IllegalArgumentException("The ContentResolver may not be null");
+        }
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("The window may not be negative: "
+                    + windowMillis);
+        }
+        mContentResolver = contentResolver;
+        mWindowMillis = windowMillis;
+    }
+
+    /**
+     * Requests the observers of the URI passed as argument, and of its
+     * descendants, to be notified that the data changed. If a scope is open
+     * on the calling thread, the notification is held until the scope is
+     * closed, otherwise until the window ends.
+     *
+     * @param uri the URI of the data that changed.
+     */
+    void notifyChange(Uri uri) {
+        Changes scopeChanges = mScopeChanges.get();
+        if (scopeChanges != null) {
+            scopeChanges.add(uri);
+            return;
+        }
+        synchronized (this) {
+            mPendingChanges.add(uri);
+            if (!mFlushScheduled) {
+                mFlushScheduled = true;
+                mHandler.postDelayed(mFlushRunnable, mWindowMillis);
+            }
+        }
+    }
+
+    /**
+     * Opens a scope on the calling thread. The notifications requested
+     * within the scope are held until it is closed.
+     *
+     * @throws IllegalStateException if a scope is already open on the
+     *     calling thread.
+     * @see #closeScope(boolean)
+     */
+    void openScope() {
+        if (mScopeChanges.get() != null) {
+            throw new IllegalStateException("A scope is already open on this thread");
+        }
+        mScopeChanges.set(new Changes());
+    }
+
+    /**
+     * Closes the scope open on the calling thread. If the changes made within
+     * it were committed, they are delivered right away, along with the
+     * pending ones. Otherwise, the data did not change and they are dropped.
+     *
+     * @param committed whether the changes made within the scope were
+     *                  committed.
+     * @throws IllegalStateException if no scope is open on the calling thread.
+     */
+    void closeScope(boolean committed) {
+        Changes scopeChanges = mScopeChanges.get();
+        if (scopeChanges == null) {
+            throw new IllegalStateException("No scope is open on this thread");
+        }
+        mScopeChanges.remove();
+        if (!committed) {
+            mSuppressedCount.addAndGet(scopeChanges.mRequestCount);
+            return;
+        }
+        synchronized (this) {
+            mPendingChanges.addAll(scopeChanges);
+        }
+        flush();
+    }
+
+    /**
+     * Delivers the pending changes right away.
+     */
+    void flush() {
+        List<Uri> uris;
+        int requestCount;
+        synchronized (this) {
+            mHandler.removeCallbacks(mFlushRunnable);
+            mFlushScheduled = false;
+            if (mPendingChanges.mRequestCount == 0) {
+                return;
+            }
+            uris = withoutDescendants(mPendingChanges.mUris);
+            requestCount = mPendingChanges.mRequestCount;
+            mPendingChanges.clear();
+        }
+        mDeliveredCount.addAndGet(uris.size());
+        mSuppressedCount.addAndGet(requestCount - uris.size());
+        for (Uri uri : uris) {
+            mContentResolver.notifyChange(uri, null);
+        }
+        Log.v(LOG_TAG, "Delivered " + uris.size() + " of " + requestCount
+                + " change notifications, total " + this);
+    }
+
+    /**
+     * Returns the URIs passed as argument, except those that descend from
+     * another one of them.
+     *
+     * @param uris the URIs, without duplicates.
+     * @return the URIs that do not descend from another one.
+     */
+    static List<Uri> withoutDescendants(Collection<Uri> uris) {
+        List<Uri> result = new ArrayList<>(uris.size());
+        for (Uri uri : uris) {
+            boolean descendant = false;
+            for (Uri other : uris) {
+                if (isAncestor(other, uri)) {
+                    descendant = true;
+                    break;
+                }
+            }
+            if (!descendant) {
+                result.add(uri);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns {@code true} if the first URI is a proper ancestor of the
+     * second one, that is, if they have the same scheme and authority, and
+     * the path segments of the first one are a proper prefix of those of the
+     * second one.
+     *
+     * @param ancestor the URI that may be the ancestor.
+     * @param uri the URI that may be the descendant.
+     * @return {@code true} if the first URI is a proper ancestor of the
+     *     second one.
+     */
+    static boolean isAncestor(Uri ancestor, Uri uri) {
+        if (!TextUtils.equals(ancestor.getScheme(), uri.getScheme())
+                || !TextUtils.equals(ancestor.getAuthority(), uri.getAuthority())) {
+            return false;
+        }
+        List<String> ancestorSegments = ancestor.getPathSegments();
+        List<String> segments = uri.getPathSegments();
+        return ancestorSegments.size() < segments.size()
+                && segments.subList(0, ancestorSegments.size()).equals(ancestorSegments);
+    }
+
+    /**
+     * Returns the number of notifications delivered so far.
+     *
+     * @return the number of notifications delivered.
+     */
+    long getDeliveredCount() {
+        return mDeliveredCount.get();
+    }
+
+    /**
+     * Returns the number of notifications requested so far that were not
+     * delivered, because they were coalesced with others or because their
+     * scope was rolled back. Those still pending are not included.
+     *
+     * @return the number of notifications suppressed.
+     */
+    long getSuppressedCount() {
+        return mSuppressedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "delivered: " + getDeliveredCount()
+                + ", suppressed: " + getSuppressedCount();
+    }
+
+    /**
+     * The URIs that changed, along with the number of notifications
+     * requested for them.
+     */
+    private static final class Changes {
+
+        /**
+         * The URIs that changed, without duplicates, in the order they were
+         * first requested.
+         */
+        private final Set<Uri> mUris = new LinkedHashSet<>();
+
+        /**
+         * The number of notifications requested, including duplicates.
+         */
+        private int mRequestCount = 0;
+
+        /**
+         * Records a notification requested for the URI passed as argument.
+         *
+         * @param uri the URI of the data that changed.
+         */
+        void add(Uri uri) {
+            mUris.add(uri);
+            mRequestCount++;
+        }
+
+        /**
+         * Records the notifications requested in the {@link Changes} passed
+         * as argument.
+         *
+         * @param changes the notifications to record.
+         */
+        void addAll(Changes changes) {
+            mUris.addAll(changes.mUris);
+            mRequestCount += changes.mRequestCount;
+        }
+
+        /**
+         * Forgets all the notifications requested.
+         */
+        void clear() {
+            mUris.clear();
+            mRequestCount = 0;
+        }
+
+    }
+
+}
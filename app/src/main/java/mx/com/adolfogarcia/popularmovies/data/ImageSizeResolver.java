@@ -0,0 +1,345 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.data;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Chooses, among the image sizes provided by
+ * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API, the
+ * one that best fits the width at which an image is displayed. The widths of
+ * the sizes of each type of image are parsed once, when the instance is
+ * created, into a sorted table that is binary searched on every lookup.
+ * Instances are immutable.
+ *
+ * <p>The widths requested are in pixels, so they already account for the
+ * density of the screen. At {@link ImageQuality#FULL} quality the size whose
+ * width is closest to the one requested is chosen, whatever the density: the
+ * image is displayed at the full resolution of the screen. At lower qualities
+ * the density taken into account is capped ({@link #REDUCED_MAX_DENSITY},
+ * {@link #LOW_MAX_DENSITY}), and the largest size that is not wider than the
+ * resulting width is chosen, so fewer bytes are downloaded on dense
+ * screens.</p>
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public final class ImageSizeResolver {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = ImageSizeResolver.class.getSimpleName();
+
+    /**
+     * Prefix of the code names of the sizes given by width, e.g. "w185".
+     */
+    private static final char WIDTH_PREFIX = 'w';
+
+    /**
+     * Code name of the size of the original image file.
+     */
+    public static final String ORIGINAL_SIZE_NAME = "original";
+
+    /**
+     * Highest density (as in {@link android.util.DisplayMetrics#density})
+     * for which images are downloaded at {@link ImageQuality#REDUCED}
+     * quality. Denser screens get images scaled up from this density (xhdpi).
+     */
+    public static final float REDUCED_MAX_DENSITY = 2.0f;
+
+    /**
+     * Highest density (as in {@link android.util.DisplayMetrics#density})
+     * for which images are downloaded at {@link ImageQuality#LOW} quality.
+     * Denser screens get images scaled up from this density (hdpi).
+     */
+    public static final float LOW_MAX_DENSITY = 1.5f;
+
+    /**
+     * The types of images for which sizes are provided by the RESTful API.
+     */
+    public enum ImageType {
+
+        /**
+         * The poster of a movie.
+         */
+        POSTER,
+
+        /**
+         * The backdrop of a movie.
+         */
+        BACKDROP,
+
+        /**
+         * The logo of a company.
+         */
+        LOGO,
+
+        /**
+         * The profile picture of a person.
+         */
+        PROFILE,
+
+        /**
+         * A still image of an episode.
+         */
+        STILL
+    }
+
+    /**
+     * The qualities at which the images may be downloaded, from highest to
+     * lowest.
+     */
+    public enum ImageQuality {
+
+        /**
+         * The size closest to the one displayed, in pixels, regardless of
+         * the density of the screen, e.g. on unmetered networks.
+         */
+        FULL,
+
+        /**
+         * A size no wider than the one displayed on an xhdpi screen, e.g. on
+         * metered networks.
+         */
+        REDUCED,
+
+        /**
+         * A size no wider than the one displayed on an hdpi screen, e.g. on
+         * slow networks or devices with little memory.
+         */
+        LOW
+    }
+
+    /**
+     * The density of the screen on which the images are displayed.
+     */
+    private final float mDensity;
+
+    /**
+     * The widths of the sizes available, in ascending order, by image type
+     * ordinal.
+     */
+    private final int[][] mWidths;
+
+    /**
+     * The code names of the sizes in {@link #mWidths}, in the same order, by
+     * image type ordinal.
+     */
+    private final String[][] mSizeNames;
+
+    /**
+     * The size used when none is given by width, by image type ordinal. Either
+     * {@link #ORIGINAL_SIZE_NAME} or {@code null} if it is not available.
+     */
+    private final String[] mFallbackSizeNames;
+
+    /**
+     * Creates a new instance of {@link ImageSizeResolver} for the sizes passed
+     * as argument. The sizes that are not given by width (e.g. "h632") are
+     * ignored, except for {@link #ORIGINAL_SIZE_NAME}, used when there are no
+     * others.
+     *
+     * @param sizes the code names of the sizes available, by image type. The
+     *              types missing have no sizes available.
+     * @param density the density of the screen on which the images are
+     *                displayed, as in
+     *                {@link android.util.DisplayMetrics#density}.
+     */
+    public ImageSizeResolver(Map<ImageType, ? extends Collection<String>> sizes
+            , float density) {
+        if (sizes == null) {
+            throw new IllegalArgumentException("The sizes may not be null");
+        }
+        if (density <= 0) {
+            throw new IllegalArgumentException("The density must be positive: " + density);
+        }
+        ImageType[] types = ImageType.values();
+        mDensity = density;
+        mWidths = new int[types.length][];
+        mSizeNames = new String[types.length][];
+        mFallbackSizeNames = new String[types.length];
+        for (ImageType type : types) {
+            Collection<String> typeSizes = sizes.get(type);
+            initSizeTable(type.ordinal()
+                    , typeSizes == null ? Collections.<String>emptyList() : typeSizes);
+        }
+    }
+
+    /**
+     * Parses the widths of the sizes passed as argument and stores them,
+     * sorted, in the tables of the image type.
+     *
+     * @param typeOrdinal the ordinal of the image type.
+     * @param sizeNames the code names of the sizes available.
+     */
+    private void initSizeTable(int typeOrdinal, Collection<String> sizeNames) {
+        long[] entries = new long[sizeNames.size()];
+        String[] names = sizeNames.toArray(new String[sizeNames.size()]);
+        int count = 0;
+        for (int i = 0; i < names.length; i++) {
+            int width = parseWidth(names[i]);
+            if (width > 0) {
+                // Sorts the widths along with the index of their names.
+                entries[count++] = ((long) width << Integer.SIZE) | i;
+            } else if (ORIGINAL_SIZE_NAME.equals(names[i])) {
+                mFallbackSizeNames[typeOrdinal] = ORIGINAL_SIZE_NAME;
+            } else {
+                Log.w(LOG_TAG, "Ignoring image size: " + names[i]);
+            }
+        }
+        Arrays.sort(entries, 0, count);
+        int[] widths = new int[count];
+        String[] sortedNames = new String[count];
+        for (int i = 0; i < count; i++) {
+            widths[i] = (int) (entries[i] >>> Integer.SIZE);
+            sortedNames[i] = names[(int) entries[i]];
+        }
+        mWidths[typeOrdinal] = widths;
+        mSizeNames[typeOrdinal] = sortedNames;
+    }
+
+    /**
+     * Returns the width of the size passed as argument, or {@code -1} if it
+     * is not given by width.
+     *
+     * @param sizeName the code name of the size, e.g. "w185".
+     * @return the width of the size in pixels, or {@code -1}.
+     */
+    static int parseWidth(String sizeName) {
+        if (sizeName == null || sizeName.length() < 2
+                || sizeName.charAt(0) != WIDTH_PREFIX) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(sizeName.substring(1));
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the code name of the size that best fits the width passed as
+     * argument, at the quality passed as argument.
+     *
+     * @param type the type of image.
+     * @param pixelWidth the width at which the image is displayed, in pixels
+     *                   (not dp).
+     * @param quality the quality at which the image is downloaded.
+     * @return the code name of the size that fits best, or {@code null} if
+     *     there are no sizes available for the type of image.
+     * @see #getBestSizeIndex(ImageType, int, ImageQuality)
+     */
+    public String getBestSizeName(ImageType type, int pixelWidth, ImageQuality quality) {
+        int index = getBestSizeIndex(type, pixelWidth, quality);
+        return index < 0
+                ? mFallbackSizeNames[type.ordinal()]
+                : mSizeNames[type.ordinal()][index];
+    }
+
+    /**
+     * Returns the index, in ascending order of width, of the size that best
+     * fits the width passed as argument, at the quality passed as argument.
+     * Lets callers keep values derived from each size (e.g. URL prefixes) in
+     * a table, instead of deriving them on every lookup.
+     *
+     * @param type the type of image.
+     * @param pixelWidth the width at which the image is displayed, in pixels
+     *                   (not dp).
+     * @param quality the quality at which the image is downloaded.
+     * @return the index of the size that fits best, less than
+     *     {@link #getSizeCount(ImageType)}, or {@code -1} if there are no sizes
+     *     given by width for the type of image.
+     * @see #getSizeName(ImageType, int)
+     */
+    int getBestSizeIndex(ImageType type, int pixelWidth, ImageQuality quality) {
+        int[] widths = mWidths[type.ordinal()];
+        if (widths.length == 0) {
+            return -1;
+        }
+        if (quality != ImageQuality.FULL) {
+            float maxDensity = quality == ImageQuality.REDUCED
+                    ? REDUCED_MAX_DENSITY
+                    : LOW_MAX_DENSITY;
+            int targetWidth = mDensity > maxDensity
+                    ? Math.round(pixelWidth * maxDensity / mDensity)
+                    : pixelWidth;
+            int index = Arrays.binarySearch(widths, targetWidth);
+            if (index >= 0) {
+                return index;
+            }
+            int insertionPoint = -index - 1;
+            return Math.max(insertionPoint - 1, 0);
+        }
+        int index = Arrays.binarySearch(widths, pixelWidth);
+        if (index >= 0) {
+            return index;
+        }
+        int insertionPoint = -index - 1;
+        if (insertionPoint == 0) {
+            return 0;
+        }
+        if (insertionPoint == widths.length) {
+            return widths.length - 1;
+        }
+        int narrowerDiff = pixelWidth - widths[insertionPoint - 1];
+        int widerDiff = widths[insertionPoint] - pixelWidth;
+        return widerDiff <= narrowerDiff ? insertionPoint : insertionPoint - 1;
+    }
+
+    /**
+     * Returns the number of sizes given by width available for the type of
+     * image passed as argument.
+     *
+     * @param type the type of image.
+     * @return the number of sizes given by width.
+     */
+    int getSizeCount(ImageType type) {
+        return mSizeNames[type.ordinal()].length;
+    }
+
+    /**
+     * Returns the code name of the size given by width at the index passed
+     * as argument, in ascending order of width.
+     *
+     * @param type the type of image.
+     * @param index the index of the size, less than
+     *              {@link #getSizeCount(ImageType)}.
+     * @return the code name of the size.
+     */
+    String getSizeName(ImageType type, int index) {
+        return mSizeNames[type.ordinal()][index];
+    }
+
+    /**
+     * Returns the code name of the smallest size available for the type of
+     * image passed as argument.
+     *
+     * @param type the type of image.
+     * @return the code name of the smallest size, or {@code null} if there
+     *     are no sizes available for the type of image.
+     */
+    public String getSmallestSizeName(ImageType type) {
+        String[] names = mSizeNames[type.ordinal()];
+        return names.length == 0 ? mFallbackSizeNames[type.ordinal()] : names[0];
+    }
+
+}
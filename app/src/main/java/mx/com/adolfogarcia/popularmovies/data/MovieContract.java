@@ -55,6 +55,47 @@ public final class MovieContract {
      */
     public static final String PATH_MOVIE_REVIEW = "review";
 
+    /**
+     * Path for the lists of movies, under {@link #PATH_MOVIE}.
+     */
+    public static final String PATH_LIST = "list";
+
+    /**
+     * Path for the entries of the lists of movies.
+     */
+    public static final String PATH_MOVIE_LIST_ENTRY = "list_entry";
+
+    /**
+     * Path for the retrieval state of the lists of movies.
+     */
+    public static final String PATH_MOVIE_LIST_STATE = "list_state";
+
+    /**
+     * Name of the method of the provider, invoked with
+     * {@link ContentResolver#call(Uri, String, String, android.os.Bundle)}
+     * on {@link #BASE_CONTENT_URI}, that returns how many change
+     * notifications were delivered to the observers and how many were
+     * suppressed, because they were coalesced with others or their batch was
+     * rolled back, since the provider was created.
+     *
+     * @see #EXTRA_DELIVERED_NOTIFICATIONS
+     * @see #EXTRA_SUPPRESSED_NOTIFICATIONS
+     */
+    public static final String METHOD_GET_NOTIFICATION_STATISTICS =
+            "get_notification_statistics";
+
+    /**
+     * Key of the number of change notifications delivered ({@code long}) in
+     * the reply to {@link #METHOD_GET_NOTIFICATION_STATISTICS}.
+     */
+    public static final String EXTRA_DELIVERED_NOTIFICATIONS = "delivered_notifications";
+
+    /**
+     * Key of the number of change notifications suppressed ({@code long}) in
+     * the reply to {@link #METHOD_GET_NOTIFICATION_STATISTICS}.
+     */
+    public static final String EXTRA_SUPPRESSED_NOTIFICATIONS = "suppressed_notifications";
+
     /**
      * This class only provides constants and utility methods.
      */
@@ -76,6 +117,15 @@ public final class MovieContract {
         public static final Uri CONTENT_URI =
                 BASE_CONTENT_URI.buildUpon().appendPath(PATH_MOVIE).build();
 
+        /**
+         * Base URI for the lists of movies. The observers of a list are
+         * notified when its entries change.
+         *
+         * @see #buildMovieListUri(String)
+         */
+        public static final Uri LIST_CONTENT_URI =
+                CONTENT_URI.buildUpon().appendPath(PATH_LIST).build();
+
         /**
          * Type for {@code content:} URIs with directories of chached movies.
          */
@@ -136,21 +186,16 @@ public final class MovieContract {
         public static final String COLUMN_VOTE_AVERAGE = "vote_average";
 
         /**
-         * Indicates that the move appears in the pages for most popular movies
-         * downloaded so far.
-         */
-        public static final String COLUMN_MOST_POPULAR = "most_popular";
-
-        /**
-         * Indicates that the move appears in the pages for highest rated movies
-         * downloaded so far.
+         * Indicates that the movie was marked as favorite by the user.
          */
-        public static final String COLUMN_HIGHEST_RATED = "highest_rated";
+        public static final String COLUMN_USER_FAVORITE = "user_favorite";
 
         /**
-         * Indicates that the movie was marked as favorite by the user.
+         * Time at which the movie's videos and reviews were last retrieved. A
+         * {@code long} representing the time in Epoch time format with
+         * milliseconds, or zero if they have never been retrieved.
          */
-        public static final String COLUMN_USER_FAVORITE = "user_favorite";
+        public static final String COLUMN_DETAILS_UPDATE_TIME = "details_update_time";
 
         /**
          * Returns the URI for a particular movie given its id.
@@ -188,6 +233,30 @@ public final class MovieContract {
                     .appendPath(PATH_MOVIE_REVIEW).build();
         }
 
+        /**
+         * Returns the URI for the movies in a list, in the list's order, given
+         * the list's key. The movies of the list are those of its entries in
+         * {@link MovieListEntry}.
+         *
+         * @param listKey the key of the list (e.g. the sort order used to
+         *                retrieve it from the RESTful API).
+         * @return the URI for the movies in the list.
+         */
+        public static Uri buildMovieListUri(String listKey) {
+            return LIST_CONTENT_URI.buildUpon().appendPath(listKey).build();
+        }
+
+        /**
+         * Extracts the list's key from a URI for the movies in a list.
+         *
+         * @param uri the URI from which the list's key will be extracted.
+         * @return the list's key.
+         * @see #buildMovieListUri(String)
+         */
+        public static String getListKeyFromUri(Uri uri) {
+            return uri.getPathSegments().get(2);
+        }
+
         /**
          * Extracts the movie's id from a movie videos URI or movie reviews URI.
          *
@@ -359,4 +428,125 @@ public final class MovieContract {
 
     }
 
+    /**
+     * Defines the contents of the table holding the entries of the lists of
+     * movies retrieved from the RESTful API (e.g. the most popular movies).
+     * Each entry places a movie at a position of a list, so the lists keep
+     * the order of the pages they were retrieved from, and a new kind of
+     * list only needs a new key.
+     *
+     * @author Jesús Adolfo García Pasquel
+     */
+    public static final class MovieListEntry implements BaseColumns {
+
+        /**
+         * Base URI for the entries of the lists of movies.
+         */
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_MOVIE_LIST_ENTRY).build();
+
+        /**
+         * Type for {@code content:} URIs with directories of list entries.
+         */
+        public static final String CONTENT_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY + "/" + PATH_MOVIE_LIST_ENTRY;
+
+        /**
+         * Name of the table containing the entries of the lists of movies.
+         */
+        public static final String TABLE_NAME = "list_entry";
+
+        /**
+         * Identifies the list the entry belongs to. The sort order used to
+         * retrieve the list from the RESTful API (e.g.
+         * {@code popularity.desc}).
+         */
+        public static final String COLUMN_LIST_KEY = "list_key";
+
+        /**
+         * The zero-based position of the movie in the list, as retrieved from
+         * the RESTful API. There may be gaps between positions.
+         */
+        public static final String COLUMN_POSITION = "position";
+
+        /**
+         * The movie's id in
+         * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API.
+         */
+        public static final String COLUMN_MOVIE_API_ID = "movie_api_id";
+
+        /**
+         * Returns the URI for a particular list entry given its id.
+         *
+         * @param id the entry's identifier.
+         * @return the URI for the list entry with the specified id.
+         */
+        public static Uri buildListEntryUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id);
+        }
+
+    }
+
+    /**
+     * Defines the contents of the table holding the state of the retrieval
+     * of each list of movies from the RESTful API, one row per list. It is
+     * updated in the same transaction as the entries of the list, so both
+     * remain consistent.
+     *
+     * @author Jesús Adolfo García Pasquel
+     */
+    public static final class MovieListStateEntry implements BaseColumns {
+
+        /**
+         * Base URI for the state of the lists of movies.
+         */
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_MOVIE_LIST_STATE).build();
+
+        /**
+         * Type for {@code content:} URIs with directories of list states.
+         */
+        public static final String CONTENT_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY + "/" + PATH_MOVIE_LIST_STATE;
+
+        /**
+         * Name of the table containing the state of the lists of movies.
+         */
+        public static final String TABLE_NAME = "list_state";
+
+        /**
+         * Identifies the list, as {@link MovieListEntry#COLUMN_LIST_KEY}.
+         */
+        public static final String COLUMN_LIST_KEY = "list_key";
+
+        /**
+         * The total number of pages of the list available in the RESTful API,
+         * as reported by the last page retrieved.
+         */
+        public static final String COLUMN_TOTAL_PAGES = "total_pages";
+
+        /**
+         * The number of the last page of an unbroken run of pages retrieved
+         * from the first one, or zero if none have been retrieved.
+         */
+        public static final String COLUMN_LAST_PAGE = "last_page";
+
+        /**
+         * The epoch time, in milliseconds, at which the last page was
+         * retrieved.
+         */
+        public static final String COLUMN_FETCH_TIME = "fetch_time";
+
+        /**
+         * Returns the URI for a particular list state given its id.
+         *
+         * @param id the state's identifier.
+         * @return the URI for the list state with the specified id.
+         */
+        public static Uri buildListStateUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id);
+        }
+
+    }
+
 }
@@ -16,16 +16,32 @@
 
 package mx.com.adolfogarcia.popularmovies.data;
 
+import android.annotation.TargetApi;
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.text.TextUtils;
+
+import mx.com.adolfogarcia.popularmovies.net.TheMovieDbApi;
+
 import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieEntry;
 import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieVideoEntry;
 import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieReviewEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListStateEntry;
 
 /**
  * Manages the creation and maintenance of the local movie database.
  *
+ * <p>The database uses write-ahead logging, so the queries of the loaders
+ * run on their own connections, concurrently with the long transactions of
+ * the bulk insertions, instead of waiting for them to finish. The number of
+ * connections is set by the platform.</p>
+ *
  * @author Jesús Adolfo García Pasquel.
  */
 public class MovieDbHelper extends SQLiteOpenHelper {
@@ -33,7 +49,7 @@ public class MovieDbHelper extends SQLiteOpenHelper {
     /**
      * Version number of the dabase.
      */
-    public static final int DATABASE_VERSION = 2;
+    public static final int DATABASE_VERSION = 7;
 
     /**
      * Name of the SQLite database file.
@@ -41,7 +57,51 @@ public class MovieDbHelper extends SQLiteOpenHelper {
     public static final String DATABASE_NAME = "movie.db";
 
     /**
-     * Statement used to create the table that holds the movie data.
+     * Number of pages the write-ahead log may grow to before it is written
+     * back into the database. Larger than the platform's default, so the
+     * checkpoints do not interrupt the insertion of a page of movies with its
+     * details several times, as they may have to wait for the readers.
+     */
+    private static final int WAL_AUTOCHECKPOINT_PAGES = 1000;
+
+    /**
+     * Size, in bytes, the write-ahead log file is truncated to after a
+     * checkpoint, so its size on disk is bounded.
+     */
+    private static final int JOURNAL_SIZE_LIMIT_BYTES = 1024 * 1024;
+
+    /**
+     * Column that flagged the movies among the most popular, up to version 5.
+     */
+    private static final String LEGACY_COLUMN_MOST_POPULAR = "most_popular";
+
+    /**
+     * Column that flagged the movies among the highest rated, up to version 5.
+     */
+    private static final String LEGACY_COLUMN_HIGHEST_RATED = "highest_rated";
+
+    /**
+     * The columns of the movie table, copied when the table is rebuilt.
+     */
+    private static final String[] MOVIE_COLUMNS = {
+            CachedMovieEntry._ID,
+            CachedMovieEntry.COLUMN_API_ID,
+            CachedMovieEntry.COLUMN_ORIGINAL_TITLE,
+            CachedMovieEntry.COLUMN_RELEASE_DATE,
+            CachedMovieEntry.COLUMN_OVERVIEW,
+            CachedMovieEntry.COLUMN_BACKDROP_PATH,
+            CachedMovieEntry.COLUMN_POSTER_PATH,
+            CachedMovieEntry.COLUMN_POPULARITY,
+            CachedMovieEntry.COLUMN_VOTE_AVERAGE,
+            CachedMovieEntry.COLUMN_USER_FAVORITE,
+            CachedMovieEntry.COLUMN_DETAILS_UPDATE_TIME
+    };
+
+    /**
+     * Statement used to create the table that holds the movie data. Conflicts
+     * on the movie's identifier abort the insertion, as
+     * {@link MovieProvider} updates the existing row instead, keeping its id
+     * and the columns not included in the new values.
      */
     private static final String SQL_CREATE_MOVIE_TABLE =
             "CREATE TABLE " + CachedMovieEntry.TABLE_NAME + " ("
@@ -54,17 +114,10 @@ public class MovieDbHelper extends SQLiteOpenHelper {
             + CachedMovieEntry.COLUMN_POSTER_PATH + " TEXT, "
             + CachedMovieEntry.COLUMN_POPULARITY + " REAL NOT NULL, "
             + CachedMovieEntry.COLUMN_VOTE_AVERAGE + " REAL NOT NULL, "
-            + CachedMovieEntry.COLUMN_MOST_POPULAR + " BOOLEAN NOT NULL DEFAULT 0, "
-            + CachedMovieEntry.COLUMN_HIGHEST_RATED + " BOOLEAN NOT NULL DEFAULT 0, "
             + CachedMovieEntry.COLUMN_USER_FAVORITE + " BOOLEAN NOT NULL DEFAULT 0, "
-            + "UNIQUE (" + CachedMovieEntry.COLUMN_API_ID + ") ON CONFLICT REPLACE"
+            + CachedMovieEntry.COLUMN_DETAILS_UPDATE_TIME + " INTEGER NOT NULL DEFAULT 0, "
+            + "UNIQUE (" + CachedMovieEntry.COLUMN_API_ID + ")"
             + ");";
-    // TODO: Instead of ON CONFLICT REPLACE, take care of conflicts on insertion.
-    //       That is, use INSERT OR REPLACE when re-downloading data and
-    //       mind keeping the value of columns: COLUMN_MOST_POPULAR,
-    //       COLUMN_HIGHEST_RATED and COLUMN_USER_FAVORITE.
-    //       Add tests to verify this is the case.
-
 
     /**
      * Statement used to create the table that holds the movie related
@@ -82,7 +135,7 @@ public class MovieDbHelper extends SQLiteOpenHelper {
             + CachedMovieVideoEntry.COLUMN_SIZE + " INTEGER, "
             + CachedMovieVideoEntry.COLUMN_TYPE + " TEXT, "
             + "UNIQUE (" + CachedMovieVideoEntry.COLUMN_MOVIE_API_ID + ", "
-                    + CachedMovieVideoEntry.COLUMN_API_ID + ") ON CONFLICT REPLACE"
+                    + CachedMovieVideoEntry.COLUMN_API_ID + ")"
             + ");";
 
     /**
@@ -97,9 +150,73 @@ public class MovieDbHelper extends SQLiteOpenHelper {
             + CachedMovieReviewEntry.COLUMN_CONTENT + " TEXT, "
             + CachedMovieReviewEntry.COLUMN_URL + " TEXT, "
             + "UNIQUE (" + CachedMovieReviewEntry.COLUMN_MOVIE_API_ID + ", "
-                    + CachedMovieReviewEntry.COLUMN_API_ID + ") ON CONFLICT REPLACE"
+                    + CachedMovieReviewEntry.COLUMN_API_ID + ")"
             + ");";
 
+    /**
+     * Statement used to create the table that holds the entries of the lists
+     * of movies. An entry is identified by its list and position.
+     */
+    private static final String SQL_CREATE_MOVIE_LIST_ENTRY_TABLE =
+            "CREATE TABLE " + MovieListEntry.TABLE_NAME + " ("
+            + MovieListEntry._ID + " INTEGER PRIMARY KEY, "
+            + MovieListEntry.COLUMN_LIST_KEY + " TEXT NOT NULL, "
+            + MovieListEntry.COLUMN_POSITION + " INTEGER NOT NULL, "
+            + MovieListEntry.COLUMN_MOVIE_API_ID + " INTEGER NOT NULL, "
+            + "UNIQUE (" + MovieListEntry.COLUMN_LIST_KEY + ", "
+                    + MovieListEntry.COLUMN_POSITION + ")"
+            + ");";
+
+    /**
+     * Statement used to create the table that holds the retrieval state of
+     * the lists of movies, one row per list.
+     */
+    private static final String SQL_CREATE_MOVIE_LIST_STATE_TABLE =
+            "CREATE TABLE " + MovieListStateEntry.TABLE_NAME + " ("
+            + MovieListStateEntry._ID + " INTEGER PRIMARY KEY, "
+            + MovieListStateEntry.COLUMN_LIST_KEY + " TEXT NOT NULL, "
+            + MovieListStateEntry.COLUMN_TOTAL_PAGES + " INTEGER NOT NULL, "
+            + MovieListStateEntry.COLUMN_LAST_PAGE + " INTEGER NOT NULL DEFAULT 0, "
+            + MovieListStateEntry.COLUMN_FETCH_TIME + " INTEGER NOT NULL DEFAULT 0, "
+            + "UNIQUE (" + MovieListStateEntry.COLUMN_LIST_KEY + ")"
+            + ");";
+
+    /**
+     * Name of the index used to read the movies of a list, in order.
+     */
+    static final String INDEX_LIST_ENTRY_MOVIES = "list_entry_movies";
+
+    /**
+     * Name of the index used to query the user's favorite movies' posters.
+     */
+    static final String INDEX_USER_FAVORITE_POSTERS = "movie_user_favorite_posters";
+
+    /**
+     * Statements used to create the indices that cover the queries of the
+     * poster grid. The entries of a list are read as a range of
+     * {@link #INDEX_LIST_ENTRY_MOVIES}, already in order, which plays the
+     * role of a clustered index on the list and position (tables without a
+     * row id are not available on all the supported versions), and their
+     * movies are looked up by identifier. The favorite movies are read from
+     * {@link #INDEX_USER_FAVORITE_POSTERS}, where the ties are broken by
+     * {@link CachedMovieEntry#_ID}, so no sorting is needed either. The
+     * joins of the movies with their videos and reviews already use the
+     * indices created for the {@code UNIQUE} constraints, led by the movie's
+     * identifier.
+     */
+    private static final String[] SQL_CREATE_POSTER_INDICES = {
+            "CREATE INDEX " + INDEX_LIST_ENTRY_MOVIES
+                    + " ON " + MovieListEntry.TABLE_NAME + " ("
+                    + MovieListEntry.COLUMN_LIST_KEY + ", "
+                    + MovieListEntry.COLUMN_POSITION + ", "
+                    + MovieListEntry.COLUMN_MOVIE_API_ID + ");",
+            "CREATE INDEX " + INDEX_USER_FAVORITE_POSTERS
+                    + " ON " + CachedMovieEntry.TABLE_NAME + " ("
+                    + CachedMovieEntry.COLUMN_USER_FAVORITE + ", "
+                    + CachedMovieEntry._ID + ", "
+                    + CachedMovieEntry.COLUMN_POSTER_PATH + ");"
+    };
+
     /**
      * Creates a new instance of {@link MovieDbHelper}.
      *
@@ -107,6 +224,41 @@ public class MovieDbHelper extends SQLiteOpenHelper {
      */
     public MovieDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            enableWriteAheadLogging();
+        }
+    }
+
+    /**
+     * Opens the database in write-ahead logging mode, from its creation.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void enableWriteAheadLogging() {
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Enables write-ahead logging on versions of the platform where it may
+     * not be enabled before the database is opened, and sets the checkpoint
+     * policy of the log.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (db.isReadOnly()) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            db.enableWriteAheadLogging();
+        }
+        // Both settings belong to the connection, not the file, so they are
+        // set every time it is opened. onOpen runs on the primary connection,
+        // the only one that commits and hence runs the automatic checkpoints.
+        // The PRAGMAs return the new value, which execSQL does not allow.
+        DatabaseUtils.longForQuery(db
+                , "PRAGMA wal_autocheckpoint = " + WAL_AUTOCHECKPOINT_PAGES, null);
+        DatabaseUtils.longForQuery(db
+                , "PRAGMA journal_size_limit = " + JOURNAL_SIZE_LIMIT_BYTES, null);
     }
 
     @Override
@@ -114,14 +266,131 @@ public class MovieDbHelper extends SQLiteOpenHelper {
         db.execSQL(SQL_CREATE_MOVIE_TABLE);
         db.execSQL(SQL_CREATE_MOVIE_VIDEO_TABLE);
         db.execSQL(SQL_CREATE_MOVIE_REVIEW_TABLE);
+        db.execSQL(SQL_CREATE_MOVIE_LIST_ENTRY_TABLE);
+        db.execSQL(SQL_CREATE_MOVIE_LIST_STATE_TABLE);
+        createPosterIndices(db);
     }
 
+    /**
+     * Upgrades the database one version at a time, so the data is kept.
+     * Databases older than version 4 are recreated, as their tables replaced
+     * the rows on conflict and the lists stored in them may be incomplete.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + CachedMovieEntry.TABLE_NAME);
-        db.execSQL("DROP TABLE IF EXISTS " + CachedMovieVideoEntry.TABLE_NAME);
-        db.execSQL("DROP TABLE IF EXISTS " + CachedMovieReviewEntry.TABLE_NAME);
-        onCreate(db);
+        if (oldVersion < 4) {
+            db.execSQL("DROP TABLE IF EXISTS " + CachedMovieEntry.TABLE_NAME);
+            db.execSQL("DROP TABLE IF EXISTS " + CachedMovieVideoEntry.TABLE_NAME);
+            db.execSQL("DROP TABLE IF EXISTS " + CachedMovieReviewEntry.TABLE_NAME);
+            db.execSQL("DROP TABLE IF EXISTS " + MovieListEntry.TABLE_NAME);
+            db.execSQL("DROP TABLE IF EXISTS " + MovieListStateEntry.TABLE_NAME);
+            onCreate(db);
+            return;
+        }
+        if (oldVersion < 6) {
+            // Also creates the poster indices, added on version 5
+            moveListFlagsToEntries(db);
+        }
+        if (oldVersion < 7) {
+            createListStates(db);
+        }
+    }
+
+    /**
+     * Creates the table of the retrieval state of the lists, used since
+     * version 7, with a row for each list that has entries. The number of
+     * the last page retrieved is that of the full pages of entries, and the
+     * total number of pages remains unknown until the next page is
+     * retrieved. The state kept in the preferences before is not read, as it
+     * was not written along with the entries and may not match them.
+     *
+     * @param db the database to upgrade.
+     */
+    private static void createListStates(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_MOVIE_LIST_STATE_TABLE);
+        db.execSQL("INSERT INTO " + MovieListStateEntry.TABLE_NAME + " ("
+                + MovieListStateEntry.COLUMN_LIST_KEY + ", "
+                + MovieListStateEntry.COLUMN_TOTAL_PAGES + ", "
+                + MovieListStateEntry.COLUMN_LAST_PAGE + ")"
+                + " SELECT " + MovieListEntry.COLUMN_LIST_KEY + ", "
+                + Integer.MAX_VALUE + ", "
+                + "COUNT(*) / " + TheMovieDbApi.MOVIES_PER_PAGE
+                + " FROM " + MovieListEntry.TABLE_NAME
+                + " GROUP BY " + MovieListEntry.COLUMN_LIST_KEY);
+    }
+
+    /**
+     * Moves the membership of the movies in the lists from the columns that
+     * flagged them, used up to version 5, to the list entries. The position
+     * of each movie is given by the order the list used to be sorted by.
+     * The movie table is then rebuilt without those columns.
+     *
+     * @param db the database to upgrade.
+     */
+    private static void moveListFlagsToEntries(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_MOVIE_LIST_ENTRY_TABLE);
+        copyListFlagToEntries(db, LEGACY_COLUMN_MOST_POPULAR
+                , CachedMovieEntry.COLUMN_POPULARITY
+                , TheMovieDbApi.SORT_BY_POPULARITY);
+        copyListFlagToEntries(db, LEGACY_COLUMN_HIGHEST_RATED
+                , CachedMovieEntry.COLUMN_VOTE_AVERAGE
+                , TheMovieDbApi.SORT_BY_USER_RATING);
+        String legacyTableName = CachedMovieEntry.TABLE_NAME + "_v5";
+        String columns = TextUtils.join(", ", MOVIE_COLUMNS);
+        db.execSQL("ALTER TABLE " + CachedMovieEntry.TABLE_NAME
+                + " RENAME TO " + legacyTableName);
+        db.execSQL(SQL_CREATE_MOVIE_TABLE);
+        db.execSQL("INSERT INTO " + CachedMovieEntry.TABLE_NAME + " (" + columns + ")"
+                + " SELECT " + columns + " FROM " + legacyTableName);
+        // Drops the indices of the legacy table too, so they can be created
+        db.execSQL("DROP TABLE " + legacyTableName);
+        createPosterIndices(db);
+    }
+
+    /**
+     * Adds an entry to the list with the key passed as argument for each
+     * movie flagged by the column passed as argument, in descending order of
+     * the column the list used to be sorted by.
+     *
+     * @param db the database to upgrade.
+     * @param flagColumnName the column that flagged the movies in the list.
+     * @param orderColumnName the column the list used to be sorted by.
+     * @param listKey the key of the list.
+     */
+    private static void copyListFlagToEntries(SQLiteDatabase db
+            , String flagColumnName
+            , String orderColumnName
+            , String listKey) {
+        Cursor cursor = db.query(CachedMovieEntry.TABLE_NAME
+                , new String[] {CachedMovieEntry.COLUMN_API_ID}
+                , flagColumnName + " != 0"
+                , null
+                , null
+                , null
+                , orderColumnName + " DESC, " + CachedMovieEntry._ID + " ASC");
+        ContentValues entry = new ContentValues();
+        try {
+            for (int position = 0; cursor.moveToNext(); position++) {
+                entry.put(MovieListEntry.COLUMN_LIST_KEY, listKey);
+                entry.put(MovieListEntry.COLUMN_POSITION, position);
+                entry.put(MovieListEntry.COLUMN_MOVIE_API_ID, cursor.getLong(0));
+                db.insert(MovieListEntry.TABLE_NAME, null, entry);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Creates the indices that cover the queries of the poster grid.
+     *
+     * @param db the database to create the indices in.
+     * @see #SQL_CREATE_POSTER_INDICES
+     */
+    private static void createPosterIndices(SQLiteDatabase db) {
+        for (String statement : SQL_CREATE_POSTER_INDICES) {
+            db.execSQL(statement);
+        }
     }
 
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.data;
+
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListStateEntry;
+
+/**
+ * The state of the retrieval of a list of movies from the RESTful API, as
+ * stored in {@link MovieListStateEntry}. Instances are immutable.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public final class MovieListState {
+
+    /**
+     * The state of a list none of whose pages have been retrieved. The total
+     * number of pages is unknown, so it is assumed to be unbounded.
+     */
+    public static final MovieListState EMPTY = new MovieListState(0, Integer.MAX_VALUE, 0);
+
+    /**
+     * The number of the last page of an unbroken run of pages retrieved.
+     */
+    private final int mLastPage;
+
+    /**
+     * The total number of pages of the list available in the RESTful API.
+     */
+    private final int mTotalPages;
+
+    /**
+     * The epoch time, in milliseconds, at which the last page was retrieved.
+     */
+    private final long mFetchTime;
+
+    /**
+     * Creates a new instance of {@link MovieListState}.
+     *
+     * @param lastPage the number of the last page of an unbroken run of pages
+     *                 retrieved, or zero if none have been retrieved.
+     * @param totalPages the total number of pages available.
+     * @param fetchTime the epoch time, in milliseconds, at which the last
+     *                  page was retrieved.
+     */
+    public MovieListState(int lastPage, int totalPages, long fetchTime) {
+        mLastPage = lastPage;
+        mTotalPages = totalPages;
+        mFetchTime = fetchTime;
+    }
+
+    /**
+     * Returns the number of the last page of an unbroken run of pages
+     * retrieved from the first one, or zero if none have been retrieved.
+     *
+     * @return the number of the last page retrieved.
+     */
+    public int getLastPage() {
+        return mLastPage;
+    }
+
+    /**
+     * Returns the total number of pages of the list available in the RESTful
+     * API, as reported by the last page retrieved.
+     *
+     * @return the total number of pages available.
+     */
+    public int getTotalPages() {
+        return mTotalPages;
+    }
+
+    /**
+     * Returns the epoch time, in milliseconds, at which the last page was
+     * retrieved, or zero if unknown.
+     *
+     * @return the time at which the last page was retrieved.
+     */
+    public long getFetchTime() {
+        return mFetchTime;
+    }
+
+    /**
+     * Returns {@code true} if all the pages available have been retrieved.
+     *
+     * @return {@code true} if there are no more pages to retrieve.
+     */
+    public boolean isComplete() {
+        return mTotalPages <= mLastPage;
+    }
+
+    @Override
+    public String toString() {
+        return "last page: " + mLastPage
+                + ", total pages: " + mTotalPages
+                + ", fetch time: " + mFetchTime;
+    }
+
+}
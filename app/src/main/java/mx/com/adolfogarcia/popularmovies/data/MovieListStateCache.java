@@ -0,0 +1,206 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListStateEntry;
+
+/**
+ * In-memory copy of the retrieval state of the lists of movies stored by
+ * {@link MovieProvider}, so it can be read on every scroll event without
+ * querying the database. The copy is reloaded, all the lists at once, on a
+ * background thread when the provider notifies a change of the states.
+ * Meanwhile, the previous copy is read, so reading it never waits for the
+ * database, except for the first read if the states have not been loaded yet.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class MovieListStateCache {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = MovieListStateCache.class.getSimpleName();
+
+    /**
+     * Columns read from {@link MovieProvider}.
+     */
+    private static final String[] PROJECTION_LIST_STATE = {
+            MovieListStateEntry.COLUMN_LIST_KEY,
+            MovieListStateEntry.COLUMN_LAST_PAGE,
+            MovieListStateEntry.COLUMN_TOTAL_PAGES,
+            MovieListStateEntry.COLUMN_FETCH_TIME
+    };
+
+    /**
+     * Used to query the states.
+     */
+    private final ContentResolver mContentResolver;
+
+    /**
+     * The states of the lists, by key. Replaced, never modified, when
+     * reloaded.
+     */
+    private volatile Map<String, MovieListState> mStates = Collections.emptyMap();
+
+    /**
+     * The thread on which the states are reloaded, one reload at a time.
+     */
+    private final ExecutorService mReloadExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Reloads the states, executed on {@link #mReloadExecutor}.
+     */
+    private final Runnable mReloadRunnable = this::reload;
+
+    /**
+     * Whether a reload has been scheduled and has not started yet, so the
+     * changes notified in a burst cause a single reload.
+     */
+    private final AtomicBoolean mReloadScheduled = new AtomicBoolean(false);
+
+    /**
+     * Released once the states have been loaded for the first time.
+     */
+    private final CountDownLatch mFirstLoad = new CountDownLatch(1);
+
+    /**
+     * Creates a new instance of {@link MovieListStateCache} that reads the
+     * states through the {@link Context} passed as argument, starts loading
+     * them in the background, and starts observing their changes.
+     *
+     * @param context the {@link Context} used to access {@link MovieProvider}.
+     */
+    public MovieListStateCache(Context context) {
+        if (context == null) {
+            throw new IllegalArgumentException("The context may not be null");
+        }
+        mContentResolver = context.getContentResolver();
+        mContentResolver.registerContentObserver(MovieListStateEntry.CONTENT_URI, true
+                , new ContentObserver(null) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        invalidate();
+                    }
+                });
+        invalidate();
+    }
+
+    /**
+     * Returns the retrieval state of the list passed as argument, or
+     * {@link MovieListState#EMPTY} if none of its pages have been retrieved.
+     * The state may be that of the previous copy while a reload is pending.
+     *
+     * @param listKey the key of the list, the sort order used to retrieve it
+     *                from the RESTful API.
+     * @return the state of the list.
+     */
+    public MovieListState get(String listKey) {
+        if (mFirstLoad.getCount() > 0) {
+            awaitFirstLoad();
+        }
+        MovieListState state = mStates.get(listKey);
+        return state == null ? MovieListState.EMPTY : state;
+    }
+
+    /**
+     * Reloads the states from {@link MovieProvider} in the background. Called
+     * when the provider notifies a change, and by those that change the
+     * states without waiting for the notification to be delivered.
+     */
+    public void invalidate() {
+        if (mReloadScheduled.compareAndSet(false, true)) {
+            mReloadExecutor.execute(mReloadRunnable);
+        }
+    }
+
+    /**
+     * Discards the states right away, as if none of the pages of any list had
+     * been retrieved, and reloads them in the background. Called by those
+     * that delete all the states, so they are not read again until reloaded.
+     */
+    public void clear() {
+        mStates = Collections.emptyMap();
+        invalidate();
+    }
+
+    /**
+     * Waits until the states have been loaded for the first time.
+     */
+    private void awaitFirstLoad() {
+        try {
+            mFirstLoad.await();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits until the reloads scheduled so far have finished. Used by the
+     * tests.
+     *
+     * @throws Exception if interrupted while waiting.
+     */
+    void awaitReload() throws Exception {
+        mReloadExecutor.submit(() -> { }).get();
+    }
+
+    /**
+     * Reads the states of all the lists from {@link MovieProvider} and
+     * replaces the copy with them. A change notified while reading schedules
+     * another reload.
+     */
+    private void reload() {
+        mReloadScheduled.set(false);
+        Cursor cursor = mContentResolver.query(MovieListStateEntry.CONTENT_URI
+                , PROJECTION_LIST_STATE
+                , null
+                , null
+                , null);
+        if (cursor == null) {
+            Log.w(LOG_TAG, "Unable to read the state of the lists.");
+            mFirstLoad.countDown();
+            return;
+        }
+        Map<String, MovieListState> states = new HashMap<>();
+        try {
+            while (cursor.moveToNext()) {
+                states.put(cursor.getString(0), new MovieListState(cursor.getInt(1)
+                        , cursor.getInt(2)
+                        , cursor.getLong(3)));
+            }
+        } finally {
+            cursor.close();
+        }
+        mStates = states;
+        mFirstLoad.countDown();
+    }
+
+}
@@ -17,18 +17,29 @@
 package mx.com.adolfogarcia.popularmovies.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
 import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieEntry;
 import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieReviewEntry;
 import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieVideoEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListStateEntry;
 
 /**
  * Provides access to the data used by the application. This includes cached
@@ -49,6 +60,11 @@ public class MovieProvider extends ContentProvider {
      */
     static final int CACHED_MOVIE_ID = 200;
 
+    /**
+     * Identifies a query for the cached movies in a list, by the list's key.
+     */
+    static final int CACHED_MOVIE_LIST = 150;
+
     /**
      * Identifies a query for all the cached videos of all movies.
      */
@@ -83,6 +99,15 @@ public class MovieProvider extends ContentProvider {
      */
     static final int CACHED_REVIEW_ID = 600;
 
+    /**
+     * Identifies a query for all the entries of all the lists of movies.
+     */
+    static final int MOVIE_LIST_ENTRY = 700;
+
+    /**
+     * Identifies a query for the retrieval state of all the lists of movies.
+     */
+    static final int MOVIE_LIST_STATE = 800;
 
     /**
      * Selection for a cached movie queried by id.
@@ -118,6 +143,34 @@ public class MovieProvider extends ContentProvider {
     private static final String SELECTION_CACHED_MOVIE_REVIEWS =
             CachedMovieEntry.TABLE_NAME + "." + CachedMovieEntry._ID + " = ? ";
 
+    /**
+     * Selection for the entries of a specific list of movies, queried by the
+     * list's key.
+     */
+    static final String SELECTION_MOVIE_LIST =
+            MovieListEntry.TABLE_NAME + "." + MovieListEntry.COLUMN_LIST_KEY + " = ? ";
+
+    /**
+     * Order of the movies in a list, used if the query specifies none.
+     */
+    private static final String ORDER_MOVIE_LIST_POSITION =
+            MovieListEntry.TABLE_NAME + "." + MovieListEntry.COLUMN_POSITION + " ASC";
+
+    /**
+     * The tables joined to query the movies in a list: the entries of the
+     * list, read in order, and the movies they refer to.
+     */
+    static final String MOVIE_LIST_TABLES = MovieListEntry.TABLE_NAME
+            + " INNER JOIN " + CachedMovieEntry.TABLE_NAME
+            + " ON " + MovieListEntry.TABLE_NAME + "." + MovieListEntry.COLUMN_MOVIE_API_ID
+            + " = " + CachedMovieEntry.TABLE_NAME + "." + CachedMovieEntry.COLUMN_API_ID;
+
+    /**
+     * Time in milliseconds the change notifications are held, so those sent
+     * within it are coalesced (e.g. while a list is being ingested).
+     */
+    static final long NOTIFICATION_WINDOW_MS = 100;
+
     /**
      * Used to match URIs to queries and their result type.
      */
@@ -187,11 +240,94 @@ public class MovieProvider extends ContentProvider {
                 + "." + CachedMovieReviewEntry.COLUMN_MOVIE_API_ID);
     }
 
+    /**
+     * Used to query the cached movies in a list.
+     */
+    private static SQLiteQueryBuilder sMovieListQueryBuilder;
+
+    static {
+        sMovieListQueryBuilder = new SQLiteQueryBuilder();
+        sMovieListQueryBuilder.setTables(MOVIE_LIST_TABLES);
+    }
+
+    /**
+     * Used to query the entries of the lists of movies.
+     */
+    private static SQLiteQueryBuilder sListEntryQueryBuilder;
+
+    static {
+        sListEntryQueryBuilder = new SQLiteQueryBuilder();
+        sListEntryQueryBuilder.setTables(MovieListEntry.TABLE_NAME);
+    }
+
+    /**
+     * Used to query the retrieval state of the lists of movies.
+     */
+    private static SQLiteQueryBuilder sListStateQueryBuilder;
+
+    static {
+        sListStateQueryBuilder = new SQLiteQueryBuilder();
+        sListStateQueryBuilder.setTables(MovieListStateEntry.TABLE_NAME);
+    }
+
+    /**
+     * Stores cached movies, identified by their identifier in
+     * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API.
+     */
+    private static final RowUpserter sMovieUpserter =
+            new RowUpserter(CachedMovieEntry.TABLE_NAME, CachedMovieEntry.COLUMN_API_ID);
+
+    /**
+     * Stores cached movie videos, identified by the identifier of the movie
+     * and their own, in the RESTful API.
+     */
+    private static final RowUpserter sVideoUpserter =
+            new RowUpserter(CachedMovieVideoEntry.TABLE_NAME
+                    , CachedMovieVideoEntry.COLUMN_MOVIE_API_ID
+                    , CachedMovieVideoEntry.COLUMN_API_ID);
+
+    /**
+     * Stores cached movie reviews, identified by the identifier of the movie
+     * and their own, in the RESTful API.
+     */
+    private static final RowUpserter sReviewUpserter =
+            new RowUpserter(CachedMovieReviewEntry.TABLE_NAME
+                    , CachedMovieReviewEntry.COLUMN_MOVIE_API_ID
+                    , CachedMovieReviewEntry.COLUMN_API_ID);
+
+    /**
+     * Stores the entries of the lists of movies, identified by their list
+     * and position.
+     */
+    private static final RowUpserter sListEntryUpserter =
+            new RowUpserter(MovieListEntry.TABLE_NAME
+                    , MovieListEntry.COLUMN_LIST_KEY
+                    , MovieListEntry.COLUMN_POSITION);
+
+    /**
+     * Stores the retrieval state of the lists of movies, identified by their
+     * list.
+     */
+    private static final RowUpserter sListStateUpserter =
+            new RowUpserter(MovieListStateEntry.TABLE_NAME, MovieListStateEntry.COLUMN_LIST_KEY);
+
     /**
      * Used to get access and initialize the database.
      */
     private MovieDbHelper mOpenHelper;
 
+    /**
+     * Coalesces the change notifications sent while the data is ingested.
+     */
+    private ChangeNotificationCoalescer mChangeNotifier;
+
+    /**
+     * The batch of operations being applied by the calling thread, if any.
+     *
+     * @see #applyBatch(ArrayList)
+     */
+    private final ThreadLocal<OperationBatch> mCurrentBatch = new ThreadLocal<>();
+
     /**
      * Returns a new instance of {@link UriMatcher} that maps URIs to the
      * equivalent constants used by the provider.
@@ -199,10 +335,13 @@ public class MovieProvider extends ContentProvider {
      * @return a new instance of {@link UriMatcher}.
      * @see #CACHED_MOVIE
      * @see #CACHED_MOVIE_ID
+     * @see #CACHED_MOVIE_LIST
      * @see #CACHED_VIDEO
      * @see #CACHED_VIDEO_ID
      * @see #CACHED_REVIEW
      * @see #CACHED_REVIEW_ID
+     * @see #MOVIE_LIST_ENTRY
+     * @see #MOVIE_LIST_STATE
      */
     static UriMatcher buildUriMatcher() {
         UriMatcher uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
@@ -212,6 +351,9 @@ public class MovieProvider extends ContentProvider {
         uriMatcher.addURI(MovieContract.CONTENT_AUTHORITY
                 , MovieContract.PATH_MOVIE + "/#"
                 , MovieProvider.CACHED_MOVIE_ID);
+        uriMatcher.addURI(MovieContract.CONTENT_AUTHORITY
+                , MovieContract.PATH_MOVIE + "/" + MovieContract.PATH_LIST + "/*"
+                , MovieProvider.CACHED_MOVIE_LIST);
         uriMatcher.addURI(MovieContract.CONTENT_AUTHORITY
                 , MovieContract.PATH_MOVIE_VIDEO
                 , MovieProvider.CACHED_VIDEO);
@@ -230,12 +372,20 @@ public class MovieProvider extends ContentProvider {
         uriMatcher.addURI(MovieContract.CONTENT_AUTHORITY
                 , MovieContract.PATH_MOVIE + "/#/" + MovieContract.PATH_MOVIE_REVIEW
                 , MovieProvider.CACHED_MOVIE_REVIEW);
+        uriMatcher.addURI(MovieContract.CONTENT_AUTHORITY
+                , MovieContract.PATH_MOVIE_LIST_ENTRY
+                , MovieProvider.MOVIE_LIST_ENTRY);
+        uriMatcher.addURI(MovieContract.CONTENT_AUTHORITY
+                , MovieContract.PATH_MOVIE_LIST_STATE
+                , MovieProvider.MOVIE_LIST_STATE);
         return uriMatcher;
     }
 
     @Override
     public boolean onCreate() {
         mOpenHelper = new MovieDbHelper(getContext());
+        mChangeNotifier = new ChangeNotificationCoalescer(getContext().getContentResolver()
+                , NOTIFICATION_WINDOW_MS);
         return true;
     }
 
@@ -246,6 +396,8 @@ public class MovieProvider extends ContentProvider {
                 return CachedMovieEntry.CONTENT_TYPE;
             case CACHED_MOVIE_ID:
                 return CachedMovieEntry.CONTENT_ITEM_TYPE;
+            case CACHED_MOVIE_LIST:
+                return CachedMovieEntry.CONTENT_TYPE;
             case CACHED_VIDEO:
                 return CachedMovieVideoEntry.CONTENT_TYPE;
             case CACHED_VIDEO_ID:
@@ -258,6 +410,10 @@ public class MovieProvider extends ContentProvider {
                 return CachedMovieVideoEntry.CONTENT_TYPE;
             case CACHED_MOVIE_REVIEW:
                 return CachedMovieReviewEntry.CONTENT_TYPE;
+            case MOVIE_LIST_ENTRY:
+                return MovieListEntry.CONTENT_TYPE;
+            case MOVIE_LIST_STATE:
+                return MovieListStateEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown: " + uri);
         }
@@ -277,6 +433,9 @@ public class MovieProvider extends ContentProvider {
             case CACHED_MOVIE_ID:
                 retCursor = getMovieById(uri, projection);
                 break;
+            case CACHED_MOVIE_LIST:
+                retCursor = getMovieList(uri, projection, selection, selectionArgs, sortOrder);
+                break;
             case CACHED_VIDEO:
                 retCursor = getAllVideos(projection, selection, selectionArgs, sortOrder);
                 break;
@@ -295,6 +454,24 @@ public class MovieProvider extends ContentProvider {
             case CACHED_MOVIE_REVIEW:
                 retCursor = getMovieReviews(uri, projection);
                 break;
+            case MOVIE_LIST_ENTRY:
+                retCursor = sListEntryQueryBuilder.query(mOpenHelper.getReadableDatabase()
+                        , projection
+                        , selection
+                        , selectionArgs
+                        , null // groupBy
+                        , null // having
+                        , sortOrder);
+                break;
+            case MOVIE_LIST_STATE:
+                retCursor = sListStateQueryBuilder.query(mOpenHelper.getReadableDatabase()
+                        , projection
+                        , selection
+                        , selectionArgs
+                        , null // groupBy
+                        , null // having
+                        , sortOrder);
+                break;
             default:
                 throw new UnsupportedOperationException("Unknown: " + uri);
         }
@@ -345,6 +522,36 @@ public class MovieProvider extends ContentProvider {
         );
     }
 
+    /**
+     * Queries the database for the movies in the list with the key contained
+     * in the URI, in the list's order unless another one is specified. The
+     * columns present in both tables (e.g. {@link CachedMovieEntry#_ID}) must
+     * be qualified with the table's name.
+     *
+     * @param uri the URI used to query, containing the key of the list.
+     * @param projection the columns to return.
+     * @param selection the <i>WHERE</i> clause, applied besides the list's.
+     * @param selectionArgs the values for the arguments used in {@code selection}.
+     * @param sortOrder how the rows sould be ordered, by position if
+     *                  {@code null}.
+     * @return a {@link Cursor} for the result.
+     */
+    private Cursor getMovieList(Uri uri
+            , String[] projection
+            , String selection
+            , String[] selectionArgs
+            , String sortOrder) {
+        String listKey = CachedMovieEntry.getListKeyFromUri(uri);
+        return sMovieListQueryBuilder.query(
+                mOpenHelper.getReadableDatabase()
+                , projection
+                , DatabaseUtils.concatenateWhere(SELECTION_MOVIE_LIST, selection)
+                , DatabaseUtils.appendSelectionArgs(new String[] {listKey}, selectionArgs)
+                , null // groupBy
+                , null // having
+                , sortOrder == null ? ORDER_MOVIE_LIST_POSITION : sortOrder);
+    }
+
     /**
      * Queries the database for all registered movie videos.
      *
@@ -473,13 +680,18 @@ public class MovieProvider extends ContentProvider {
         );
     }
 
+    /**
+     * Inserts the row or, if there is already one with the same identifier in
+     * the RESTful API, updates the columns whose value changed. The returned
+     * URI identifies the stored row, whose id does not change on update.
+     */
     @Override
     public Uri insert(Uri uri, ContentValues values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         Uri resultUri;
         switch (sUriMatcher.match(uri)) {
             case CACHED_MOVIE:
-                long rowId = db.insert(CachedMovieEntry.TABLE_NAME, null, values);
+                long rowId = upsert(db, sMovieUpserter, values);
                 if (rowId != -1) {
                     resultUri = CachedMovieEntry.buildMovieUri(rowId);
                 } else {
@@ -487,7 +699,7 @@ public class MovieProvider extends ContentProvider {
                 }
                 break;
             case CACHED_VIDEO:
-                rowId = db.insert(CachedMovieVideoEntry.TABLE_NAME, null, values);
+                rowId = upsert(db, sVideoUpserter, values);
                 if (rowId != -1) {
                     resultUri = CachedMovieVideoEntry.buildMovieVideoUri(rowId);
                 } else {
@@ -495,60 +707,106 @@ public class MovieProvider extends ContentProvider {
                 }
                 break;
             case CACHED_REVIEW:
-                rowId = db.insert(CachedMovieReviewEntry.TABLE_NAME, null, values);
+                rowId = upsert(db, sReviewUpserter, values);
                 if (rowId != -1) {
                     resultUri = CachedMovieReviewEntry.buildMovieReviewUri(rowId);
                 } else {
                     throw new android.database.SQLException("Insertion failed. " + uri);
                 }
                 break;
+            case MOVIE_LIST_ENTRY:
+                rowId = upsert(db, sListEntryUpserter, values);
+                if (rowId != -1) {
+                    resultUri = MovieListEntry.buildListEntryUri(rowId);
+                } else {
+                    throw new android.database.SQLException("Insertion failed. " + uri);
+                }
+                break;
+            case MOVIE_LIST_STATE:
+                rowId = upsert(db, sListStateUpserter, values);
+                if (rowId != -1) {
+                    resultUri = MovieListStateEntry.buildListStateUri(rowId);
+                } else {
+                    throw new android.database.SQLException("Insertion failed. " + uri);
+                }
+                break;
             default:
                 throw new UnsupportedOperationException("Unknown: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return resultUri;
     }
 
+    /**
+     * Stores the row with the {@link RowUpserter} passed as argument. While
+     * a batch is applied, the statements compiled for the batch are reused.
+     *
+     * @param db the database to write to.
+     * @param upserter stores the row in its table.
+     * @param values the values of the row.
+     * @return the id of the stored row, or -1 if it could not be inserted.
+     */
+    private long upsert(SQLiteDatabase db, RowUpserter upserter, ContentValues values) {
+        OperationBatch batch = mCurrentBatch.get();
+        if (batch == null) {
+            return upserter.upsert(db, values);
+        }
+        RowUpserter.Batch upserterBatch = batch.mUpserterBatches.get(upserter);
+        if (upserterBatch == null) {
+            upserterBatch = upserter.newBatch(db);
+            batch.mUpserterBatches.put(upserter, upserterBatch);
+        }
+        return upserterBatch.upsert(values);
+    }
+
     @Override
     public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
         switch (sUriMatcher.match(uri)) {
             case CACHED_MOVIE:
-                return bulkInsert(uri, values, CachedMovieEntry.TABLE_NAME);
+                return bulkInsert(uri, values, sMovieUpserter);
             case CACHED_VIDEO:
-                return bulkInsert(uri, values, CachedMovieVideoEntry.TABLE_NAME);
+                return bulkInsert(uri, values, sVideoUpserter);
             case CACHED_REVIEW:
-                return bulkInsert(uri, values, CachedMovieReviewEntry.TABLE_NAME);
+                return bulkInsert(uri, values, sReviewUpserter);
+            case MOVIE_LIST_ENTRY:
+                return bulkInsert(uri, values, sListEntryUpserter);
+            case MOVIE_LIST_STATE:
+                return bulkInsert(uri, values, sListStateUpserter);
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
     /**
-     * Bulk inserts values for the specified table.
+     * Bulk inserts values for the specified table, updating the rows that
+     * already exist as in {@link #insert(Uri, ContentValues)}. The statements
+     * are compiled once for all the values with the same columns.
      *
      * @param uri the insertion request's URI.
      * @param values the values to insert into the table.
-     * @param table the name of the table to insert the values into.
-     * @return the number of values that were inserted.
+     * @param upserter stores the values in the table.
+     * @return the number of values that were inserted or updated.
      */
     private int bulkInsert(@NonNull Uri uri
             , @NonNull ContentValues[] values
-            , @NonNull String table) {
+            , @NonNull RowUpserter upserter) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         db.beginTransaction();
+        RowUpserter.Batch batch = upserter.newBatch(db);
         int insertionCount = 0;
         try {
             for (ContentValues value : values) {
-                long id = db.insert(table, null, value);
+                long id = batch.upsert(value);
                 if (id != -1) {
                     insertionCount++;
                 }
             }
             db.setTransactionSuccessful();
         } finally {
+            batch.close();
             db.endTransaction();
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return insertionCount;
     }
 
@@ -575,12 +833,22 @@ public class MovieProvider extends ContentProvider {
                         db.update(CachedMovieReviewEntry.TABLE_NAME
                                 , values, selection, selectionArgs);
                 break;
+            case MOVIE_LIST_ENTRY:
+                rowsAffected =
+                        db.update(MovieListEntry.TABLE_NAME
+                                , values, selection, selectionArgs);
+                break;
+            case MOVIE_LIST_STATE:
+                rowsAffected =
+                        db.update(MovieListStateEntry.TABLE_NAME
+                                , values, selection, selectionArgs);
+                break;
             default:
                 throw new UnsupportedOperationException("Unknown: " + uri);
         }
         // notify listeners
         if (rowsAffected > 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsAffected;
     }
@@ -610,20 +878,114 @@ public class MovieProvider extends ContentProvider {
                                 , selection
                                 , selectionArgs);
                 break;
+            case MOVIE_LIST_ENTRY:
+                rowsAffected =
+                        db.delete(MovieListEntry.TABLE_NAME
+                                , selection
+                                , selectionArgs);
+                break;
+            case MOVIE_LIST_STATE:
+                rowsAffected =
+                        db.delete(MovieListStateEntry.TABLE_NAME
+                                , selection
+                                , selectionArgs);
+                break;
             default:
                 throw new UnsupportedOperationException("Unknown: " + uri);
         }
         // notify listeners
         if (rowsAffected > 0 || selection == null) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsAffected;
     }
 
+    /**
+     * Applies all the operations in a single transaction, so either all or
+     * none of them are stored (e.g. a page of movies with their videos and
+     * reviews). The observers are notified once per URI that changed, after
+     * the transaction is committed, instead of once per operation.
+     */
+    @Override
+    public @NonNull ContentProviderResult[] applyBatch(
+            @NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        OperationBatch batch = new OperationBatch();
+        ContentProviderResult[] results;
+        boolean committed = false;
+        mCurrentBatch.set(batch);
+        mChangeNotifier.openScope();
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            mCurrentBatch.remove();
+            for (RowUpserter.Batch upserterBatch : batch.mUpserterBatches.values()) {
+                upserterBatch.close();
+            }
+            db.endTransaction();
+            mChangeNotifier.closeScope(committed);
+        }
+        return results;
+    }
+
+    /**
+     * Notifies the observers of the URI passed as argument, and of its
+     * descendants, that the data changed. The notification is coalesced with
+     * those sent within {@link #NOTIFICATION_WINDOW_MS} or, while a batch is
+     * applied, deferred until the batch is committed.
+     *
+     * @param uri the URI of the data that changed.
+     * @see ChangeNotificationCoalescer
+     */
+    private void notifyChange(Uri uri) {
+        mChangeNotifier.notifyChange(uri);
+        if (sUriMatcher.match(uri) == MOVIE_LIST_ENTRY) {
+            // The movies in the lists are queried through their entries
+            mChangeNotifier.notifyChange(CachedMovieEntry.LIST_CONTENT_URI);
+        }
+    }
+
+    /**
+     * Returns the number of change notifications delivered and suppressed
+     * by {@link #mChangeNotifier} when invoked with
+     * {@link MovieContract#METHOD_GET_NOTIFICATION_STATISTICS}, so they can
+     * be read outside of the provider.
+     */
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+        if (!MovieContract.METHOD_GET_NOTIFICATION_STATISTICS.equals(method)) {
+            return super.call(method, arg, extras);
+        }
+        Bundle statistics = new Bundle();
+        statistics.putLong(MovieContract.EXTRA_DELIVERED_NOTIFICATIONS
+                , mChangeNotifier.getDeliveredCount());
+        statistics.putLong(MovieContract.EXTRA_SUPPRESSED_NOTIFICATIONS
+                , mChangeNotifier.getSuppressedCount());
+        return statistics;
+    }
+
     @Override
     public void shutdown() {
         mOpenHelper.close();
         super.shutdown();
     }
 
+    /**
+     * The state of a batch of operations being applied by
+     * {@link #applyBatch(ArrayList)}.
+     */
+    private static final class OperationBatch {
+
+        /**
+         * The batches used to store rows, by the {@link RowUpserter} of
+         * their table.
+         */
+        private final Map<RowUpserter, RowUpserter.Batch> mUpserterBatches = new HashMap<>();
+
+    }
+
 }
@@ -19,20 +19,25 @@ package mx.com.adolfogarcia.popularmovies.data;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
-import android.support.v4.util.SparseArrayCompat;
 import android.util.Log;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
 import mx.com.adolfogarcia.popularmovies.R;
 import mx.com.adolfogarcia.popularmovies.model.transport.ImageConfigurationJsonModel;
-import mx.com.adolfogarcia.popularmovies.net.TheMovieDbApi;
+
+import static mx.com.adolfogarcia.popularmovies.data.ImageSizeResolver.ImageType;
+import static mx.com.adolfogarcia.popularmovies.data.ImageSizeResolver.ImageQuality;
 
 /**
  * Handles access to storage of
@@ -174,6 +179,27 @@ public class RestfulServiceConfiguration {
     private static final String PROPERTIES_KEY_DEFAULT_BACKDROP_SIZES =
             "backdrop_sizes";
 
+    /**
+     * Key used to access the set of available image sizes for the company
+     * logos, both on the application's {@link SharedPreferences} and (for the
+     * default value) in {@link #mConfigurationProperties}.
+     */
+    private static final String KEY_LOGO_SIZES = "logo_sizes";
+
+    /**
+     * Key used to access the set of available image sizes for the profile
+     * pictures, both on the application's {@link SharedPreferences} and (for
+     * the default value) in {@link #mConfigurationProperties}.
+     */
+    private static final String KEY_PROFILE_SIZES = "profile_sizes";
+
+    /**
+     * Key used to access the set of available image sizes for the still
+     * images, both on the application's {@link SharedPreferences} and (for
+     * the default value) in {@link #mConfigurationProperties}.
+     */
+    private static final String KEY_STILL_SIZES = "still_sizes";
+
     /**
      * Key used to retrieve the hash required to access the RESTful API, from
      * {@link #mConfigurationProperties}.
@@ -181,20 +207,139 @@ public class RestfulServiceConfiguration {
     private static final String PROPERTIES_KEY_API_ACCESS = "api_key";
 
     /**
-     * Key used to access the number of the page last retrieved for movies sorted
-     * by popularity from the RESTful API, as stored in the
-     * {@link SharedPreferences}.
+     * Key used to retrieve, from {@link #mConfigurationProperties}, the maximum
+     * number of requests for movie details (videos and reviews) that may be
+     * performed concurrently.
      */
-    private static final String PREFERENCES_KEY_LAST_POPULAR_MOVIE_PAGE_RETRIEVED =
-            "last_popular_movie_page_retrieved";
+    private static final String PROPERTIES_KEY_DETAIL_DOWNLOAD_CONCURRENCY =
+            "detail_download_concurrency";
 
     /**
-     * Key used to access the number of the page last retrieved for movies sorted
-     * by user rating from the RESTful API, as stored in the
-     * {@link SharedPreferences}.
+     * Value used if {@link #PROPERTIES_KEY_DETAIL_DOWNLOAD_CONCURRENCY} is not
+     * present in {@link #mConfigurationProperties}.
+     */
+    private static final String DEFAULT_DETAIL_DOWNLOAD_CONCURRENCY = "4";
+
+    /**
+     * Key used to retrieve, from {@link #mConfigurationProperties}, the
+     * maximum size in bytes of the disk cache for the replies of the RESTful
+     * API.
+     */
+    private static final String PROPERTIES_KEY_HTTP_CACHE_SIZE = "http_cache_size_bytes";
+
+    /**
+     * Value used if {@link #PROPERTIES_KEY_HTTP_CACHE_SIZE} is not present in
+     * {@link #mConfigurationProperties}. 10 MiB.
      */
-    private static final String PREFERENCES_KEY_LAST_RATED_MOVIE_PAGE_RETRIEVED =
-            "last_rated_movie_page_retrieved";
+    private static final String DEFAULT_HTTP_CACHE_SIZE = "10485760";
+
+    /**
+     * Key used to retrieve, from {@link #mConfigurationProperties}, the
+     * sustained number of requests per second that may be sent to the
+     * RESTful API.
+     */
+    private static final String PROPERTIES_KEY_API_REQUESTS_PER_SECOND =
+            "api_requests_per_second";
+
+    /**
+     * Value used if {@link #PROPERTIES_KEY_API_REQUESTS_PER_SECOND} is not
+     * present in {@link #mConfigurationProperties}.
+     */
+    private static final String DEFAULT_API_REQUESTS_PER_SECOND = "4";
+
+    /**
+     * Key used to retrieve, from {@link #mConfigurationProperties}, the
+     * maximum number of requests that may be sent to the RESTful API in a
+     * burst, above the sustained rate.
+     */
+    private static final String PROPERTIES_KEY_API_REQUEST_BURST = "api_request_burst";
+
+    /**
+     * Value used if {@link #PROPERTIES_KEY_API_REQUEST_BURST} is not present
+     * in {@link #mConfigurationProperties}.
+     */
+    private static final String DEFAULT_API_REQUEST_BURST = "20";
+
+    /**
+     * Key used to retrieve, from {@link #mConfigurationProperties}, the
+     * maximum number of times a request rejected by the RESTful API because
+     * of its rate limit is retried.
+     */
+    private static final String PROPERTIES_KEY_API_MAX_RETRIES = "api_max_retries";
+
+    /**
+     * Value used if {@link #PROPERTIES_KEY_API_MAX_RETRIES} is not present in
+     * {@link #mConfigurationProperties}.
+     */
+    private static final String DEFAULT_API_MAX_RETRIES = "3";
+
+    /**
+     * Key used to retrieve, from {@link #mConfigurationProperties}, the name
+     * of the policy that determines which movie details (videos and reviews)
+     * are downloaded along with each page of movies.
+     *
+     * @see #DETAIL_FETCH_POLICY_EAGER
+     * @see #DETAIL_FETCH_POLICY_LAZY
+     * @see #DETAIL_FETCH_POLICY_TOP
+     */
+    private static final String PROPERTIES_KEY_DETAIL_FETCH_POLICY = "detail_fetch_policy";
+
+    /**
+     * Key used to retrieve, from {@link #mConfigurationProperties}, the number
+     * of positions from the top of the list whose details are prefetched when
+     * the policy is {@link #DETAIL_FETCH_POLICY_TOP}.
+     */
+    private static final String PROPERTIES_KEY_DETAIL_PREFETCH_POSITIONS =
+            "detail_prefetch_positions";
+
+    /**
+     * Value used if {@link #PROPERTIES_KEY_DETAIL_PREFETCH_POSITIONS} is not
+     * present in {@link #mConfigurationProperties}.
+     */
+    private static final String DEFAULT_DETAIL_PREFETCH_POSITIONS = "20";
+
+    /**
+     * Key used to retrieve, from {@link #mConfigurationProperties}, the number
+     * of pages of each sort order refreshed by the background synchronization.
+     */
+    private static final String PROPERTIES_KEY_SYNC_PAGES_PER_SORT_ORDER =
+            "sync_pages_per_sort_order";
+
+    /**
+     * Value used if {@link #PROPERTIES_KEY_SYNC_PAGES_PER_SORT_ORDER} is not
+     * present in {@link #mConfigurationProperties}.
+     */
+    private static final String DEFAULT_SYNC_PAGES_PER_SORT_ORDER = "3";
+
+    /**
+     * Key used to retrieve, from {@link #mConfigurationProperties}, the time
+     * in seconds between background synchronizations.
+     */
+    private static final String PROPERTIES_KEY_SYNC_INTERVAL_SECONDS = "sync_interval_seconds";
+
+    /**
+     * Value used if {@link #PROPERTIES_KEY_SYNC_INTERVAL_SECONDS} is not
+     * present in {@link #mConfigurationProperties}.
+     */
+    private static final String DEFAULT_SYNC_INTERVAL_SECONDS = "21600";
+
+    /**
+     * Name of the policy that downloads the details of every movie along with
+     * the page that contains it.
+     */
+    public static final String DETAIL_FETCH_POLICY_EAGER = "eager";
+
+    /**
+     * Name of the policy that downloads the details of a movie only when the
+     * user opens it.
+     */
+    public static final String DETAIL_FETCH_POLICY_LAZY = "lazy";
+
+    /**
+     * Name of the policy that downloads, along with their page, only the
+     * details of the movies at the top of the list.
+     */
+    public static final String DETAIL_FETCH_POLICY_TOP = "top";
 
     /**
      * Key used to access, the index number of the sort order options that
@@ -206,11 +351,17 @@ public class RestfulServiceConfiguration {
             "selected_sort_order_index";
 
     /**
-     * Key used to access the total number of movie pages available in the RESTful
-     * API, as stored in the {@link SharedPreferences}.
+     * Key used to access the time since which the changes of the cached
+     * movies have been applied without interruption, as stored in the
+     * {@link SharedPreferences}.
      */
-    private static final String PREFERENCES_KEY_TOTAL_MOVIE_PAGES_AVAILABLE =
-            "total_movie_pages_available";
+    private static final String PREFERENCES_KEY_CHANGES_TRACKED_SINCE = "changes_tracked_since";
+
+    /**
+     * Key used to access the time at which the changes of the cached movies
+     * were last retrieved, as stored in the {@link SharedPreferences}.
+     */
+    private static final String PREFERENCES_KEY_LAST_CHANGES_CHECK = "last_changes_check";
 
     /**
      * Holds default configuration values and the key required to access the
@@ -225,12 +376,21 @@ public class RestfulServiceConfiguration {
     private final WeakReference<Context> mWeakContext;
 
     /**
-     * Used to cache image size code names that best match sizes measured in
-     * pixels (not dp). The code names are those used by
-     * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API.
+     * The image related configuration currently in effect. Read on every
+     * image URL built, so it is kept in memory and replaced as a whole when
+     * the configuration changes, while the preferences are written behind.
+     */
+    private volatile ImageConfigurationSnapshot mImageConfiguration;
+
+    /**
+     * The density of the screen, used to choose the image sizes.
      */
-    private SparseArrayCompat<String> mBestImageSizeNameCache =
-            new SparseArrayCompat<>(2);
+    private final float mDensity;
+
+    /**
+     * The quality at which the images are downloaded.
+     */
+    private volatile ImageQuality mImageQuality = ImageQuality.FULL;
 
     /**
      * Creates a new instance of {@link RestfulServiceConfiguration}.
@@ -243,7 +403,9 @@ public class RestfulServiceConfiguration {
             throw new IllegalArgumentException("The context may not be null");
         }
         this.mWeakContext = new WeakReference<>(context);
+        mDensity = context.getResources().getDisplayMetrics().density;
         initProperties();
+        mImageConfiguration = loadImageConfiguration();
     }
 
     /**
@@ -280,6 +442,87 @@ public class RestfulServiceConfiguration {
         }
     }
 
+    /**
+     * Reads the image related configuration from the application's
+     * {@link SharedPreferences}, or the default values for those that have
+     * not been stored.
+     *
+     * @return the image related configuration stored.
+     */
+    private ImageConfigurationSnapshot loadImageConfiguration() {
+        requireNonNullContext();
+        SharedPreferences settings =
+                PreferenceManager.getDefaultSharedPreferences(mWeakContext.get());
+        Map<ImageType, Set<String>> sizes = new EnumMap<>(ImageType.class);
+        sizes.put(ImageType.POSTER, settings.getStringSet(PREFERENCES_KEY_POSTER_SIZES
+                , getDefaultSetValue(PROPERTIES_KEY_DEFAULT_POSTER_SIZES)));
+        sizes.put(ImageType.BACKDROP, settings.getStringSet(PREFERENCES_KEY_BACKDROP_SIZES
+                , getDefaultSetValue(PROPERTIES_KEY_DEFAULT_BACKDROP_SIZES)));
+        sizes.put(ImageType.LOGO, settings.getStringSet(KEY_LOGO_SIZES
+                , getDefaultSetValue(KEY_LOGO_SIZES)));
+        sizes.put(ImageType.PROFILE, settings.getStringSet(KEY_PROFILE_SIZES
+                , getDefaultSetValue(KEY_PROFILE_SIZES)));
+        sizes.put(ImageType.STILL, settings.getStringSet(KEY_STILL_SIZES
+                , getDefaultSetValue(KEY_STILL_SIZES)));
+        return new ImageConfigurationSnapshot(
+                settings.getString(PREFERENCES_KEY_IMAGE_URL
+                        , mConfigurationProperties.getProperty(PROPERTIES_KEY_DEFAULT_IMAGE_URL))
+                , sizes
+                , settings.getLong(PREFERENCES_KEY_LAST_UPDATE, 0)
+                , mDensity);
+    }
+
+    /**
+     * Returns a new image related configuration, equal to the current one
+     * except for the values passed as argument, and updated now.
+     *
+     * @param imageBaseUrl the base URL used to retrieve images.
+     * @param type the type of image whose sizes are replaced, or {@code null}
+     *             to keep all the sizes.
+     * @param imageSizes the sizes available for the type of image.
+     * @return the new image related configuration.
+     */
+    private ImageConfigurationSnapshot updateImageConfiguration(String imageBaseUrl
+            , ImageType type
+            , Collection<String> imageSizes) {
+        ImageConfigurationSnapshot current = mImageConfiguration;
+        Map<ImageType, Collection<String>> sizes = new EnumMap<>(ImageType.class);
+        sizes.putAll(current.mSizes);
+        if (type != null) {
+            sizes.put(type, imageSizes);
+        }
+        return new ImageConfigurationSnapshot(imageBaseUrl
+                , sizes
+                , System.currentTimeMillis()
+                , mDensity);
+    }
+
+    /**
+     * Replaces the image related configuration in effect and stores it in
+     * the application's {@link SharedPreferences}. The new configuration is
+     * visible to the readers right away, while the preferences are written
+     * in the background.
+     *
+     * @param configuration the new image related configuration.
+     */
+    private void storeImageConfiguration(ImageConfigurationSnapshot configuration) {
+        requireNonNullContext();
+        mImageConfiguration = configuration;
+        SharedPreferences settings =
+                PreferenceManager.getDefaultSharedPreferences(mWeakContext.get());
+        SharedPreferences.Editor editor = settings.edit();
+        editor.putString(PREFERENCES_KEY_IMAGE_URL, configuration.mImageBaseUrl);
+        editor.putStringSet(PREFERENCES_KEY_POSTER_SIZES
+                , configuration.mSizes.get(ImageType.POSTER));
+        editor.putStringSet(PREFERENCES_KEY_BACKDROP_SIZES
+                , configuration.mSizes.get(ImageType.BACKDROP));
+        editor.putStringSet(KEY_LOGO_SIZES, configuration.mSizes.get(ImageType.LOGO));
+        editor.putStringSet(KEY_PROFILE_SIZES, configuration.mSizes.get(ImageType.PROFILE));
+        editor.putStringSet(KEY_STILL_SIZES, configuration.mSizes.get(ImageType.STILL));
+        editor.putLong(PREFERENCES_KEY_LAST_UPDATE, configuration.mLastUpdateTime);
+        editor.apply();
+    }
+
     /**
      * Returns the base URL used to retrieve images from the API or a default
      * value if one has not been previously stored.
@@ -288,11 +531,7 @@ public class RestfulServiceConfiguration {
      *     value if one has not been previously stored.
      */
     public String getImageBaseUrl() {
-        requireNonNullContext();
-        SharedPreferences settings =
-                PreferenceManager.getDefaultSharedPreferences(mWeakContext.get());
-        return settings.getString(PREFERENCES_KEY_IMAGE_URL
-                , mConfigurationProperties.getProperty(PROPERTIES_KEY_DEFAULT_IMAGE_URL));
+        return mImageConfiguration.mImageBaseUrl;
     }
 
     /**
@@ -300,14 +539,8 @@ public class RestfulServiceConfiguration {
      *
      * @param url the base URL to be used for image retrieval.
      */
-    public void setImageBaseUrl(String url) {
-        requireNonNullContext();
-        SharedPreferences preferences =
-                PreferenceManager.getDefaultSharedPreferences(mWeakContext.get());
-        SharedPreferences.Editor editor = preferences.edit();
-        editor.putString(PREFERENCES_KEY_IMAGE_URL, url);
-        editor.putLong(PREFERENCES_KEY_LAST_UPDATE, System.currentTimeMillis());
-        editor.apply();
+    public synchronized void setImageBaseUrl(String url) {
+        storeImageConfiguration(updateImageConfiguration(url, null, null));
     }
 
     /**
@@ -317,14 +550,11 @@ public class RestfulServiceConfiguration {
      * (usually the width in pixels, prefixed by the character 'w').
      *
      * @return the set of available image sizes for the movie posters as
-     *     previously saved, or the default values.
+     *     previously saved, or the default values. The set may not be
+     *     modified.
      */
     public Set<String> getPosterSizes() {
-        requireNonNullContext();
-        SharedPreferences settings =
-                PreferenceManager.getDefaultSharedPreferences(mWeakContext.get());
-        return settings.getStringSet(PREFERENCES_KEY_POSTER_SIZES
-                , getDefaultSetValue(PROPERTIES_KEY_DEFAULT_POSTER_SIZES));
+        return mImageConfiguration.mSizes.get(ImageType.POSTER);
     }
 
     /**
@@ -336,14 +566,10 @@ public class RestfulServiceConfiguration {
      * @param posterSizes the collection of available image sizes for the movie
      *                    posters.
      */
-    public void setPosterSizes(Set<String> posterSizes) {
-        requireNonNullContext();
-        SharedPreferences settings =
-                PreferenceManager.getDefaultSharedPreferences(mWeakContext.get());
-        SharedPreferences.Editor editor = settings.edit();
-        editor.putStringSet(PREFERENCES_KEY_POSTER_SIZES, posterSizes);
-        editor.putLong(PREFERENCES_KEY_LAST_UPDATE, System.currentTimeMillis());
-        editor.apply();
+    public synchronized void setPosterSizes(Set<String> posterSizes) {
+        storeImageConfiguration(updateImageConfiguration(mImageConfiguration.mImageBaseUrl
+                , ImageType.POSTER
+                , posterSizes));
     }
 
     /**
@@ -353,14 +579,11 @@ public class RestfulServiceConfiguration {
      * (usually the width in pixels, prefixed by the character 'w').
      *
      * @return the set of available image sizes for the movie backdrops as
-     *     previously saved, or the default values.
+     *     previously saved, or the default values. The set may not be
+     *     modified.
      */
     public Set<String> getBackdropSizes() {
-        requireNonNullContext();
-        SharedPreferences settings =
-                PreferenceManager.getDefaultSharedPreferences(mWeakContext.get());
-        return settings.getStringSet(PREFERENCES_KEY_BACKDROP_SIZES
-                , getDefaultSetValue(PROPERTIES_KEY_DEFAULT_BACKDROP_SIZES));
+        return mImageConfiguration.mSizes.get(ImageType.BACKDROP);
     }
 
     /**
@@ -372,85 +595,49 @@ public class RestfulServiceConfiguration {
      * @param backdropSizes the collection of available image sizes for the movie
      *                    backdrops.
      */
-    public void setBackdropSizes(Set<String> backdropSizes) {
-        requireNonNullContext();
-        SharedPreferences settings =
-                PreferenceManager.getDefaultSharedPreferences(mWeakContext.get());
-        SharedPreferences.Editor editor = settings.edit();
-        editor.putStringSet(PREFERENCES_KEY_BACKDROP_SIZES, backdropSizes);
-        editor.putLong(PREFERENCES_KEY_LAST_UPDATE, System.currentTimeMillis());
-        editor.apply();
+    public synchronized void setBackdropSizes(Set<String> backdropSizes) {
+        storeImageConfiguration(updateImageConfiguration(mImageConfiguration.mImageBaseUrl
+                , ImageType.BACKDROP
+                , backdropSizes));
     }
 
     /**
      * <p>
      *   Sets all the image related configuration. That is, the default base URL
-     *   for retrieving images, as well as the sizes available for movie poster
-     *   and backdrop images. The following attributes must be present in the
-     *   object passed:
+     *   for retrieving images, as well as the sizes available for each type of
+     *   image. The following attributes must be present in the object passed:
      * </p>
      * <ul>
      *   <li>{@link ImageConfigurationJsonModel#getSecureBaseUrl()}</li>
      *   <li>{@link ImageConfigurationJsonModel#getPosterSizes()}</li>
      *   <li>{@link ImageConfigurationJsonModel#getBackdropSizes()}</li>
+     *   <li>{@link ImageConfigurationJsonModel#getLogoSizes()}</li>
+     *   <li>{@link ImageConfigurationJsonModel#getProfileSizes()}</li>
+     *   <li>{@link ImageConfigurationJsonModel#getStillSizes()}</li>
      * </ul>
+     * <p>
+     *   The new values replace the previous ones at once, so the image URLs
+     *   are never built from a mix of both.
+     * </p>
      *
      * @param configuration object containing the default base URL for
-     *     retrieving images, as well as the sizes available for movie poster
-     *     and backdrop images.
+     *     retrieving images, as well as the sizes available for each type of
+     *     image.
      * @see #setImageBaseUrl(String)
      * @see #setPosterSizes(Set)
      * @see #setBackdropSizes(Set)
      */
-    public void setImageConfiguration(ImageConfigurationJsonModel configuration) {
-        requireNonNullContext();
-        SharedPreferences settings =
-                PreferenceManager.getDefaultSharedPreferences(mWeakContext.get());
-        SharedPreferences.Editor editor = settings.edit();
-        editor.putString(PREFERENCES_KEY_IMAGE_URL
-                , configuration.getSecureBaseUrl());
-        editor.putStringSet(PREFERENCES_KEY_POSTER_SIZES
-                , new HashSet<>(configuration.getPosterSizes()));
-        editor.putStringSet(PREFERENCES_KEY_BACKDROP_SIZES
-                , new HashSet<>(configuration.getBackdropSizes()));
-        editor.putLong(PREFERENCES_KEY_LAST_UPDATE, System.currentTimeMillis());
-        editor.apply();
-    }
-
-    /**
-     * Returns the name of the image size that is closest to the one requested.
-     * The set must contain size the size code names provided by
-     * <a href="https://www.themoviedb.org/">themoviedb.org/</a>'s API, and the
-     * requested size must be provided in device independent pixels.
-     *
-     * @param imageSizes the size code names to choose from, as provided by the
-     *     <a href="https://www.themoviedb.org/">themoviedb.org/</a>'s API.
-     * @param pixelWidth the desired width of the poster in pixels (not dp).
-     * @return the name of the size that fits the device best or or {@code null}
-     *     if none is found.
-     */
-    private String getBestImageSizeName(Set<String> imageSizes, int pixelWidth) {
-        String cachedResult = mBestImageSizeNameCache.get(pixelWidth);
-        if (cachedResult != null && imageSizes.contains(cachedResult)) {
-            return cachedResult;
-        }
-
-        int minDiff = Integer.MAX_VALUE;
-        String bestSizeName = null;
-        for (String sizeName : imageSizes) {
-            try {
-                int size = Integer.parseInt(sizeName.substring(1));
-                int diff = Math.abs(pixelWidth - size);
-                if (minDiff > diff) {
-                    minDiff = diff;
-                    bestSizeName = sizeName;
-                }
-            } catch (NumberFormatException nfe) {
-                Log.w(LOG_TAG, "Ignoring image size: " + sizeName);
-            }
-        }
-        mBestImageSizeNameCache.put(pixelWidth, bestSizeName);
-        return bestSizeName;
+    public synchronized void setImageConfiguration(ImageConfigurationJsonModel configuration) {
+        Map<ImageType, Collection<String>> sizes = new EnumMap<>(ImageType.class);
+        sizes.put(ImageType.POSTER, configuration.getPosterSizes());
+        sizes.put(ImageType.BACKDROP, configuration.getBackdropSizes());
+        sizes.put(ImageType.LOGO, configuration.getLogoSizes());
+        sizes.put(ImageType.PROFILE, configuration.getProfileSizes());
+        sizes.put(ImageType.STILL, configuration.getStillSizes());
+        storeImageConfiguration(new ImageConfigurationSnapshot(configuration.getSecureBaseUrl()
+                , sizes
+                , System.currentTimeMillis()
+                , mDensity));
     }
 
     /**
@@ -464,41 +651,118 @@ public class RestfulServiceConfiguration {
      */
     private Set<String> getDefaultSetValue(String key) {
         String defaultSizesProperty = mConfigurationProperties.getProperty(key);
+        if (defaultSizesProperty == null) {
+            return new HashSet<>();
+        }
         return new HashSet<>(Arrays.asList(
                 defaultSizesProperty.split(SET_ENTRY_SEPARATOR)));
     }
 
+    /**
+     * Returns the quality at which the images are downloaded, used to choose
+     * their sizes.
+     *
+     * @return the quality at which the images are downloaded.
+     */
+    public ImageQuality getImageQuality() {
+        return mImageQuality;
+    }
+
+    /**
+     * Sets the quality at which the images are downloaded, used to choose
+     * their sizes. Initially {@link ImageQuality#FULL}.
+     *
+     * @param imageQuality the quality at which the images are downloaded.
+     * @see mx.com.adolfogarcia.popularmovies.net.ImageQualityPolicy
+     */
+    public void setImageQuality(ImageQuality imageQuality) {
+        if (imageQuality == null) {
+            throw new IllegalArgumentException("The image quality may not be null");
+        }
+        mImageQuality = imageQuality;
+    }
+
+    /**
+     * Returns the URL for the image provided by
+     * <a href="https://www.themoviedb.org/">themoviedb.org/</a> whose size
+     * best fits the one requested, on the current screen density and image
+     * quality. Only the widths available are searched, without reading the
+     * preferences, taking a lock nor building the prefix of the URL, so it
+     * may be called on every bind of a view. The original size is used if
+     * no sizes are known for the type of image.
+     *
+     * @param type the type of image.
+     * @param relativePath relative path to the desired image in
+     *     <a href="https://www.themoviedb.org/">themoviedb.org/</a>.
+     * @param pixelWidth the desired width of the image in pixels (not dp).
+     * @return the URL of the image that fits the device best.
+     * @see ImageSizeResolver#getBestSizeIndex(ImageType, int, ImageQuality)
+     */
+    public String getBestFittingImageUrl(ImageType type, String relativePath, int pixelWidth) {
+        return mImageConfiguration.getUrlPrefix(type, pixelWidth, mImageQuality) + relativePath;
+    }
+
     /**
      * Returns the URL for the movie poster image provided by
-     * <a href="https://www.themoviedb.org/">themoviedb.org/</a> that is
-     * closest in size to the one requested.
+     * <a href="https://www.themoviedb.org/">themoviedb.org/</a> that best
+     * fits the size requested.
      *
      * @param relativePath relative path to the desired image in
      *     <a href="https://www.themoviedb.org/">themoviedb.org/</a>.
      * @param pixelWidth the desired width of the poster in pixels (not dp).
-     * @return the URL ofthe image that fits the device best.
-     *
+     * @return the URL of the image that fits the device best.
+     * @see #getBestFittingImageUrl(ImageType, String, int)
      */
     public String getBestFittingPosterUrl(String relativePath, int pixelWidth) {
-        return getImageBaseUrl()
-                + getBestImageSizeName(getPosterSizes(), pixelWidth)
-                + relativePath;
+        return getBestFittingImageUrl(ImageType.POSTER, relativePath, pixelWidth);
     }
 
     /**
      * Returns the URL for the movie backdrop image provided by
-     * <a href="https://www.themoviedb.org/">themoviedb.org/</a> that is
-     * closest in size to the one requested.
+     * <a href="https://www.themoviedb.org/">themoviedb.org/</a> that best
+     * fits the size requested.
      *
      * @param relativePath relative path to the desired image in
      *     <a href="https://www.themoviedb.org/">themoviedb.org/</a>.
-     * @param pixelWidth the desired width of the poster in pixels (not dp).
-     * @return the URL ofthe image that fits the device best.
+     * @param pixelWidth the desired width of the backdrop in pixels (not dp).
+     * @return the URL of the image that fits the device best.
+     * @see #getBestFittingImageUrl(ImageType, String, int)
      */
     public String getBestFittingBackdropUrl(String relativePath, int pixelWidth) {
-        return getImageBaseUrl()
-                + getBestImageSizeName(getBackdropSizes(), pixelWidth)
-                + relativePath;
+        return getBestFittingImageUrl(ImageType.BACKDROP, relativePath, pixelWidth);
+    }
+
+    /**
+     * Returns the URL for the smallest size of the image provided by
+     * <a href="https://www.themoviedb.org/">themoviedb.org/</a>, usually
+     * cached or cheap to download, so it can be shown while the size that
+     * best fits is downloaded.
+     *
+     * @param type the type of image.
+     * @param relativePath relative path to the desired image in
+     *     <a href="https://www.themoviedb.org/">themoviedb.org/</a>.
+     * @return the URL of the smallest size of the image, or {@code null} if
+     *     no sizes given by width are known for the type of image, so no
+     *     request is made for a size that does not exist.
+     */
+    public String getSmallestImageUrl(ImageType type, String relativePath) {
+        String urlPrefix = mImageConfiguration.mSmallestUrlPrefixes[type.ordinal()];
+        return urlPrefix == null ? null : urlPrefix + relativePath;
+    }
+
+    /**
+     * Returns the URL for the smallest size of the movie poster image
+     * provided by <a href="https://www.themoviedb.org/">themoviedb.org/</a>
+     * (e.g. "w92").
+     *
+     * @param relativePath relative path to the desired image in
+     *     <a href="https://www.themoviedb.org/">themoviedb.org/</a>.
+     * @return the URL of the smallest size of the poster, or {@code null} if
+     *     no poster sizes given by width are known.
+     * @see #getSmallestImageUrl(ImageType, String)
+     */
+    public String getSmallestPosterUrl(String relativePath) {
+        return getSmallestImageUrl(ImageType.POSTER, relativePath);
     }
 
     /**
@@ -513,132 +777,239 @@ public class RestfulServiceConfiguration {
     }
 
     /**
-     * Returns the epoch time at which the configuration was last updated or
-     * zero if it has never been set. Note that this only applies to the
-     * properties (those that appear in {@link ImageConfigurationJsonModel}),
-     * if other attributes (e.g. the last movie page retrieved) are changed,
-     * the time is not updated.
+     * Returns the maximum number of requests for movie details (videos and
+     * reviews) that may be performed concurrently, as defined in the
+     * configuration file.
      *
-     * @return the epoch time at which the configuration was last updated or
-     *     zero if it has never been set.
+     * @return the maximum number of requests for movie details that may be
+     *     performed concurrently. Always greater than zero.
      */
-    public long getLastUpdateTime() {
-        SharedPreferences settings =
-                PreferenceManager.getDefaultSharedPreferences(mWeakContext.get());
-        return settings.getLong(PREFERENCES_KEY_LAST_UPDATE, 0);
+    public int getDetailDownloadConcurrency() {
+        String concurrency = mConfigurationProperties.getProperty(
+                PROPERTIES_KEY_DETAIL_DOWNLOAD_CONCURRENCY
+                , DEFAULT_DETAIL_DOWNLOAD_CONCURRENCY);
+        try {
+            return Math.max(1, Integer.parseInt(concurrency.trim()));
+        } catch (NumberFormatException nfe) {
+            Log.w(LOG_TAG, "Invalid detail download concurrency: " + concurrency);
+            return Integer.parseInt(DEFAULT_DETAIL_DOWNLOAD_CONCURRENCY);
+        }
     }
 
     /**
-     * Returns the number of the page last retrieved from the RESTful
-     * API for the specified sort order or zero if none have been retrieved.
+     * Returns the maximum size in bytes of the disk cache for the replies of
+     * the RESTful API, as defined in the configuration file.
      *
-     * @param apiSortOrder the sort order for which the last retrieved movie page
-     *     number should be returned. This must be one of {@link TheMovieDbApi}'s
-     *     constants: {@link TheMovieDbApi#SORT_BY_POPULARITY},
-     *     {@link TheMovieDbApi#SORT_BY_USER_RATING}.
-     * @return the number of the page last retrieved from the RESTful
-     *     API for the specified sort order or zero if none have been retrieved.
-     *     If the argument is {@code null} 0 is returned.
+     * @return the maximum size in bytes of the HTTP response cache. Never
+     *     negative.
      */
-    public int getLastMoviePageRetrieved(String apiSortOrder) {
-        if (apiSortOrder == null) {
-            return 0;
+    public long getHttpCacheSize() {
+        String size = mConfigurationProperties.getProperty(
+                PROPERTIES_KEY_HTTP_CACHE_SIZE, DEFAULT_HTTP_CACHE_SIZE);
+        try {
+            return Math.max(0L, Long.parseLong(size.trim()));
+        } catch (NumberFormatException nfe) {
+            Log.w(LOG_TAG, "Invalid HTTP cache size: " + size);
+            return Long.parseLong(DEFAULT_HTTP_CACHE_SIZE);
         }
-        SharedPreferences settings =
-                PreferenceManager.getDefaultSharedPreferences(mWeakContext.get());
-        return settings.getInt(getPreferencesKeyForSortOrder(apiSortOrder), 0);
     }
 
     /**
-     * Sets the number of the page last retrieved from the RESTful
-     * API for the specified sort order. That is, stores the value in
-     * the application's {@link SharedPreferences}.
+     * Returns the sustained number of requests per second that may be sent
+     * to the RESTful API, as defined in the configuration file.
      *
-     * @param apiSortOrder the sort order for which the last retrieved movie page
-     *     number should be set. This must be one of {@link TheMovieDbApi}'s
-     *     constants: {@link TheMovieDbApi#SORT_BY_POPULARITY},
-     *     {@link TheMovieDbApi#SORT_BY_USER_RATING}.
-     * @param page the value to store.
+     * @return the number of requests per second that may be sent to the
+     *     RESTful API. Always greater than zero.
      */
-    public void setLastMoviePageRetrieved(String apiSortOrder, int page) {
-        SharedPreferences settings =
-                PreferenceManager.getDefaultSharedPreferences(mWeakContext.get());
-        SharedPreferences.Editor editor = settings.edit();
-        editor.putInt(getPreferencesKeyForSortOrder(apiSortOrder), page);
-        editor.apply();
+    public double getApiRequestsPerSecond() {
+        String rate = mConfigurationProperties.getProperty(
+                PROPERTIES_KEY_API_REQUESTS_PER_SECOND, DEFAULT_API_REQUESTS_PER_SECOND);
+        try {
+            double requestsPerSecond = Double.parseDouble(rate.trim());
+            if (requestsPerSecond > 0) {
+                return requestsPerSecond;
+            }
+        } catch (NumberFormatException nfe) {
+            // Logged below
+        }
+        Log.w(LOG_TAG, "Invalid API requests per second: " + rate);
+        return Double.parseDouble(DEFAULT_API_REQUESTS_PER_SECOND);
     }
 
     /**
-     * Returns the key associate to the last page downloaded for the specified
-     * sort order.
-     *
-     * @param apiSortOrder the sort order for which the last retrieved movie page
-     *     number key should be returned. This must be one of {@link TheMovieDbApi}'s
-     *     constants: {@link TheMovieDbApi#SORT_BY_POPULARITY},
-     *     {@link TheMovieDbApi#SORT_BY_USER_RATING}.
-     * @return the key associate to the last page downloaded for the specified
-     *     sort order.
-     */
-    private String getPreferencesKeyForSortOrder(String apiSortOrder) {
-        final String preferencesKeyLastMovie;
-        switch (apiSortOrder) {
-            case TheMovieDbApi.SORT_BY_POPULARITY:
-                preferencesKeyLastMovie =
-                        PREFERENCES_KEY_LAST_POPULAR_MOVIE_PAGE_RETRIEVED;
-                break;
-            case TheMovieDbApi.SORT_BY_USER_RATING:
-                preferencesKeyLastMovie =
-                        PREFERENCES_KEY_LAST_RATED_MOVIE_PAGE_RETRIEVED;
-                break;
+     * Returns the maximum number of requests that may be sent to the RESTful
+     * API in a burst, above the sustained rate, as defined in the
+     * configuration file.
+     *
+     * @return the maximum number of requests in a burst. Always greater than
+     *     zero.
+     * @see #getApiRequestsPerSecond()
+     */
+    public int getApiRequestBurst() {
+        String burst = mConfigurationProperties.getProperty(
+                PROPERTIES_KEY_API_REQUEST_BURST, DEFAULT_API_REQUEST_BURST);
+        try {
+            return Math.max(1, Integer.parseInt(burst.trim()));
+        } catch (NumberFormatException nfe) {
+            Log.w(LOG_TAG, "Invalid API request burst: " + burst);
+            return Integer.parseInt(DEFAULT_API_REQUEST_BURST);
+        }
+    }
+
+    /**
+     * Returns the maximum number of times a request rejected by the RESTful
+     * API because of its rate limit is retried, as defined in the
+     * configuration file.
+     *
+     * @return the maximum number of retries. Never negative.
+     */
+    public int getApiMaxRetries() {
+        String retries = mConfigurationProperties.getProperty(
+                PROPERTIES_KEY_API_MAX_RETRIES, DEFAULT_API_MAX_RETRIES);
+        try {
+            return Math.max(0, Integer.parseInt(retries.trim()));
+        } catch (NumberFormatException nfe) {
+            Log.w(LOG_TAG, "Invalid API max retries: " + retries);
+            return Integer.parseInt(DEFAULT_API_MAX_RETRIES);
+        }
+    }
+
+    /**
+     * Returns the name of the policy that determines which movie details
+     * (videos and reviews) are downloaded along with each page of movies, as
+     * defined in the configuration file. If the value is missing or unknown,
+     * {@link #DETAIL_FETCH_POLICY_TOP} is returned.
+     *
+     * @return one of {@link #DETAIL_FETCH_POLICY_EAGER},
+     *     {@link #DETAIL_FETCH_POLICY_LAZY} or {@link #DETAIL_FETCH_POLICY_TOP}.
+     */
+    public String getDetailFetchPolicyName() {
+        String policyName = mConfigurationProperties.getProperty(
+                PROPERTIES_KEY_DETAIL_FETCH_POLICY, DETAIL_FETCH_POLICY_TOP).trim();
+        switch (policyName) {
+            case DETAIL_FETCH_POLICY_EAGER:
+            case DETAIL_FETCH_POLICY_LAZY:
+            case DETAIL_FETCH_POLICY_TOP:
+                return policyName;
             default:
-                throw new IllegalArgumentException("Unknown sort order: "
-                        + apiSortOrder);
+                Log.w(LOG_TAG, "Unknown detail fetch policy: " + policyName);
+                return DETAIL_FETCH_POLICY_TOP;
         }
-        return preferencesKeyLastMovie;
     }
 
     /**
-     * Sets the number of page last retrieved to 0 for all sort orders. That is
-     * {@link TheMovieDbApi#SORT_BY_POPULARITY} and
-     * {@link TheMovieDbApi#SORT_BY_USER_RATING}.
+     * Returns the number of positions from the top of the list whose movie
+     * details are prefetched when the policy is
+     * {@link #DETAIL_FETCH_POLICY_TOP}, as defined in the configuration file.
+     *
+     * @return the number of positions whose details are prefetched. Never
+     *     negative.
      */
-    public void clearLastMoviePageRetrieved() {
-        SharedPreferences preferences =
+    public int getDetailPrefetchPositions() {
+        String positions = mConfigurationProperties.getProperty(
+                PROPERTIES_KEY_DETAIL_PREFETCH_POSITIONS
+                , DEFAULT_DETAIL_PREFETCH_POSITIONS);
+        try {
+            return Math.max(0, Integer.parseInt(positions.trim()));
+        } catch (NumberFormatException nfe) {
+            Log.w(LOG_TAG, "Invalid detail prefetch positions: " + positions);
+            return Integer.parseInt(DEFAULT_DETAIL_PREFETCH_POSITIONS);
+        }
+    }
+
+    /**
+     * Returns the number of pages of each sort order refreshed by the
+     * background synchronization, as defined in the configuration file.
+     *
+     * @return the number of pages refreshed per sort order. At least one.
+     */
+    public int getSyncPagesPerSortOrder() {
+        String pages = mConfigurationProperties.getProperty(
+                PROPERTIES_KEY_SYNC_PAGES_PER_SORT_ORDER
+                , DEFAULT_SYNC_PAGES_PER_SORT_ORDER);
+        try {
+            return Math.max(1, Integer.parseInt(pages.trim()));
+        } catch (NumberFormatException nfe) {
+            Log.w(LOG_TAG, "Invalid sync pages per sort order: " + pages);
+            return Integer.parseInt(DEFAULT_SYNC_PAGES_PER_SORT_ORDER);
+        }
+    }
+
+    /**
+     * Returns the time, in seconds, between background synchronizations, as
+     * defined in the configuration file.
+     *
+     * @return the time between background synchronizations. At least one
+     *     hour.
+     */
+    public long getSyncIntervalSeconds() {
+        final long minimumSeconds = 3600L;
+        String interval = mConfigurationProperties.getProperty(
+                PROPERTIES_KEY_SYNC_INTERVAL_SECONDS, DEFAULT_SYNC_INTERVAL_SECONDS);
+        try {
+            return Math.max(minimumSeconds, Long.parseLong(interval.trim()));
+        } catch (NumberFormatException nfe) {
+            Log.w(LOG_TAG, "Invalid sync interval: " + interval);
+            return Long.parseLong(DEFAULT_SYNC_INTERVAL_SECONDS);
+        }
+    }
+
+    /**
+     * Returns the epoch time at which the configuration was last updated or
+     * zero if it has never been set. Note that this only applies to the
+     * properties (those that appear in {@link ImageConfigurationJsonModel}),
+     * if other attributes (e.g. the last movie page retrieved) are changed,
+     * the time is not updated.
+     *
+     * @return the epoch time at which the configuration was last updated or
+     *     zero if it has never been set.
+     */
+    public long getLastUpdateTime() {
+        return mImageConfiguration.mLastUpdateTime;
+    }
+
+    /**
+     * Returns the epoch time since which the changes of the cached movies
+     * have been applied without interruption, or zero if they have never
+     * been applied. Movie details stored after this time are up to date as
+     * of {@link #getLastChangesCheckTime()}.
+     *
+     * @return the epoch time since which the changes have been tracked, or
+     *     zero.
+     */
+    public long getChangesTrackedSince() {
+        SharedPreferences settings =
                 PreferenceManager.getDefaultSharedPreferences(mWeakContext.get());
-        SharedPreferences.Editor editor = preferences.edit();
-        editor.putInt(PREFERENCES_KEY_LAST_POPULAR_MOVIE_PAGE_RETRIEVED, 0);
-        editor.putInt(PREFERENCES_KEY_LAST_RATED_MOVIE_PAGE_RETRIEVED, 0);
-        editor.apply();
+        return settings.getLong(PREFERENCES_KEY_CHANGES_TRACKED_SINCE, 0);
     }
 
     /**
-     * Returns the total number of movie pages available in the RESTful
-     * API, as stored in the {@link SharedPreferences}, or
-     * {@link Integer#MAX_VALUE} if the value has not been set.
+     * Returns the epoch time at which the changes of the cached movies were
+     * last retrieved, or zero if they have never been retrieved.
      *
-     * @return the total number of movie pages available in the RESTful
-     *     API, as stored in the {@link SharedPreferences}, or
-     *     {@link Integer#MAX_VALUE} if the value has not been set.
+     * @return the epoch time of the last retrieval of changes, or zero.
      */
-    public int getTotalMoviePagesAvailable() {
+    public long getLastChangesCheckTime() {
         SharedPreferences settings =
                 PreferenceManager.getDefaultSharedPreferences(mWeakContext.get());
-        return settings.getInt(PREFERENCES_KEY_TOTAL_MOVIE_PAGES_AVAILABLE
-                , Integer.MAX_VALUE);
+        return settings.getLong(PREFERENCES_KEY_LAST_CHANGES_CHECK, 0);
     }
 
     /**
-     * Sets the number of the page last retrieved from the RESTful
-     * API. That is, stores the value in the application's
-     * {@link SharedPreferences}.
+     * Stores the time at which the changes of the cached movies were
+     * retrieved and applied, and the time since which they have been applied
+     * without interruption.
      *
-     * @param total the value to store.
+     * @param trackedSince the epoch time since which the changes have been
+     *                     applied without interruption.
+     * @param checkTime the epoch time at which the changes were retrieved.
      */
-    public void setTotalMoviePagesAvailable(int total) {
+    public void setChangesCheckTime(long trackedSince, long checkTime) {
         SharedPreferences preferences =
                 PreferenceManager.getDefaultSharedPreferences(mWeakContext.get());
         SharedPreferences.Editor editor = preferences.edit();
-        editor.putInt(PREFERENCES_KEY_TOTAL_MOVIE_PAGES_AVAILABLE, total);
+        editor.putLong(PREFERENCES_KEY_CHANGES_TRACKED_SINCE, trackedSince);
+        editor.putLong(PREFERENCES_KEY_LAST_CHANGES_CHECK, checkTime);
         editor.apply();
     }
 
@@ -671,4 +1042,109 @@ public class RestfulServiceConfiguration {
         editor.apply();
     }
 
+    /**
+     * The image related configuration, as a whole. The values never change;
+     * a new instance replaces the current one when the configuration does.
+     * The prefixes of the image URLs (the base URL followed by the name of a
+     * size) are built along with it, so building a URL only searches the
+     * widths and appends the relative path.
+     */
+    private static final class ImageConfigurationSnapshot {
+
+        /**
+         * The base URL used to retrieve images.
+         */
+        private final String mImageBaseUrl;
+
+        /**
+         * The sizes available, by image type. The sets may not be modified.
+         */
+        private final Map<ImageType, Set<String>> mSizes = new EnumMap<>(ImageType.class);
+
+        /**
+         * The epoch time at which the configuration was last updated, or
+         * zero if it has never been set.
+         */
+        private final long mLastUpdateTime;
+
+        /**
+         * Chooses the sizes that best fit the widths requested.
+         */
+        private final ImageSizeResolver mSizeResolver;
+
+        /**
+         * The prefixes of the URLs of the smallest size of each image type, by
+         * image type ordinal. {@code null} for the types without sizes given
+         * by width, whose only size may well be the original.
+         */
+        private final String[] mSmallestUrlPrefixes = new String[ImageType.values().length];
+
+        /**
+         * The prefixes of the image URLs, by image type ordinal and index of
+         * the size in {@link #mSizeResolver}.
+         */
+        private final String[][] mUrlPrefixes = new String[ImageType.values().length][];
+
+        /**
+         * The prefix of the URLs of the original size of the images, used
+         * when there are no sizes given by width. It is always available.
+         */
+        private final String mOriginalUrlPrefix;
+
+        /**
+         * Creates a new instance of {@link ImageConfigurationSnapshot}. The
+         * collections of sizes are copied.
+         *
+         * @param imageBaseUrl the base URL used to retrieve images.
+         * @param sizes the sizes available, by image type.
+         * @param lastUpdateTime the epoch time at which the configuration was
+         *                       last updated.
+         * @param density the density of the screen on which the images are
+         *                displayed.
+         */
+        ImageConfigurationSnapshot(String imageBaseUrl
+                , Map<ImageType, ? extends Collection<String>> sizes
+                , long lastUpdateTime
+                , float density) {
+            mImageBaseUrl = imageBaseUrl;
+            mOriginalUrlPrefix = imageBaseUrl + ImageSizeResolver.ORIGINAL_SIZE_NAME;
+            for (ImageType type : ImageType.values()) {
+                Collection<String> typeSizes = sizes.get(type);
+                mSizes.put(type, Collections.unmodifiableSet(typeSizes == null
+                        ? new HashSet<String>()
+                        : new HashSet<>(typeSizes)));
+            }
+            mLastUpdateTime = lastUpdateTime;
+            mSizeResolver = new ImageSizeResolver(mSizes, density);
+            for (ImageType type : ImageType.values()) {
+                String[] urlPrefixes = new String[mSizeResolver.getSizeCount(type)];
+                for (int i = 0; i < urlPrefixes.length; i++) {
+                    urlPrefixes[i] = mImageBaseUrl + mSizeResolver.getSizeName(type, i);
+                }
+                mUrlPrefixes[type.ordinal()] = urlPrefixes;
+                mSmallestUrlPrefixes[type.ordinal()] =
+                        urlPrefixes.length == 0 ? null : urlPrefixes[0];
+            }
+        }
+
+        /**
+         * Returns the base URL followed by the name of the size that best
+         * fits the width passed as argument, for the type of image and
+         * quality passed as argument, or the original size if there are no
+         * sizes given by width.
+         *
+         * @param type the type of image.
+         * @param pixelWidth the desired width of the image in pixels (not dp).
+         * @param quality the quality at which the image is downloaded.
+         * @return the prefix of the URL of the image.
+         */
+        String getUrlPrefix(ImageType type, int pixelWidth, ImageQuality quality) {
+            int index = mSizeResolver.getBestSizeIndex(type, pixelWidth, quality);
+            return index < 0
+                    ? mOriginalUrlPrefix
+                    : mUrlPrefixes[type.ordinal()][index];
+        }
+
+    }
+
 }
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.data;
+
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.BaseColumns;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Inserts rows into a table, or updates the row that has the same natural
+ * key (e.g. the identifier in
+ * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API)
+ * if there is one. Unlike {@code INSERT OR REPLACE}, an existing row keeps
+ * its {@link BaseColumns#_ID} and the columns not included in the values,
+ * and it is only written if any of the values changed.
+ *
+ * <p>The statements are compiled once per set of columns and reused for all
+ * the rows of a {@link Batch}, so the SQL is not parsed again for each row.
+ * </p>
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+final class RowUpserter {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = RowUpserter.class.getSimpleName();
+
+    /**
+     * The name of the table the rows are stored in.
+     */
+    private final String mTable;
+
+    /**
+     * The columns that identify a row, besides its {@link BaseColumns#_ID}.
+     */
+    private final String[] mKeyColumns;
+
+    /**
+     * Creates a new instance of {@link RowUpserter}.
+     *
+     * @param table the name of the table the rows are stored in.
+     * @param keyColumns the columns that identify a row, besides its
+     *                   {@link BaseColumns#_ID}.
+     */
+    RowUpserter(String table, String... keyColumns) {
+        if (table == null) {
+            throw new IllegalArgumentException("The table may not be null");
+        }
+        if (keyColumns == null || keyColumns.length == 0) {
+            throw new IllegalArgumentException("The key columns may not be empty");
+        }
+        mTable = table;
+        mKeyColumns = keyColumns;
+    }
+
+    /**
+     * Inserts the row or, if a row with the same natural key exists, updates
+     * it if any of its values differs from those passed as argument. The row
+     * is looked up and written in a single transaction, nested in the
+     * caller's if there is one.
+     *
+     * @param db the database to write to.
+     * @param values the values of the row.
+     * @return the {@link BaseColumns#_ID} of the inserted or updated row, or
+     *     -1 if the row could not be inserted.
+     * @see Batch#upsert(ContentValues)
+     */
+    long upsert(SQLiteDatabase db, ContentValues values) {
+        db.beginTransaction();
+        Batch batch = newBatch(db);
+        try {
+            long rowId = batch.upsert(values);
+            db.setTransactionSuccessful();
+            return rowId;
+        } finally {
+            batch.close();
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Returns a new {@link Batch} that stores rows in the database passed as
+     * argument. The caller must hold a transaction while the batch is used,
+     * and close the batch afterwards.
+     *
+     * @param db the database to write to.
+     * @return a new {@link Batch}.
+     */
+    Batch newBatch(SQLiteDatabase db) {
+        return new Batch(db);
+    }
+
+    /**
+     * Stores many rows in the table, reusing the statements compiled for each
+     * set of columns. Consecutive rows with the same columns, as those read
+     * from a single reply of the RESTful API, reuse the statements without
+     * looking them up.
+     */
+    final class Batch {
+
+        /**
+         * The database to write to.
+         */
+        private final SQLiteDatabase mDb;
+
+        /**
+         * The statements compiled so far, by set of columns.
+         */
+        private final Map<Set<String>, Statements> mStatements = new HashMap<>();
+
+        /**
+         * The columns of the last row stored.
+         */
+        private Set<String> mLastColumns = null;
+
+        /**
+         * The statements used to store the last row.
+         */
+        private Statements mLastStatements = null;
+
+        /**
+         * Creates a new instance of {@link Batch}.
+         *
+         * @param db the database to write to.
+         */
+        private Batch(SQLiteDatabase db) {
+            mDb = db;
+        }
+
+        /**
+         * Inserts the row or, if a row with the same natural key exists,
+         * updates it if any of its values differs from those passed as
+         * argument. Rows without a value for each of the key columns are
+         * always inserted.
+         *
+         * @param values the values of the row.
+         * @return the {@link BaseColumns#_ID} of the inserted or updated row,
+         *     or -1 if the row could not be inserted.
+         */
+        long upsert(ContentValues values) {
+            Set<String> columns = values.keySet();
+            if (!columns.equals(mLastColumns)) {
+                // Copied, as the key set reflects later changes to the values
+                mLastColumns = new TreeSet<>(columns);
+                mLastStatements = mStatements.get(mLastColumns);
+                if (mLastStatements == null) {
+                    mLastStatements = new Statements(mDb, mLastColumns);
+                    mStatements.put(mLastColumns, mLastStatements);
+                }
+            }
+            return mLastStatements.upsert(values);
+        }
+
+        /**
+         * Releases the compiled statements.
+         */
+        void close() {
+            for (Statements statements : mStatements.values()) {
+                statements.close();
+            }
+            mStatements.clear();
+            mLastColumns = null;
+            mLastStatements = null;
+        }
+
+    }
+
+    /**
+     * The statements compiled to store rows with a specific set of columns.
+     */
+    private final class Statements {
+
+        /**
+         * The columns inserted, in the order of the statement's arguments.
+         */
+        private final String[] mInsertColumns;
+
+        /**
+         * The columns updated, in the order of the statement's arguments.
+         */
+        private final String[] mUpdateColumns;
+
+        /**
+         * Returns the id of the row with the natural key, or -1. {@code null}
+         * if the key columns are not among the row's.
+         */
+        private final SQLiteStatement mSelectId;
+
+        /**
+         * Inserts a new row.
+         */
+        private final SQLiteStatement mInsert;
+
+        /**
+         * Updates the row with an id, only if any of its values differs.
+         * {@code null} if there are no columns to update.
+         */
+        private final SQLiteStatement mUpdate;
+
+        /**
+         * Compiles the statements for the set of columns passed as argument.
+         *
+         * @param db the database the statements are compiled for.
+         * @param columns the columns of the rows.
+         */
+        Statements(SQLiteDatabase db, Set<String> columns) {
+            mInsertColumns = columns.toArray(new String[columns.size()]);
+            List<String> updateColumns = new ArrayList<>(columns.size());
+            boolean hasKey = true;
+            for (String keyColumn : mKeyColumns) {
+                hasKey &= columns.contains(keyColumn);
+            }
+            for (String column : mInsertColumns) {
+                if (!BaseColumns._ID.equals(column) && !isKeyColumn(column)) {
+                    updateColumns.add(column);
+                }
+            }
+            mUpdateColumns = updateColumns.toArray(new String[updateColumns.size()]);
+            mSelectId = hasKey ? db.compileStatement(buildSelectIdSql()) : null;
+            mInsert = db.compileStatement(buildInsertSql());
+            mUpdate = hasKey && mUpdateColumns.length > 0
+                    ? db.compileStatement(buildUpdateSql())
+                    : null;
+        }
+
+        /**
+         * Stores the row as described in {@link Batch#upsert(ContentValues)}.
+         *
+         * @param values the values of the row, with the columns the
+         *               statements were compiled for.
+         * @return the {@link BaseColumns#_ID} of the inserted or updated row,
+         *     or -1 if the row could not be inserted.
+         */
+        long upsert(ContentValues values) {
+            if (mSelectId != null && bindKey(values)) {
+                long rowId = mSelectId.simpleQueryForLong();
+                if (rowId != -1) {
+                    if (mUpdate != null) {
+                        for (int i = 0; i < mUpdateColumns.length; i++) {
+                            bind(mUpdate, i + 1, values.get(mUpdateColumns[i]));
+                        }
+                        mUpdate.bindLong(mUpdateColumns.length + 1, rowId);
+                        mUpdate.executeUpdateDelete();
+                    }
+                    return rowId;
+                }
+            }
+            for (int i = 0; i < mInsertColumns.length; i++) {
+                bind(mInsert, i + 1, values.get(mInsertColumns[i]));
+            }
+            try {
+                return mInsert.executeInsert();
+            } catch (SQLException e) {
+                Log.e(LOG_TAG, "Error inserting " + values, e);
+                return -1;
+            }
+        }
+
+        /**
+         * Binds the values of the key columns to {@link #mSelectId}.
+         *
+         * @param values the values of the row.
+         * @return {@code false} if any of the key columns has no value,
+         *     {@code true} otherwise.
+         */
+        private boolean bindKey(ContentValues values) {
+            for (int i = 0; i < mKeyColumns.length; i++) {
+                Object keyValue = values.get(mKeyColumns[i]);
+                if (keyValue == null) {
+                    return false;
+                }
+                bind(mSelectId, i + 1, keyValue);
+            }
+            return true;
+        }
+
+        /**
+         * Releases the compiled statements.
+         */
+        void close() {
+            if (mSelectId != null) {
+                mSelectId.close();
+            }
+            mInsert.close();
+            if (mUpdate != null) {
+                mUpdate.close();
+            }
+        }
+
+        /**
+         * Returns the query for the id of the row with the natural key, or -1
+         * if there is none.
+         *
+         * @return the SQL of {@link #mSelectId}.
+         */
+        private String buildSelectIdSql() {
+            StringBuilder sql = new StringBuilder("SELECT COALESCE((SELECT ")
+                    .append(BaseColumns._ID).append(" FROM ").append(mTable).append(" WHERE ");
+            for (int i = 0; i < mKeyColumns.length; i++) {
+                sql.append(i > 0 ? " AND " : "").append(mKeyColumns[i]).append(" = ?");
+            }
+            return sql.append("), -1)").toString();
+        }
+
+        /**
+         * Returns the insertion of a row.
+         *
+         * @return the SQL of {@link #mInsert}.
+         */
+        private String buildInsertSql() {
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(mTable).append(" (");
+            StringBuilder arguments = new StringBuilder();
+            for (int i = 0; i < mInsertColumns.length; i++) {
+                sql.append(i > 0 ? ", " : "").append(mInsertColumns[i]);
+                arguments.append(i > 0 ? ", ?" : "?");
+            }
+            return sql.append(") VALUES (").append(arguments).append(")").toString();
+        }
+
+        /**
+         * Returns the update of the row with an id, which only matches the
+         * row if any of the values differs. Each value's argument is used
+         * twice, by number.
+         *
+         * @return the SQL of {@link #mUpdate}.
+         */
+        private String buildUpdateSql() {
+            StringBuilder sql = new StringBuilder("UPDATE ").append(mTable).append(" SET ");
+            StringBuilder changed = new StringBuilder();
+            for (int i = 0; i < mUpdateColumns.length; i++) {
+                sql.append(i > 0 ? ", " : "")
+                        .append(mUpdateColumns[i]).append(" = ?").append(i + 1);
+                changed.append(i > 0 ? " OR " : "")
+                        .append(mUpdateColumns[i]).append(" IS NOT ?").append(i + 1);
+            }
+            return sql.append(" WHERE ").append(BaseColumns._ID)
+                    .append(" = ?").append(mUpdateColumns.length + 1)
+                    .append(" AND (").append(changed).append(")").toString();
+        }
+
+    }
+
+    /**
+     * Returns {@code true} if the column identifies the row, {@code false}
+     * otherwise.
+     *
+     * @param column the name of the column.
+     * @return {@code true} if the column is one of {@link #mKeyColumns}.
+     */
+    private boolean isKeyColumn(String column) {
+        for (String keyColumn : mKeyColumns) {
+            if (keyColumn.equals(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Binds a value to an argument of the statement, with the type used by
+     * {@link SQLiteDatabase#insert(String, String, ContentValues)}.
+     *
+     * @param statement the statement to bind the value to.
+     * @param index the index of the argument (first index: 1).
+     * @param value the value to bind.
+     */
+    private static void bind(SQLiteStatement statement, int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof Double || value instanceof Float) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            statement.bindLong(index, (Boolean) value ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+
+}
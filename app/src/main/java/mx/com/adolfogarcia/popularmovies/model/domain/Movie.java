@@ -66,6 +66,11 @@ public class Movie {
      */
     private Uri mPosterUri;
 
+    /**
+     * Uri of the smallest size of the movie's poster image.
+     */
+    private Uri mPosterThumbnailUri;
+
     /**
      * Uri of the movies backdrop image.
      */
@@ -147,6 +152,14 @@ public class Movie {
         mPosterUri = posterUri;
     }
 
+    public Uri getPosterThumbnailUri() {
+        return mPosterThumbnailUri;
+    }
+
+    public void setPosterThumbnailUri(Uri posterThumbnailUri) {
+        mPosterThumbnailUri = posterThumbnailUri;
+    }
+
     public Uri getBackdropUri() {
         return mBackdropUri;
     }
@@ -197,6 +210,7 @@ public class Movie {
                 .append(this.mReleaseDate)
                 .append(this.mOverview)
                 .append(this.mPosterUri)
+                .append(this.mPosterThumbnailUri)
                 .append(this.mBackdropUri)
                 .append(this.mVoteAverage)
                 .append(this.mTrailers)
@@ -219,6 +233,7 @@ public class Movie {
                 .append(this.mReleaseDate, that.mReleaseDate)
                 .append(this.mOverview, that.mOverview)
                 .append(this.mPosterUri, that.mPosterUri)
+                .append(this.mPosterThumbnailUri, that.mPosterThumbnailUri)
                 .append(this.mBackdropUri, that.mBackdropUri)
                 .append(this.mVoteAverage, that.mVoteAverage)
                 .append(this.mTrailers, that.mTrailers)
@@ -234,6 +249,7 @@ public class Movie {
                 .append("mReleaseDate", this.mReleaseDate)
                 .append("mOverview", this.mOverview)
                 .append("mPosterUri", this.mPosterUri)
+                .append("mPosterThumbnailUri", this.mPosterThumbnailUri)
                 .append("mBackdropUri", this.mBackdropUri)
                 .append("mVoteAverage", this.mVoteAverage)
                 .append("mTrailers", this.mTrailers)
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.model.transport;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.SerializedName;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Transfer object for an entry of the list of movies that changed, as
+ * returned by <a href="https://www.themoviedb.org/">themoviedb.org</a>'s
+ * RESTful API. Only identifies the movie, not what changed.
+ *
+ * @see mx.com.adolfogarcia.popularmovies.net.TheMovieDbApi#getMovieChanges
+ * @see <a href="http://docs.themoviedb.apiary.io/">docs.themoviedb.apiary.io</a>
+ * @author Jesús Adolfo García Pasquel
+ */
+public class MovieChangeJsonModel {
+
+    /**
+     * The identifier of the movie that changed.
+     */
+    @SerializedName("id")
+    @Expose
+    private Long mId;
+
+    /**
+     * Whether the movie is for adults only.
+     */
+    @SerializedName("adult")
+    @Expose
+    private Boolean mAdult;
+
+    public Long getId() {
+        return mId;
+    }
+
+    public void setId(Long id) {
+        this.mId = id;
+    }
+
+    public Boolean getAdult() {
+        return mAdult;
+    }
+
+    public void setAdult(Boolean adult) {
+        this.mAdult = adult;
+    }
+
+    @Override
+    public int hashCode() {
+        final int initial = 29;
+        final int multiplier = 71;
+        return new HashCodeBuilder(initial, multiplier)
+                .append(this.mId)
+                .append(this.mAdult)
+                .toHashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof MovieChangeJsonModel)) {
+            return false;
+        }
+        MovieChangeJsonModel that = ((MovieChangeJsonModel) obj);
+        return new EqualsBuilder()
+                .append(this.mId, that.mId)
+                .append(this.mAdult, that.mAdult)
+                .isEquals();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("mId", this.mId)
+                .append("mAdult", this.mAdult)
+                .toString();
+    }
+
+}
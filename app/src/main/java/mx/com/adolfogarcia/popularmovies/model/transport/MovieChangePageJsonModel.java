@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.model.transport;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.SerializedName;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transfer object for the pages of the list of movies that changed in a
+ * period of time, as returned by
+ * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API.
+ *
+ * @see mx.com.adolfogarcia.popularmovies.net.TheMovieDbApi#getMovieChanges
+ * @see <a href="http://docs.themoviedb.apiary.io/">docs.themoviedb.apiary.io</a>
+ * @author Jesús Adolfo García Pasquel
+ */
+public class MovieChangePageJsonModel {
+
+    /**
+     * The page's index.
+     */
+    @SerializedName("page")
+    @Expose
+    private Integer mPageNumber;
+
+    /**
+     * The movies that changed included in the page.
+     */
+    @SerializedName("results")
+    @Expose
+    private List<MovieChangeJsonModel> mChanges = new ArrayList<>();
+
+    /**
+     * The total number of pages available.
+     */
+    @SerializedName("total_pages")
+    @Expose
+    private Integer mTotalPages;
+
+    /**
+     * The total number of movies that changed.
+     */
+    @SerializedName("total_results")
+    @Expose
+    private Integer mTotalChanges;
+
+    public Integer getPageNumber() {
+        return mPageNumber;
+    }
+
+    public void setPageNumber(Integer pageNumber) {
+        this.mPageNumber = pageNumber;
+    }
+
+    public List<MovieChangeJsonModel> getChanges() {
+        return mChanges;
+    }
+
+    public void setChanges(List<MovieChangeJsonModel> changes) {
+        this.mChanges = changes;
+    }
+
+    public Integer getTotalPages() {
+        return mTotalPages;
+    }
+
+    public void setTotalPages(Integer totalPages) {
+        this.mTotalPages = totalPages;
+    }
+
+    public Integer getTotalChanges() {
+        return mTotalChanges;
+    }
+
+    public void setTotalChanges(Integer totalChanges) {
+        this.mTotalChanges = totalChanges;
+    }
+
+    @Override
+    public int hashCode() {
+        final int initial = 31;
+        final int multiplier = 67;
+        return new HashCodeBuilder(initial, multiplier)
+                .append(this.mPageNumber)
+                .append(this.mChanges)
+                .append(this.mTotalPages)
+                .append(this.mTotalChanges)
+                .toHashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof MovieChangePageJsonModel)) {
+            return false;
+        }
+        MovieChangePageJsonModel that = ((MovieChangePageJsonModel) obj);
+        return new EqualsBuilder()
+                .append(this.mPageNumber, that.mPageNumber)
+                .append(this.mChanges, that.mChanges)
+                .append(this.mTotalPages, that.mTotalPages)
+                .append(this.mTotalChanges, that.mTotalChanges)
+                .isEquals();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("mPageNumber", this.mPageNumber)
+                .append("mChanges", this.mChanges)
+                .append("mTotalPages", this.mTotalPages)
+                .append("mTotalChanges", this.mTotalChanges)
+                .toString();
+    }
+
+}
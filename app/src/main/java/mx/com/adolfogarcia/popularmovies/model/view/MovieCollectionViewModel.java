@@ -17,7 +17,7 @@
 package mx.com.adolfogarcia.popularmovies.model.view;
 
 import android.content.Context;
-import android.os.AsyncTask;
+import android.net.Uri;
 import android.util.Log;
 import android.view.View;
 import android.widget.AbsListView;
@@ -29,18 +29,26 @@ import org.parceler.Transient;
 import java.lang.ref.WeakReference;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 
 import de.greenrobot.event.EventBus;
+import mx.com.adolfogarcia.popularmovies.data.MovieListState;
+import mx.com.adolfogarcia.popularmovies.data.MovieListStateCache;
 import mx.com.adolfogarcia.popularmovies.data.RestfulServiceConfiguration;
 import mx.com.adolfogarcia.popularmovies.model.domain.Movie;
 import mx.com.adolfogarcia.popularmovies.model.event.MovieSelectionEvent;
 import mx.com.adolfogarcia.popularmovies.model.event.SortOrderSelectionEvent;
 import mx.com.adolfogarcia.popularmovies.net.FetchConfigurationTask;
 import mx.com.adolfogarcia.popularmovies.net.FetchMoviePageTaskFactory;
+import mx.com.adolfogarcia.popularmovies.net.InFlightRequests;
+import mx.com.adolfogarcia.popularmovies.net.PriorityExecutor;
+import mx.com.adolfogarcia.popularmovies.net.TheMovieDbApi;
+import mx.com.adolfogarcia.popularmovies.sync.MovieSyncAdapter;
 import mx.com.adolfogarcia.popularmovies.view.adapter.LabeledItem;
 
-import static android.os.AsyncTask.Status;
 import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListStateEntry;
 import static org.parceler.Parcel.Serialization;
 
 /**
@@ -48,7 +56,8 @@ import static org.parceler.Parcel.Serialization;
  * If an item is clicked (see {@link #onItemClick(AdapterView, View, int, long)}),
  * a {@link MovieSelectionEvent} is published on the {@link EventBus}.
  * In order for this class to work, the {@link #mWeakContext},
- * {@link #mWeakConfiguration} and {@link #mSortOrderOptions} must be injected.
+ * {@link #mWeakConfiguration}, {@link #mListStates}, {@link #mMovieDbApi}
+ * and {@link #mSortOrderOptions} must be injected.
  * When creating or reconstructing (deserializaing), make sure you inject
  * those values.
  *
@@ -89,6 +98,28 @@ public class MovieCollectionViewModel implements AdapterView.OnItemClickListener
      */
     @Inject WeakReference<RestfulServiceConfiguration> mWeakConfiguration;
 
+    /**
+     * The retrieval state of the lists of movies, read on every scroll event.
+     */
+    @Inject MovieListStateCache mListStates;
+
+    /**
+     * The proxy used to access the RESTful API.
+     */
+    @Inject TheMovieDbApi mMovieDbApi;
+
+    /**
+     * Registry of the requests in flight, used to avoid starting a new task
+     * for a page that is already being downloaded (e.g. by a task started
+     * before the fragment was recreated).
+     */
+    @Inject InFlightRequests mInFlightRequests;
+
+    /**
+     * The executor on which the network tasks are run, by priority class.
+     */
+    @Inject @Named(PriorityExecutor.NETWORK_TASKS) PriorityExecutor mNetworkTaskExecutor;
+
     /**
      * The movie sort order criteria the user may choose from.
      */
@@ -102,10 +133,11 @@ public class MovieCollectionViewModel implements AdapterView.OnItemClickListener
     private int mSelectedPosition = AdapterView.INVALID_POSITION;
 
     /**
-     * Current movie downloading task. A reference is kept to avoid
-     * creating multiple download tasks for the same page.
+     * Keeps the pages of movies ahead of the viewport in flight. Holds the
+     * current download tasks, to avoid creating multiple tasks for the same
+     * page.
      */
-    private AsyncTask<Integer, ?, ?> mFetchMoviePageTask = null;
+    private final MoviePagePrefetcher mPagePrefetcher = new MoviePagePrefetcher();
 
     /**
      * Creates a new instance of {@link MovieCollectionViewModel} with the
@@ -170,8 +202,45 @@ public class MovieCollectionViewModel implements AdapterView.OnItemClickListener
     public void updateApiConfig() {
         requireNonNullConfiguration();
         FetchConfigurationTask fetchConfigurationTask =
-                new FetchConfigurationTask(mWeakConfiguration.get());
-        fetchConfigurationTask.execute();
+                new FetchConfigurationTask(mWeakConfiguration.get(), mMovieDbApi);
+        fetchConfigurationTask.executeOnExecutor(
+                mNetworkTaskExecutor.forPriority(PriorityExecutor.Priority.BACKGROUND));
+    }
+
+    /**
+     * Requests the background synchronization to refresh the
+     * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s API
+     * configuration and the first pages of movies right away. The cached
+     * movie data remains visible until the refreshed data is stored.
+     *
+     * @see MovieSyncAdapter#syncImmediately(Context)
+     */
+    public void requestSync() {
+        requireNonNullContext();
+        MovieSyncAdapter.syncImmediately(mWeakContext.get());
+    }
+
+    /**
+     * Returns {@code true} if no page of movies has been retrieved for the
+     * currently selected sort order, {@code false} otherwise.
+     *
+     * @return {@code true} if no page of movies has been retrieved for the
+     *     currently selected sort order.
+     */
+    public boolean isMovieDataMissing() {
+        return getSelectedListState().getLastPage() == 0;
+    }
+
+    /**
+     * Returns the retrieval state of the list of the currently selected sort
+     * order, or {@link MovieListState#EMPTY} if the sort order does not
+     * retrieve its movies from the RESTful API.
+     *
+     * @return the retrieval state of the selected list.
+     */
+    private MovieListState getSelectedListState() {
+        String sortOrder = getSelectedSortOrderTaskFactory().getRestApiSortOrder();
+        return sortOrder == null ? MovieListState.EMPTY : mListStates.get(sortOrder);
     }
 
     /**
@@ -180,14 +249,17 @@ public class MovieCollectionViewModel implements AdapterView.OnItemClickListener
      * (sets it to {@link AdapterView#INVALID_POSITION}).
      */
     public void deleteCachedMovieData() {
-        // TODO - Keep user favorite movies, only remove the flags for most_popular
-        //        most_popular or highest_rated, and set them back later, if
-        //        found among the pages for most popular or highest rated.
-        requireNonNullConfiguration();
+        // TODO - Keep user favorite movies, only remove the list entries and
+        //        the movies that are in no list.
         requireNonNullContext();
+        mPagePrefetcher.cancelAll();
+        mWeakContext.get().getContentResolver()
+                .delete(MovieListEntry.CONTENT_URI, null, null);
         mWeakContext.get().getContentResolver()
                 .delete(CachedMovieEntry.CONTENT_URI, null, null);
-        mWeakConfiguration.get().clearLastMoviePageRetrieved();
+        mWeakContext.get().getContentResolver()
+                .delete(MovieListStateEntry.CONTENT_URI, null, null);
+        mListStates.clear();
         mSelectedPosition = AdapterView.INVALID_POSITION;
     }
 
@@ -235,7 +307,7 @@ public class MovieCollectionViewModel implements AdapterView.OnItemClickListener
             return;
         }
         mSelectedPosition = AdapterView.INVALID_POSITION;
-        mFetchMoviePageTask = null;
+        mPagePrefetcher.cancelAll();
         configuration.setSelectedSortOrderIndex(idx);
         EventBus.getDefault().post(new SortOrderSelectionEvent());
     }
@@ -247,23 +319,30 @@ public class MovieCollectionViewModel implements AdapterView.OnItemClickListener
      * still pages to be downloaded. Does nothing otherwise.
      */
     public void downloadNextMoviePage() {
-        requireNonNullConfiguration();
-        RestfulServiceConfiguration configuration = mWeakConfiguration.get();
-        if (mFetchMoviePageTask != null
-                && mFetchMoviePageTask.getStatus() == Status.RUNNING) {
-            Log.d(LOG_TAG, "Still downloading movie page. Ignoring request.");
-            return;
-        }
+        downloadMoviePagesAhead(1);
+    }
+
+    /**
+     * Makes sure the specified number of pages of movie data, after the last
+     * one retrieved, are being downloaded from
+     * <a href="https://www.themoviedb.org/">themoviedb.org</a>, if there are
+     * still pages to be downloaded. Does nothing otherwise.
+     *
+     * @param pagesAhead the number of pages to download ahead of the last one
+     *                   retrieved, at least one.
+     * @see MoviePagePrefetcher
+     */
+    private void downloadMoviePagesAhead(int pagesAhead) {
         FetchMoviePageTaskFactory taskFactory = getSelectedSortOrderTaskFactory();
-        final int lastPageRetrieved =
-                configuration.getLastMoviePageRetrieved(taskFactory.getRestApiSortOrder());
-        if (configuration.getTotalMoviePagesAvailable() <= lastPageRetrieved) {
+        MovieListState listState = getSelectedListState();
+        if (listState.isComplete()) {
             Log.i(LOG_TAG, "No more movie pages to download.");
             return;
         }
         try {
-            mFetchMoviePageTask = getSelectedSortOrderTaskFactory().newFetchMovieTask();
-            mFetchMoviePageTask.execute(lastPageRetrieved + 1);
+            mPagePrefetcher.prefetch(taskFactory, listState, mInFlightRequests
+                    , mNetworkTaskExecutor.forPriority(PriorityExecutor.Priority.VISIBLE_PAGE)
+                    , pagesAhead);
         } catch (UnsupportedOperationException uoe) {
             Log.i(LOG_TAG, "The selected sort order does not support downloading new movies.");
         }
@@ -282,19 +361,22 @@ public class MovieCollectionViewModel implements AdapterView.OnItemClickListener
             , int firstVisibleItem
             , int visibleItemCount
             , int totalItemCount) {
-        // Download new items if: unseen < DOWNLOAD_THRESHOLD
-        boolean reachedNewDataDownloadThreshold =
-                totalItemCount - visibleItemCount - firstVisibleItem
-                        < DOWNLOAD_THRESHOLD * visibleItemCount;
-        if (totalItemCount > 0 && reachedNewDataDownloadThreshold) {
-            Log.i(LOG_TAG, "Reached threshold. Downloading new data.");
-            downloadNextMoviePage();
+        mPagePrefetcher.onScroll(firstVisibleItem);
+        // Download new items if: unseen < DOWNLOAD_THRESHOLD, considering the
+        // items that will be reached at the current velocity.
+        int pagesAhead = mPagePrefetcher.getPagesAhead(firstVisibleItem
+                , visibleItemCount, totalItemCount, DOWNLOAD_THRESHOLD);
+        if (totalItemCount > 0 && pagesAhead > 0) {
+            Log.i(LOG_TAG, "Reached threshold. Downloading " + pagesAhead + " pages ahead.");
+            downloadMoviePagesAhead(pagesAhead);
         }
     }
 
     @Override
     public void onScrollStateChanged(AbsListView view, int scrollState) {
-        // Not used. Only included to implement OnScrollListener
+        if (scrollState == SCROLL_STATE_IDLE) {
+            mPagePrefetcher.onScrollStopped();
+        }
     }
 
     @Transient
@@ -302,6 +384,19 @@ public class MovieCollectionViewModel implements AdapterView.OnItemClickListener
         return mSortOrderOptions;
     }
 
+    /**
+     * Returns the URI to query
+     * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider} with, that
+     * corresponds to the currently selected item from
+     * {@link #getSortOrderOptions()}.
+     *
+     * @return the URI to query
+     *     {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider} with.
+     */
+    public Uri getContentUri() {
+        return getSelectedSortOrderTaskFactory().getMovieProviderUri();
+    }
+
     /**
      * Returns the selection clause (<i>WHERE</i> clause) to be used on
      * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}, that
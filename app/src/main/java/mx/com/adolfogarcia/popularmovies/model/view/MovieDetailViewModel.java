@@ -44,6 +44,7 @@ import java.util.List;
 import java.util.TimeZone;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 
 import mx.com.adolfogarcia.popularmovies.BR;
 import mx.com.adolfogarcia.popularmovies.R;
@@ -53,6 +54,12 @@ import mx.com.adolfogarcia.popularmovies.databinding.MovieTrailerListItemBinding
 import mx.com.adolfogarcia.popularmovies.model.domain.Movie;
 import mx.com.adolfogarcia.popularmovies.model.domain.Review;
 import mx.com.adolfogarcia.popularmovies.model.domain.Trailer;
+import mx.com.adolfogarcia.popularmovies.net.FetchMovieDetailsTask;
+import mx.com.adolfogarcia.popularmovies.net.ImageQualityPolicy;
+import mx.com.adolfogarcia.popularmovies.net.InFlightRequests;
+import mx.com.adolfogarcia.popularmovies.net.PriorityExecutor;
+import mx.com.adolfogarcia.popularmovies.net.TheMovieDbApi;
+import mx.com.adolfogarcia.popularmovies.view.adapter.ProgressivePosterLoader;
 
 import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieEntry;
 import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieVideoEntry;
@@ -92,6 +99,14 @@ public class MovieDetailViewModel extends BaseObservable {
      */
     private static final String LOG_TAG = MovieDetailViewModel.class.getSimpleName();
 
+    /**
+     * Time after which the videos and reviews stored for a movie are
+     * considered stale and downloaded again.
+     *
+     * @see #refreshDetailsIfStale()
+     */
+    private static final long DETAILS_MAX_AGE_MILLISECONDS = 86400000L;
+
     /**
      * Reference to the {@link Context} used to access resources and convert to
      * devide dependent pixels.
@@ -104,11 +119,46 @@ public class MovieDetailViewModel extends BaseObservable {
      */
     @Inject WeakReference<RestfulServiceConfiguration> mWeakConfiguration;
 
+    /**
+     * The proxy used to download the movie's videos and reviews when they are
+     * missing or stale.
+     */
+    @Inject TheMovieDbApi mMovieDbApi;
+
+    /**
+     * Registry of the requests in flight, used to avoid downloading the
+     * movie's videos and reviews again while they are being prefetched.
+     */
+    @Inject InFlightRequests mInFlightRequests;
+
+    /**
+     * The executor on which the task that refreshes the movie's videos and
+     * reviews is run.
+     */
+    @Inject @Named(PriorityExecutor.NETWORK_TASKS) PriorityExecutor mNetworkTaskExecutor;
+
+    /**
+     * The executor on which the movie's videos and reviews are downloaded.
+     */
+    @Inject @Named(PriorityExecutor.DETAIL_DOWNLOADS) PriorityExecutor mDetailDownloadExecutor;
+
     /**
      * The movie for which the detail data is being shown.
      */
     private Movie mMovie;
 
+    /**
+     * The epoch time at which the movie's videos and reviews were last
+     * stored, or zero if they never have been.
+     */
+    private long mDetailsUpdateTime = 0;
+
+    /**
+     * Whether the download of the movie's videos and reviews has already been
+     * requested, to avoid requesting it again every time the data is loaded.
+     */
+    private boolean mDetailsRefreshRequested = false;
+
     /**
      * Creates a new instance of {@link MovieCollectionViewModel} with the
      * default values for all its attributes.
@@ -254,6 +304,22 @@ public class MovieDetailViewModel extends BaseObservable {
                 : null;
     }
 
+    /**
+     * Returns the URI of the smallest size of the movie's poster image, as
+     * loaded first by the grid of posters.
+     *
+     * @return the URI of the smallest size of the movie's poster image.
+     */
+    @Bindable
+    public String getPosterThumbnailUri() {
+        if (mMovie == null) {
+            return null;
+        }
+        return mMovie.getPosterThumbnailUri() != null
+                ? mMovie.getPosterThumbnailUri().toString()
+                : null;
+    }
+
     /**
      * Returns the URI of the movie's backdrop image.
      *
@@ -301,24 +367,30 @@ public class MovieDetailViewModel extends BaseObservable {
 
     /**
      * Loads the movie's poster image from the specified URI into the
-     * {@link ImageView}. This method is used by the Data Binding Library.
+     * {@link ImageView}, showing the smallest size of the poster until it
+     * arrives. The smallest size is the one already decoded for the grid of
+     * posters, at the same dimensions, so it is usually taken from memory.
+     * This method is used by the Data Binding Library.
      *
      * @param view {@link ImageView} to place the image into.
      * @param posterUri where the image should be retrieved from.
+     * @param posterThumbnailUri where the smallest size of the image should
+     *                           be retrieved from.
      */
-    @BindingAdapter({"bind:posterUri"})
-    public static void loadPosterImage(ImageView view, String posterUri) {
+    @BindingAdapter({"bind:posterUri", "bind:posterThumbnailUri"})
+    public static void loadPosterImage(ImageView view
+            , String posterUri
+            , String posterThumbnailUri) {
         Context context = view.getContext();
         int posterPixelWidth = context.getResources().getDimensionPixelSize(
                 R.dimen.movie_poster_thumbnail_width);
         int posterPixelHeight = context.getResources().getDimensionPixelSize(
                 R.dimen.movie_poster_thumbnail_height);
-        Picasso.with(context)
-                .load(posterUri)
-                .resize(posterPixelWidth, posterPixelHeight)
-                .placeholder(R.anim.poster_loading)
-                .error(R.drawable.logo_the_movie_db_180dp)
-                .into(view);
+        ProgressivePosterLoader.load(view
+                , posterThumbnailUri
+                , posterUri
+                , posterPixelWidth
+                , posterPixelHeight);
     }
 
     /**
@@ -338,6 +410,7 @@ public class MovieDetailViewModel extends BaseObservable {
         Picasso.with(context)
                 .load(backdropUri)
                 .resize(backdropPixelWidth, backdropPixelHeight)
+                .config(ImageQualityPolicy.getBitmapConfig(context))
                 .placeholder(R.anim.backdrop_loading)
                 .error(R.drawable.logo_the_movie_db_360dp)
                 .into(view);
@@ -435,19 +508,59 @@ public class MovieDetailViewModel extends BaseObservable {
         mMovie.setOverview(cursor.getString(MovieDetailQuery.COL_OVERVIEW));
         int posterPixelWidth = context.getResources().getDimensionPixelSize(
                 R.dimen.movie_poster_thumbnail_width);
+        String posterPath = cursor.getString(MovieDetailQuery.COL_POSTER_PATH);
         mMovie.setPosterUri(Uri.parse(configuration.getBestFittingPosterUrl(
-                cursor.getString(MovieDetailQuery.COL_POSTER_PATH), posterPixelWidth)));
+                posterPath, posterPixelWidth)));
+        String posterThumbnailUrl = configuration.getSmallestPosterUrl(posterPath);
+        mMovie.setPosterThumbnailUri(posterThumbnailUrl == null
+                ? null
+                : Uri.parse(posterThumbnailUrl));
         int backdropPixelWidth = context.getResources().getDimensionPixelSize(
                 R.dimen.movie_backdrop_width);
-        mMovie.setBackdropUri(Uri.parse(configuration.getBestFittingPosterUrl(
+        mMovie.setBackdropUri(Uri.parse(configuration.getBestFittingBackdropUrl(
                 cursor.getString(MovieDetailQuery.COL_BACKDROP_PATH), backdropPixelWidth)));
         mMovie.setVoteAverage(cursor.getDouble(MovieDetailQuery.COL_VOTE_AVERAGE));
         mMovie.setUserFavorite(BooleanUtils.toBoolean(
                 cursor.getInt(MovieDetailQuery.COL_USER_FAVORITE)));
+        mDetailsUpdateTime = cursor.getLong(MovieDetailQuery.COL_DETAILS_UPDATE_TIME);
 
         notifyPropertyChanged(BR._all);
     }
 
+    /**
+     * Starts the download of the movie's videos and reviews if they have not
+     * been stored (e.g. they were not prefetched along with the movie's page)
+     * or if they are older than {@link #DETAILS_MAX_AGE_MILLISECONDS}. The
+     * download is requested at most once per instance. Must be called after
+     * {@link #setMovieData(Cursor)}, so the movie's identifier in the RESTful
+     * API is known.
+     *
+     * @throws IllegalStateException if there is no {@link Movie} currently set
+     *     in the {@link MovieDetailViewModel}.
+     */
+    public void refreshDetailsIfStale() {
+        if (mMovie == null) {
+            throw new IllegalStateException("No movie currently set in MovieDetailViewModel.");
+        }
+        if (mDetailsRefreshRequested || mMovie.getApiId() == 0
+                || mDetailsUpdateTime
+                        >= System.currentTimeMillis() - DETAILS_MAX_AGE_MILLISECONDS) {
+            return;
+        }
+        requireNonNullContext();
+        requireNonNullConfiguration();
+        Log.d(LOG_TAG, "Requesting details for movie " + mMovie.getApiId());
+        mDetailsRefreshRequested = true;
+        new FetchMovieDetailsTask(mWeakConfiguration.get()
+                , mMovieDbApi
+                , mInFlightRequests
+                , mDetailDownloadExecutor
+                , mWeakContext.get())
+                .executeOnExecutor(
+                        mNetworkTaskExecutor.forPriority(PriorityExecutor.Priority.OPEN_DETAIL)
+                        , mMovie.getApiId());
+    }
+
     /**
      * Retrieves the data from the cursor passed as argument and sets it onto the
      * {@link MovieDetailViewModel}'s current {@link Movie}. The projection used
@@ -610,7 +723,8 @@ public class MovieDetailViewModel extends BaseObservable {
                 CachedMovieEntry.COLUMN_POSTER_PATH,
                 CachedMovieEntry.COLUMN_BACKDROP_PATH,
                 CachedMovieEntry.COLUMN_VOTE_AVERAGE,
-                CachedMovieEntry.COLUMN_USER_FAVORITE
+                CachedMovieEntry.COLUMN_USER_FAVORITE,
+                CachedMovieEntry.COLUMN_DETAILS_UPDATE_TIME
         };
 
         /**
@@ -666,6 +780,12 @@ public class MovieDetailViewModel extends BaseObservable {
          */
         public static final int COL_USER_FAVORITE = 8;
 
+        /**
+         * Index of {@link CachedMovieEntry#COLUMN_DETAILS_UPDATE_TIME} in
+         * {@link #PROJECTION}.
+         */
+        public static final int COL_DETAILS_UPDATE_TIME = 9;
+
         /**
          * The class only provides constants and utility methods.
          */
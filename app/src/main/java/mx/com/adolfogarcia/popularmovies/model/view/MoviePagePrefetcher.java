@@ -0,0 +1,257 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.model.view;
+
+import android.os.AsyncTask;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.concurrent.Executor;
+
+import mx.com.adolfogarcia.popularmovies.data.MovieListState;
+import mx.com.adolfogarcia.popularmovies.net.FetchMoviePageTask;
+import mx.com.adolfogarcia.popularmovies.net.FetchMoviePageTaskFactory;
+import mx.com.adolfogarcia.popularmovies.net.InFlightRequests;
+import mx.com.adolfogarcia.popularmovies.net.TheMovieDbApi;
+
+/**
+ * Keeps enough pages of movies in flight ahead of the viewport so that fast
+ * flings through the poster grid do not reach an empty tail. The scroll
+ * velocity is measured on every scroll event and used to decide how many
+ * pages, between one and {@link #MAX_PAGES_AHEAD}, must be requested ahead of
+ * the last page retrieved. At most {@link #MAX_CONCURRENT_PAGES} pages are
+ * downloaded at the same time, and pages that are no longer needed (e.g.
+ * after the sort order changes or the user stops scrolling) are cancelled.
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see MovieCollectionViewModel#onScroll(android.widget.AbsListView, int, int, int)
+ */
+final class MoviePagePrefetcher {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = MoviePagePrefetcher.class.getSimpleName();
+
+    /**
+     * Maximum number of pages requested ahead of the last page retrieved.
+     */
+    static final int MAX_PAGES_AHEAD = 3;
+
+    /**
+     * Maximum number of pages downloaded at the same time.
+     */
+    static final int MAX_CONCURRENT_PAGES = 2;
+
+    /**
+     * Time, in milliseconds, it is expected to take to retrieve a page. The
+     * items the user will scroll through during that time, at the current
+     * velocity, must already be requested.
+     */
+    private static final long LOOKAHEAD_MILLISECONDS = 2000L;
+
+    /**
+     * Weight of the latest measurement in the smoothed scroll velocity.
+     */
+    private static final float VELOCITY_SMOOTHING = 0.5f;
+
+    /**
+     * The tasks downloading pages of movies, by page number.
+     */
+    private final SparseArray<FetchMoviePageTask> mInFlightPages = new SparseArray<>();
+
+    /**
+     * The sort order of the pages in {@link #mInFlightPages}.
+     */
+    private String mSortOrder = null;
+
+    /**
+     * The number of the next page to request.
+     */
+    private int mNextPage = 1;
+
+    /**
+     * The smoothed scroll velocity towards the end of the list, in items per
+     * millisecond. Negative when scrolling towards the beginning.
+     */
+    private float mVelocity = 0f;
+
+    /**
+     * The position of the first visible item on the last scroll event.
+     */
+    private int mLastFirstVisibleItem = -1;
+
+    /**
+     * The time, as returned by {@link SystemClock#uptimeMillis()}, of the last
+     * scroll event on which the first visible item changed.
+     */
+    private long mLastScrollTime = 0L;
+
+    /**
+     * Updates the scroll velocity given the first item visible at the moment.
+     *
+     * @param firstVisibleItem the position of the first visible item.
+     */
+    void onScroll(int firstVisibleItem) {
+        long now = SystemClock.uptimeMillis();
+        if (mLastFirstVisibleItem >= 0 && firstVisibleItem != mLastFirstVisibleItem
+                && now > mLastScrollTime) {
+            float velocity = (float) (firstVisibleItem - mLastFirstVisibleItem)
+                    / (now - mLastScrollTime);
+            mVelocity = VELOCITY_SMOOTHING * velocity + (1 - VELOCITY_SMOOTHING) * mVelocity;
+        }
+        if (firstVisibleItem != mLastFirstVisibleItem) {
+            mLastFirstVisibleItem = firstVisibleItem;
+            mLastScrollTime = now;
+        }
+    }
+
+    /**
+     * Resets the scroll velocity, to be called once the list stops moving.
+     */
+    void onScrollStopped() {
+        mVelocity = 0f;
+    }
+
+    /**
+     * Returns the number of pages that should be in flight, ahead of the last
+     * page retrieved, given the current scroll position and velocity. Zero if
+     * more than {@code unseenScreensThreshold} screens of movies remain unseen
+     * after the items the user will scroll through in
+     * {@link #LOOKAHEAD_MILLISECONDS}.
+     *
+     * @param firstVisibleItem the position of the first visible item.
+     * @param visibleItemCount the number of visible items.
+     * @param totalItemCount the number of items in the list.
+     * @param unseenScreensThreshold screens of unseen movies below which more
+     *                               pages are needed.
+     * @return the number of pages that should be in flight, between zero and
+     *     {@link #MAX_PAGES_AHEAD}.
+     */
+    int getPagesAhead(int firstVisibleItem
+            , int visibleItemCount
+            , int totalItemCount
+            , int unseenScreensThreshold) {
+        int itemsAhead = Math.round(Math.max(0f, mVelocity) * LOOKAHEAD_MILLISECONDS);
+        int itemsWanted = firstVisibleItem + visibleItemCount
+                + unseenScreensThreshold * visibleItemCount + itemsAhead;
+        int missingItems = itemsWanted - totalItemCount;
+        if (missingItems <= 0) {
+            return 0;
+        }
+        int pagesAhead = (missingItems + TheMovieDbApi.MOVIES_PER_PAGE - 1)
+                / TheMovieDbApi.MOVIES_PER_PAGE;
+        return Math.min(MAX_PAGES_AHEAD, pagesAhead);
+    }
+
+    /**
+     * Makes sure the specified number of pages, after the last page
+     * retrieved, are in flight, without exceeding
+     * {@link #MAX_CONCURRENT_PAGES}. Pages in flight beyond those are
+     * cancelled. If the sort order changed since the last call, all the pages
+     * in flight are cancelled first.
+     *
+     * @param taskFactory creates the tasks that download the pages.
+     * @param listState the retrieval state of the list of the sort order.
+     * @param inFlightRequests registry of the requests in flight, used to
+     *                         skip pages being downloaded by other tasks.
+     * @param executor the executor on which the tasks are run.
+     * @param pagesAhead the number of pages to keep in flight, at least one.
+     * @throws UnsupportedOperationException if the task factory does not
+     *     support downloading movies.
+     */
+    void prefetch(FetchMoviePageTaskFactory taskFactory
+            , MovieListState listState
+            , InFlightRequests inFlightRequests
+            , Executor executor
+            , int pagesAhead) {
+        String sortOrder = taskFactory.getRestApiSortOrder();
+        if (sortOrder == null) {
+            throw new UnsupportedOperationException();
+        }
+        if (!sortOrder.equals(mSortOrder)) {
+            cancelAll();
+            mSortOrder = sortOrder;
+        }
+        removeFinished();
+        final int lastPageRetrieved = listState.getLastPage();
+        if (mInFlightPages.size() == 0 || mNextPage <= lastPageRetrieved) {
+            mNextPage = lastPageRetrieved + 1;
+        }
+        final int lastPageWanted = Math.min(
+                lastPageRetrieved + Math.max(1, Math.min(MAX_PAGES_AHEAD, pagesAhead))
+                , listState.getTotalPages());
+        cancelBeyond(lastPageWanted);
+        while (mNextPage <= lastPageWanted && mInFlightPages.size() < MAX_CONCURRENT_PAGES) {
+            if (inFlightRequests.isInFlight(InFlightRequests.moviePageKey(sortOrder, mNextPage))) {
+                Log.d(LOG_TAG, "Movie page already in flight: " + mNextPage);
+            } else {
+                Log.d(LOG_TAG, "Prefetching movie page: " + mNextPage);
+                FetchMoviePageTask task = taskFactory.newFetchMovieTask();
+                task.executeOnExecutor(executor, mNextPage);
+                mInFlightPages.put(mNextPage, task);
+            }
+            mNextPage++;
+        }
+    }
+
+    /**
+     * Cancels all the pages in flight, along with their HTTP calls and the
+     * downloads of movie details they started.
+     *
+     * @see FetchMoviePageTask#cancelDownload()
+     */
+    void cancelAll() {
+        for (int i = 0; i < mInFlightPages.size(); i++) {
+            mInFlightPages.valueAt(i).cancelDownload();
+        }
+        mInFlightPages.clear();
+        mSortOrder = null;
+    }
+
+    /**
+     * Cancels the pages in flight after the specified one, and makes sure
+     * they are requested again when needed.
+     *
+     * @param lastPageWanted the last page that is still needed.
+     */
+    private void cancelBeyond(int lastPageWanted) {
+        for (int i = mInFlightPages.size() - 1; i >= 0; i--) {
+            int page = mInFlightPages.keyAt(i);
+            if (page > lastPageWanted) {
+                Log.d(LOG_TAG, "Cancelling prefetch of movie page: " + page);
+                mInFlightPages.valueAt(i).cancelDownload();
+                mInFlightPages.removeAt(i);
+                mNextPage = Math.min(mNextPage, page);
+            }
+        }
+        mNextPage = Math.min(mNextPage, lastPageWanted + 1);
+    }
+
+    /**
+     * Removes the tasks that finished from {@link #mInFlightPages}.
+     */
+    private void removeFinished() {
+        for (int i = mInFlightPages.size() - 1; i >= 0; i--) {
+            if (mInFlightPages.valueAt(i).getStatus() == AsyncTask.Status.FINISHED) {
+                mInFlightPages.removeAt(i);
+            }
+        }
+    }
+
+}
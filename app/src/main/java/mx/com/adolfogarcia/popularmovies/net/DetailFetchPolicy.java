@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.com.adolfogarcia.popularmovies.net;
+
+/**
+ * Determines which movies get their details (videos and reviews) downloaded
+ * eagerly, while the pages of movies are being retrieved. The details of the
+ * movies that are not prefetched are retrieved on demand, when the user opens
+ * their detail screen. Allows trading the number of requests made to
+ * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API
+ * against the latency of the detail screen.
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see EagerDetailFetchPolicy
+ * @see LazyDetailFetchPolicy
+ * @see TopPositionsDetailFetchPolicy
+ */
+public interface DetailFetchPolicy {
+
+    /**
+     * Returns {@code true} if the details of the movie at the specified
+     * position of the list being retrieved should be downloaded along with
+     * the page that contains it, {@code false} if they should be retrieved
+     * on demand.
+     *
+     * @param position the zero based position of the movie in the list
+     *     retrieved from the RESTful API (e.g. 25 is the sixth movie of the
+     *     second page).
+     * @return {@code true} if the movie's details should be prefetched,
+     *     {@code false} otherwise.
+     */
+    boolean shouldPrefetch(int position);
+
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.com.adolfogarcia.popularmovies.net;
+
+/**
+ * {@link DetailFetchPolicy} that prefetches the details of every movie.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class EagerDetailFetchPolicy implements DetailFetchPolicy {
+
+    @Override
+    public boolean shouldPrefetch(int position) {
+        return true;
+    }
+
+}
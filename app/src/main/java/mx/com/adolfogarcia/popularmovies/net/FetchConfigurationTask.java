@@ -27,9 +27,7 @@ import javax.inject.Inject;
 import mx.com.adolfogarcia.popularmovies.data.RestfulServiceConfiguration;
 import mx.com.adolfogarcia.popularmovies.model.transport.GeneralConfigurationJsonModel;
 import retrofit.Call;
-import retrofit.GsonConverterFactory;
 import retrofit.Response;
-import retrofit.Retrofit;
 
 /**
  * Task that downloads and stores the configuration for
@@ -49,27 +47,30 @@ public class FetchConfigurationTask extends AsyncTask<Void, Void, Void> {
      */
     @Inject WeakReference<RestfulServiceConfiguration> mWeakConfiguration;
 
+    /**
+     * The proxy used to access the RESTful API, shared by all tasks.
+     */
+    private final TheMovieDbApi mMovieDbApi;
+
     /**
      * Creates a new instance of {@link FetchConfigurationTask} that will
      * store the retrieved information in the object passed as argument.
      *
      * @param configuration the object where the retrieved information will
      *                      be stored.
+     * @param movieDbApi the proxy used to access the RESTful API.
      */
-    public FetchConfigurationTask(RestfulServiceConfiguration configuration) {
+    public FetchConfigurationTask(RestfulServiceConfiguration configuration
+            , TheMovieDbApi movieDbApi) {
         mWeakConfiguration = new WeakReference<>(configuration);
+        mMovieDbApi = movieDbApi;
     }
 
     @Override
     protected Void doInBackground(Void... params) {
         RestfulServiceConfiguration configuration = mWeakConfiguration.get();
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(TheMovieDbApi.BASE_URL)
-                .addConverterFactory(GsonConverterFactory.create())
-                .build();
-        TheMovieDbApi service = retrofit.create(TheMovieDbApi.class);
         Call<GeneralConfigurationJsonModel> configCall =
-                service.getConfiguration(configuration.getMovieApiKey());
+                mMovieDbApi.getConfiguration(configuration.getMovieApiKey());
         try {
             Response<GeneralConfigurationJsonModel> response = configCall.execute();
             if (response.isSuccess()) {
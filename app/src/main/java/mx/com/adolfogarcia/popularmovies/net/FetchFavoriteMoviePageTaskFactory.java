@@ -16,7 +16,7 @@
 
 package mx.com.adolfogarcia.popularmovies.net;
 
-import android.os.AsyncTask;
+import android.net.Uri;
 
 import org.apache.commons.lang3.BooleanUtils;
 
@@ -37,7 +37,7 @@ public class FetchFavoriteMoviePageTaskFactory implements FetchMoviePageTaskFact
     private static final String ORDER_BY_ID_ASCENDING = CachedMovieEntry._ID + " ASC";
 
     @Override
-    public AsyncTask<Integer, ?, ?> newFetchMovieTask() {
+    public FetchMoviePageTask newFetchMovieTask() {
         throw new UnsupportedOperationException();
     }
 
@@ -46,6 +46,11 @@ public class FetchFavoriteMoviePageTaskFactory implements FetchMoviePageTaskFact
         return null;
     }
 
+    @Override
+    public Uri getMovieProviderUri() {
+        return CachedMovieEntry.CONTENT_URI;
+    }
+
     @Override
     public String getMovieProviderSortOrder() {
         return ORDER_BY_ID_ASCENDING;
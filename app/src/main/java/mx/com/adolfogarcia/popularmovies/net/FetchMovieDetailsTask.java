@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import mx.com.adolfogarcia.popularmovies.data.RestfulServiceConfiguration;
+
+import static mx.com.adolfogarcia.popularmovies.net.JsonRowReader.MovieDetailRows;
+import static mx.com.adolfogarcia.popularmovies.net.PriorityExecutor.Priority;
+
+/**
+ * Task that retrieves the details (videos and first page of reviews) of the
+ * movies whose identifiers in
+ * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API are
+ * passed as arguments, and inserts them into
+ * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}. Used to
+ * retrieve on demand the details that were not prefetched along with their
+ * page, or that are stale. For example
+ * {@code myFetchMovieDetailsTask.execute(76341L)}.
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see DetailFetchPolicy
+ */
+public class FetchMovieDetailsTask extends AsyncTask<Long, Void, Void> {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = FetchMovieDetailsTask.class.getSimpleName();
+
+    /**
+     * The configuration of the RESTful API.
+     */
+    private WeakReference<RestfulServiceConfiguration> mWeakConfiguration;
+
+    /**
+     * The {@link Context} used to access
+     * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}.
+     */
+    private WeakReference<Context> mWeakContext;
+
+    /**
+     * The proxy used to access the RESTful API, shared by all tasks.
+     */
+    private final TheMovieDbApi mMovieDbApi;
+
+    /**
+     * Registry of the requests in flight, used to wait for the details being
+     * prefetched instead of downloading them again.
+     */
+    private final InFlightRequests mInFlightRequests;
+
+    /**
+     * The {@link PriorityExecutor} on which the details are downloaded, ahead
+     * of the details being prefetched in the background.
+     */
+    private final PriorityExecutor mDetailDownloadExecutor;
+
+    /**
+     * Creates a new instance of {@link FetchMovieDetailsTask} that uses the
+     * provided {@link RestfulServiceConfiguration} and {@link TheMovieDbApi} to
+     * access <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful
+     * API and uses the {@link Context} to access
+     * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}.
+     *
+     * @param configuration the configuration used to access the RESTful API.
+     * @param movieDbApi the proxy used to access the RESTful API.
+     * @param inFlightRequests registry of the requests in flight, used to
+     *                         coalesce duplicate requests.
+     * @param detailDownloadExecutor the executor on which the details are
+     *                               downloaded.
+     * @param context the context used to access the provider on which the
+     *                movie details will be stored.
+     */
+    public FetchMovieDetailsTask(RestfulServiceConfiguration configuration
+            , TheMovieDbApi movieDbApi
+            , InFlightRequests inFlightRequests
+            , PriorityExecutor detailDownloadExecutor
+            , Context context) {
+        if (configuration == null) {
+            throw new IllegalArgumentException("The Configuration may not be null");
+        }
+        if (movieDbApi == null) {
+            throw new IllegalArgumentException("The API proxy may not be null");
+        }
+        if (inFlightRequests == null) {
+            throw new IllegalArgumentException("The InFlightRequests may not be null");
+        }
+        if (detailDownloadExecutor == null) {
+            throw new IllegalArgumentException("The PriorityExecutor may not be null");
+        }
+        if (context == null) {
+            throw new IllegalArgumentException("The Context may not be null");
+        }
+        mWeakConfiguration = new WeakReference<>(configuration);
+        mWeakContext = new WeakReference<>(context);
+        mMovieDbApi = movieDbApi;
+        mInFlightRequests = inFlightRequests;
+        mDetailDownloadExecutor = detailDownloadExecutor;
+    }
+
+    @Override
+    protected Void doInBackground(Long... params) {
+        if (mWeakConfiguration.get() == null) {
+            Log.e(LOG_TAG, "Unable to download movie details. No configuration available.");
+            return null;
+        }
+        MovieDetailsFetcher fetcher = new MovieDetailsFetcher(mMovieDbApi
+                , mWeakConfiguration.get().getMovieApiKey());
+        List<MovieDetailRows> detailsList = new ArrayList<>(params.length);
+        for (final Long movieApiId : params) {
+            try {
+                MovieDetailRows details = mInFlightRequests.submit(
+                        InFlightRequests.movieResourceKey(
+                                movieApiId, MovieDetailsFetcher.RESOURCE_DETAILS)
+                        , () -> fetcher.download(movieApiId)
+                        , mDetailDownloadExecutor.forPriority(Priority.OPEN_DETAIL)).get();
+                if (details != null) {
+                    detailsList.add(details);
+                }
+            } catch (InterruptedException ie) {
+                Log.w(LOG_TAG, "Interrupted while waiting for movie details.", ie);
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException ee) {
+                Log.e(LOG_TAG, "Error getting details for movie " + movieApiId, ee.getCause());
+            }
+        }
+        if (mWeakContext.get() != null) {
+            MovieDetailsFetcher.store(mWeakContext.get(), detailsList);
+        } else {
+            Log.e(LOG_TAG, "Unable to insert movie details. No context available.");
+        }
+        return null;
+    }
+
+}
@@ -16,40 +16,52 @@
 
 package mx.com.adolfogarcia.popularmovies.net;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentValues;
 import android.content.Context;
 import android.os.AsyncTask;
+import android.text.TextUtils;
 import android.util.Log;
 
+import com.squareup.okhttp.ResponseBody;
+
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import mx.com.adolfogarcia.popularmovies.data.RestfulServiceConfiguration;
-import mx.com.adolfogarcia.popularmovies.model.transport.MovieJsonModel;
-import mx.com.adolfogarcia.popularmovies.model.transport.MoviePageJsonModel;
-import mx.com.adolfogarcia.popularmovies.model.transport.MovieReviewJsonModel;
-import mx.com.adolfogarcia.popularmovies.model.transport.MovieReviewPageJsonModel;
-import mx.com.adolfogarcia.popularmovies.model.transport.MovieVideosJsonModel;
-import mx.com.adolfogarcia.popularmovies.model.transport.VideoJsonModel;
 import retrofit.Call;
-import retrofit.GsonConverterFactory;
 import retrofit.Response;
-import retrofit.Retrofit;
 
 import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieEntry;
-import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieReviewEntry;
-import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieVideoEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListStateEntry;
+import static mx.com.adolfogarcia.popularmovies.net.JsonRowReader.MovieDetailRows;
+import static mx.com.adolfogarcia.popularmovies.net.JsonRowReader.MoviePageRows;
+import static mx.com.adolfogarcia.popularmovies.net.PriorityExecutor.Priority;
 
 /**
  * Task that retrieves a page of movies from
  * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API ordered
  * by the criteria specified at construction time, and inserts them into
- * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}. For example,
+ * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}, along with
+ * the details prefetched for them, in a single transaction. For example,
  * the order criteria may be {@link TheMovieDbApi#SORT_BY_USER_RATING} and
  * we may specify we want page three as an argument
  * {@code myFetchMoviePageTask.execute(3)}.
  *
+ * <p>Use {@link #cancelDownload()} instead of {@link #cancel(boolean)} to
+ * also stop the HTTP calls and the downloads of movie details the task
+ * started, once the page is no longer needed.</p>
+ *
  * @author Jesús Adolfo García Pasquel
  */
 public class FetchMoviePageTask extends AsyncTask<Integer, Void, Void> {
@@ -70,6 +82,30 @@ public class FetchMoviePageTask extends AsyncTask<Integer, Void, Void> {
      */
     private WeakReference<Context> mWeakContext;
 
+    /**
+     * The proxy used to access the RESTful API, shared by all tasks.
+     */
+    private final TheMovieDbApi mMovieDbApi;
+
+    /**
+     * The {@link PriorityExecutor} on which the videos and reviews of the movies
+     * in the page are downloaded in parallel. The number of concurrent
+     * downloads is bounded by its number of threads.
+     */
+    private final PriorityExecutor mDetailDownloadExecutor;
+
+    /**
+     * Determines which movies in the page get their videos and reviews
+     * downloaded along with it.
+     */
+    private final DetailFetchPolicy mDetailFetchPolicy;
+
+    /**
+     * Registry of the requests in flight, used to avoid downloading the same
+     * page, or the same movie details, more than once concurrently.
+     */
+    private final InFlightRequests mInFlightRequests;
+
     /**
      * The order criteria by which the movies to be retrieved from
      * <a href="https://www.themoviedb.org/">themoviedb.org</a> are sorted.
@@ -79,24 +115,72 @@ public class FetchMoviePageTask extends AsyncTask<Integer, Void, Void> {
      */
     private String mOrderCriteria;
 
+    /**
+     * Identifies the request for the page in {@link #mInFlightRequests}, set
+     * once the task starts.
+     */
+    private volatile String mPageKey = null;
+
+    /**
+     * Whether the page is being downloaded by this task, as opposed to
+     * waiting for another task that downloads the same page.
+     */
+    private volatile boolean mDownloadingPage = false;
+
+    /**
+     * The HTTP call for the page, set while it is being performed.
+     */
+    private volatile Call<ResponseBody> mMovieCall = null;
+
+    /**
+     * Identifies the requests for movie details in {@link #mInFlightRequests}
+     * this task is still interested in.
+     */
+    private final Set<String> mDetailKeys =
+            Collections.newSetFromMap(new ConcurrentHashMap<>());
+
     /**
      * Creates a new instance of {@link FetchMoviePageTask} that uses the
-     * provided {@link RestfulServiceConfiguration} to access
-     * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API
-     * with the specified order criteria and uses to {@link Context} to
+     * provided {@link RestfulServiceConfiguration} and {@link TheMovieDbApi} to
+     * access <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful
+     * API with the specified order criteria and uses to {@link Context} to
      * access {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}.
      *
      * @param configuration the configuration used to access movie pages.
+     * @param movieDbApi the proxy used to access the RESTful API.
+     * @param detailDownloadExecutor the {@link PriorityExecutor} used to
+     *                               download movie videos and reviews in
+     *                               parallel.
+     * @param detailFetchPolicy determines which movies in the page get their
+     *                          videos and reviews downloaded along with it.
+     * @param inFlightRequests registry of the requests in flight, used to
+     *                         coalesce duplicate requests.
      * @param orderCriteria the order criteria for the query to the RESTful API.
      * @param context the context used to access the provider on which the
      *                movie data will be stored.
      */
     public FetchMoviePageTask(RestfulServiceConfiguration configuration
+            , TheMovieDbApi movieDbApi
+            , PriorityExecutor detailDownloadExecutor
+            , DetailFetchPolicy detailFetchPolicy
+            , InFlightRequests inFlightRequests
             , String orderCriteria
             , Context context) {
         if (configuration == null) {
             throw new IllegalArgumentException("The Configuration may not be null");
         }
+        if (movieDbApi == null) {
+            throw new IllegalArgumentException("The API proxy may not be null");
+        }
+        if (detailDownloadExecutor == null) {
+            throw new IllegalArgumentException("The PriorityExecutor may not be null");
+        }
+        if (detailFetchPolicy == null) {
+            throw new IllegalArgumentException("The DetailFetchPolicy may not be null");
+        }
+        if (inFlightRequests == null) {
+            throw new IllegalArgumentException("The InFlightRequests may not be null");
+        }
         if (context == null) {
             throw new IllegalArgumentException("The Context may not be null");
         }
@@ -107,229 +191,331 @@ public class FetchMoviePageTask extends AsyncTask<Integer, Void, Void> {
         }
         mWeakConfiguration = new WeakReference<>(configuration);
         mWeakContext = new WeakReference<>(context);
+        mMovieDbApi = movieDbApi;
+        mDetailDownloadExecutor = detailDownloadExecutor;
+        mDetailFetchPolicy = detailFetchPolicy;
+        mInFlightRequests = inFlightRequests;
         mOrderCriteria = orderCriteria;
     }
 
     @Override
     protected Void doInBackground(Integer... params) {
-        Log.d(LOG_TAG, "Starting download of movie page: " + params[0]);
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(TheMovieDbApi.BASE_URL)
-                .addConverterFactory(GsonConverterFactory.create())
-                .build();
-        TheMovieDbApi service = retrofit.create(TheMovieDbApi.class);
-        Call<MoviePageJsonModel> movieCall = service.getMoviePage(
+        final int pageNumber = params[0];
+        mPageKey = InFlightRequests.moviePageKey(mOrderCriteria, pageNumber);
+        try {
+            mInFlightRequests.run(mPageKey, () -> downloadPage(pageNumber));
+        } catch (CancellationException ce) {
+            Log.d(LOG_TAG, "Download of movie page cancelled: " + pageNumber);
+        } catch (InterruptedException ie) {
+            Log.d(LOG_TAG, "Interrupted while waiting for movie page " + pageNumber);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+            Log.e(LOG_TAG, "Error getting movie page " + pageNumber, ee.getCause());
+        }
+        return null;
+    }
+
+    /**
+     * Cancels the task and, unless other requests are waiting for the same
+     * page, the work it started: the HTTP call for the page and the downloads
+     * of movie details no other request is waiting for. Queued downloads are
+     * dropped without being performed, and nothing else is inserted into
+     * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}. Must be
+     * called on the UI thread.
+     */
+    public void cancelDownload() {
+        String pageKey = mPageKey;
+        boolean abandoned = pageKey == null || mInFlightRequests.release(pageKey);
+        if (mDownloadingPage && !abandoned) {
+            // Other requests are waiting for the page this task is downloading
+            cancel(false);
+            return;
+        }
+        cancel(true);
+        Call<ResponseBody> movieCall = mMovieCall;
+        if (movieCall != null) {
+            movieCall.cancel();
+        }
+        releaseDetails();
+    }
+
+    /**
+     * Returns {@code true} if nobody is waiting for the page anymore, that
+     * is, if the thread performing the download was interrupted by
+     * {@link #cancelDownload()} or by {@link InFlightRequests#release(String)}.
+     *
+     * @return {@code true} if the download was abandoned.
+     */
+    private static boolean isAbandoned() {
+        return Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Retrieves the specified page of movies, and the details that should be
+     * prefetched along with it, and stores them in
+     * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}. Performed
+     * through {@link #mInFlightRequests}, so a task that requests a page
+     * already being downloaded waits for it instead of downloading it again.
+     *
+     * @param pageNumber the number of the page to download.
+     * @return always {@code null}.
+     */
+    private Void downloadPage(int pageNumber) {
+        mDownloadingPage = true;
+        if (isAbandoned()) {
+            Log.d(LOG_TAG, "Skipping cancelled movie page " + pageNumber);
+            return null;
+        }
+        Log.d(LOG_TAG, "Starting download of movie page: " + pageNumber);
+        Call<ResponseBody> movieCall = mMovieDbApi.getMoviePageStream(
                 mWeakConfiguration.get().getMovieApiKey()
                 , mOrderCriteria
-                , params[0]
+                , pageNumber
         );
+        mMovieCall = movieCall;
         try {
-            Response<MoviePageJsonModel> response = movieCall.execute();
-            if (response.isSuccess()) {
-                Log.i(LOG_TAG, "Successfully downloaded movie page " + params[0]);
-                insertMoviesInProvider(response.body());
-                for (MovieJsonModel movie : response.body().getMovies()) {
-                    downloadVideosFor(movie);
-                    downloadReviewsFor(movie);
+            Response<ResponseBody> response = movieCall.execute();
+            if (isAbandoned()) {
+                Log.d(LOG_TAG, "Discarding cancelled movie page " + pageNumber);
+                if (response.body() != null) {
+                    response.body().close();
+                }
+            } else if (response.isSuccess()) {
+                MoviePageRows page = JsonRowReader.readMoviePage(response.body().charStream());
+                Log.i(LOG_TAG, "Successfully downloaded movie page " + pageNumber);
+                if (isAbandoned()) {
+                    Log.d(LOG_TAG, "Discarding cancelled movie page " + pageNumber);
+                    return null;
+                }
+                List<MovieDetailRows> detailsList = downloadPageDetails(page);
+                if (detailsList != null) {
+                    storePage(page, detailsList);
                 }
             } else {
-                Log.w(LOG_TAG, "Failed to download movie page " + params[0]);
+                Log.w(LOG_TAG, "Failed to download movie page " + pageNumber);
             }
+        } catch (InterruptedIOException iioe) {
+            Log.d(LOG_TAG, "Download of movie page cancelled: " + pageNumber);
         } catch (IOException e) {
-            Log.e(LOG_TAG, "Error getting movie page " + params[0], e);
+            if (isCancelled()) {
+                Log.d(LOG_TAG, "Download of movie page cancelled: " + pageNumber);
+            } else {
+                Log.e(LOG_TAG, "Error getting movie page " + pageNumber, e);
+            }
+        } finally {
+            mMovieCall = null;
         }
         return null;
     }
 
     /**
-     * Inserts the movies in the page retrieved from
-     * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API
-     * into
-     * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}.
+     * Adds to the list passed as argument the operations that place the
+     * movies passed as argument in the list with the specified key, one
+     * after another, from the position passed as argument on. The entries
+     * those movies had at other positions of the list are removed, so a
+     * movie that moved to another page since the previous ones were
+     * retrieved is not listed twice.
      *
-     * @param response the reply from the RESTful API.
+     * @param operations the list to which the operations are added.
+     * @param listKey the key of the list (e.g.
+     *                {@link TheMovieDbApi#SORT_BY_POPULARITY}).
+     * @param firstPosition the position of the first movie in the list.
+     * @param movies the rows of the movies, in list order.
+     * @see mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListEntry
      */
-    private void insertMoviesInProvider(MoviePageJsonModel response) {
-        List<MovieJsonModel> movieList = response.getMovies();
-        ContentValues[] cvArray = new ContentValues[movieList.size()];
-        final String orderColumnName;
-        switch (mOrderCriteria) {
-            case  TheMovieDbApi.SORT_BY_POPULARITY:
-                orderColumnName = CachedMovieEntry.COLUMN_MOST_POPULAR;
-                break;
-            case TheMovieDbApi.SORT_BY_USER_RATING:
-                orderColumnName = CachedMovieEntry.COLUMN_HIGHEST_RATED;
-                break;
-            default:
-                throw new IllegalStateException("Unknown order criteria: "
-                        + mOrderCriteria);
+    static void addListEntryOperations(List<ContentProviderOperation> operations
+            , String listKey
+            , int firstPosition
+            , List<ContentValues> movies) {
+        if (movies.isEmpty()) {
+            return;
         }
-        for (int i = 0; i < cvArray.length; i++) {
-            MovieJsonModel movie = movieList.get(i);
-            ContentValues contentValues = new ContentValues();
-            contentValues.put(CachedMovieEntry.COLUMN_API_ID
-                    , movie.getId());
-            contentValues.put(CachedMovieEntry.COLUMN_ORIGINAL_TITLE
-                    , movie.getOriginalTitle());
-            contentValues.put(CachedMovieEntry.COLUMN_RELEASE_DATE
-                    , movie.getReleaseDateEpochTimeUtc());
-            contentValues.put(CachedMovieEntry.COLUMN_OVERVIEW
-                    , movie.getOverview());
-            contentValues.put(CachedMovieEntry.COLUMN_BACKDROP_PATH
-                    , movie.getBackdropPath());
-            contentValues.put(CachedMovieEntry.COLUMN_POPULARITY
-                    , movie.getPopularity());
-            contentValues.put(CachedMovieEntry.COLUMN_VOTE_AVERAGE
-                    , movie.getVoteAverage());
-            contentValues.put(CachedMovieEntry.COLUMN_POSTER_PATH
-                    , movie.getPosterPath());
-            contentValues.put(orderColumnName, true);
-            cvArray[i] = contentValues;
+        List<String> selectionArgs = new ArrayList<>(movies.size() + 3);
+        selectionArgs.add(listKey);
+        selectionArgs.add(Integer.toString(firstPosition));
+        selectionArgs.add(Integer.toString(firstPosition + movies.size()));
+        for (ContentValues movie : movies) {
+            selectionArgs.add(movie.getAsString(CachedMovieEntry.COLUMN_API_ID));
         }
-        if (cvArray.length > 0
-                && mWeakContext.get() != null && mWeakConfiguration.get() != null) {
-            mWeakContext.get().getContentResolver().bulkInsert(
-                    CachedMovieEntry.CONTENT_URI, cvArray);
-            mWeakConfiguration.get().setTotalMoviePagesAvailable(response.getTotalPages());
-            mWeakConfiguration.get().setLastMoviePageRetrieved(mOrderCriteria
-                    , response.getPageNumber());
-        } else if (cvArray.length == 0) {
-            Log.d(LOG_TAG, "No movies to insert.");
-        } else {
-            Log.e(LOG_TAG, "Unable to insert movies. No context or configuration available.");
+        operations.add(ContentProviderOperation.newDelete(MovieListEntry.CONTENT_URI)
+                .withSelection(MovieListEntry.COLUMN_LIST_KEY + " = ? AND ("
+                                + MovieListEntry.COLUMN_POSITION + " < ? OR "
+                                + MovieListEntry.COLUMN_POSITION + " >= ?) AND "
+                                + MovieListEntry.COLUMN_MOVIE_API_ID + " IN ("
+                                + TextUtils.join(",", Collections.nCopies(movies.size(), "?"))
+                                + ")"
+                        , selectionArgs.toArray(new String[selectionArgs.size()]))
+                .build());
+        for (int i = 0; i < movies.size(); i++) {
+            operations.add(ContentProviderOperation.newInsert(MovieListEntry.CONTENT_URI)
+                    .withValue(MovieListEntry.COLUMN_LIST_KEY, listKey)
+                    .withValue(MovieListEntry.COLUMN_POSITION, firstPosition + i)
+                    .withValue(MovieListEntry.COLUMN_MOVIE_API_ID
+                            , movies.get(i).getAsLong(CachedMovieEntry.COLUMN_API_ID))
+                    .build());
         }
     }
 
     /**
-     * Retrieves the collection of videos available for the specified movie,
-     * from <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful
-     * API and stores them in the local database.
+     * Adds to the operations passed as argument the one that records a page
+     * of a list as retrieved in its state, along with the total number of
+     * pages. The first page is always recorded, while any other page is only
+     * recorded if it immediately follows the last one stored. Pages may be
+     * retrieved concurrently and finish out of order, so this keeps the last
+     * page of an unbroken run: a page that finishes before its predecessor is
+     * not recorded, and is retrieved again later, instead of leaving a gap if
+     * the predecessor fails.
      *
-     * @param movie the movie for which the collection of videos will be
-     *              retrieved and stored locally.
-     * @see #insertVideosInProvider(MovieVideosJsonModel)
+     * @param operations the operations to add the operation to.
+     * @param listKey the key of the list.
+     * @param page the number of the page retrieved.
+     * @param totalPages the total number of pages available.
      */
-    private void downloadVideosFor(MovieJsonModel movie) {
-        Log.d(LOG_TAG, "Starting download of videos for: " + movie);
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(TheMovieDbApi.BASE_URL)
-                .addConverterFactory(GsonConverterFactory.create())
-                .build();
-        TheMovieDbApi service = retrofit.create(TheMovieDbApi.class);
-        Call<MovieVideosJsonModel> movieVideosCall = service.getMovieVideos(
-                movie.getId()
-                , mWeakConfiguration.get().getMovieApiKey());
-        try {
-            Response<MovieVideosJsonModel> response = movieVideosCall.execute();
-            if (response.isSuccess()) {
-                Log.d(LOG_TAG, "Successfully downloaded videos for movie " + movie.getId());
-                insertVideosInProvider(response.body());
-            } else {
-                Log.w(LOG_TAG, "Failed to download videos for movie");
-            }
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error getting videos for movie", e);
+    static void addListStateOperation(List<ContentProviderOperation> operations
+            , String listKey
+            , int page
+            , int totalPages) {
+        ContentProviderOperation.Builder builder;
+        if (page == 1) {
+            builder = ContentProviderOperation.newInsert(MovieListStateEntry.CONTENT_URI)
+                    .withValue(MovieListStateEntry.COLUMN_LIST_KEY, listKey);
+        } else {
+            builder = ContentProviderOperation.newUpdate(MovieListStateEntry.CONTENT_URI)
+                    .withSelection(MovieListStateEntry.COLUMN_LIST_KEY + " = ? AND "
+                                    + MovieListStateEntry.COLUMN_LAST_PAGE + " = ?"
+                            , new String[] {listKey, Integer.toString(page - 1)});
         }
+        operations.add(builder.withValue(MovieListStateEntry.COLUMN_LAST_PAGE, page)
+                .withValue(MovieListStateEntry.COLUMN_TOTAL_PAGES, totalPages)
+                .withValue(MovieListStateEntry.COLUMN_FETCH_TIME, System.currentTimeMillis())
+                .build());
     }
 
     /**
-     * Inserts the videos available for a particular movie, retrieved from
-     * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API
-     * into
-     * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}.
+     * Stores the movies in the page retrieved from
+     * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API,
+     * along with their positions in the list for {@link #mOrderCriteria}, the
+     * details prefetched for them and the new state of the list, in
+     * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider} in a single
+     * transaction, so the observers are notified once per page and the state
+     * of the list always matches its entries.
      *
-     * @param movieVideos the videos available for a particular movie.
+     * @param page the rows read from the reply of the RESTful API.
+     * @param detailsList the details prefetched for the movies in the page.
      */
-    private void insertVideosInProvider(MovieVideosJsonModel movieVideos) {
-        List<VideoJsonModel> videoList = movieVideos.getVideos();
-        long movieId = movieVideos.getMovieId();
-        ContentValues[] cvArray = new ContentValues[videoList.size()];
-        for (int i = 0; i < cvArray.length; i++) {
-            VideoJsonModel video = videoList.get(i);
-            ContentValues contentValues = new ContentValues();
-            contentValues.put(CachedMovieVideoEntry.COLUMN_MOVIE_API_ID, movieId);
-            contentValues.put(CachedMovieVideoEntry.COLUMN_API_ID, video.getId());
-            contentValues.put(CachedMovieVideoEntry.COLUMN_LANGUAGE, video.getLanguage());
-            contentValues.put(CachedMovieVideoEntry.COLUMN_NAME, video.getName());
-            contentValues.put(CachedMovieVideoEntry.COLUMN_TYPE, video.getType());
-            contentValues.put(CachedMovieVideoEntry.COLUMN_SIZE, video.getSize());
-            contentValues.put(CachedMovieVideoEntry.COLUMN_SITE, video.getSite());
-            contentValues.put(CachedMovieVideoEntry.COLUMN_KEY, video.getKey());
-            cvArray[i] = contentValues;
+    private void storePage(MoviePageRows page, List<MovieDetailRows> detailsList) {
+        List<ContentValues> movieList = page.getMovies();
+        if (movieList.isEmpty()) {
+            Log.d(LOG_TAG, "No movies to insert.");
+            return;
         }
-        if (cvArray.length > 0
-                && mWeakContext.get() != null && mWeakConfiguration.get() != null) {
-            mWeakContext.get().getContentResolver().bulkInsert(
-                    CachedMovieVideoEntry.CONTENT_URI, cvArray);
-        } else if (cvArray.length == 0) {
-            Log.d(LOG_TAG, "No videos to insert.");
-        } else {
-            Log.e(LOG_TAG, "Unable to insert videos. No context or configuration available.");
+        Context context = mWeakContext.get();
+        if (context == null) {
+            Log.e(LOG_TAG, "Unable to insert movies. No context available.");
+            return;
         }
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        MovieDetailsFetcher.addInsertOperations(operations
+                , CachedMovieEntry.CONTENT_URI
+                , movieList);
+        addListEntryOperations(operations
+                , mOrderCriteria
+                , (page.getPageNumber() - 1) * TheMovieDbApi.MOVIES_PER_PAGE
+                , movieList);
+        operations.addAll(MovieDetailsFetcher.storeOperations(detailsList));
+        addListStateOperation(operations
+                , mOrderCriteria
+                , page.getPageNumber()
+                , page.getTotalPages());
+        MovieDetailsFetcher.applyBatch(context, operations);
     }
 
     /**
-     * Retrieves the collection of reviews available for the specified movie,
-     * from <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful
-     * API and stores them in the local database.
+     * Retrieves the videos and reviews of the movies passed as argument that
+     * should be prefetched according to {@link #mDetailFetchPolicy}, from
+     * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API.
+     * A single request is performed per movie, and the requests are
+     * performed in parallel on {@link #mDetailDownloadExecutor}, unless they
+     * are already in flight. If the download is abandoned meanwhile, the
+     * downloads no other request is waiting for are cancelled.
      *
-     * @param movie the movie for which the collection of reviews will be
-     *              retrieved and stored locally.
-     * @see #insertVideosInProvider(MovieVideosJsonModel)
+     * @param page the rows read from the reply of the RESTful API, containing
+     *             the movies for which the videos and reviews will be
+     *             retrieved.
+     * @return the details retrieved, or {@code null} if the download was
+     *     abandoned and nothing should be stored.
      */
-    private void downloadReviewsFor(MovieJsonModel movie) {
-        Log.d(LOG_TAG, "Starting download of reviews for: " + movie);
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(TheMovieDbApi.BASE_URL)
-                .addConverterFactory(GsonConverterFactory.create())
-                .build();
-        TheMovieDbApi service = retrofit.create(TheMovieDbApi.class);
-        Call<MovieReviewPageJsonModel> movieVideosCall =
-                service.getMovieReviews(
-                        movie.getId(), mWeakConfiguration.get().getMovieApiKey(), 1);
-        try {
-            Response<MovieReviewPageJsonModel> response = movieVideosCall.execute();
-            if (response.isSuccess()) {
-                Log.d(LOG_TAG, "Successfully downloaded reviews for movie " + movie.getId());
-                insertReviewsInProvider(response.body());
-            } else {
-                Log.w(LOG_TAG, "Failed to download reviews for movie");
+    private List<MovieDetailRows> downloadPageDetails(MoviePageRows page) {
+        List<ContentValues> movies = page.getMovies();
+        int firstPosition = (page.getPageNumber() - 1) * TheMovieDbApi.MOVIES_PER_PAGE;
+        MovieDetailsFetcher fetcher = new MovieDetailsFetcher(mMovieDbApi
+                , mWeakConfiguration.get().getMovieApiKey());
+        List<Future<MovieDetailRows>> futures = new ArrayList<>(movies.size());
+        for (int i = 0; i < movies.size(); i++) {
+            if (!mDetailFetchPolicy.shouldPrefetch(firstPosition + i)) {
+                continue;
             }
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error getting reviews for movie", e);
+            final long movieApiId = movies.get(i).getAsLong(CachedMovieEntry.COLUMN_API_ID);
+            String detailKey = InFlightRequests.movieResourceKey(
+                    movieApiId, MovieDetailsFetcher.RESOURCE_DETAILS);
+            mDetailKeys.add(detailKey);
+            futures.add(mInFlightRequests.submit(detailKey
+                    , () -> fetcher.download(movieApiId)
+                    , mDetailDownloadExecutor.forPriority(Priority.BACKGROUND)));
+        }
+        if (futures.isEmpty()) {
+            Log.d(LOG_TAG, "No movie details to prefetch for page " + page.getPageNumber());
+            return Collections.emptyList();
+        }
+        List<MovieDetailRows> detailsList = new ArrayList<>(futures.size());
+        for (Future<MovieDetailRows> future : futures) {
+            if (isAbandoned()) {
+                break;
+            }
+            MovieDetailRows details = await(future);
+            if (details != null) {
+                detailsList.add(details);
+            }
+        }
+        if (isAbandoned()) {
+            Log.d(LOG_TAG, "Discarding cancelled details for page " + page.getPageNumber());
+            releaseDetails();
+            return null;
         }
+        return detailsList;
     }
 
     /**
-     * Inserts a page of reviews for a particular movie, retrieved from
-     * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API
-     * into
-     * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}.
+     * Waits for the download represented by the {@link Future} passed as
+     * argument to finish and returns its result. If the download failed, the
+     * error is logged and {@code null} is returned.
      *
-     * @param pageOfReviews the reviews to insert.
+     * @param future the pending result of the download.
+     * @return the result of the download or {@code null} if it failed.
      */
-    private void insertReviewsInProvider(MovieReviewPageJsonModel pageOfReviews) {
-        List<MovieReviewJsonModel> reviewList = pageOfReviews.getReviews();
-        long movieId = pageOfReviews.getMovieId();
-        ContentValues[] cvArray = new ContentValues[reviewList.size()];
-        for (int i = 0; i < cvArray.length; i++) {
-            MovieReviewJsonModel video = reviewList.get(i);
-            ContentValues contentValues = new ContentValues();
-            contentValues.put(CachedMovieReviewEntry.COLUMN_MOVIE_API_ID, movieId);
-            contentValues.put(CachedMovieReviewEntry.COLUMN_API_ID, video.getId());
-            contentValues.put(CachedMovieReviewEntry.COLUMN_AUTHOR, video.getAuthor());
-            contentValues.put(CachedMovieReviewEntry.COLUMN_CONTENT, video.getContent());
-            contentValues.put(CachedMovieReviewEntry.COLUMN_URL, video.getUrl());
-            cvArray[i] = contentValues;
+    private static MovieDetailRows await(Future<MovieDetailRows> future) {
+        try {
+            return future.get();
+        } catch (CancellationException ce) {
+            Log.d(LOG_TAG, "Download of movie details cancelled.");
+        } catch (InterruptedException ie) {
+            Log.d(LOG_TAG, "Interrupted while waiting for movie details.");
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+            Log.e(LOG_TAG, "Error getting movie details", ee.getCause());
         }
-        if (cvArray.length > 0
-                && mWeakContext.get() != null && mWeakConfiguration.get() != null) {
-            mWeakContext.get().getContentResolver().bulkInsert(
-                    CachedMovieReviewEntry.CONTENT_URI, cvArray);
-        } else if (cvArray.length == 0) {
-            Log.d(LOG_TAG, "No reviews to insert.");
-        } else {
-            Log.e(LOG_TAG, "Unable to insert reviews. No context or configuration available.");
+        return null;
+    }
+
+    /**
+     * Withdraws the interest of the task in the downloads of movie details it
+     * requested, cancelling those no other request is waiting for.
+     */
+    private void releaseDetails() {
+        for (String detailKey : mDetailKeys) {
+            if (mDetailKeys.remove(detailKey) && mInFlightRequests.release(detailKey)) {
+                Log.d(LOG_TAG, "Cancelled download: " + detailKey);
+            }
         }
     }
 
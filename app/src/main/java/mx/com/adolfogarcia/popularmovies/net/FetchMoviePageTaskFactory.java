@@ -16,10 +16,10 @@
 
 package mx.com.adolfogarcia.popularmovies.net;
 
-import android.os.AsyncTask;
+import android.net.Uri;
 
 /**
- * Implementations of this interface can create {@link android.os.AsyncTask}s
+ * Implementations of this interface can create {@link FetchMoviePageTask}s
  * capable of retrieving  pages of movies from
  * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API ordered
  * by certain criteria, and inserts them into
@@ -30,19 +30,19 @@ import android.os.AsyncTask;
 public interface FetchMoviePageTaskFactory {
 
     /**
-     * Returns a new instance of {@link AsyncTask} that receives as parameter
-     * the number of the page of movies to download, and upon execution
-     * retrieves them and inserts them into
+     * Returns a new instance of {@link FetchMoviePageTask} that receives as
+     * parameter the number of the page of movies to download, and upon
+     * execution retrieves them and inserts them into
      * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}.
      *
-     * @return a new instance of {@link AsyncTask} that receives as parameter
-     *     the number of the page of movies to download, and upon execution
-     *     retrieves them and inserts them into
+     * @return a new instance of {@link FetchMoviePageTask} that receives as
+     *     parameter the number of the page of movies to download, and upon
+     *     execution retrieves them and inserts them into
      *     {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}.
      * @throws UnsupportedOperationException if the operation is not supported
      *     by the implementation.
      */
-    AsyncTask<Integer, ?, ?> newFetchMovieTask();
+    FetchMoviePageTask newFetchMovieTask();
 
     /**
      * Returns the parameter used to specify the sort order to the RESTful API,
@@ -55,6 +55,18 @@ public interface FetchMoviePageTaskFactory {
      */
     String getRestApiSortOrder();
 
+    /**
+     * Returns the URI used to query
+     * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider} for the
+     * movies retrieved by {@link #newFetchMovieTask()}, along with
+     * {@link #getMovieProviderSelectionClause()} and
+     * {@link #getMovieProviderSortOrder()}.
+     *
+     * @return the URI of the movies, for example the URI of a list of movies.
+     * @see mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieEntry#buildMovieListUri(String)
+     */
+    Uri getMovieProviderUri();
+
     /**
      * Returns an order clause to be used on
      * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}, that is
@@ -17,14 +17,13 @@
 package mx.com.adolfogarcia.popularmovies.net;
 
 import android.content.Context;
-import android.os.AsyncTask;
-
-import org.apache.commons.lang3.BooleanUtils;
+import android.net.Uri;
 
 import java.lang.ref.WeakReference;
 
 import mx.com.adolfogarcia.popularmovies.data.RestfulServiceConfiguration;
 import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListEntry;
 
 /**
  * Implementation of {@link FetchMoviePageTaskFactory} for movies sorted by
@@ -38,11 +37,11 @@ public class FetchPopularityMoviePageTaskFactory
 
     /**
      * Used on the query to {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider},
-     * to order the results from most to least popular.
+     * to order the results as the list retrieved from the RESTful API, from
+     * most to least popular.
      */
-    private static final String ORDER_BY_POPULARITY_DESCENDING =
-            CachedMovieEntry.COLUMN_POPULARITY + " DESC"
-            + ", " + CachedMovieEntry._ID + " ASC";
+    private static final String ORDER_BY_LIST_POSITION =
+            MovieListEntry.TABLE_NAME + "." + MovieListEntry.COLUMN_POSITION + " ASC";
 
     /**
      * The configuration of the RESTful API.
@@ -55,20 +54,55 @@ public class FetchPopularityMoviePageTaskFactory
      */
     private WeakReference<Context> mWeakContext;
 
+    /**
+     * The proxy used to access the RESTful API.
+     */
+    private final TheMovieDbApi mMovieDbApi;
+
+    /**
+     * The {@link PriorityExecutor} used to download movie details in parallel.
+     */
+    private final PriorityExecutor mDetailDownloadExecutor;
+
+    /**
+     * Determines which movie details are downloaded along with each page.
+     */
+    private final DetailFetchPolicy mDetailFetchPolicy;
+
+    /**
+     * Registry of the requests in flight, used to coalesce duplicates.
+     */
+    private final InFlightRequests mInFlightRequests;
+
     /**
      * Creates a new instance of {@link FetchPopularityMoviePageTaskFactory}
      * that creates instances of {@link FetchMoviePageTask} using the
      * provided arguments.
      *
      *  @param configuration the configuration used to access movie pages.
+     * @param movieDbApi the proxy used to access the RESTful API.
+     * @param detailDownloadExecutor the {@link PriorityExecutor} used to
+     *                               download movie details in parallel.
+     * @param detailFetchPolicy determines which movie details are downloaded
+     *                          along with each page.
+     * @param inFlightRequests registry of the requests in flight, used to
+     *                         coalesce duplicates.
      * @param context the context used to access the provider on which the
      *                movie data will be stored.
      */
     public FetchPopularityMoviePageTaskFactory(
             RestfulServiceConfiguration configuration
+            , TheMovieDbApi movieDbApi
+            , PriorityExecutor detailDownloadExecutor
+            , DetailFetchPolicy detailFetchPolicy
+            , InFlightRequests inFlightRequests
             , Context context) {
         mWeakConfiguration = new WeakReference<>(configuration);
         mWeakContext = new WeakReference<>(context);
+        mMovieDbApi = movieDbApi;
+        mDetailDownloadExecutor = detailDownloadExecutor;
+        mDetailFetchPolicy = detailFetchPolicy;
+        mInFlightRequests = inFlightRequests;
     }
 
     @Override
@@ -76,24 +110,33 @@ public class FetchPopularityMoviePageTaskFactory
         return TheMovieDbApi.SORT_BY_POPULARITY;
     }
 
+    @Override
+    public Uri getMovieProviderUri() {
+        return CachedMovieEntry.buildMovieListUri(TheMovieDbApi.SORT_BY_POPULARITY);
+    }
+
     @Override
     public String getMovieProviderSelectionClause() {
-        return CachedMovieEntry.COLUMN_MOST_POPULAR + " = ?";
+        return null;
     }
 
     @Override
     public String[] getMovieProviderSelectionArguments() {
-        return new String[] {Integer.toString(BooleanUtils.toInteger(true))};
+        return null;
     }
 
     @Override
     public String getMovieProviderSortOrder() {
-        return ORDER_BY_POPULARITY_DESCENDING;
+        return ORDER_BY_LIST_POSITION;
     }
 
     @Override
-    public AsyncTask<Integer, ?, ?> newFetchMovieTask() {
+    public FetchMoviePageTask newFetchMovieTask() {
         return new FetchMoviePageTask(mWeakConfiguration.get()
+                , mMovieDbApi
+                , mDetailDownloadExecutor
+                , mDetailFetchPolicy
+                , mInFlightRequests
                 , TheMovieDbApi.SORT_BY_POPULARITY
                 , mWeakContext.get());
     }
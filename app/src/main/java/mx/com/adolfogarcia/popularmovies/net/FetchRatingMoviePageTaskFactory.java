@@ -17,14 +17,13 @@
 package mx.com.adolfogarcia.popularmovies.net;
 
 import android.content.Context;
-import android.os.AsyncTask;
-
-import org.apache.commons.lang3.BooleanUtils;
+import android.net.Uri;
 
 import java.lang.ref.WeakReference;
 
 import mx.com.adolfogarcia.popularmovies.data.RestfulServiceConfiguration;
 import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListEntry;
 
 /**
  * Implementation of {@link FetchMoviePageTaskFactory} for movies sorted by
@@ -37,11 +36,11 @@ public class FetchRatingMoviePageTaskFactory implements FetchMoviePageTaskFactor
 
     /**
      * Used on the query to {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider},
-     * to order the results from highest to lowest rated.
+     * to order the results as the list retrieved from the RESTful API, from
+     * highest to lowest rated.
      */
-    private static final String ORDER_BY_VOTE_AVERAGE_DESCENDING =
-            CachedMovieEntry.COLUMN_VOTE_AVERAGE + " DESC"
-            + ", " + CachedMovieEntry._ID + " ASC";
+    private static final String ORDER_BY_LIST_POSITION =
+            MovieListEntry.TABLE_NAME + "." + MovieListEntry.COLUMN_POSITION + " ASC";
 
     /**
      * The configuration of the RESTful API.
@@ -54,20 +53,55 @@ public class FetchRatingMoviePageTaskFactory implements FetchMoviePageTaskFactor
      */
     private WeakReference<Context> mWeakContext;
 
+    /**
+     * The proxy used to access the RESTful API.
+     */
+    private final TheMovieDbApi mMovieDbApi;
+
+    /**
+     * The {@link PriorityExecutor} used to download movie details in parallel.
+     */
+    private final PriorityExecutor mDetailDownloadExecutor;
+
+    /**
+     * Determines which movie details are downloaded along with each page.
+     */
+    private final DetailFetchPolicy mDetailFetchPolicy;
+
+    /**
+     * Registry of the requests in flight, used to coalesce duplicates.
+     */
+    private final InFlightRequests mInFlightRequests;
+
     /**
      * Creates a new instance of {@link FetchRatingMoviePageTaskFactory}
      * that creates instances of {@link FetchMoviePageTask} using the
      * provided arguments.
      *
      *  @param configuration the configuration used to access movie pages.
+     * @param movieDbApi the proxy used to access the RESTful API.
+     * @param detailDownloadExecutor the {@link PriorityExecutor} used to
+     *                               download movie details in parallel.
+     * @param detailFetchPolicy determines which movie details are downloaded
+     *                          along with each page.
+     * @param inFlightRequests registry of the requests in flight, used to
+     *                         coalesce duplicates.
      * @param context the context used to access the provider on which the
      *                movie data will be stored.
      */
     public FetchRatingMoviePageTaskFactory(
             RestfulServiceConfiguration configuration
+            , TheMovieDbApi movieDbApi
+            , PriorityExecutor detailDownloadExecutor
+            , DetailFetchPolicy detailFetchPolicy
+            , InFlightRequests inFlightRequests
             , Context context) {
         mWeakConfiguration = new WeakReference<>(configuration);
         mWeakContext = new WeakReference<>(context);
+        mMovieDbApi = movieDbApi;
+        mDetailDownloadExecutor = detailDownloadExecutor;
+        mDetailFetchPolicy = detailFetchPolicy;
+        mInFlightRequests = inFlightRequests;
     }
 
     @Override
@@ -75,24 +109,33 @@ public class FetchRatingMoviePageTaskFactory implements FetchMoviePageTaskFactor
         return TheMovieDbApi.SORT_BY_USER_RATING;
     }
 
+    @Override
+    public Uri getMovieProviderUri() {
+        return CachedMovieEntry.buildMovieListUri(TheMovieDbApi.SORT_BY_USER_RATING);
+    }
+
     @Override
     public String getMovieProviderSelectionClause() {
-        return CachedMovieEntry.COLUMN_HIGHEST_RATED + " = ?";
+        return null;
     }
 
     @Override
     public String[] getMovieProviderSelectionArguments() {
-        return new String[] {Integer.toString(BooleanUtils.toInteger(true))};
+        return null;
     }
 
     @Override
     public String getMovieProviderSortOrder() {
-        return ORDER_BY_VOTE_AVERAGE_DESCENDING;
+        return ORDER_BY_LIST_POSITION;
     }
 
     @Override
-    public AsyncTask<Integer, ?, ?> newFetchMovieTask() {
+    public FetchMoviePageTask newFetchMovieTask() {
         return new FetchMoviePageTask(mWeakConfiguration.get()
+                , mMovieDbApi
+                , mDetailDownloadExecutor
+                , mDetailFetchPolicy
+                , mInFlightRequests
                 , TheMovieDbApi.SORT_BY_USER_RATING
                 , mWeakContext.get());
     }
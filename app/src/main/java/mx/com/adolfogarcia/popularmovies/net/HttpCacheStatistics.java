@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps count of how the requests to
+ * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API are
+ * served by the HTTP response {@link Cache}: straight from the cache (hit),
+ * from the network (miss), or from the cache after the server confirmed with
+ * a {@code 304 Not Modified} that the stored response is still valid
+ * (revalidation). Must be added as a network interceptor to the same
+ * {@link com.squareup.okhttp.OkHttpClient} that uses the cache, so it sees
+ * the replies to the conditional requests.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class HttpCacheStatistics implements Interceptor {
+
+    /**
+     * The cache whose hits and misses are reported.
+     */
+    private final Cache mCache;
+
+    /**
+     * Number of conditional requests answered with {@code 304 Not Modified}.
+     */
+    private final AtomicInteger mRevalidationCount = new AtomicInteger();
+
+    /**
+     * Creates a new instance of {@link HttpCacheStatistics} that reports the
+     * use of the {@link Cache} passed as argument.
+     *
+     * @param cache the cache whose use is reported.
+     */
+    public HttpCacheStatistics(Cache cache) {
+        if (cache == null) {
+            throw new IllegalArgumentException("The Cache may not be null");
+        }
+        mCache = cache;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+        if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            mRevalidationCount.incrementAndGet();
+        }
+        return response;
+    }
+
+    /**
+     * Returns the number of requests served from the cache without
+     * contacting the server.
+     *
+     * @return the number of requests served only from the cache.
+     */
+    public int getHitCount() {
+        // The cache counts revalidated responses as hits too.
+        return mCache.getHitCount() - mRevalidationCount.get();
+    }
+
+    /**
+     * Returns the number of requests for which a full response had to be
+     * retrieved from the server.
+     *
+     * @return the number of requests served from the network.
+     */
+    public int getMissCount() {
+        // The cache counts conditional requests as network requests too.
+        return mCache.getNetworkCount() - mRevalidationCount.get();
+    }
+
+    /**
+     * Returns the number of requests served from the cache after the server
+     * replied to a conditional request ({@code If-None-Match} or
+     * {@code If-Modified-Since}) with {@code 304 Not Modified}.
+     *
+     * @return the number of revalidated cached responses.
+     */
+    public int getRevalidationCount() {
+        return mRevalidationCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "hits: " + getHitCount()
+                + ", misses: " + getMissCount()
+                + ", revalidations: " + getRevalidationCount();
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps count of the images downloaded from
+ * <a href="https://www.themoviedb.org/">themoviedb.org</a>, and of their
+ * bytes, by the code name of their size (e.g. "w185"), so the number of bytes
+ * per image of each size can be used to tune {@link ImageQualityPolicy}. Must
+ * be added as a network interceptor to the
+ * {@link com.squareup.okhttp.OkHttpClient} that downloads the images, so the
+ * images served from the cache are not counted. Neither are those whose
+ * length is not known before they are read.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class ImageDownloadStatistics implements Interceptor {
+
+    /**
+     * The images downloaded and their bytes, by size code name. Guarded by
+     * itself.
+     */
+    private final Map<String, long[]> mDownloads = new TreeMap<>();
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+        long byteCount = response.body().contentLength();
+        if (response.isSuccessful() && byteCount >= 0) {
+            record(getSizeName(response.request().httpUrl().pathSegments()), byteCount);
+        }
+        return response;
+    }
+
+    /**
+     * Returns the code name of the size of the image whose URL has the path
+     * segments passed as argument. The size precedes the name of the image
+     * file, e.g. "/t/p/w185/kqjL17yufvn9OVLyXYpvtyrFfak.jpg".
+     *
+     * @param pathSegments the path segments of the URL of the image.
+     * @return the code name of the size of the image, or an empty string if
+     *     the URL has no size.
+     */
+    static String getSizeName(List<String> pathSegments) {
+        int size = pathSegments.size();
+        return size < 2 ? "" : pathSegments.get(size - 2);
+    }
+
+    /**
+     * Records an image downloaded.
+     *
+     * @param sizeName the code name of the size of the image.
+     * @param byteCount the number of bytes of the image.
+     */
+    void record(String sizeName, long byteCount) {
+        synchronized (mDownloads) {
+            long[] download = mDownloads.get(sizeName);
+            if (download == null) {
+                download = new long[2];
+                mDownloads.put(sizeName, download);
+            }
+            download[0]++;
+            download[1] += byteCount;
+        }
+    }
+
+    /**
+     * Returns the number of images of the size passed as argument downloaded.
+     *
+     * @param sizeName the code name of the size.
+     * @return the number of images downloaded.
+     */
+    public long getDownloadCount(String sizeName) {
+        synchronized (mDownloads) {
+            long[] download = mDownloads.get(sizeName);
+            return download == null ? 0 : download[0];
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the images of the size passed as
+     * argument downloaded.
+     *
+     * @param sizeName the code name of the size.
+     * @return the number of bytes downloaded.
+     */
+    public long getDownloadedBytes(String sizeName) {
+        synchronized (mDownloads) {
+            long[] download = mDownloads.get(sizeName);
+            return download == null ? 0 : download[1];
+        }
+    }
+
+    /**
+     * Returns the mean number of bytes per image of the size passed as
+     * argument downloaded, e.g. the bytes per poster of the size used by the
+     * grid.
+     *
+     * @param sizeName the code name of the size.
+     * @return the mean number of bytes per image, or zero if none have been
+     *     downloaded.
+     */
+    public long getBytesPerImage(String sizeName) {
+        synchronized (mDownloads) {
+            long[] download = mDownloads.get(sizeName);
+            return download == null ? 0 : download[1] / download[0];
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        synchronized (mDownloads) {
+            for (Map.Entry<String, long[]> entry : mDownloads.entrySet()) {
+                if (builder.length() > 0) {
+                    builder.append(", ");
+                }
+                builder.append(entry.getKey())
+                        .append(": ")
+                        .append(entry.getValue()[0])
+                        .append(" images, ")
+                        .append(entry.getValue()[1] / entry.getValue()[0])
+                        .append(" bytes per image");
+            }
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import android.app.ActivityManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.graphics.Bitmap;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.support.v4.app.ActivityManagerCompat;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import mx.com.adolfogarcia.popularmovies.data.RestfulServiceConfiguration;
+
+import static mx.com.adolfogarcia.popularmovies.data.ImageSizeResolver.ImageQuality;
+
+/**
+ * Chooses the quality at which the images are downloaded from
+ * <a href="https://www.themoviedb.org/">themoviedb.org</a>, and sets it in
+ * the {@link RestfulServiceConfiguration}, which uses it to choose their
+ * sizes. Smaller sizes are chosen on metered networks, and even smaller ones
+ * on slow networks and on devices with little memory. The quality is chosen
+ * again every time the active network changes, so it is upgraded as soon as
+ * the conditions improve. Images are also decoded with fewer bytes per pixel
+ * on devices with little memory (see {@link #getBitmapConfig(Context)}).
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class ImageQualityPolicy {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = ImageQualityPolicy.class.getSimpleName();
+
+    /**
+     * Highest memory class, in megabytes, of the devices considered to have
+     * little memory.
+     *
+     * @see ActivityManager#getMemoryClass()
+     */
+    static final int LOW_MEMORY_CLASS_MB = 64;
+
+    /**
+     * The configuration with which the images are decoded, once determined
+     * for the device. {@code null} if it has not been.
+     */
+    private static volatile Bitmap.Config sBitmapConfig = null;
+
+    /**
+     * The configuration in which the quality is set.
+     */
+    private final RestfulServiceConfiguration mConfiguration;
+
+    /**
+     * The counters of the images downloaded, logged when the quality changes.
+     */
+    private final ImageDownloadStatistics mStatistics;
+
+    /**
+     * Used to determine the active network.
+     */
+    private final ConnectivityManager mConnectivityManager;
+
+    /**
+     * Whether the device has little memory.
+     */
+    private final boolean mLowMemory;
+
+    /**
+     * Creates a new instance of {@link ImageQualityPolicy}, that sets the
+     * quality in the configuration right away and every time the active
+     * network changes, for as long as the application runs.
+     *
+     * @param context the application's {@link Context}.
+     * @param configuration the configuration in which the quality is set.
+     * @param statistics the counters of the images downloaded.
+     */
+    public ImageQualityPolicy(Context context
+            , RestfulServiceConfiguration configuration
+            , ImageDownloadStatistics statistics) {
+        if (context == null) {
+            throw new IllegalArgumentException("The context may not be null");
+        }
+        if (configuration == null) {
+            throw new IllegalArgumentException("The configuration may not be null");
+        }
+        if (statistics == null) {
+            throw new IllegalArgumentException("The statistics may not be null");
+        }
+        mConfiguration = configuration;
+        mStatistics = statistics;
+        mConnectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        mLowMemory = isLowMemoryDevice(context);
+        context.getApplicationContext().registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                updateImageQuality();
+            }
+        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        updateImageQuality();
+    }
+
+    /**
+     * Chooses the quality for the current conditions and sets it in the
+     * configuration if it changed.
+     */
+    void updateImageQuality() {
+        ImageQuality quality = chooseImageQuality(
+                ConnectivityManagerCompat.isActiveNetworkMetered(mConnectivityManager)
+                , isSlowNetwork(mConnectivityManager.getActiveNetworkInfo())
+                , mLowMemory);
+        if (quality != mConfiguration.getImageQuality()) {
+            mConfiguration.setImageQuality(quality);
+            Log.i(LOG_TAG, "Image quality: " + quality + ". Downloaded: " + mStatistics);
+        }
+    }
+
+    /**
+     * Returns the quality at which the images are downloaded under the
+     * conditions passed as argument.
+     *
+     * @param metered whether the active network is metered.
+     * @param slow whether the active network is slow.
+     * @param lowMemory whether the device has little memory.
+     * @return the quality at which the images are downloaded.
+     */
+    static ImageQuality chooseImageQuality(boolean metered, boolean slow, boolean lowMemory) {
+        if (slow || lowMemory) {
+            return ImageQuality.LOW;
+        }
+        return metered ? ImageQuality.REDUCED : ImageQuality.FULL;
+    }
+
+    /**
+     * Returns {@code true} if the network passed as argument is a slow (2G)
+     * mobile network.
+     *
+     * @param networkInfo the network, or {@code null} if there is none.
+     * @return {@code true} if the network is slow.
+     */
+    static boolean isSlowNetwork(NetworkInfo networkInfo) {
+        if (networkInfo == null || networkInfo.getType() != ConnectivityManager.TYPE_MOBILE) {
+            return false;
+        }
+        switch (networkInfo.getSubtype()) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the device has little memory, either because
+     * the system says so or because of its memory class.
+     *
+     * @param context the {@link Context} used to access the
+     *                {@link ActivityManager}.
+     * @return {@code true} if the device has little memory.
+     */
+    private static boolean isLowMemoryDevice(Context context) {
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        return ActivityManagerCompat.isLowRamDevice(activityManager)
+                || activityManager.getMemoryClass() <= LOW_MEMORY_CLASS_MB;
+    }
+
+    /**
+     * Returns the configuration with which the images should be decoded on
+     * the device: {@link Bitmap.Config#RGB_565} if it has little memory,
+     * {@link Bitmap.Config#ARGB_8888} otherwise. Used by the binding
+     * adapters, which have no access to the instance.
+     *
+     * @param context the {@link Context} used to access the
+     *                {@link ActivityManager}.
+     * @return the configuration with which the images should be decoded.
+     */
+    public static Bitmap.Config getBitmapConfig(Context context) {
+        if (sBitmapConfig == null) {
+            sBitmapConfig = isLowMemoryDevice(context)
+                    ? Bitmap.Config.RGB_565
+                    : Bitmap.Config.ARGB_8888;
+        }
+        return sBitmapConfig;
+    }
+
+    /**
+     * Returns the counters of the images downloaded, by size.
+     *
+     * @return the counters of the images downloaded.
+     */
+    public ImageDownloadStatistics getStatistics() {
+        return mStatistics;
+    }
+
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry of the requests to
+ * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API that
+ * are currently in flight, used to coalesce duplicate requests. A request
+ * made while an equivalent one (i.e. one with the same key) has not finished
+ * attaches to the pending {@link Future} instead of starting a new HTTP call.
+ * Requests are removed from the registry as soon as they finish, so the
+ * results are not cached.
+ *
+ * <p>Requests with the same key must produce results of the same type. Use
+ * {@link #moviePageKey(String, int)} and
+ * {@link #movieResourceKey(long, String)} to build the keys.</p>
+ *
+ * <p>Each request made, performed or attached, registers an interest in the
+ * pending {@link Future}. Callers that no longer need the result (e.g. the
+ * task was cancelled because the sort order changed) withdraw their interest
+ * with {@link #release(String)}, and the request is cancelled once nobody
+ * else is waiting for it.</p>
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class InFlightRequests {
+
+    /**
+     * The pending requests, by key. Guarded by {@code this}.
+     */
+    private final Map<String, Pending> mRequests = new HashMap<>();
+
+    /**
+     * Number of requests that attached to an equivalent one already in
+     * flight, instead of being performed.
+     */
+    private final AtomicInteger mCoalescedCount = new AtomicInteger();
+
+    /**
+     * Returns the key that identifies the request for a page of movies.
+     *
+     * @param sortOrder the order criteria of the page (e.g.
+     *                  {@link TheMovieDbApi#SORT_BY_POPULARITY}).
+     * @param page the number of the page.
+     * @return the key that identifies the request for the page of movies.
+     */
+    public static String moviePageKey(String sortOrder, int page) {
+        return "page/" + sortOrder + "/" + page;
+    }
+
+    /**
+     * Returns the key that identifies the request for a resource of a
+     * particular movie (e.g. its details).
+     *
+     * @param movieApiId the movie's identifier in the RESTful API.
+     * @param resource the name of the resource requested.
+     * @return the key that identifies the request for the movie's resource.
+     */
+    public static String movieResourceKey(long movieApiId, String resource) {
+        return "movie/" + movieApiId + "/" + resource;
+    }
+
+    /**
+     * Performs the request on the {@link Executor} passed as argument, unless
+     * an equivalent one is already in flight, in which case the request is
+     * not performed and the pending result of the existing one is returned.
+     *
+     * @param key identifies the request.
+     * @param request the request to perform.
+     * @param executor the {@link Executor} on which the request is performed.
+     * @param <T> the type of the request's result.
+     * @return the pending result of the request.
+     * @throws RejectedExecutionException if the {@link Executor} does not
+     *     accept the request.
+     */
+    public <T> Future<T> submit(String key, Callable<T> request, Executor executor) {
+        FutureTask<T> task = newTask(key, request);
+        Future<T> pending = register(key, task);
+        if (pending != null) {
+            return pending;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ree) {
+            unregister(key, task);
+            throw ree;
+        }
+        return task;
+    }
+
+    /**
+     * Performs the request on the calling thread and returns its result,
+     * unless an equivalent one is already in flight, in which case the
+     * request is not performed and the calling thread waits for the result
+     * of the existing one.
+     *
+     * @param key identifies the request.
+     * @param request the request to perform.
+     * @param <T> the type of the request's result.
+     * @return the result of the request.
+     * @throws ExecutionException if the request threw an exception.
+     * @throws InterruptedException if the calling thread was interrupted
+     *     while waiting for the result.
+     */
+    public <T> T run(String key, Callable<T> request)
+            throws ExecutionException, InterruptedException {
+        FutureTask<T> task = newTask(key, request);
+        Future<T> pending = register(key, task);
+        if (pending != null) {
+            return pending.get();
+        }
+        task.run();
+        return task.get();
+    }
+
+    /**
+     * Returns {@code true} if a request with the specified key is in flight,
+     * {@code false} otherwise.
+     *
+     * @param key identifies the request.
+     * @return {@code true} if a request with the specified key is in flight.
+     */
+    public synchronized boolean isInFlight(String key) {
+        return mRequests.containsKey(key);
+    }
+
+    /**
+     * Withdraws the interest of one of the callers of the request with the
+     * specified key. If no other caller is waiting for it, the request is
+     * cancelled, interrupting the thread performing it, and removed from the
+     * registry, so a new request with the same key is performed from
+     * scratch.
+     *
+     * @param key identifies the request.
+     * @return {@code true} if the request was cancelled, {@code false} if
+     *     other callers are still waiting for it or it is no longer in
+     *     flight.
+     */
+    public boolean release(String key) {
+        FutureTask<?> task;
+        synchronized (this) {
+            Pending pending = mRequests.get(key);
+            if (pending == null) {
+                return false;
+            }
+            pending.mInterest--;
+            if (pending.mInterest > 0) {
+                return false;
+            }
+            mRequests.remove(key);
+            task = pending.mTask;
+        }
+        return task.cancel(true);
+    }
+
+    /**
+     * Returns the number of requests that attached to an equivalent one
+     * already in flight, instead of being performed.
+     *
+     * @return the number of coalesced requests.
+     */
+    public int getCoalescedCount() {
+        return mCoalescedCount.get();
+    }
+
+    /**
+     * Returns a new {@link FutureTask} that performs the request and removes
+     * itself from the registry once it finishes.
+     *
+     * @param key identifies the request.
+     * @param request the request to perform.
+     * @param <T> the type of the request's result.
+     * @return a new {@link FutureTask} that performs the request.
+     */
+    private <T> FutureTask<T> newTask(final String key, Callable<T> request) {
+        return new FutureTask<T>(request) {
+            @Override
+            protected void done() {
+                unregister(key, this);
+            }
+        };
+    }
+
+    /**
+     * Registers the task under the specified key, unless another one is
+     * already registered, in which case the latter is returned.
+     *
+     * @param key identifies the request.
+     * @param task the task to register.
+     * @param <T> the type of the request's result.
+     * @return the task already registered under the key, or {@code null} if
+     *     the task passed as argument was registered.
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized <T> Future<T> register(String key, FutureTask<T> task) {
+        Pending pending = mRequests.get(key);
+        if (pending == null) {
+            mRequests.put(key, new Pending(task));
+            return null;
+        }
+        pending.mInterest++;
+        mCoalescedCount.incrementAndGet();
+        return (Future<T>) pending.mTask;
+    }
+
+    /**
+     * Removes the task registered under the specified key, if it is the one
+     * passed as argument.
+     *
+     * @param key identifies the request.
+     * @param task the task to remove.
+     */
+    private synchronized void unregister(String key, FutureTask<?> task) {
+        Pending pending = mRequests.get(key);
+        if (pending != null && pending.mTask == task) {
+            mRequests.remove(key);
+        }
+    }
+
+    /**
+     * A request in flight, along with the number of callers waiting for it.
+     */
+    private static final class Pending {
+
+        /**
+         * The task that performs the request.
+         */
+        private final FutureTask<?> mTask;
+
+        /**
+         * The number of callers that have not withdrawn their interest.
+         */
+        private int mInterest = 1;
+
+        /**
+         * Creates a new instance of {@link Pending} for the task passed as
+         * argument, with the interest of the caller that submitted it.
+         *
+         * @param task the task that performs the request.
+         */
+        Pending(FutureTask<?> task) {
+            mTask = task;
+        }
+
+    }
+
+}
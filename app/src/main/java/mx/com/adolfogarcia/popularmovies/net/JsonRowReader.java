@@ -0,0 +1,549 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import android.content.ContentValues;
+import android.util.Log;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+import mx.com.adolfogarcia.popularmovies.model.transport.MovieJsonModel;
+
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieReviewEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieVideoEntry;
+
+/**
+ * Reads the replies of <a href="https://www.themoviedb.org/">themoviedb.org</a>'s
+ * RESTful API with a pull parser, binding each field straight into the
+ * {@link ContentValues} inserted into
+ * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}. Unlike the
+ * reflection based conversion into the transfer objects of
+ * {@link mx.com.adolfogarcia.popularmovies.model.transport}, no intermediate
+ * object graph is built and the fields that are not stored are skipped
+ * without being materialized.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+final class JsonRowReader {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = JsonRowReader.class.getSimpleName();
+
+    /**
+     * The class only provides utility methods.
+     */
+    private JsonRowReader() {
+        // Empty constructor
+    }
+
+    /**
+     * Reads a page of movies, as returned by
+     * {@link TheMovieDbApi#getMoviePageStream(String, String, int)}.
+     *
+     * @param in the body of the reply.
+     * @return the page's rows for the movie table, in the page's order, and
+     *     its metadata.
+     * @throws IOException if the reply can not be read or is malformed.
+     */
+    static MoviePageRows readMoviePage(Reader in) throws IOException {
+        MoviePageRows page = new MoviePageRows();
+        SimpleDateFormat dateFormat = newReleaseDateFormat();
+        JsonReader reader = new JsonReader(in);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "page":
+                        page.mPageNumber = reader.nextInt();
+                        break;
+                    case "total_pages":
+                        page.mTotalPages = reader.nextInt();
+                        break;
+                    case "results":
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            page.mMovies.add(readMovie(reader, dateFormat));
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+        return page;
+    }
+
+    /**
+     * Reads the details of a movie with its videos and first page of reviews
+     * appended, as returned by
+     * {@link TheMovieDbApi#getMovieDetailsStream(long, String, String)}.
+     *
+     * @param in the body of the reply.
+     * @return the rows for the movie, video and review tables.
+     * @throws IOException if the reply can not be read or is malformed.
+     */
+    static MovieDetailRows readMovieDetails(Reader in) throws IOException {
+        MovieDetailRows details = new MovieDetailRows();
+        SimpleDateFormat dateFormat = newReleaseDateFormat();
+        JsonReader reader = new JsonReader(in);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                switch (name) {
+                    case "videos":
+                        readResults(reader, details.mVideos, false);
+                        break;
+                    case "reviews":
+                        readResults(reader, details.mReviews, true);
+                        break;
+                    default:
+                        readMovieField(reader, name, details.mMovie, dateFormat);
+                }
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+        Long movieApiId = details.mMovie.getAsLong(CachedMovieEntry.COLUMN_API_ID);
+        if (movieApiId == null) {
+            throw new IOException("The movie details do not include its identifier.");
+        }
+        details.mMovieApiId = movieApiId;
+        putMissingMovieValues(details.mMovie);
+        // The nested videos and reviews do not include the movie's identifier
+        for (ContentValues video : details.mVideos) {
+            video.put(CachedMovieVideoEntry.COLUMN_MOVIE_API_ID, details.mMovieApiId);
+        }
+        for (ContentValues review : details.mReviews) {
+            review.put(CachedMovieReviewEntry.COLUMN_MOVIE_API_ID, details.mMovieApiId);
+        }
+        return details;
+    }
+
+    /**
+     * Reads the {@code results} of an object appended to the details of a
+     * movie, either its videos or its page of reviews.
+     *
+     * @param reader the reader, positioned before the object.
+     * @param rows where the rows read are added.
+     * @param reviews {@code true} if the results are reviews, {@code false}
+     *                if they are videos.
+     * @throws IOException if the reply can not be read or is malformed.
+     */
+    private static void readResults(JsonReader reader, List<ContentValues> rows
+            , boolean reviews) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"results".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                ContentValues row = reviews ? readReview(reader) : readVideo(reader);
+                // The identifier may not be null, the row could not be stored
+                if (row.get(reviews
+                        ? CachedMovieReviewEntry.COLUMN_API_ID
+                        : CachedMovieVideoEntry.COLUMN_API_ID) != null) {
+                    rows.add(row);
+                } else {
+                    Log.w(LOG_TAG, "Ignoring result without identifier: " + row);
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads a movie into a row for the movie table.
+     *
+     * @param reader the reader, positioned before the movie's object.
+     * @param dateFormat the format used to parse the release date.
+     * @return the row for the movie table.
+     * @throws IOException if the reply can not be read or is malformed.
+     */
+    private static ContentValues readMovie(JsonReader reader, SimpleDateFormat dateFormat)
+            throws IOException {
+        ContentValues movie = new ContentValues();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            readMovieField(reader, reader.nextName(), movie, dateFormat);
+        }
+        reader.endObject();
+        putMissingMovieValues(movie);
+        return movie;
+    }
+
+    /**
+     * Puts default values in the columns of the movie table that may not be
+     * null but are missing or null in the reply. Otherwise, inserting the row
+     * would fail and roll back the whole batch it belongs to.
+     *
+     * @param movie the row for the movie table.
+     */
+    private static void putMissingMovieValues(ContentValues movie) {
+        if (movie.get(CachedMovieEntry.COLUMN_ORIGINAL_TITLE) == null) {
+            movie.put(CachedMovieEntry.COLUMN_ORIGINAL_TITLE, "");
+        }
+        if (movie.get(CachedMovieEntry.COLUMN_RELEASE_DATE) == null) {
+            movie.put(CachedMovieEntry.COLUMN_RELEASE_DATE, 0L);
+        }
+        if (movie.get(CachedMovieEntry.COLUMN_POPULARITY) == null) {
+            movie.put(CachedMovieEntry.COLUMN_POPULARITY, 0.0);
+        }
+        if (movie.get(CachedMovieEntry.COLUMN_VOTE_AVERAGE) == null) {
+            movie.put(CachedMovieEntry.COLUMN_VOTE_AVERAGE, 0.0);
+        }
+    }
+
+    /**
+     * Reads the value of a field of a movie into its row for the movie table,
+     * or skips it if it is not stored.
+     *
+     * @param reader the reader, positioned before the field's value.
+     * @param name the field's name.
+     * @param movie the row for the movie table.
+     * @param dateFormat the format used to parse the release date.
+     * @throws IOException if the reply can not be read or is malformed.
+     */
+    private static void readMovieField(JsonReader reader
+            , String name
+            , ContentValues movie
+            , SimpleDateFormat dateFormat) throws IOException {
+        switch (name) {
+            case "id":
+                movie.put(CachedMovieEntry.COLUMN_API_ID, reader.nextLong());
+                break;
+            case "original_title":
+                movie.put(CachedMovieEntry.COLUMN_ORIGINAL_TITLE, nextString(reader));
+                break;
+            case "release_date":
+                movie.put(CachedMovieEntry.COLUMN_RELEASE_DATE
+                        , toEpochTimeUtc(nextString(reader), dateFormat));
+                break;
+            case "overview":
+                movie.put(CachedMovieEntry.COLUMN_OVERVIEW, nextString(reader));
+                break;
+            case "backdrop_path":
+                movie.put(CachedMovieEntry.COLUMN_BACKDROP_PATH, nextString(reader));
+                break;
+            case "popularity":
+                movie.put(CachedMovieEntry.COLUMN_POPULARITY, nextDouble(reader));
+                break;
+            case "vote_average":
+                movie.put(CachedMovieEntry.COLUMN_VOTE_AVERAGE, nextDouble(reader));
+                break;
+            case "poster_path":
+                movie.put(CachedMovieEntry.COLUMN_POSTER_PATH, nextString(reader));
+                break;
+            default:
+                reader.skipValue();
+        }
+    }
+
+    /**
+     * Reads a video into a row for the video table, without the movie's
+     * identifier.
+     *
+     * @param reader the reader, positioned before the video's object.
+     * @return the row for the video table.
+     * @throws IOException if the reply can not be read or is malformed.
+     */
+    private static ContentValues readVideo(JsonReader reader) throws IOException {
+        ContentValues video = new ContentValues();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    video.put(CachedMovieVideoEntry.COLUMN_API_ID, nextString(reader));
+                    break;
+                case "iso_639_1":
+                    video.put(CachedMovieVideoEntry.COLUMN_LANGUAGE, nextString(reader));
+                    break;
+                case "name":
+                    video.put(CachedMovieVideoEntry.COLUMN_NAME, nextString(reader));
+                    break;
+                case "type":
+                    video.put(CachedMovieVideoEntry.COLUMN_TYPE, nextString(reader));
+                    break;
+                case "size":
+                    video.put(CachedMovieVideoEntry.COLUMN_SIZE, nextInteger(reader));
+                    break;
+                case "site":
+                    video.put(CachedMovieVideoEntry.COLUMN_SITE, nextString(reader));
+                    break;
+                case "key":
+                    video.put(CachedMovieVideoEntry.COLUMN_KEY, nextString(reader));
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return video;
+    }
+
+    /**
+     * Reads a review into a row for the review table, without the movie's
+     * identifier.
+     *
+     * @param reader the reader, positioned before the review's object.
+     * @return the row for the review table.
+     * @throws IOException if the reply can not be read or is malformed.
+     */
+    private static ContentValues readReview(JsonReader reader) throws IOException {
+        ContentValues review = new ContentValues();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    review.put(CachedMovieReviewEntry.COLUMN_API_ID, nextString(reader));
+                    break;
+                case "author":
+                    review.put(CachedMovieReviewEntry.COLUMN_AUTHOR, nextString(reader));
+                    break;
+                case "content":
+                    review.put(CachedMovieReviewEntry.COLUMN_CONTENT, nextString(reader));
+                    break;
+                case "url":
+                    review.put(CachedMovieReviewEntry.COLUMN_URL, nextString(reader));
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return review;
+    }
+
+    /**
+     * Returns the next value as a string, or {@code null} if it is null.
+     *
+     * @param reader the reader, positioned before the value.
+     * @return the next value, possibly {@code null}.
+     * @throws IOException if the value can not be read.
+     */
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * Returns the next value as a double, or {@code null} if it is null.
+     *
+     * @param reader the reader, positioned before the value.
+     * @return the next value, possibly {@code null}.
+     * @throws IOException if the value can not be read.
+     */
+    private static Double nextDouble(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextDouble();
+    }
+
+    /**
+     * Returns the next value as an integer, or {@code null} if it is null.
+     *
+     * @param reader the reader, positioned before the value.
+     * @return the next value, possibly {@code null}.
+     * @throws IOException if the value can not be read.
+     */
+    private static Integer nextInteger(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextInt();
+    }
+
+    /**
+     * Returns a new format for the release dates in the replies, shared by
+     * all the movies in a page.
+     *
+     * @return a new format for the release dates.
+     * @see MovieJsonModel#getReleaseDateEpochTimeUtc()
+     */
+    private static SimpleDateFormat newReleaseDateFormat() {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(MovieJsonModel.DATE_FORMAT);
+        dateFormat.setTimeZone(TimeZone.getTimeZone(MovieJsonModel.UTC_TIME_ZONE));
+        return dateFormat;
+    }
+
+    /**
+     * Converts a release date to epoch time in milliseconds, or zero if it is
+     * missing or can not be parsed.
+     *
+     * @param releaseDate the release date, possibly {@code null}.
+     * @param dateFormat the format used to parse the date.
+     * @return the release date in epoch time, or zero.
+     * @see MovieJsonModel#getReleaseDateEpochTimeUtc()
+     */
+    private static long toEpochTimeUtc(String releaseDate, SimpleDateFormat dateFormat) {
+        if (releaseDate == null || releaseDate.isEmpty()) {
+            return 0;
+        }
+        try {
+            return dateFormat.parse(releaseDate).getTime();
+        } catch (ParseException pe) {
+            Log.e(LOG_TAG, "Unable to parse date: " + releaseDate, pe);
+            return 0;
+        }
+    }
+
+    /**
+     * A page of movies, read as rows for the movie table.
+     */
+    static final class MoviePageRows {
+
+        /**
+         * The number of the page.
+         */
+        private int mPageNumber;
+
+        /**
+         * The total number of pages available.
+         */
+        private int mTotalPages;
+
+        /**
+         * The rows for the movie table.
+         */
+        private final List<ContentValues> mMovies = new ArrayList<>(TheMovieDbApi.MOVIES_PER_PAGE);
+
+        /**
+         * Returns the number of the page.
+         *
+         * @return the number of the page.
+         */
+        int getPageNumber() {
+            return mPageNumber;
+        }
+
+        /**
+         * Returns the total number of pages available.
+         *
+         * @return the total number of pages available.
+         */
+        int getTotalPages() {
+            return mTotalPages;
+        }
+
+        /**
+         * Returns the rows for the movie table, in the page's order.
+         *
+         * @return the rows for the movie table.
+         */
+        List<ContentValues> getMovies() {
+            return mMovies;
+        }
+
+    }
+
+    /**
+     * The details of a movie, with its videos and first page of reviews, read
+     * as rows for the movie, video and review tables.
+     */
+    static final class MovieDetailRows {
+
+        /**
+         * The movie's identifier in the RESTful API.
+         */
+        private long mMovieApiId;
+
+        /**
+         * The row for the movie table. It does not include the columns set
+         * by the application (e.g. the user's favorite), so the stored ones
+         * are kept when the row is upserted.
+         */
+        private final ContentValues mMovie = new ContentValues();
+
+        /**
+         * The rows for the video table.
+         */
+        private final List<ContentValues> mVideos = new ArrayList<>();
+
+        /**
+         * The rows for the review table.
+         */
+        private final List<ContentValues> mReviews = new ArrayList<>();
+
+        /**
+         * Returns the movie's identifier in the RESTful API.
+         *
+         * @return the movie's identifier in the RESTful API.
+         */
+        long getMovieApiId() {
+            return mMovieApiId;
+        }
+
+        /**
+         * Returns the row for the movie table.
+         *
+         * @return the row for the movie table.
+         */
+        ContentValues getMovie() {
+            return mMovie;
+        }
+
+        /**
+         * Returns the rows for the video table, with the movie's identifier.
+         *
+         * @return the rows for the video table.
+         */
+        List<ContentValues> getVideos() {
+            return mVideos;
+        }
+
+        /**
+         * Returns the rows for the review table, with the movie's identifier.
+         *
+         * @return the rows for the review table.
+         */
+        List<ContentValues> getReviews() {
+            return mReviews;
+        }
+
+    }
+
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.com.adolfogarcia.popularmovies.net;
+
+/**
+ * {@link DetailFetchPolicy} that never prefetches the details of the movies,
+ * so they are only retrieved when the user opens their detail screen.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class LazyDetailFetchPolicy implements DetailFetchPolicy {
+
+    @Override
+    public boolean shouldPrefetch(int position) {
+        return false;
+    }
+
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.com.adolfogarcia.popularmovies.net;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import mx.com.adolfogarcia.popularmovies.data.MovieContract;
+import retrofit.Call;
+import retrofit.Response;
+
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieReviewEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieVideoEntry;
+import static mx.com.adolfogarcia.popularmovies.net.JsonRowReader.MovieDetailRows;
+
+/**
+ * Retrieves the details of movies (videos and first page of reviews) from
+ * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API and
+ * stores them in {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}.
+ * Used both when the details are prefetched along with a page of movies and
+ * when they are retrieved on demand.
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see FetchMoviePageTask
+ * @see FetchMovieDetailsTask
+ */
+final class MovieDetailsFetcher {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = MovieDetailsFetcher.class.getSimpleName();
+
+    /**
+     * Name of the resource retrieved by {@link #download(long)}, used to
+     * identify the requests in {@link InFlightRequests}.
+     *
+     * @see InFlightRequests#movieResourceKey(long, String)
+     */
+    static final String RESOURCE_DETAILS = "details";
+
+    /**
+     * The proxy used to access the RESTful API.
+     */
+    private final TheMovieDbApi mMovieDbApi;
+
+    /**
+     * The key required to access the RESTful API.
+     */
+    private final String mApiKey;
+
+    /**
+     * Creates a new instance of {@link MovieDetailsFetcher} that uses the
+     * specified proxy and key to access the RESTful API.
+     *
+     * @param movieDbApi the proxy used to access the RESTful API.
+     * @param apiKey the key required to access the RESTful API.
+     */
+    MovieDetailsFetcher(TheMovieDbApi movieDbApi, String apiKey) {
+        mMovieDbApi = movieDbApi;
+        mApiKey = apiKey;
+    }
+
+    /**
+     * Retrieves the details of the specified movie, including its videos and
+     * its first page of reviews, with a single request. The reply is read
+     * with a pull parser straight into the rows to insert. Interrupting the
+     * calling thread (e.g. by cancelling the {@link java.util.concurrent.Future}
+     * of the download) aborts the download.
+     *
+     * @param movieApiId the movie's identifier in the RESTful API.
+     * @return the rows for the movie's videos and reviews, or {@code null} if
+     *     they could not be retrieved.
+     * @see #downloadDetails(long)
+     */
+    MovieDetailRows download(long movieApiId) {
+        if (Thread.currentThread().isInterrupted()) {
+            Log.d(LOG_TAG, "Skipping cancelled download of details for movie " + movieApiId);
+            return null;
+        }
+        try {
+            return downloadDetails(movieApiId);
+        } catch (InterruptedIOException iioe) {
+            Log.d(LOG_TAG, "Download of details cancelled for movie " + movieApiId);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error getting details for movie " + movieApiId, e);
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the details of the specified movie, like
+     * {@link #download(long)}, but tells the requests that may succeed if
+     * retried apart from those that will not, e.g. because the movie was
+     * deleted from the RESTful API.
+     *
+     * @param movieApiId the movie's identifier in the RESTful API.
+     * @return the rows for the movie's videos and reviews, or {@code null} if
+     *     the RESTful API rejected the request with a client error other
+     *     than exceeding the rate limit, so retrying is pointless.
+     * @throws IOException if the details could not be retrieved, but may be
+     *     if retried (e.g. a transport or server error). An
+     *     {@link InterruptedIOException} if the calling thread was
+     *     interrupted.
+     * @see TheMovieDbApi#getMovieDetailsStream(long, String, String)
+     */
+    MovieDetailRows downloadDetails(long movieApiId) throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException(
+                    "Download of details cancelled for movie " + movieApiId);
+        }
+        Log.d(LOG_TAG, "Starting download of details for movie " + movieApiId);
+        Call<ResponseBody> movieDetailsCall = mMovieDbApi.getMovieDetailsStream(
+                movieApiId
+                , mApiKey
+                , TheMovieDbApi.APPEND_VIDEOS_AND_REVIEWS);
+        Response<ResponseBody> response = movieDetailsCall.execute();
+        if (response.isSuccess()) {
+            MovieDetailRows details = JsonRowReader.readMovieDetails(
+                    response.body().charStream());
+            Log.d(LOG_TAG, "Successfully downloaded details for movie " + movieApiId);
+            return details;
+        }
+        if (isPermanentFailure(response.code())) {
+            Log.w(LOG_TAG, "Details not available for movie " + movieApiId
+                    + ": " + response.code());
+            return null;
+        }
+        throw new IOException("Failed to download details for movie " + movieApiId
+                + ": " + response.code());
+    }
+
+    /**
+     * Returns {@code true} if the HTTP status code passed as argument is a
+     * client error that will be returned again if the request is retried.
+     * Exceeding the rate limit is not one of them.
+     *
+     * @param code the HTTP status code of the reply.
+     * @return {@code true} if retrying the request is pointless.
+     */
+    static boolean isPermanentFailure(int code) {
+        return code >= 400 && code < 500
+                && code != RateLimitRetryInterceptor.HTTP_TOO_MANY_REQUESTS;
+    }
+
+    /**
+     * Inserts the videos and reviews of the movies passed as argument into
+     * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}, and records
+     * the time at which the details of those movies were updated, in a single
+     * transaction.
+     *
+     * @param context the {@link Context} used to access the provider.
+     * @param detailsList the details of the movies to store.
+     * @see CachedMovieEntry#COLUMN_DETAILS_UPDATE_TIME
+     */
+    static void store(Context context, Collection<MovieDetailRows> detailsList) {
+        if (detailsList.isEmpty()) {
+            Log.d(LOG_TAG, "No movie details to store.");
+            return;
+        }
+        applyBatch(context, storeOperations(detailsList));
+    }
+
+    /**
+     * Returns the operations that insert the videos and reviews of the movies
+     * passed as argument into
+     * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}, and record
+     * the time at which the details of those movies were updated. Meant to be
+     * applied along with other operations, with
+     * {@link #applyBatch(Context, ArrayList)}.
+     *
+     * @param detailsList the details of the movies to store.
+     * @return the operations that store the details, empty if there are none.
+     * @see CachedMovieEntry#COLUMN_DETAILS_UPDATE_TIME
+     */
+    static ArrayList<ContentProviderOperation> storeOperations(
+            Collection<MovieDetailRows> detailsList) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        if (detailsList.isEmpty()) {
+            return operations;
+        }
+        List<String> movieApiIds = new ArrayList<>(detailsList.size());
+        for (MovieDetailRows details : detailsList) {
+            addInsertOperations(operations, CachedMovieVideoEntry.CONTENT_URI
+                    , details.getVideos());
+            addInsertOperations(operations, CachedMovieReviewEntry.CONTENT_URI
+                    , details.getReviews());
+            movieApiIds.add(Long.toString(details.getMovieApiId()));
+        }
+        operations.add(ContentProviderOperation.newUpdate(CachedMovieEntry.CONTENT_URI)
+                .withValue(CachedMovieEntry.COLUMN_DETAILS_UPDATE_TIME
+                        , System.currentTimeMillis())
+                .withSelection(CachedMovieEntry.COLUMN_API_ID + " IN ("
+                                + TextUtils.join(",", Collections.nCopies(movieApiIds.size(), "?"))
+                                + ")"
+                        , movieApiIds.toArray(new String[movieApiIds.size()]))
+                .build());
+        return operations;
+    }
+
+    /**
+     * Adds to the list passed as argument an insertion of each of the rows
+     * into the table identified by the URI.
+     *
+     * @param operations the list to which the operations are added.
+     * @param uri the URI of the table to insert the rows into.
+     * @param rows the rows to insert.
+     */
+    static void addInsertOperations(List<ContentProviderOperation> operations
+            , Uri uri
+            , Collection<ContentValues> rows) {
+        for (ContentValues row : rows) {
+            operations.add(ContentProviderOperation.newInsert(uri).withValues(row).build());
+        }
+    }
+
+    /**
+     * Applies the operations passed as argument on
+     * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}, which does
+     * so in a single transaction and notifies its observers once, when the
+     * transaction is committed.
+     *
+     * @param context the {@link Context} used to access the provider.
+     * @param operations the operations to apply.
+     * @return {@code true} if the operations were applied, {@code false}
+     *     otherwise.
+     */
+    static boolean applyBatch(Context context, ArrayList<ContentProviderOperation> operations) {
+        if (operations.isEmpty()) {
+            Log.d(LOG_TAG, "No operations to apply.");
+            return true;
+        }
+        try {
+            context.getContentResolver().applyBatch(MovieContract.CONTENT_AUTHORITY, operations);
+            return true;
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(LOG_TAG, "Error applying " + operations.size() + " operations", e);
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,524 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import mx.com.adolfogarcia.popularmovies.data.RestfulServiceConfiguration;
+import mx.com.adolfogarcia.popularmovies.model.transport.GeneralConfigurationJsonModel;
+import mx.com.adolfogarcia.popularmovies.model.transport.MovieChangeJsonModel;
+import mx.com.adolfogarcia.popularmovies.model.transport.MovieChangePageJsonModel;
+import mx.com.adolfogarcia.popularmovies.model.transport.MovieJsonModel;
+import retrofit.Response;
+
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListEntry;
+import static mx.com.adolfogarcia.popularmovies.data.MovieContract.MovieListStateEntry;
+import static mx.com.adolfogarcia.popularmovies.net.JsonRowReader.MovieDetailRows;
+import static mx.com.adolfogarcia.popularmovies.net.JsonRowReader.MoviePageRows;
+
+/**
+ * Refreshes, on the calling thread, the configuration of
+ * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API and
+ * the first pages of the lists of movies, so they are already stored in
+ * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider} when the user
+ * opens the application. Unlike {@link FetchMoviePageTask}, all the pages of
+ * a list are downloaded before anything is written, and then written in a
+ * single transaction. Used by the background synchronization.
+ *
+ * <p>The rest of the cached movies, and their videos and reviews, are kept up
+ * to date with {@link #refreshChangedMovies()}, which only re-fetches those
+ * that changed according to the RESTful API. Movie details stored while the
+ * changes are tracked are not downloaded again by
+ * {@link #refreshFirstPages(String, int)}.</p>
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see mx.com.adolfogarcia.popularmovies.sync.MovieSyncAdapter
+ */
+public class MovieListRefresher {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = MovieListRefresher.class.getSimpleName();
+
+    /**
+     * Number of milliseconds in 24 hours.
+     */
+    private static final long ONE_DAY_MILLISECONDS = 86400000L;
+
+    /**
+     * The configuration of the RESTful API.
+     */
+    private final RestfulServiceConfiguration mConfiguration;
+
+    /**
+     * The proxy used to access the RESTful API, shared by all tasks.
+     */
+    private final TheMovieDbApi mMovieDbApi;
+
+    /**
+     * Determines which movies get their videos and reviews refreshed along
+     * with the pages.
+     */
+    private final DetailFetchPolicy mDetailFetchPolicy;
+
+    /**
+     * The {@link Context} used to access
+     * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}.
+     */
+    private final Context mContext;
+
+    /**
+     * Creates a new instance of {@link MovieListRefresher}.
+     *
+     * @param configuration the configuration of the RESTful API, where the
+     *                      refreshed configuration is stored.
+     * @param movieDbApi the proxy used to access the RESTful API.
+     * @param detailFetchPolicy determines which movies get their videos and
+     *                          reviews refreshed along with the pages.
+     * @param context the context used to access the provider on which the
+     *                movie data will be stored.
+     */
+    public MovieListRefresher(RestfulServiceConfiguration configuration
+            , TheMovieDbApi movieDbApi
+            , DetailFetchPolicy detailFetchPolicy
+            , Context context) {
+        if (configuration == null) {
+            throw new IllegalArgumentException("The Configuration may not be null");
+        }
+        if (movieDbApi == null) {
+            throw new IllegalArgumentException("The API proxy may not be null");
+        }
+        if (detailFetchPolicy == null) {
+            throw new IllegalArgumentException("The DetailFetchPolicy may not be null");
+        }
+        if (context == null) {
+            throw new IllegalArgumentException("The Context may not be null");
+        }
+        mConfiguration = configuration;
+        mMovieDbApi = movieDbApi;
+        mDetailFetchPolicy = detailFetchPolicy;
+        mContext = context;
+    }
+
+    /**
+     * Downloads the configuration of the RESTful API (e.g. the base URL and
+     * sizes of the images) and stores it.
+     *
+     * @throws IOException if the configuration could not be retrieved.
+     */
+    public void refreshConfiguration() throws IOException {
+        Response<GeneralConfigurationJsonModel> response =
+                mMovieDbApi.getConfiguration(mConfiguration.getMovieApiKey()).execute();
+        if (!response.isSuccess()) {
+            throw new IOException("Unable to get RESTful API configuration: "
+                    + response.code());
+        }
+        mConfiguration.setImageConfiguration(response.body().getImageConfiguration());
+        Log.i(LOG_TAG, "Refreshed RESTful API configuration.");
+    }
+
+    /**
+     * Downloads the first pages of the list of movies with the specified sort
+     * order, and the details that should be prefetched along with them, and
+     * replaces the entries of those pages in the stored list. Each page keeps
+     * its positions, as when retrieved by {@link FetchMoviePageTask}. The
+     * pages after them are kept, so a list the user scrolled further does
+     * not shrink, and so is the last page retrieved if it is after them. If
+     * the calling thread is interrupted, the pages downloaded so far are
+     * stored and the rest are skipped.
+     *
+     * @param sortOrder the sort order of the list (e.g.
+     *                  {@link TheMovieDbApi#SORT_BY_POPULARITY}).
+     * @param pageCount the number of pages to refresh.
+     * @return the number of movies stored.
+     * @throws IOException if the first page could not be retrieved.
+     */
+    public int refreshFirstPages(String sortOrder, int pageCount) throws IOException {
+        final long changesTrackedSince = mConfiguration.getChangesTrackedSince();
+        List<MoviePageRows> pages = new ArrayList<>(pageCount);
+        List<ContentValues> movies = new ArrayList<>(pageCount * TheMovieDbApi.MOVIES_PER_PAGE);
+        Set<Long> movieApiIds = new HashSet<>();
+        int totalPages = pageCount;
+        int lastPage = 0;
+        for (int page = 1; page <= Math.min(pageCount, totalPages); page++) {
+            if (Thread.currentThread().isInterrupted()) {
+                Log.d(LOG_TAG, "Refresh interrupted before movie page " + page);
+                break;
+            }
+            MoviePageRows rows;
+            try {
+                rows = downloadPage(sortOrder, page);
+            } catch (IOException ioe) {
+                if (lastPage == 0) {
+                    throw ioe;
+                }
+                Log.w(LOG_TAG, "Unable to refresh movie page " + page, ioe);
+                break;
+            }
+            pages.add(rows);
+            for (ContentValues movie : rows.getMovies()) {
+                // A movie may move to the next page while the pages are read
+                if (movieApiIds.add(movie.getAsLong(CachedMovieEntry.COLUMN_API_ID))) {
+                    movies.add(movie);
+                }
+            }
+            totalPages = rows.getTotalPages();
+            lastPage = page;
+        }
+        if (movies.isEmpty()) {
+            Log.d(LOG_TAG, "No movies to store for: " + sortOrder);
+            return 0;
+        }
+        storeMovies(sortOrder, pages, totalPages, lastPage);
+        refreshDetails(movies, queryDetailsUpdateTimes(movies), changesTrackedSince);
+        return movies.size();
+    }
+
+    /**
+     * Re-fetches the cached movies, with their videos and reviews, that
+     * changed since the changes were last retrieved, according to the
+     * RESTful API, and stores them. The changes are retrieved at most once a
+     * day. If they have never been retrieved, or it has been too long since
+     * the last time ({@link TheMovieDbApi#MAX_CHANGES_DAYS}), nothing is
+     * re-fetched and the changes are tracked from now on. The changes are
+     * retrieved again on the next synchronization if a movie could not be
+     * re-fetched because of a transport or server error, but not if the
+     * RESTful API rejected the request (e.g. because the movie was deleted).
+     *
+     * @return the number of movies re-fetched.
+     * @throws IOException if the changes could not be retrieved.
+     */
+    public int refreshChangedMovies() throws IOException {
+        final long now = System.currentTimeMillis();
+        final long lastCheck = mConfiguration.getLastChangesCheckTime();
+        final long trackedSince = mConfiguration.getChangesTrackedSince();
+        if (lastCheck == 0 || trackedSince == 0
+                || now - lastCheck >= (TheMovieDbApi.MAX_CHANGES_DAYS - 1) * ONE_DAY_MILLISECONDS) {
+            Log.i(LOG_TAG, "Unable to track changes since last check. Tracking from now on.");
+            mConfiguration.setChangesCheckTime(now, now);
+            return 0;
+        }
+        if (now - lastCheck < ONE_DAY_MILLISECONDS) {
+            Log.d(LOG_TAG, "Changes already retrieved today.");
+            return 0;
+        }
+        Set<Long> changedMovieApiIds = downloadChangedMovieApiIds(lastCheck, now);
+        changedMovieApiIds.retainAll(queryCachedMovieApiIds());
+        Log.i(LOG_TAG, "Cached movies changed: " + changedMovieApiIds.size());
+        MovieDetailsFetcher fetcher =
+                new MovieDetailsFetcher(mMovieDbApi, mConfiguration.getMovieApiKey());
+        List<MovieDetailRows> detailsList = new ArrayList<>(changedMovieApiIds.size());
+        boolean complete = true;
+        for (long movieApiId : changedMovieApiIds) {
+            if (Thread.currentThread().isInterrupted()) {
+                Log.d(LOG_TAG, "Refresh of changed movies interrupted.");
+                complete = false;
+                break;
+            }
+            MovieDetailRows details;
+            try {
+                details = fetcher.downloadDetails(movieApiId);
+            } catch (InterruptedIOException iioe) {
+                Log.d(LOG_TAG, "Refresh of changed movies interrupted.");
+                complete = false;
+                break;
+            } catch (IOException ioe) {
+                Log.w(LOG_TAG, "Unable to refresh changed movie " + movieApiId, ioe);
+                complete = false;
+                continue;
+            }
+            // Movies deleted upstream are not retried on every sync
+            if (details != null) {
+                detailsList.add(details);
+            }
+        }
+        // The upserts keep the columns the rows lack, e.g. the user's favorite
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (MovieDetailRows details : detailsList) {
+            operations.add(ContentProviderOperation.newInsert(CachedMovieEntry.CONTENT_URI)
+                    .withValues(details.getMovie())
+                    .build());
+        }
+        operations.addAll(MovieDetailsFetcher.storeOperations(detailsList));
+        if (!MovieDetailsFetcher.applyBatch(mContext, operations)) {
+            complete = false;
+        }
+        if (complete) {
+            mConfiguration.setChangesCheckTime(trackedSince, now);
+        } else {
+            Log.w(LOG_TAG, "Some changed movies could not be refreshed, will retry.");
+        }
+        return detailsList.size();
+    }
+
+    /**
+     * Downloads the identifiers of all the movies that changed in the period
+     * passed as argument, going through all the pages of the list.
+     *
+     * @param startTime the epoch time at which the period starts.
+     * @param endTime the epoch time at which the period ends.
+     * @return the identifiers of the movies that changed.
+     * @throws IOException if a page of the list could not be retrieved.
+     */
+    private Set<Long> downloadChangedMovieApiIds(long startTime, long endTime)
+            throws IOException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(TheMovieDbApi.CHANGES_DATE_FORMAT);
+        dateFormat.setTimeZone(TimeZone.getTimeZone(MovieJsonModel.UTC_TIME_ZONE));
+        final String startDate = dateFormat.format(new Date(startTime));
+        final String endDate = dateFormat.format(new Date(endTime));
+        Set<Long> movieApiIds = new HashSet<>();
+        int totalPages = 1;
+        for (int page = 1; page <= totalPages; page++) {
+            Response<MovieChangePageJsonModel> response = mMovieDbApi.getMovieChanges(
+                    mConfiguration.getMovieApiKey(), startDate, endDate, page).execute();
+            if (!response.isSuccess()) {
+                throw new IOException("Unable to get movie changes page " + page + ": "
+                        + response.code());
+            }
+            List<MovieChangeJsonModel> changes = response.body().getChanges();
+            if (changes == null) {
+                break;
+            }
+            for (MovieChangeJsonModel change : changes) {
+                if (change.getId() != null) {
+                    movieApiIds.add(change.getId());
+                }
+            }
+            if (response.body().getTotalPages() != null) {
+                totalPages = response.body().getTotalPages();
+            }
+        }
+        return movieApiIds;
+    }
+
+    /**
+     * Returns the identifiers of all the movies stored in
+     * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}.
+     *
+     * @return the identifiers of the cached movies.
+     */
+    private Set<Long> queryCachedMovieApiIds() {
+        Set<Long> movieApiIds = new HashSet<>();
+        Cursor cursor = mContext.getContentResolver().query(CachedMovieEntry.CONTENT_URI
+                , new String[] {CachedMovieEntry.COLUMN_API_ID}
+                , null
+                , null
+                , null);
+        if (cursor == null) {
+            return movieApiIds;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                movieApiIds.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return movieApiIds;
+    }
+
+    /**
+     * Returns the time at which the details of the movies passed as argument
+     * were stored, for those whose details are stored.
+     *
+     * @param movies the rows of the movies.
+     * @return the time the details were stored, by movie identifier.
+     * @see CachedMovieEntry#COLUMN_DETAILS_UPDATE_TIME
+     */
+    private Map<Long, Long> queryDetailsUpdateTimes(Collection<ContentValues> movies) {
+        Map<Long, Long> detailsUpdateTimes = new HashMap<>();
+        List<String> selectionArgs = new ArrayList<>(movies.size());
+        for (ContentValues movie : movies) {
+            selectionArgs.add(movie.getAsString(CachedMovieEntry.COLUMN_API_ID));
+        }
+        Cursor cursor = mContext.getContentResolver().query(CachedMovieEntry.CONTENT_URI
+                , new String[] {CachedMovieEntry.COLUMN_API_ID
+                        , CachedMovieEntry.COLUMN_DETAILS_UPDATE_TIME}
+                , CachedMovieEntry.COLUMN_DETAILS_UPDATE_TIME + " IS NOT NULL AND "
+                        + CachedMovieEntry.COLUMN_API_ID + " IN ("
+                        + TextUtils.join(",", Collections.nCopies(selectionArgs.size(), "?"))
+                        + ")"
+                , selectionArgs.toArray(new String[selectionArgs.size()])
+                , null);
+        if (cursor == null) {
+            return detailsUpdateTimes;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                detailsUpdateTimes.put(cursor.getLong(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return detailsUpdateTimes;
+    }
+
+    /**
+     * Downloads a page of movies and reads it straight into the rows to
+     * insert.
+     *
+     * @param sortOrder the sort order of the list.
+     * @param page the number of the page to download.
+     * @return the rows read from the reply.
+     * @throws IOException if the page could not be retrieved.
+     */
+    private MoviePageRows downloadPage(String sortOrder, int page) throws IOException {
+        Response<ResponseBody> response = mMovieDbApi.getMoviePageStream(
+                mConfiguration.getMovieApiKey()
+                , sortOrder
+                , page).execute();
+        if (!response.isSuccess()) {
+            throw new IOException("Unable to get movie page " + page + ": " + response.code());
+        }
+        try {
+            return JsonRowReader.readMoviePage(response.body().charStream());
+        } finally {
+            response.body().close();
+        }
+    }
+
+    /**
+     * Inserts the movies of the refreshed pages into
+     * {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider} and
+     * replaces the entries of those pages in the list with them, in a single
+     * transaction that also records the refreshed pages in the state of the
+     * list. The entries of the pages after them are kept, and so is the last
+     * page stored if it is after the last one refreshed.
+     *
+     * @param sortOrder the sort order of the list, used as its key.
+     * @param pages the refreshed pages, in list order.
+     * @param totalPages the total number of pages available.
+     * @param lastPage the number of the last page refreshed.
+     */
+    private void storeMovies(String sortOrder
+            , List<MoviePageRows> pages
+            , int totalPages
+            , int lastPage) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (MoviePageRows page : pages) {
+            MovieDetailsFetcher.addInsertOperations(operations
+                    , CachedMovieEntry.CONTENT_URI
+                    , page.getMovies());
+            // Also drops the entries a movie had in other pages
+            FetchMoviePageTask.addListEntryOperations(operations
+                    , sortOrder
+                    , (page.getPageNumber() - 1) * TheMovieDbApi.MOVIES_PER_PAGE
+                    , page.getMovies());
+        }
+        operations.add(ContentProviderOperation.newInsert(MovieListStateEntry.CONTENT_URI)
+                .withValue(MovieListStateEntry.COLUMN_LIST_KEY, sortOrder)
+                .withValue(MovieListStateEntry.COLUMN_LAST_PAGE
+                        , Math.max(queryLastPage(sortOrder), lastPage))
+                .withValue(MovieListStateEntry.COLUMN_TOTAL_PAGES, totalPages)
+                .withValue(MovieListStateEntry.COLUMN_FETCH_TIME, System.currentTimeMillis())
+                .build());
+        if (!MovieDetailsFetcher.applyBatch(mContext, operations)) {
+            Log.w(LOG_TAG, "Unable to store the refreshed movies for: " + sortOrder);
+            return;
+        }
+        Log.i(LOG_TAG, "Refreshed " + lastPage + " pages of movies for: " + sortOrder);
+    }
+
+    /**
+     * Returns the number of the last page stored for the list passed as
+     * argument.
+     *
+     * @param sortOrder the sort order of the list, used as its key.
+     * @return the number of the last page stored, or zero if none has been.
+     */
+    private int queryLastPage(String sortOrder) {
+        Cursor cursor = mContext.getContentResolver().query(MovieListStateEntry.CONTENT_URI
+                , new String[] {MovieListStateEntry.COLUMN_LAST_PAGE}
+                , MovieListStateEntry.COLUMN_LIST_KEY + " = ?"
+                , new String[] {sortOrder}
+                , null);
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Downloads the videos and reviews of the movies that should be
+     * prefetched according to {@link #mDetailFetchPolicy}, one movie at a
+     * time, and stores them in a single transaction. The position of
+     * each movie is its index in the list passed as argument. The details
+     * stored while the changes were tracked are skipped, as they are kept up
+     * to date by {@link #refreshChangedMovies()}.
+     *
+     * @param movies the rows of the movies, in list order.
+     * @param detailsUpdateTimes the time the details were stored, by movie
+     *                           identifier.
+     * @param changesTrackedSince the epoch time since which the changes have
+     *                            been tracked, or zero.
+     */
+    private void refreshDetails(List<ContentValues> movies
+            , Map<Long, Long> detailsUpdateTimes
+            , long changesTrackedSince) {
+        MovieDetailsFetcher fetcher =
+                new MovieDetailsFetcher(mMovieDbApi, mConfiguration.getMovieApiKey());
+        List<MovieDetailRows> detailsList = new ArrayList<>();
+        for (int position = 0; position < movies.size(); position++) {
+            if (Thread.currentThread().isInterrupted()) {
+                Log.d(LOG_TAG, "Refresh of movie details interrupted.");
+                break;
+            }
+            if (!mDetailFetchPolicy.shouldPrefetch(position)) {
+                continue;
+            }
+            long movieApiId = movies.get(position).getAsLong(CachedMovieEntry.COLUMN_API_ID);
+            Long detailsUpdateTime = detailsUpdateTimes.get(movieApiId);
+            if (changesTrackedSince > 0 && detailsUpdateTime != null
+                    && detailsUpdateTime >= changesTrackedSince) {
+                continue;
+            }
+            MovieDetailRows details = fetcher.download(movieApiId);
+            if (details != null) {
+                detailsList.add(details);
+            }
+        }
+        MovieDetailsFetcher.store(mContext, detailsList);
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs network work on a fixed number of threads, taking the queued work by
+ * priority class and, within the same class, in submission order. Work of a
+ * higher class submitted while lower class work is queued runs first, so for
+ * example the page the user is waiting for does not wait behind background
+ * enrichment. Work that already started is not interrupted.
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see #forPriority(Priority)
+ */
+public class PriorityExecutor {
+
+    /**
+     * Name of the instance on which the network tasks
+     * ({@link android.os.AsyncTask}s) are executed.
+     */
+    public static final String NETWORK_TASKS = "network_tasks";
+
+    /**
+     * Name of the instance on which the movie details are downloaded.
+     */
+    public static final String DETAIL_DOWNLOADS = "detail_downloads";
+
+    /**
+     * Time, in seconds, an idle thread is kept alive.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
+    /**
+     * The priority classes of network work, from highest to lowest.
+     */
+    public enum Priority {
+
+        /**
+         * Work the user is waiting for on the list of movies (e.g. the next
+         * page of movies).
+         */
+        VISIBLE_PAGE,
+
+        /**
+         * Work for the detail screen the user has open.
+         */
+        OPEN_DETAIL,
+
+        /**
+         * Enrichment the user is not waiting for (e.g. prefetching details,
+         * refreshing the configuration).
+         */
+        BACKGROUND
+    }
+
+    /**
+     * The executor that runs the work, taking it from a priority queue.
+     */
+    private final ThreadPoolExecutor mExecutor;
+
+    /**
+     * Source of the submission order, used to break ties within a class.
+     */
+    private final AtomicLong mSequence = new AtomicLong();
+
+    /**
+     * Creates a new instance of {@link PriorityExecutor} that runs the work
+     * on the specified number of threads.
+     *
+     * @param threadCount the number of threads.
+     */
+    public PriorityExecutor(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("At least one thread is required");
+        }
+        mExecutor = new ThreadPoolExecutor(threadCount, threadCount
+                , KEEP_ALIVE_SECONDS, TimeUnit.SECONDS
+                , new PriorityBlockingQueue<>());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns an {@link Executor} that submits the work with the specified
+     * priority class. Suitable for
+     * {@link android.os.AsyncTask#executeOnExecutor(Executor, Object[])}.
+     *
+     * @param priority the priority class of the work.
+     * @return an {@link Executor} that submits work with the priority class.
+     */
+    public Executor forPriority(final Priority priority) {
+        if (priority == null) {
+            throw new IllegalArgumentException("The priority may not be null");
+        }
+        return command -> mExecutor.execute(
+                new PrioritizedRunnable(command, priority, mSequence.getAndIncrement()));
+    }
+
+    /**
+     * Returns the number of pieces of work queued, not yet running.
+     *
+     * @return the number of pieces of work queued.
+     */
+    public int getQueueDepth() {
+        return mExecutor.getQueue().size();
+    }
+
+    /**
+     * Work queued with its priority class and submission order.
+     */
+    private static final class PrioritizedRunnable
+            implements Runnable, Comparable<PrioritizedRunnable> {
+
+        /**
+         * The work to run.
+         */
+        private final Runnable mCommand;
+
+        /**
+         * The priority class of the work.
+         */
+        private final Priority mPriority;
+
+        /**
+         * The submission order of the work.
+         */
+        private final long mSequence;
+
+        /**
+         * Creates a new instance of {@link PrioritizedRunnable}.
+         *
+         * @param command the work to run.
+         * @param priority the priority class of the work.
+         * @param sequence the submission order of the work.
+         */
+        PrioritizedRunnable(Runnable command, Priority priority, long sequence) {
+            mCommand = command;
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            mCommand.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedRunnable other) {
+            int byPriority = mPriority.compareTo(other.mPriority);
+            if (byPriority != 0) {
+                return byPriority;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+
+    }
+
+}
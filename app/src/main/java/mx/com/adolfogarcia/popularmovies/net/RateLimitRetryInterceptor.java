@@ -0,0 +1,216 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import android.util.Log;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Retries the requests rejected by
+ * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API
+ * because they exceeded its rate limit ({@code 429 Too Many Requests}), or
+ * because the service is temporarily unavailable ({@code 503}). If the reply
+ * includes a {@code Retry-After} header, the {@link TokenBucket} is paused
+ * for the time requested, so no other request is sent in the meantime.
+ * Otherwise, the request is retried after an exponential backoff with full
+ * jitter, so concurrent requests do not retry in lockstep.
+ *
+ * <p>Must be added as an application interceptor, so each retry goes
+ * through the {@link TokenBucket} installed as a network interceptor. A
+ * request whose thread is interrupted (e.g. by cancelling its
+ * {@link java.util.concurrent.Future}) is not retried again.</p>
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class RateLimitRetryInterceptor implements Interceptor {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = RateLimitRetryInterceptor.class.getSimpleName();
+
+    /**
+     * HTTP status code sent by the RESTful API when the rate limit is exceeded.
+     */
+    static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * HTTP status code sent when the service is temporarily unavailable.
+     */
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+
+    /**
+     * Maximum delay, in milliseconds, before the first retry when the server
+     * does not send {@code Retry-After}. Doubles on each retry.
+     */
+    private static final long BASE_BACKOFF_MILLISECONDS = 500L;
+
+    /**
+     * Maximum time, in milliseconds, honored from a {@code Retry-After} header.
+     */
+    private static final long MAX_RETRY_AFTER_MILLISECONDS = 60000L;
+
+    /**
+     * The bucket paused when the server sends {@code Retry-After}.
+     */
+    private final TokenBucket mTokenBucket;
+
+    /**
+     * Maximum number of times a request is retried.
+     */
+    private final int mMaxRetries;
+
+    /**
+     * Source of the jitter added to the backoff.
+     */
+    private final Random mRandom = new Random();
+
+    /**
+     * Number of retries performed.
+     */
+    private final AtomicInteger mRetryCount = new AtomicInteger();
+
+    /**
+     * Creates a new instance of {@link RateLimitRetryInterceptor}.
+     *
+     * @param tokenBucket the bucket that limits the rate of the requests.
+     * @param maxRetries the maximum number of times a request is retried.
+     */
+    public RateLimitRetryInterceptor(TokenBucket tokenBucket, int maxRetries) {
+        if (tokenBucket == null) {
+            throw new IllegalArgumentException("The TokenBucket may not be null");
+        }
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("The retries may not be negative");
+        }
+        mTokenBucket = tokenBucket;
+        mMaxRetries = maxRetries;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+        for (int attempt = 0; attempt < mMaxRetries && isRetryable(response); attempt++) {
+            long retryAfterMillis = getRetryAfterMillis(response);
+            response.body().close();
+            throwIfInterrupted();
+            if (retryAfterMillis >= 0) {
+                Log.w(LOG_TAG, "Rate limited, retrying after " + retryAfterMillis + " ms");
+                mTokenBucket.pause(retryAfterMillis, TimeUnit.MILLISECONDS);
+            } else {
+                long backoffMillis = (long) (mRandom.nextDouble()
+                        * (BASE_BACKOFF_MILLISECONDS << attempt));
+                Log.w(LOG_TAG, "Rate limited, backing off " + backoffMillis + " ms");
+                sleep(backoffMillis);
+            }
+            throwIfInterrupted();
+            mRetryCount.incrementAndGet();
+            response = chain.proceed(request);
+        }
+        return response;
+    }
+
+    /**
+     * Returns the number of retries performed.
+     *
+     * @return the number of retries performed.
+     */
+    public int getRetryCount() {
+        return mRetryCount.get();
+    }
+
+    /**
+     * Returns {@code true} if the request that got the reply passed as
+     * argument should be retried, {@code false} otherwise.
+     *
+     * @param response the reply to the request.
+     * @return {@code true} if the request should be retried.
+     */
+    private static boolean isRetryable(Response response) {
+        return response.code() == HTTP_TOO_MANY_REQUESTS
+                || response.code() == HTTP_SERVICE_UNAVAILABLE;
+    }
+
+    /**
+     * Returns the time to wait before retrying, as requested by the server in
+     * the {@code Retry-After} header, either in seconds or as an HTTP date.
+     *
+     * @param response the reply to the request.
+     * @return the time to wait, in milliseconds, or -1 if the header is
+     *     missing or invalid.
+     */
+    private static long getRetryAfterMillis(Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter == null) {
+            return -1;
+        }
+        long millis;
+        try {
+            millis = TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException nfe) {
+            Date date = response.headers().getDate("Retry-After");
+            if (date == null) {
+                return -1;
+            }
+            millis = date.getTime() - System.currentTimeMillis();
+        }
+        return Math.min(MAX_RETRY_AFTER_MILLISECONDS, Math.max(0L, millis));
+    }
+
+    /**
+     * Throws {@link InterruptedIOException} if the calling thread has been
+     * interrupted, so a cancelled request is neither delayed nor retried.
+     * The interceptor chain of OkHttp 2 does not give access to the call, so
+     * the interruption is the only cancellation that can be checked before
+     * waiting. A call cancelled with {@link com.squareup.okhttp.Call#cancel()}
+     * fails as soon as it is retried.
+     *
+     * @throws InterruptedIOException if the thread is interrupted.
+     */
+    private static void throwIfInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Request cancelled while rate limited");
+        }
+    }
+
+    /**
+     * Sleeps for the specified time.
+     *
+     * @param millis the time to sleep, in milliseconds.
+     * @throws InterruptedIOException if the thread is interrupted.
+     */
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+
+}
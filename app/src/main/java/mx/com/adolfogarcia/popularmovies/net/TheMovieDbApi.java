@@ -1,6 +1,9 @@
 package mx.com.adolfogarcia.popularmovies.net;
 
+import com.squareup.okhttp.ResponseBody;
+
 import mx.com.adolfogarcia.popularmovies.model.transport.GeneralConfigurationJsonModel;
+import mx.com.adolfogarcia.popularmovies.model.transport.MovieChangePageJsonModel;
 import mx.com.adolfogarcia.popularmovies.model.transport.MoviePageJsonModel;
 import mx.com.adolfogarcia.popularmovies.model.transport.MovieReviewPageJsonModel;
 import mx.com.adolfogarcia.popularmovies.model.transport.MovieVideosJsonModel;
@@ -8,6 +11,7 @@ import retrofit.Call;
 import retrofit.http.GET;
 import retrofit.http.Path;
 import retrofit.http.Query;
+import retrofit.http.Streaming;
 
 /**
  * Declaration of the RESTful API provided by
@@ -23,6 +27,12 @@ public interface TheMovieDbApi {
      */
     String BASE_URL = "https://api.themoviedb.org/";
 
+    /**
+     * The number of movies in each full page returned by
+     * {@link #getMoviePage(String, String, int)}.
+     */
+    int MOVIES_PER_PAGE = 20;
+
     /**
      * Keyword that determines that the movie data should be sorted by
      * popularity and be given in descending order.
@@ -35,6 +45,25 @@ public interface TheMovieDbApi {
      */
     String SORT_BY_USER_RATING = "vote_average.desc";
 
+    /**
+     * Value for the {@code append_to_response} parameter of
+     * {@link #getMovieDetailsStream(long, String, String)} that includes the movie's
+     * videos and its first page of reviews in the reply.
+     */
+    String APPEND_VIDEOS_AND_REVIEWS = "videos,reviews";
+
+    /**
+     * Format of the dates that delimit the period of
+     * {@link #getMovieChanges(String, String, String, int)}.
+     */
+    String CHANGES_DATE_FORMAT = "yyyy-MM-dd";
+
+    /**
+     * Maximum number of days covered by a single query to
+     * {@link #getMovieChanges(String, String, String, int)}.
+     */
+    int MAX_CHANGES_DAYS = 14;
+
     /**
      * Get the system wide configuration information.
      *
@@ -61,6 +90,24 @@ public interface TheMovieDbApi {
             , @Query("sort_by") String orderCriteria
             , @Query("page") int page);
 
+    /**
+     * Get a page worth of results from the list of movies provided by the
+     * services, sorted according to the criteria given, as the raw body of
+     * the reply so it can be read with a pull parser while it is received.
+     *
+     * @param apiKey the key required to access the services.
+     * @param orderCriteria the keyword that determines how the movies should be
+     *                      sorted (e.g. {@link #SORT_BY_POPULARITY}).
+     * @param page the number of the page to retrieve (first page index: 1).
+     * @return a {@link Call} that can retrieve the page worth of movie data.
+     * @see #getMoviePage(String, String, int)
+     */
+    @Streaming
+    @GET("/3/discover/movie")
+    Call<ResponseBody> getMoviePageStream(@Query("api_key") String apiKey
+            , @Query("sort_by") String orderCriteria
+            , @Query("page") int page);
+
     /**
      * Get the list of videos available for a given movie.
      *
@@ -87,4 +134,43 @@ public interface TheMovieDbApi {
             , @Query("api_key") String apiKey
             , @Query("page") int page);
 
+    /**
+     * Get the details of the specified movie, including the additional
+     * resources requested, as the raw body of the reply so it can be read
+     * with a pull parser while it is received. This allows, for example, to
+     * retrieve the movie's videos and reviews with a single request.
+     *
+     * @param movieId the id of the movie for which the details should be
+     *                returned.
+     * @param apiKey the key required to access the services.
+     * @param appendToResponse the resources to include in the reply (e.g.
+     *                         {@link #APPEND_VIDEOS_AND_REVIEWS}).
+     * @return a {@link Call} that can retrieve the details of the movie.
+     * @see #APPEND_VIDEOS_AND_REVIEWS
+     */
+    @Streaming
+    @GET("/3/movie/{id}")
+    Call<ResponseBody> getMovieDetailsStream(@Path("id") long movieId
+            , @Query("api_key") String apiKey
+            , @Query("append_to_response") String appendToResponse);
+
+    /**
+     * Get a page of the list of movies whose data (e.g. title, overview,
+     * videos or reviews) changed during the specified period. The period may
+     * not be longer than {@link #MAX_CHANGES_DAYS} days.
+     *
+     * @param apiKey the key required to access the services.
+     * @param startDate the first day of the period, in
+     *                  {@link #CHANGES_DATE_FORMAT}.
+     * @param endDate the last day of the period, in
+     *                {@link #CHANGES_DATE_FORMAT}.
+     * @param page the number of the page to retrieve (first page index: 1).
+     * @return a {@link Call} that can retrieve the page of movies that changed.
+     */
+    @GET("/3/movie/changes")
+    Call<MovieChangePageJsonModel> getMovieChanges(@Query("api_key") String apiKey
+            , @Query("start_date") String startDate
+            , @Query("end_date") String endDate
+            , @Query("page") int page);
+
 }
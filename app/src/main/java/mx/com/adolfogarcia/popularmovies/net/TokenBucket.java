@@ -0,0 +1,220 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.net;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Token bucket that limits the rate at which requests are sent to
+ * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API,
+ * which rate-limits the requests per API key. Tokens are added at a sustained
+ * rate up to a maximum burst, and each request sent over the network takes
+ * one, waiting for it if none is available. Requests wait in the order in
+ * which they arrived.
+ *
+ * <p>Must be added as a network interceptor, so the replies served from the
+ * HTTP response cache do not take tokens. The bucket may also be paused, for
+ * example for the time requested by the server in a {@code Retry-After}
+ * header.</p>
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see RateLimitRetryInterceptor
+ */
+public class TokenBucket implements Interceptor {
+
+    /**
+     * Number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Tokens added to the bucket per nanosecond.
+     */
+    private final double mTokensPerNano;
+
+    /**
+     * Maximum number of tokens in the bucket.
+     */
+    private final int mBurst;
+
+    /**
+     * Tokens available. Negative when there are requests waiting, each of
+     * them has reserved a token that is not available yet.
+     */
+    private double mTokens;
+
+    /**
+     * The time, as returned by {@link System#nanoTime()}, at which tokens
+     * were last added to the bucket.
+     */
+    private long mLastRefillNanos;
+
+    /**
+     * The time, as returned by {@link System#nanoTime()}, until which no
+     * requests may be sent.
+     */
+    private long mPausedUntilNanos;
+
+    /**
+     * Number of requests currently waiting for a token.
+     */
+    private final AtomicInteger mQueueDepth = new AtomicInteger();
+
+    /**
+     * Largest number of requests that have been waiting for a token at the
+     * same time.
+     */
+    private final AtomicInteger mMaxQueueDepth = new AtomicInteger();
+
+    /**
+     * Creates a new instance of {@link TokenBucket}, initially full.
+     *
+     * @param tokensPerSecond the sustained rate of requests per second.
+     * @param burst the maximum number of requests that may be sent at once.
+     */
+    public TokenBucket(double tokensPerSecond, int burst) {
+        if (tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("The rate must be greater than zero");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("The burst must be at least one");
+        }
+        mTokensPerNano = tokensPerSecond / NANOS_PER_SECOND;
+        mBurst = burst;
+        mTokens = burst;
+        mLastRefillNanos = System.nanoTime();
+        mPausedUntilNanos = mLastRefillNanos;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        try {
+            acquire();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a request token");
+        }
+        return chain.proceed(chain.request());
+    }
+
+    /**
+     * Takes a token from the bucket, waiting until one is available and the
+     * bucket is not paused. If the wait is interrupted, the token reserved is
+     * returned, so the requests that wait after the cancelled one are not
+     * delayed by it.
+     *
+     * @throws InterruptedException if the calling thread is interrupted
+     *     while waiting.
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos <= 0) {
+            return;
+        }
+        int depth = mQueueDepth.incrementAndGet();
+        int maxDepth = mMaxQueueDepth.get();
+        while (depth > maxDepth && !mMaxQueueDepth.compareAndSet(maxDepth, depth)) {
+            maxDepth = mMaxQueueDepth.get();
+        }
+        try {
+            // The bucket may have been paused while waiting
+            while (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+                waitNanos = getRemainingPauseNanos();
+            }
+        } catch (InterruptedException ie) {
+            refund();
+            throw ie;
+        } finally {
+            mQueueDepth.decrementAndGet();
+        }
+    }
+
+    /**
+     * Stops sending requests for the specified time. Requests that are
+     * already waiting for a token are delayed as well, those that are being
+     * sent are not.
+     *
+     * @param delay the time during which no requests may be sent.
+     * @param unit the unit of {@code delay}.
+     */
+    public synchronized void pause(long delay, TimeUnit unit) {
+        long until = System.nanoTime() + unit.toNanos(delay);
+        if (until - mPausedUntilNanos > 0) {
+            mPausedUntilNanos = until;
+        }
+    }
+
+    /**
+     * Reserves a token and returns the time to wait until it is available.
+     *
+     * @return the time, in nanoseconds, to wait until the token reserved is
+     *     available. Zero or less if it is available right away.
+     */
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        mTokens = Math.min(mBurst, mTokens + (now - mLastRefillNanos) * mTokensPerNano);
+        mLastRefillNanos = now;
+        mTokens -= 1;
+        long waitNanos = mTokens >= 0 ? 0 : (long) Math.ceil(-mTokens / mTokensPerNano);
+        return Math.max(waitNanos, mPausedUntilNanos - now);
+    }
+
+    /**
+     * Returns to the bucket a token reserved by a request that was cancelled
+     * before being sent.
+     */
+    private synchronized void refund() {
+        mTokens = Math.min(mBurst, mTokens + 1);
+    }
+
+    /**
+     * Returns the time left until the bucket stops being paused.
+     *
+     * @return the time, in nanoseconds, until requests may be sent. Zero or
+     *     less if they may be sent right away.
+     */
+    private synchronized long getRemainingPauseNanos() {
+        return mPausedUntilNanos - System.nanoTime();
+    }
+
+    /**
+     * Returns the number of requests currently waiting for a token.
+     *
+     * @return the number of requests waiting.
+     */
+    public int getQueueDepth() {
+        return mQueueDepth.get();
+    }
+
+    /**
+     * Returns the largest number of requests that have been waiting for a
+     * token at the same time.
+     *
+     * @return the largest number of requests waiting at once.
+     */
+    public int getMaxQueueDepth() {
+        return mMaxQueueDepth.get();
+    }
+
+}
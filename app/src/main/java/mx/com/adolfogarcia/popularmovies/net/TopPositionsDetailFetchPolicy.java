@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mx.com.adolfogarcia.popularmovies.net;
+
+/**
+ * {@link DetailFetchPolicy} that prefetches only the details of the movies at
+ * the top of the list, that is, those the user is most likely to open.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class TopPositionsDetailFetchPolicy implements DetailFetchPolicy {
+
+    /**
+     * Number of positions, from the top of the list, for which the details
+     * are prefetched.
+     */
+    private final int mPositionCount;
+
+    /**
+     * Creates a new instance of {@link TopPositionsDetailFetchPolicy} that
+     * prefetches the details of the movies in the specified number of
+     * positions from the top of the list.
+     *
+     * @param positionCount number of positions, from the top of the list,
+     *                      for which the details are prefetched.
+     */
+    public TopPositionsDetailFetchPolicy(int positionCount) {
+        if (positionCount < 0) {
+            throw new IllegalArgumentException("The position count may not be negative");
+        }
+        mPositionCount = positionCount;
+    }
+
+    @Override
+    public boolean shouldPrefetch(int position) {
+        return position < mPositionCount;
+    }
+
+}
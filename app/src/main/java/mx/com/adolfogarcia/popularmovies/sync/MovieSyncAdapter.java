@@ -0,0 +1,208 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.sync;
+
+import android.accounts.Account;
+import android.accounts.AccountManager;
+import android.content.AbstractThreadedSyncAdapter;
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SyncResult;
+import android.net.ConnectivityManager;
+import android.os.BatteryManager;
+import android.os.Bundle;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+import java.io.IOException;
+
+import javax.inject.Inject;
+
+import mx.com.adolfogarcia.popularmovies.PopularMoviesApplication;
+import mx.com.adolfogarcia.popularmovies.R;
+import mx.com.adolfogarcia.popularmovies.data.MovieContract;
+import mx.com.adolfogarcia.popularmovies.data.RestfulServiceConfiguration;
+import mx.com.adolfogarcia.popularmovies.net.DetailFetchPolicy;
+import mx.com.adolfogarcia.popularmovies.net.FetchMoviePageTaskFactory;
+import mx.com.adolfogarcia.popularmovies.net.MovieListRefresher;
+import mx.com.adolfogarcia.popularmovies.net.TheMovieDbApi;
+import mx.com.adolfogarcia.popularmovies.view.adapter.LabeledItem;
+
+/**
+ * Refreshes, in the background, the configuration of
+ * <a href="https://www.themoviedb.org/">themoviedb.org</a>'s RESTful API and
+ * the first {@link RestfulServiceConfiguration#getSyncPagesPerSortOrder()}
+ * pages of each sort order that supports downloading movies, so opening the
+ * application shows data that is already stored. The rest of the cached
+ * movies are re-fetched only if they changed. Periodic synchronizations
+ * only run while the device is charging and on an unmetered network; those
+ * requested with {@link #syncImmediately(Context)} run right away.
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see MovieListRefresher
+ */
+public class MovieSyncAdapter extends AbstractThreadedSyncAdapter {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = MovieSyncAdapter.class.getSimpleName();
+
+    /**
+     * The configuration of the RESTful API.
+     */
+    @Inject RestfulServiceConfiguration mConfiguration;
+
+    /**
+     * The proxy used to access the RESTful API.
+     */
+    @Inject TheMovieDbApi mMovieDbApi;
+
+    /**
+     * Determines which movies get their videos and reviews refreshed along
+     * with the pages.
+     */
+    @Inject DetailFetchPolicy mDetailFetchPolicy;
+
+    /**
+     * The movie sort order criteria whose lists are refreshed.
+     */
+    @Inject LabeledItem<FetchMoviePageTaskFactory>[] mSortOrderOptions;
+
+    /**
+     * Creates a new instance of {@link MovieSyncAdapter}.
+     *
+     * @param context the application's context.
+     * @param autoInitialize if {@code true} the adapter is made syncable the
+     *                       first time a synchronization is requested.
+     */
+    public MovieSyncAdapter(Context context, boolean autoInitialize) {
+        super(context, autoInitialize);
+        ((PopularMoviesApplication) context.getApplicationContext())
+                .getComponent().inject(this);
+    }
+
+    @Override
+    public void onPerformSync(Account account
+            , Bundle extras
+            , String authority
+            , ContentProviderClient provider
+            , SyncResult syncResult) {
+        if (!extras.getBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, false)
+                && !isChargingOnUnmeteredNetwork()) {
+            Log.i(LOG_TAG, "Skipping synchronization. Not charging on an unmetered network.");
+            return;
+        }
+        Log.i(LOG_TAG, "Starting synchronization.");
+        MovieListRefresher refresher = new MovieListRefresher(mConfiguration
+                , mMovieDbApi
+                , mDetailFetchPolicy
+                , getContext());
+        try {
+            refresher.refreshConfiguration();
+            syncResult.stats.numUpdates += refresher.refreshChangedMovies();
+            for (LabeledItem<FetchMoviePageTaskFactory> option : mSortOrderOptions) {
+                String sortOrder = option.getItem().getRestApiSortOrder();
+                if (sortOrder == null) {
+                    continue;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    Log.i(LOG_TAG, "Synchronization cancelled.");
+                    return;
+                }
+                syncResult.stats.numInserts += refresher.refreshFirstPages(sortOrder
+                        , mConfiguration.getSyncPagesPerSortOrder());
+            }
+        } catch (IOException ioe) {
+            Log.e(LOG_TAG, "Error synchronizing movie data.", ioe);
+            syncResult.stats.numIoExceptions++;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the device is charging and connected to an
+     * unmetered network, {@code false} otherwise.
+     *
+     * @return {@code true} if the device is charging on an unmetered network.
+     */
+    private boolean isChargingOnUnmeteredNetwork() {
+        Intent batteryStatus = getContext().registerReceiver(null
+                , new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        boolean charging = batteryStatus != null
+                && batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        ConnectivityManager connectivityManager = (ConnectivityManager)
+                getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+        return charging && !ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+    }
+
+    /**
+     * Returns the account the synchronization runs on, adding it to the
+     * {@link AccountManager} if it does not exist yet. The account is a stub,
+     * as the RESTful API does not require users to sign in.
+     *
+     * @param context the {@link Context} used to access the account manager.
+     * @return the account the synchronization runs on.
+     * @see SyncAuthenticator
+     */
+    private static Account getSyncAccount(Context context) {
+        Account account = new Account(context.getString(R.string.app_name)
+                , context.getString(R.string.sync_account_type));
+        AccountManager accountManager =
+                (AccountManager) context.getSystemService(Context.ACCOUNT_SERVICE);
+        if (accountManager.addAccountExplicitly(account, null, null)) {
+            Log.d(LOG_TAG, "Sync account added.");
+        }
+        return account;
+    }
+
+    /**
+     * Schedules the periodic synchronization, every
+     * {@link RestfulServiceConfiguration#getSyncIntervalSeconds()} seconds.
+     * Scheduling it again replaces the previous schedule.
+     *
+     * @param context the application's context.
+     * @param configuration the configuration that defines the interval.
+     */
+    public static void initialize(Context context, RestfulServiceConfiguration configuration) {
+        Account account = getSyncAccount(context);
+        ContentResolver.setIsSyncable(account, MovieContract.CONTENT_AUTHORITY, 1);
+        ContentResolver.setSyncAutomatically(account, MovieContract.CONTENT_AUTHORITY, true);
+        ContentResolver.addPeriodicSync(account
+                , MovieContract.CONTENT_AUTHORITY
+                , Bundle.EMPTY
+                , configuration.getSyncIntervalSeconds());
+    }
+
+    /**
+     * Requests a synchronization to run as soon as possible, regardless of
+     * the charging and network constraints of the periodic ones.
+     *
+     * @param context the application's context.
+     */
+    public static void syncImmediately(Context context) {
+        Bundle extras = new Bundle();
+        extras.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+        extras.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        ContentResolver.requestSync(getSyncAccount(context)
+                , MovieContract.CONTENT_AUTHORITY
+                , extras);
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.sync;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.IBinder;
+
+/**
+ * Service that allows the sync framework to run {@link MovieSyncAdapter}. A
+ * single instance of the adapter is shared by all the bindings.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class MovieSyncService extends Service {
+
+    /**
+     * Guards the creation of {@link #sSyncAdapter}.
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * The adapter that performs the synchronization.
+     */
+    private static MovieSyncAdapter sSyncAdapter = null;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        synchronized (LOCK) {
+            if (sSyncAdapter == null) {
+                sSyncAdapter = new MovieSyncAdapter(getApplicationContext(), true);
+            }
+        }
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return sSyncAdapter.getSyncAdapterBinder();
+    }
+
+}
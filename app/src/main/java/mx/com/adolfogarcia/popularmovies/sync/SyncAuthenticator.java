@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.sync;
+
+import android.accounts.AbstractAccountAuthenticator;
+import android.accounts.Account;
+import android.accounts.AccountAuthenticatorResponse;
+import android.content.Context;
+import android.os.Bundle;
+
+/**
+ * Stub authenticator for the account {@link MovieSyncAdapter} runs on. The
+ * sync framework requires an account, but the RESTful API does not require
+ * users to sign in, so none of the operations are supported.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class SyncAuthenticator extends AbstractAccountAuthenticator {
+
+    /**
+     * Creates a new instance of {@link SyncAuthenticator}.
+     *
+     * @param context the application's context.
+     */
+    public SyncAuthenticator(Context context) {
+        super(context);
+    }
+
+    @Override
+    public Bundle editProperties(AccountAuthenticatorResponse response, String accountType) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Bundle addAccount(AccountAuthenticatorResponse response
+            , String accountType
+            , String authTokenType
+            , String[] requiredFeatures
+            , Bundle options) {
+        return null;
+    }
+
+    @Override
+    public Bundle confirmCredentials(AccountAuthenticatorResponse response
+            , Account account
+            , Bundle options) {
+        return null;
+    }
+
+    @Override
+    public Bundle getAuthToken(AccountAuthenticatorResponse response
+            , Account account
+            , String authTokenType
+            , Bundle options) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getAuthTokenLabel(String authTokenType) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Bundle updateCredentials(AccountAuthenticatorResponse response
+            , Account account
+            , String authTokenType
+            , Bundle options) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Bundle hasFeatures(AccountAuthenticatorResponse response
+            , Account account
+            , String[] features) {
+        throw new UnsupportedOperationException();
+    }
+
+}
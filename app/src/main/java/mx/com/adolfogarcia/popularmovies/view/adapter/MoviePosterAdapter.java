@@ -24,8 +24,6 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.CursorAdapter;
 
-import com.squareup.picasso.Picasso;
-
 import java.lang.ref.WeakReference;
 
 import mx.com.adolfogarcia.popularmovies.R;
@@ -50,10 +48,12 @@ public class MoviePosterAdapter extends CursorAdapter {
 
     /**
      * Projection that includes the movie details to be presented. Used to
-     * query {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}.
+     * query {@link mx.com.adolfogarcia.popularmovies.data.MovieProvider}. The
+     * movie's id is qualified, as the movies in a list are joined with their
+     * entries.
      */
     public static final String[] PROJECTION_MOVIE_POSTERS = {
-            CachedMovieEntry._ID,
+            CachedMovieEntry.TABLE_NAME + "." + CachedMovieEntry._ID,
             CachedMovieEntry.COLUMN_POSTER_PATH
     };
 
@@ -117,15 +117,13 @@ public class MoviePosterAdapter extends CursorAdapter {
                 R.dimen.movie_poster_thumbnail_height);
         MoviePosterListItemBinding binding =
                 (MoviePosterListItemBinding) view.getTag();
-        String posterImageUrl = mConfiguration.get().getBestFittingPosterUrl(
-                cursor.getString(COL_POSTER_PATH)
-                , posterPixelWidth);
-        Picasso.with(context)
-                .load(posterImageUrl)
-                .resize(posterPixelWidth, posterPixelHeight)
-                .placeholder(R.anim.poster_loading)
-                .error(R.drawable.logo_the_movie_db_180dp)
-                .into(binding.posterImageView);
+        String posterPath = cursor.getString(COL_POSTER_PATH);
+        RestfulServiceConfiguration configuration = mConfiguration.get();
+        ProgressivePosterLoader.load(binding.posterImageView
+                , configuration.getSmallestPosterUrl(posterPath)
+                , configuration.getBestFittingPosterUrl(posterPath, posterPixelWidth)
+                , posterPixelWidth
+                , posterPixelHeight);
     }
 
 }
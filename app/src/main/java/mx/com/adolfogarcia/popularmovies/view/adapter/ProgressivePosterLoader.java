@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mx.com.adolfogarcia.popularmovies.view.adapter;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.NetworkPolicy;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+import mx.com.adolfogarcia.popularmovies.R;
+import mx.com.adolfogarcia.popularmovies.net.ImageQualityPolicy;
+
+/**
+ * Loads a movie poster into an {@link ImageView} in two stages: first its
+ * smallest size (e.g. "w92"), which is usually cached or cheap to download,
+ * and then the size that best fits the view, which replaces the first one
+ * once it arrives. The two stages are only used when the size that best
+ * fits is not cached, so a poster shown before appears right away. The
+ * smallest size is not resized up to the dimensions of the view, which
+ * scales it instead, so it takes little of the memory cache.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public final class ProgressivePosterLoader {
+
+    /**
+     * The class only provides utility methods.
+     */
+    private ProgressivePosterLoader() {
+        // Empty constructor
+    }
+
+    /**
+     * Loads the poster into the view passed as argument: the full size if
+     * it is cached, in memory or on disk, and otherwise first the thumbnail
+     * and then the full size. If the thumbnail fails, the full size is
+     * loaded as if there were none. If the full size fails, the thumbnail is
+     * kept. Loading another image into the view cancels every stage.
+     *
+     * @param view the view into which the poster is loaded.
+     * @param thumbnailUrl the URL of the smallest size of the poster, or
+     *                     {@code null} to load only the full size.
+     * @param posterUrl the URL of the size of the poster that best fits the
+     *                  view.
+     * @param pixelWidth the width of the view in pixels (not dp).
+     * @param pixelHeight the height of the view in pixels (not dp).
+     */
+    public static void load(ImageView view
+            , String thumbnailUrl
+            , String posterUrl
+            , int pixelWidth
+            , int pixelHeight) {
+        Context context = view.getContext();
+        Bitmap.Config config = ImageQualityPolicy.getBitmapConfig(context);
+        if (thumbnailUrl == null || thumbnailUrl.equals(posterUrl)) {
+            loadFullSize(view, posterUrl, pixelWidth, pixelHeight, config)
+                    .placeholder(R.anim.poster_loading)
+                    .error(R.drawable.logo_the_movie_db_180dp)
+                    .into(view);
+            return;
+        }
+        loadFullSize(view, posterUrl, pixelWidth, pixelHeight, config)
+                .networkPolicy(NetworkPolicy.OFFLINE)
+                .placeholder(R.anim.poster_loading)
+                .into(view, new Callback() {
+                    @Override
+                    public void onSuccess() {
+                        // The full size was cached, the thumbnail is not needed
+                    }
+
+                    @Override
+                    public void onError() {
+                        loadProgressively(view, thumbnailUrl, posterUrl
+                                , pixelWidth, pixelHeight, config);
+                    }
+                });
+    }
+
+    /**
+     * Loads the thumbnail of the poster into the view passed as argument,
+     * and then the full size, downloading them if they are not cached.
+     *
+     * @param view the view into which the poster is loaded.
+     * @param thumbnailUrl the URL of the smallest size of the poster.
+     * @param posterUrl the URL of the size of the poster that best fits the
+     *                  view.
+     * @param pixelWidth the width of the view in pixels (not dp).
+     * @param pixelHeight the height of the view in pixels (not dp).
+     * @param config the configuration with which the poster is decoded.
+     */
+    private static void loadProgressively(ImageView view
+            , String thumbnailUrl
+            , String posterUrl
+            , int pixelWidth
+            , int pixelHeight
+            , Bitmap.Config config) {
+        Picasso.with(view.getContext())
+                .load(thumbnailUrl)
+                .config(config)
+                .placeholder(R.anim.poster_loading)
+                .into(view, new Callback() {
+                    @Override
+                    public void onSuccess() {
+                        loadFullSize(view, posterUrl, pixelWidth, pixelHeight, config)
+                                .placeholder(view.getDrawable())
+                                .into(view);
+                    }
+
+                    @Override
+                    public void onError() {
+                        loadFullSize(view, posterUrl, pixelWidth, pixelHeight, config)
+                                .placeholder(R.anim.poster_loading)
+                                .error(R.drawable.logo_the_movie_db_180dp)
+                                .into(view);
+                    }
+                });
+    }
+
+    /**
+     * Returns the request for the size of the poster that best fits the view.
+     *
+     * @param view the view into which the poster is loaded.
+     * @param posterUrl the URL of the size of the poster that best fits.
+     * @param pixelWidth the width of the view in pixels (not dp).
+     * @param pixelHeight the height of the view in pixels (not dp).
+     * @param config the configuration with which the poster is decoded.
+     * @return the request for the poster, without placeholder nor error image.
+     */
+    private static RequestCreator loadFullSize(ImageView view
+            , String posterUrl
+            , int pixelWidth
+            , int pixelHeight
+            , Bitmap.Config config) {
+        return Picasso.with(view.getContext())
+                .load(posterUrl)
+                .resize(pixelWidth, pixelHeight)
+                .config(config);
+    }
+
+}
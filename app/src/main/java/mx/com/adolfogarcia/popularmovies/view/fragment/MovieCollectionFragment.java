@@ -52,8 +52,6 @@ import mx.com.adolfogarcia.popularmovies.net.FetchMoviePageTaskFactory;
 import mx.com.adolfogarcia.popularmovies.view.adapter.LabeledItem;
 import mx.com.adolfogarcia.popularmovies.view.adapter.MoviePosterAdapter;
 
-import static mx.com.adolfogarcia.popularmovies.data.MovieContract.CachedMovieEntry;
-
 /**
  * Displays a collection of movie posters in a grid, retrieving the information
  * from <a href="https://www.themoviedb.org/">themoviedb.org</a>.
@@ -175,9 +173,11 @@ public class MovieCollectionFragment extends Fragment
         mBinding.posterGridView.setOnItemClickListener(mViewModel);
         mBinding.posterGridView.setOnScrollListener(mViewModel);
         if (mViewModel.isApiConfigOld()) {
-            Log.i(LOG_TAG, "Old local data. Redownloading.");
-            mViewModel.updateApiConfig();
-            mViewModel.deleteCachedMovieData();
+            Log.i(LOG_TAG, "Old local data. Requesting synchronization.");
+            mViewModel.requestSync();
+        }
+        if (mViewModel.isMovieDataMissing()) {
+            Log.i(LOG_TAG, "No local data. Downloading first page.");
             mViewModel.downloadNextMoviePage();
         }
         return mBinding.getRoot();
@@ -223,7 +223,7 @@ public class MovieCollectionFragment extends Fragment
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
         return new CursorLoader(this.getActivity()
-                , CachedMovieEntry.CONTENT_URI
+                , mViewModel.getContentUri()
                 , MoviePosterAdapter.PROJECTION_MOVIE_POSTERS
                 , mViewModel.getSelectionClause()
                 , mViewModel.getSelectionArguments()
@@ -261,6 +261,7 @@ public class MovieDetailFragment extends Fragment {
         @Override
         public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
             mViewModel.setMovieData(data);
+            mViewModel.refreshDetailsIfStale();
         }
 
         @Override